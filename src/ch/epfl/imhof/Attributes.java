@@ -1,5 +1,9 @@
 /**
- *  A class which represents a set of attributes and their associated values
+ *  A class which represents a set of attributes and their associated values.
+ *  The keys and the values are stored in two parallel arrays, sorted by key.
+ *  The attributes created by the builder, and by keepOnlyKeys when it drops some
+ *  attributes, are canonical : equal sets of attributes created this way are the
+ *  same instance
  *  
  *  @author:     Jose Ferro Pinto (233843)
  *  @author:     Dorian Laforest (234832)
@@ -7,20 +11,58 @@
 
 package ch.epfl.imhof;
 
-import java.util.Collections;
-import java.util.HashMap;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public final class Attributes {
-    final private Map<String, String> attributes;
+    private final static String[] NO_STRINGS = new String[0];
+    private final static Attributes EMPTY = new Attributes(NO_STRINGS, NO_STRINGS);
+    //The OSM files can have attributes with a null key, they are sorted first
+    private final static Comparator<String> KEY_ORDER = Comparator.nullsFirst(Comparator.naturalOrder());
+    //Up to this number of attributes, a linear scan is faster than a binary search
+    private final static int LINEAR_SCAN_LIMIT = 8;
+    //The canonical attributes, forgotten when no entity uses them anymore. The map is shared
+    //without lock by the threads reading or transforming maps
+    private final static Map<CanonicalReference, CanonicalReference> CANONICAL = new ConcurrentHashMap<>();
+    private final static ReferenceQueue<Attributes> FORGOTTEN = new ReferenceQueue<>();
+    final private String[] keys;
+    final private String[] values;
+    final private int hashCode;
 
     /**
      * Constructor for Attributes
      * @param attributes Map of attributes for OpenStreetMap
      */
     public Attributes(Map<String, String> attributes) {
-        this.attributes = Collections.unmodifiableMap(new HashMap<>(attributes));
+        int size = attributes.size();
+        String[] keys = new String[size];
+        String[] values = new String[size];
+        int i = 0;
+        for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+            keys[i] = attribute.getKey();
+            values[i++] = attribute.getValue();
+        }
+        sort(keys, values, size);
+        this.keys = keys;
+        this.values = values;
+        this.hashCode = 31 * Arrays.hashCode(keys) + Arrays.hashCode(values);
+    }
+
+    /**
+     * Private constructor for Attributes, taking ownership of the arrays
+     * @param keys the keys, sorted and without duplicates
+     * @param values the values, in the order of the keys
+     */
+    private Attributes(String[] keys, String[] values) {
+        this.keys = keys;
+        this.values = values;
+        this.hashCode = 31 * Arrays.hashCode(keys) + Arrays.hashCode(values);
     }
 
     /**
@@ -28,7 +70,35 @@ public final class Attributes {
      * @return true if empty, false otherwise
      */
     public boolean isEmpty(){
-        return attributes.isEmpty();
+        return keys.length == 0;
+    }
+
+    /**
+     * Returns the number of attributes
+     * @return the number of attributes
+     */
+    public int size(){
+        return keys.length;
+    }
+
+    /**
+     * Returns the key of an attribute, the attributes being sorted by key
+     * @param index the attribute's index
+     * @return the attribute's key
+     * @throws IndexOutOfBoundsException if the index is not in [0; size()[
+     */
+    public String keyAt(int index) throws IndexOutOfBoundsException{
+        return keys[index];
+    }
+
+    /**
+     * Returns the value of an attribute, the attributes being sorted by key
+     * @param index the attribute's index
+     * @return the attribute's value
+     * @throws IndexOutOfBoundsException if the index is not in [0; size()[
+     */
+    public String valueAt(int index) throws IndexOutOfBoundsException{
+        return values[index];
     }
 
     /**
@@ -37,7 +107,7 @@ public final class Attributes {
      * @return true if it exists, false otherwise
      */
     public boolean contains(String key){
-        return attributes.containsKey(key);
+        return indexOf(key) >= 0;
     }
 
     /**
@@ -46,7 +116,8 @@ public final class Attributes {
      * @return the key's value, null otherwise
      */
     public String get(String key){
-        return attributes.get(key);
+        int index = indexOf(key);
+        return index < 0 ? null : values[index];
     }
 
     /**
@@ -56,7 +127,8 @@ public final class Attributes {
      * @return the key's value, defaultValue otherwise
      */
     public String get(String key, String defaultValue){
-        return attributes.getOrDefault(key, defaultValue);
+        int index = indexOf(key);
+        return index < 0 ? defaultValue : values[index];
     }
 
     /**
@@ -67,25 +139,197 @@ public final class Attributes {
      */
     public int get(String key, int defaultValue){
         try {
-            return Integer.parseInt(attributes.get(key));
+            return Integer.parseInt(get(key));
         } catch (NumberFormatException e) {
             return defaultValue;
         }
     }
 
     /**
-     * Returns a filtered version of attributes containing the key in the Set keysToKeep
+     * Returns a filtered version of attributes containing the key in the Set keysToKeep.
+     * Nothing is allocated if all the attributes or none of them are kept
      * @param keysToKeep Set of String to search
-     * @return The filtered attributes list
+     * @return these attributes if all of them are kept, the canonical filtered attributes otherwise
      */
     public Attributes keepOnlyKeys(Set<String> keysToKeep){
-        Attributes.Builder builder = new Attributes.Builder();
-        for (String key : keysToKeep) {
-            if (this.contains(key)) {
-                builder.put(key, get(key));
+        int kept = 0;
+        for (String key : keys) {
+            if (isKept(key, keysToKeep)) {
+                kept++;
+            }
+        }
+        if (kept == 0) {
+            return EMPTY;
+        }
+        if (kept == keys.length) {
+            return this;
+        }
+        String[] keptKeys = new String[kept];
+        String[] keptValues = new String[kept];
+        int j = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (isKept(keys[i], keysToKeep)) {
+                keptKeys[j] = keys[i];
+                keptValues[j++] = values[i];
+            }
+        }
+        return canonical(new Attributes(keptKeys, keptValues));
+    }
+
+    /**
+     * Compares the attributes with an object
+     * @param that the object to compare
+     * @return true if that is an Attributes with the same keys associated with the same values
+     */
+    @Override
+    public boolean equals(Object that) {
+        if (this == that) {
+            return true;
+        }
+        if (!(that instanceof Attributes)) {
+            return false;
+        }
+        Attributes attributes = (Attributes) that;
+        return hashCode == attributes.hashCode
+                && Arrays.equals(keys, attributes.keys)
+                && Arrays.equals(values, attributes.values);
+    }
+
+    /**
+     * Returns the hash code of the attributes, consistent with equals
+     * @return the hash code
+     */
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    /**
+     * Returns the canonical instance of a set of attributes
+     * @param attributes the attributes
+     * @return the attributes equal to the given ones which were first made canonical,
+     *         or the given ones if there is none
+     */
+    private static Attributes canonical(Attributes attributes) {
+        //Removes the references to the attributes no longer used
+        for (Reference<? extends Attributes> forgotten = FORGOTTEN.poll(); forgotten != null; forgotten = FORGOTTEN.poll()) {
+            CANONICAL.remove(forgotten);
+        }
+        CanonicalReference reference = new CanonicalReference(attributes);
+        while (true) {
+            CanonicalReference existing = CANONICAL.putIfAbsent(reference, reference);
+            if (existing == null) {
+                return attributes;
+            }
+            Attributes canonical = existing.get();
+            if (canonical != null) {
+                return canonical;
             }
+            //The canonical attributes were just forgotten, their reference is replaced
+            CANONICAL.remove(existing, existing);
+        }
+    }
+
+    /**
+     * Returns the index of a key
+     * @param key the key to search
+     * @return the key's index in the arrays, a negative number if it does not exist
+     */
+    private int indexOf(String key) {
+        if (keys.length <= LINEAR_SCAN_LIMIT) {
+            for (int i = 0; i < keys.length; i++) {
+                //The keys are often the same String instances (see the readers' string dictionary)
+                if (keys[i] == key || (key != null && key.equals(keys[i]))) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        return Arrays.binarySearch(keys, key, KEY_ORDER);
+    }
+
+    /**
+     * Tests if a key is in a set of keys
+     * @param key the key
+     * @param keysToKeep the set of keys
+     * @return true if the key is in the set
+     */
+    private static boolean isKept(String key, Set<String> keysToKeep) {
+        if (key == null) {
+            //Some sets do not accept to be searched for null
+            for (String keyToKeep : keysToKeep) {
+                if (keyToKeep == null) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return keysToKeep.contains(key);
+    }
+
+    /**
+     * Sorts parallel arrays of keys and values by key, with an insertion sort
+     * since there are few attributes
+     * @param keys the keys
+     * @param values the values
+     * @param size the number of attributes
+     */
+    private static void sort(String[] keys, String[] values, int size) {
+        for (int i = 1; i < size; i++) {
+            String key = keys[i];
+            String value = values[i];
+            int j = i - 1;
+            while (j >= 0 && KEY_ORDER.compare(keys[j], key) > 0) {
+                keys[j + 1] = keys[j];
+                values[j + 1] = values[j];
+                j--;
+            }
+            keys[j + 1] = key;
+            values[j + 1] = value;
+        }
+    }
+
+    /**
+     *  Represents a weak reference to canonical attributes, equal to the references to
+     *  equal attributes. A reference whose attributes were forgotten is only equal to itself
+     */
+    private final static class CanonicalReference extends WeakReference<Attributes> {
+        final private int hashCode;
+
+        /**
+         * Constructor for CanonicalReference
+         * @param attributes the attributes
+         */
+        private CanonicalReference(Attributes attributes) {
+            super(attributes, FORGOTTEN);
+            this.hashCode = attributes.hashCode;
+        }
+
+        /**
+         * Compares the reference with an object
+         * @param that the object to compare
+         * @return true if that is this reference, or a reference to attributes equal to these ones
+         */
+        @Override
+        public boolean equals(Object that) {
+            if (this == that) {
+                return true;
+            }
+            if (!(that instanceof CanonicalReference) || hashCode != ((CanonicalReference) that).hashCode) {
+                return false;
+            }
+            Attributes attributes = get();
+            return attributes != null && attributes.equals(((CanonicalReference) that).get());
+        }
+
+        /**
+         * Returns the hash code of the attributes, kept when they are forgotten
+         * @return the hash code
+         */
+        @Override
+        public int hashCode() {
+            return hashCode;
         }
-        return builder.build();
     }
 
     /**
@@ -95,7 +339,30 @@ public final class Attributes {
      *  @author:     Dorian Laforest (234832)
      */
     public final static class Builder{
-        private Map<String, String> attributes = new HashMap<String, String>();
+        private String[] keys;
+        private String[] values;
+        private int size = 0;
+
+        /**
+         * Constructor for an empty Builder
+         */
+        public Builder(){
+            keys = NO_STRINGS;
+            values = NO_STRINGS;
+        }
+
+        /**
+         * Constructor for an empty Builder able to hold the given number of attributes without growing
+         * @param expectedSize the number of attributes expected
+         * @throws IllegalArgumentException if expectedSize is negative
+         */
+        public Builder(int expectedSize) throws IllegalArgumentException{
+            if (expectedSize < 0) {
+                throw new IllegalArgumentException("The expected size must be positive");
+            }
+            keys = expectedSize == 0 ? NO_STRINGS : new String[expectedSize];
+            values = expectedSize == 0 ? NO_STRINGS : new String[expectedSize];
+        }
 
         /**
          * Adds the association in the attributes or replaces it if key already exists
@@ -103,15 +370,33 @@ public final class Attributes {
          * @param value String value associated
          */
         public void put(String key, String value){
-            attributes.put(key, value);
+            for (int i = 0; i < size; i++) {
+                if (keys[i] == key || (key != null && key.equals(keys[i]))) {
+                    values[i] = value;
+                    return;
+                }
+            }
+            if (size == keys.length) {
+                int capacity = Math.max(4, size * 2);
+                keys = Arrays.copyOf(keys, capacity);
+                values = Arrays.copyOf(values, capacity);
+            }
+            keys[size] = key;
+            values[size++] = value;
         }
 
         /**
-         * Builds and returns a new Attributes
-         * @return a new Attributes
+         * Builds and returns the canonical Attributes with the builder's attributes
+         * @return the canonical Attributes
          */
         public Attributes build(){
-            return new Attributes(attributes);
+            if (size == 0) {
+                return EMPTY;
+            }
+            String[] sortedKeys = Arrays.copyOf(keys, size);
+            String[] sortedValues = Arrays.copyOf(values, size);
+            sort(sortedKeys, sortedValues, size);
+            return canonical(new Attributes(sortedKeys, sortedValues));
         }
     }
-}
\ No newline at end of file
+}
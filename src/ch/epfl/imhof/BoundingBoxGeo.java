@@ -0,0 +1,86 @@
+/**
+ *  Represents a rectangle on earth surface, bounded by two meridians and two
+ *  parallels, in spherical coordinates
+ *
+ *  @author:     José Ferro Pinto (233843)
+ *  @author:     Dorian Laforest (234832)
+ */
+
+package ch.epfl.imhof;
+
+public final class BoundingBoxGeo {
+    private final PointGeo bottomLeft;
+    private final PointGeo topRight;
+
+    /**
+     * BoundingBoxGeo's constructor
+     * @param bottomLeft the south-west corner
+     * @param topRight the north-east corner
+     * @throws IllegalArgumentException if bottomLeft is not south-west of topRight
+     */
+    public BoundingBoxGeo(PointGeo bottomLeft, PointGeo topRight) throws IllegalArgumentException {
+        if(bottomLeft.longitude() > topRight.longitude() || bottomLeft.latitude() > topRight.latitude()) {
+            throw new IllegalArgumentException("The bottom left corner must be south-west of the top right corner");
+        }
+        this.bottomLeft = bottomLeft;
+        this.topRight = topRight;
+    }
+
+    /**
+     * Returns the south-west corner
+     * @return the south-west corner
+     */
+    public PointGeo bottomLeft() {
+        return bottomLeft;
+    }
+
+    /**
+     * Returns the north-east corner
+     * @return the north-east corner
+     */
+    public PointGeo topRight() {
+        return topRight;
+    }
+
+    /**
+     * Tests if a point is in the box, borders included
+     * @param longitude the point's longitude in radians
+     * @param latitude the point's latitude in radians
+     * @return true if the point is in the box, false otherwise
+     */
+    public boolean contains(double longitude, double latitude) {
+        return longitude >= bottomLeft.longitude() && longitude <= topRight.longitude()
+                && latitude >= bottomLeft.latitude() && latitude <= topRight.latitude();
+    }
+
+    /**
+     * Tests if a point is in the box, borders included
+     * @param point the point
+     * @return true if the point is in the box, false otherwise
+     */
+    public boolean contains(PointGeo point) {
+        return contains(point.longitude(), point.latitude());
+    }
+
+    /**
+     * Returns a box enlarged on each side by the given angular distance.
+     * The longitudes are enlarged more than the latitudes, so that the margin measured on the
+     * earth surface is at least the given one on every side. The result is limited to the earth
+     * @param margin the angular distance on a great circle, in radians (a distance divided by the earth radius)
+     * @return the enlarged box
+     * @throws IllegalArgumentException if margin is negative
+     */
+    public BoundingBoxGeo withMargin(double margin) throws IllegalArgumentException {
+        if(margin < 0) {
+            throw new IllegalArgumentException("The margin must be positive");
+        }
+        double south = Math.max(bottomLeft.latitude() - margin, -Math.PI / 2);
+        double north = Math.min(topRight.latitude() + margin, Math.PI / 2);
+        //The parallels are the shortest at the latitude the most distant from the equator
+        double cosine = Math.cos(Math.max(Math.abs(south), Math.abs(north)));
+        double longitudeMargin = cosine > margin / Math.PI ? margin / cosine : Math.PI;
+        double west = Math.max(bottomLeft.longitude() - longitudeMargin, -Math.PI);
+        double east = Math.min(topRight.longitude() + longitudeMargin, Math.PI);
+        return new BoundingBoxGeo(new PointGeo(west, south), new PointGeo(east, north));
+    }
+}
@@ -18,11 +18,24 @@ public final class Graph<N> {
      * @param neighbors a map containing all the point associated with their neighbors' set
      */
     public Graph(Map<N, Set<N>> neighbors) {
-        Map<N, Set<N>> newNeighbors = new HashMap<>();
-        for (Map.Entry<N, Set<N>> neighbor : neighbors.entrySet()) {
-            newNeighbors.put(neighbor.getKey(), Collections.unmodifiableSet(new HashSet<>(neighbor.getValue())));
+        this(neighbors, true);
+    }
+
+    /**
+     * Constructor for Graph, copying the map or not
+     * @param neighbors a map containing all the point associated with their neighbors' set
+     * @param copy false to keep the map itself, which must then be unmodifiable as well as its sets
+     * (eg. the view of an IntGraph)
+     */
+    Graph(Map<N, Set<N>> neighbors, boolean copy) {
+        if (copy) {
+            Map<N, Set<N>> newNeighbors = new HashMap<>();
+            for (Map.Entry<N, Set<N>> neighbor : neighbors.entrySet()) {
+                newNeighbors.put(neighbor.getKey(), Collections.unmodifiableSet(new HashSet<>(neighbor.getValue())));
+            }
+            neighbors = Collections.unmodifiableMap(newNeighbors);
         }
-        this.neighbors = Collections.unmodifiableMap(newNeighbors);
+        this.neighbors = neighbors;
     }
 
     /**
@@ -40,8 +53,10 @@ public final class Graph<N> {
      * @throws IllegalArgumentException if the node does not exist
      */
     public Set<N> neighborsOf(N node) throws IllegalArgumentException {
-        if (neighbors.containsKey(node)) {
-            return Collections.unmodifiableSet(neighbors.get(node));
+        //The sets are unmodifiable already
+        Set<N> nodeNeighbors = neighbors.get(node);
+        if (nodeNeighbors != null) {
+            return nodeNeighbors;
         }
         throw new IllegalArgumentException("The given node does not exist");
     }
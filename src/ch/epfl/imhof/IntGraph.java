@@ -0,0 +1,343 @@
+/**
+ * Represents an unoriented graph whose nodes are the integers from 0 to the number
+ * of nodes, stored in compressed rows : the neighbors of all the nodes are in a
+ * single array, sorted node by node, and the neighbors of a node are found through
+ * its offset in this array. An edge costs two ints, instead of the entries and
+ * sets of a Graph, which remains available as a view (see asGraph).
+ *
+ * @author: José Ferro Pinto (233843)
+ * @author: Dorian Laforest (234832)
+ */
+
+package ch.epfl.imhof;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+public final class IntGraph {
+    //The neighbors of node n are neighbors[offsets[n]] to neighbors[offsets[n + 1] - 1]
+    private final int[] offsets;
+    private final int[] neighbors;
+
+    /**
+     * Private constructor for IntGraph, see Builder
+     * @param offsets the offsets of the neighbors of each node, followed by the number of neighbors
+     * @param neighbors the neighbors of all the nodes
+     */
+    private IntGraph(int[] offsets, int[] neighbors) {
+        this.offsets = offsets;
+        this.neighbors = neighbors;
+    }
+
+    /**
+     * Returns the number of nodes
+     * @return the number of nodes
+     */
+    public int nodesCount() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * Returns the number of neighbors of a node
+     * @param node the node
+     * @return the node's degree
+     * @throws IllegalArgumentException if the node does not exist
+     */
+    public int degree(int node) throws IllegalArgumentException {
+        checkNode(node);
+        return offsets[node + 1] - offsets[node];
+    }
+
+    /**
+     * Returns a neighbor of a node
+     * @param node the node
+     * @param i the index of the neighbor, the neighbors being sorted in increasing order
+     * @return the i-th neighbor of the node
+     * @throws IllegalArgumentException if the node does not exist
+     * @throws IndexOutOfBoundsException if i is not in [0; degree(node)[
+     */
+    public int neighbor(int node, int i) throws IllegalArgumentException, IndexOutOfBoundsException {
+        if(i < 0 || i >= degree(node)) {
+            throw new IndexOutOfBoundsException("Invalid neighbor index " + i);
+        }
+        return neighbors[offsets[node] + i];
+    }
+
+    /**
+     * Tests if two nodes are neighbors
+     * @param node1 the first node
+     * @param node2 the second node
+     * @return true if there is an edge between the nodes
+     * @throws IllegalArgumentException if the first node does not exist
+     */
+    public boolean areNeighbors(int node1, int node2) throws IllegalArgumentException {
+        checkNode(node1);
+        return Arrays.binarySearch(neighbors, offsets[node1], offsets[node1 + 1], node2) >= 0;
+    }
+
+    /**
+     * Returns a view of the graph as a Graph, whose nodes and sets of neighbors
+     * are read from this graph without being copied
+     * @return the Graph view
+     */
+    public Graph<Integer> asGraph() {
+        return new Graph<>(new NeighborsView(), false);
+    }
+
+    /**
+     * Checks that a node exists
+     * @param node the node
+     * @throws IllegalArgumentException if the node is not in [0; nodesCount()[
+     */
+    private void checkNode(int node) throws IllegalArgumentException {
+        if(node < 0 || node >= nodesCount()) {
+            throw new IllegalArgumentException("The given node does not exist");
+        }
+    }
+
+    /**
+     *  Represents the map from each node to its neighbors, seen by the Graph view
+     */
+    private final class NeighborsView extends AbstractMap<Integer, Set<Integer>> {
+        /**
+         * Tests if a node exists
+         * @param key the node
+         * @return true if key is an Integer in [0; nodesCount()[
+         */
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof Integer && (Integer)key >= 0 && (Integer)key < nodesCount();
+        }
+
+        /**
+         * Returns the neighbors of a node
+         * @param key the node
+         * @return the set of the node's neighbors, null if the node does not exist
+         */
+        @Override
+        public Set<Integer> get(Object key) {
+            return containsKey(key) ? new NeighborsSet((Integer)key) : null;
+        }
+
+        /**
+         * Returns the number of nodes
+         * @return the number of nodes
+         */
+        @Override
+        public int size() {
+            return nodesCount();
+        }
+
+        /**
+         * Returns the nodes with their neighbors
+         * @return the set of the entries, one per node in increasing order
+         */
+        @Override
+        public Set<Map.Entry<Integer, Set<Integer>>> entrySet() {
+            return new AbstractSet<Map.Entry<Integer, Set<Integer>>>() {
+                @Override
+                public Iterator<Map.Entry<Integer, Set<Integer>>> iterator() {
+                    return new RangeIterator<Map.Entry<Integer, Set<Integer>>>(0, nodesCount()) {
+                        @Override
+                        Map.Entry<Integer, Set<Integer>> element(int node) {
+                            return new SimpleImmutableEntry<>(node, new NeighborsSet(node));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return nodesCount();
+                }
+            };
+        }
+    }
+
+    /**
+     *  Represents the unmodifiable set of the neighbors of a node, seen by the Graph view
+     */
+    private final class NeighborsSet extends AbstractSet<Integer> {
+        final private int node;
+
+        /**
+         * Constructor for NeighborsSet
+         * @param node the node
+         */
+        private NeighborsSet(int node) {
+            this.node = node;
+        }
+
+        /**
+         * Tests if a node is a neighbor
+         * @param o the node
+         * @return true if o is an Integer neighbor of the node
+         */
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof Integer && areNeighbors(node, (Integer)o);
+        }
+
+        /**
+         * Returns the neighbors
+         * @return an iterator on the neighbors in increasing order
+         */
+        @Override
+        public Iterator<Integer> iterator() {
+            return new RangeIterator<Integer>(offsets[node], offsets[node + 1]) {
+                @Override
+                Integer element(int i) {
+                    return neighbors[i];
+                }
+            };
+        }
+
+        /**
+         * Returns the number of neighbors
+         * @return the node's degree
+         */
+        @Override
+        public int size() {
+            return offsets[node + 1] - offsets[node];
+        }
+    }
+
+    /**
+     *  Represents an iterator on the elements given by a range of indices, which does not support remove
+     */
+    private static abstract class RangeIterator<E> implements Iterator<E> {
+        private int next;
+        final private int end;
+
+        /**
+         * Constructor for RangeIterator
+         * @param start the first index
+         * @param end the index following the last one
+         */
+        private RangeIterator(int start, int end) {
+            this.next = start;
+            this.end = end;
+        }
+
+        /**
+         * Returns the element at an index
+         * @param i the index
+         * @return the element
+         */
+        abstract E element(int i);
+
+        @Override
+        public boolean hasNext() {
+            return next < end;
+        }
+
+        @Override
+        public E next() {
+            if(next >= end) {
+                throw new NoSuchElementException();
+            }
+            return element(next++);
+        }
+    }
+
+    /**
+     *  Represents IntGraph's Builder class. The edges are given as pairs of ints, and
+     *  an edge added several times is kept once
+     *
+     *  @author: José Ferro Pinto (233843)
+     *  @author: Dorian Laforest (234832)
+     */
+    public static final class Builder {
+        private final int nodesCount;
+        //The ends of the edges, in parallel arrays
+        private int[] from;
+        private int[] to;
+        private int edgesCount = 0;
+
+        /**
+         * Constructor for a Builder of a graph with the given number of nodes
+         * @param nodesCount the number of nodes, numbered from 0
+         * @throws IllegalArgumentException if the number of nodes is negative
+         */
+        public Builder(int nodesCount) throws IllegalArgumentException {
+            this(nodesCount, 0);
+        }
+
+        /**
+         * Constructor for a Builder able to hold the given number of edges without growing
+         * @param nodesCount the number of nodes, numbered from 0
+         * @param expectedEdges the number of edges expected
+         * @throws IllegalArgumentException if one of the numbers is negative
+         */
+        public Builder(int nodesCount, int expectedEdges) throws IllegalArgumentException {
+            if(nodesCount < 0 || expectedEdges < 0) {
+                throw new IllegalArgumentException("Negative number of nodes or edges");
+            }
+            this.nodesCount = nodesCount;
+            from = new int[Math.max(expectedEdges, 8)];
+            to = new int[from.length];
+        }
+
+        /**
+         * Adds an edge between two nodes
+         * @param n1 first node
+         * @param n2 second node
+         * @throws IllegalArgumentException if n1 or n2 does not exist
+         */
+        public void addEdge(int n1, int n2) throws IllegalArgumentException {
+            if(n1 < 0 || n1 >= nodesCount || n2 < 0 || n2 >= nodesCount) {
+                throw new IllegalArgumentException("The given nodes does not exist");
+            }
+            if(edgesCount == from.length) {
+                from = Arrays.copyOf(from, 2 * edgesCount);
+                to = Arrays.copyOf(to, 2 * edgesCount);
+            }
+            from[edgesCount] = n1;
+            to[edgesCount++] = n2;
+        }
+
+        /**
+         * Builds the IntGraph, counting the neighbors of each node before placing them
+         * @return a new IntGraph
+         */
+        public IntGraph build() {
+            int[] offsets = new int[nodesCount + 1];
+            for(int e = 0; e < edgesCount; e++) {
+                offsets[from[e] + 1]++;
+                if(to[e] != from[e]) {
+                    offsets[to[e] + 1]++;
+                }
+            }
+            for(int n = 0; n < nodesCount; n++) {
+                offsets[n + 1] += offsets[n];
+            }
+            int[] neighbors = new int[offsets[nodesCount]];
+            int[] filled = Arrays.copyOf(offsets, nodesCount);
+            for(int e = 0; e < edgesCount; e++) {
+                neighbors[filled[from[e]]++] = to[e];
+                if(to[e] != from[e]) {
+                    neighbors[filled[to[e]]++] = from[e];
+                }
+            }
+            //Sorts the neighbors of each node and removes the repeated ones, compacting the array
+            int size = 0;
+            for(int n = 0; n < nodesCount; n++) {
+                int start = offsets[n];
+                int end = offsets[n + 1];
+                Arrays.sort(neighbors, start, end);
+                offsets[n] = size;
+                for(int i = start; i < end; i++) {
+                    if(i == start || neighbors[i] != neighbors[i - 1]) {
+                        neighbors[size++] = neighbors[i];
+                    }
+                }
+            }
+            offsets[nodesCount] = size;
+            return new IntGraph(offsets, size == neighbors.length ? neighbors : Arrays.copyOf(neighbors, size));
+        }
+    }
+}
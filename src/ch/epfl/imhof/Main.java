@@ -12,6 +12,8 @@ import ch.epfl.imhof.dem.ReliefShader;
 import ch.epfl.imhof.geometry.Point;
 import ch.epfl.imhof.osm.OSMMap;
 import ch.epfl.imhof.osm.OSMMapReader;
+import ch.epfl.imhof.osm.OSMPBFReader;
+import ch.epfl.imhof.osm.OSMReadOptions;
 import ch.epfl.imhof.osm.OSMToGeoTransformer;
 import ch.epfl.imhof.painting.Color;
 import ch.epfl.imhof.painting.Java2DCanvas;
@@ -32,12 +34,15 @@ public final class Main {
     private final static double BLUR_RADIUS_IN_METER = 0.0017d;
     private final static double MAP_SCALE = 25000d;
     private final static Color BACKGROUND_COLOR = Color.WHITE;
+    private final static String PBF_EXTENSION = ".pbf";
+    //Margin around the drawn area in which the OSM entities are kept, so that the lines drawn near the borders are complete
+    private final static double OSM_MARGIN_IN_METER = 200d;
     
     /**
      * Main method of Imhof project
      * Generate a map from the given arguments
      * @param args the arguments :
-     * - the OSM file path compressed with gzip
+     * - the OSM file path, compressed with gzip or in PBF format (.pbf)
      * - the HGT file path
      * - the bottom left point longitude in degree
      * - the bottom left point latitude in degree
@@ -78,9 +83,21 @@ public final class Main {
         
             BufferedImage relief = rS.shadedRelief(bottomLeftPoint, topRightPoint, width, height, radius);
 
-            OSMMap osmMap = OSMMapReader.readOSMFile(osmFilePath, true);
-            OSMToGeoTransformer osmMapTransformer = new OSMToGeoTransformer(new CH1903Projection());
-            Map map = osmMapTransformer.transform(osmMap);
+            //Only the entities in the drawn area, and the attributes used to draw them, are kept
+            OSMReadOptions.Builder optionsBuilder = new OSMReadOptions.Builder();
+            optionsBuilder.setBoundingBox(new BoundingBoxGeo(bottomLeftPointGeo, topRightPointGeo).withMargin(OSM_MARGIN_IN_METER / Earth.RADIUS));
+            optionsBuilder.setAttributeKeys(OSMToGeoTransformer.ATTRIBUTE_KEYS);
+            //The same files are drawn many times, parsing them only once
+            optionsBuilder.setUsesSnapshot(true);
+            OSMReadOptions options = optionsBuilder.build();
+            //A region already drawn is taken from the cache without reading the OSM file
+            Map map = MapCache.map(osmFilePath, proj, options.description(), () -> {
+                OSMMap osmMap = osmFilePath.endsWith(PBF_EXTENSION)
+                        ? OSMPBFReader.readPBFFile(osmFilePath, options)
+                        : OSMMapReader.readOSMFile(osmFilePath, true, options);
+                OSMToGeoTransformer osmMapTransformer = new OSMToGeoTransformer(proj);
+                return osmMapTransformer.transform(osmMap);
+            });
             Java2DCanvas canvas = new Java2DCanvas(bottomLeftPoint, topRightPoint, width, height, resolutionDPI, BACKGROUND_COLOR);
 
             Painter painter = SwissPainter.painter();
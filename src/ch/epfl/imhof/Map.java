@@ -23,8 +23,19 @@ public final class Map {
      * @param polygons a list of attributed Polygon
      */
     public Map(List<Attributed<PolyLine>> polyLines, List<Attributed<Polygon>> polygons) {
-        this.polyLines = Collections.unmodifiableList(new ArrayList<>(polyLines));
-        this.polygons = Collections.unmodifiableList(new ArrayList<>(polygons));
+        this(polyLines, polygons, true);
+    }
+
+    /**
+     * The map constructor, copying the lists or not
+     * @param polyLines a list of attributed polyLines
+     * @param polygons a list of attributed Polygon
+     * @param copy false to keep the lists themselves, which must then be unmodifiable
+     * (eg. lists whose elements are only created when accessed, see MapCache)
+     */
+    Map(List<Attributed<PolyLine>> polyLines, List<Attributed<Polygon>> polygons, boolean copy) {
+        this.polyLines = copy ? Collections.unmodifiableList(new ArrayList<>(polyLines)) : polyLines;
+        this.polygons = copy ? Collections.unmodifiableList(new ArrayList<>(polygons)) : polygons;
     }
 
     /**
@@ -50,8 +61,26 @@ public final class Map {
      *  @author:     Dorian Laforest (234832)
      */
     public static class Builder {
-        private List<Attributed<PolyLine>> polyLines = new ArrayList<>();
-        private List<Attributed<Polygon>> polygons = new ArrayList<>();
+        private final List<Attributed<PolyLine>> polyLines;
+        private final List<Attributed<Polygon>> polygons;
+
+        /**
+         * Constructor for an empty Builder
+         */
+        public Builder() {
+            this(0, 0);
+        }
+
+        /**
+         * Constructor for an empty Builder able to hold the given numbers of entities without growing
+         * @param expectedPolyLines the number of attributed PolyLines expected
+         * @param expectedPolygons the number of attributed Polygons expected
+         * @throws IllegalArgumentException if one of the numbers is negative
+         */
+        public Builder(int expectedPolyLines, int expectedPolygons) throws IllegalArgumentException {
+            polyLines = new ArrayList<>(expectedPolyLines);
+            polygons = new ArrayList<>(expectedPolygons);
+        }
 
         /**
          * Adds an attributed PolyLine to the Map's builder
@@ -0,0 +1,506 @@
+/**
+ *  An on-disk cache of projected maps, so that drawing the same region again
+ *  neither reads nor transforms its OSM file. A map is cached next to its source
+ *  file, for a checksum of the file, a projection and a variant (the other parameters
+ *  the map depends on, eg. the options of the reading).
+ *  The cache file is memory-mapped and the polylines and polygons of the map
+ *  are only created when they are accessed for the first time.
+ *  At most MAX_MAPS_PER_SOURCE maps are cached for a source file, the least recently
+ *  used ones being deleted. The checksum of the source file is stored next to it with
+ *  its size and modification time, and computed again only when one of them changes.
+ *  This class is not instantiable
+ *
+ *  The cache file contains, in big-endian order :
+ *  - the magic number, the version of the format and the key of the map,
+ *  - the dictionary of the strings, and the dictionary of the attributes as indices in the strings,
+ *  - the number of polylines and of polygons, and the position of each of them in the file,
+ *  - the polylines : attributes, closed or not, points (as pairs of doubles),
+ *  - the polygons : attributes, number of holes, points of the shell and of each hole.
+ *
+ *  @author:     José Ferro Pinto (233843)
+ *  @author:     Dorian Laforest (234832)
+ */
+package ch.epfl.imhof;
+
+import ch.epfl.imhof.geometry.ClosedPolyLine;
+import ch.epfl.imhof.geometry.PolyLine;
+import ch.epfl.imhof.geometry.Polygon;
+import ch.epfl.imhof.projection.Projection;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.IntFunction;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+public final class MapCache {
+    private final static int MAGIC = 0x494D484D;
+    private final static int VERSION = 1;
+    private final static int NO_ATTRIBUTES = -1;
+    private final static int BUFFER_SIZE = 1 << 16;
+    private final static String EXTENSION = ".map";
+    private final static String CHECKSUM_EXTENSION = ".crc";
+    final static int MAX_MAPS_PER_SOURCE = 4;
+
+    /**
+     * The private MapCache constructor
+     */
+    private MapCache() {
+    }
+
+    /**
+     * Returns the map of a source file from the cache, or creates it and caches it
+     * if the cache does not contain it
+     * @param fileName the path of the source file
+     * @param projection the projection of the map
+     * @param variant the description of the other parameters of the map, which are not in the cache's key otherwise
+     * @param source the creator of the map, called if the cache does not contain it
+     * @return the map
+     * @throws E if the creation of the map failed
+     * @throws IOException if the source file can not be read
+     */
+    public static <E extends Exception> Map map(String fileName, Projection projection, String variant, Source<E> source) throws E, IOException {
+        String key = key(Path.of(fileName), projection, variant);
+        Path cache = Path.of(fileName + "." + Integer.toHexString(key.hashCode()) + EXTENSION);
+        if(Files.exists(cache)) {
+            try {
+                Map map = read(cache, key);
+                //The maps are evicted in the order of their last use
+                Files.setLastModifiedTime(cache, FileTime.fromMillis(System.currentTimeMillis()));
+                return map;
+            }
+            catch(IOException e) {
+                //Another map with the same name, a map of another version or a damaged file : it is replaced
+            }
+        }
+        Map map = source.map();
+        try {
+            write(map, key, cache);
+            evictOldMaps(Path.of(fileName));
+        }
+        catch(IOException e) {
+            //The cache is only an optimization, the map is still returned if it can not be written
+        }
+        return map;
+    }
+
+    /**
+     * Returns the key of a map
+     * @param file the source file
+     * @param projection the projection of the map
+     * @param variant the description of the other parameters of the map
+     * @return the key, containing the checksum of the file
+     * @throws IOException if the source file can not be read
+     */
+    static String key(Path file, Projection projection, String variant) throws IOException {
+        return Long.toHexString(checksum(file)) + ";" + Files.size(file) + ";" + projection.getClass().getName() + ";" + variant;
+    }
+
+    /**
+     * Returns the checksum of a file. It is stored next to the file with the file's size and
+     * modification time, and only computed again when they change
+     * @param file the file
+     * @return the CRC32 of the file's content
+     * @throws IOException if the file can not be read
+     */
+    static long checksum(Path file) throws IOException {
+        String state = Files.size(file) + ";" + Files.getLastModifiedTime(file).toMillis() + ";";
+        Path stored = Path.of(file + CHECKSUM_EXTENSION);
+        try {
+            String content = new String(Files.readAllBytes(stored), StandardCharsets.UTF_8);
+            if(content.startsWith(state)) {
+                return Long.parseLong(content.substring(state.length()), 16);
+            }
+        }
+        catch(IOException | NumberFormatException e) {
+            //No checksum stored yet, or a damaged one : it is computed again
+        }
+        CRC32 checksum = new CRC32();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try(InputStream i = Files.newInputStream(file)) {
+            int read;
+            while((read = i.read(buffer)) > 0) {
+                checksum.update(buffer, 0, read);
+            }
+        }
+        try {
+            Path temporary = Files.createTempFile(stored.toAbsolutePath().getParent(), stored.getFileName().toString(), ".tmp");
+            try {
+                Files.write(temporary, (state + Long.toHexString(checksum.getValue())).getBytes(StandardCharsets.UTF_8));
+                Files.move(temporary, stored, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            finally {
+                Files.deleteIfExists(temporary);
+            }
+        }
+        catch(IOException e) {
+            //The checksum is then computed at each call
+        }
+        return checksum.getValue();
+    }
+
+    /**
+     * Deletes the least recently used maps of a source file, so that at most
+     * MAX_MAPS_PER_SOURCE of them remain
+     * @param file the source file
+     * @throws IOException if the directory of the file can not be listed
+     */
+    static void evictOldMaps(Path file) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Pattern names = Pattern.compile(Pattern.quote(file.getFileName().toString()) + "\\.[0-9a-f]+" + Pattern.quote(EXTENSION));
+        List<Path> maps = new ArrayList<>();
+        try(Stream<Path> files = Files.list(directory)) {
+            files.filter(f -> names.matcher(f.getFileName().toString()).matches()).forEach(maps::add);
+        }
+        if(maps.size() <= MAX_MAPS_PER_SOURCE) {
+            return;
+        }
+        java.util.Map<Path, FileTime> lastUses = new HashMap<>();
+        for(Path map : maps) {
+            lastUses.put(map, Files.getLastModifiedTime(map));
+        }
+        maps.sort(Comparator.comparing(lastUses::get, Comparator.reverseOrder()));
+        for(Path map : maps.subList(MAX_MAPS_PER_SOURCE, maps.size())) {
+            Files.deleteIfExists(map);
+        }
+    }
+
+    /**
+     * Reads a map from the cache
+     * @param cache the cache file
+     * @param key the key of the map
+     * @return the map, whose polylines and polygons are read when accessed
+     * @throws IOException if the file can not be read, is malformed or contains another map
+     */
+    static Map read(Path cache, String key) throws IOException {
+        ByteBuffer buffer;
+        try(FileChannel channel = FileChannel.open(cache, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            return read(buffer, key);
+        }
+        catch(BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException | IllegalArgumentException e) {
+            throw new IOException("Malformed map cache " + cache, e);
+        }
+    }
+
+    /**
+     * Writes a map to the cache. The file is written next to its final path and then moved to it,
+     * so that a file being written is never read
+     * @param map the map
+     * @param key the key of the map
+     * @param cache the cache file
+     * @throws IOException if the file can not be written
+     */
+    static void write(Map map, String key, Path cache) throws IOException {
+        Path directory = cache.toAbsolutePath().getParent();
+        Path temporary = Files.createTempFile(directory, cache.getFileName().toString(), ".tmp");
+        try {
+            try(OutputStream o = Files.newOutputStream(temporary)) {
+                write(map, key, o);
+            }
+            Files.move(temporary, cache, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Reads a map from a buffer. The dictionaries are read immediately, the polylines and polygons
+     * when they are accessed
+     * @param buffer the content of the cache file
+     * @param key the key of the map
+     * @return the map
+     * @throws IOException if the buffer contains another map or a map of another version
+     */
+    static Map read(ByteBuffer buffer, String key) throws IOException {
+        if(buffer.getInt() != MAGIC || buffer.getInt() != VERSION || !key.equals(readString(buffer))) {
+            throw new IOException("Not the cache of this map");
+        }
+        String[] strings = new String[buffer.getInt()];
+        for(int i = 0; i < strings.length; i++) {
+            strings[i] = readString(buffer);
+        }
+        Attributes[] attributes = new Attributes[buffer.getInt()];
+        for(int i = 0; i < attributes.length; i++) {
+            int size = buffer.getInt();
+            Attributes.Builder builder = new Attributes.Builder(size);
+            for(int j = 0; j < size; j++) {
+                String attributeKey = strings[buffer.getInt()];
+                builder.put(attributeKey, strings[buffer.getInt()]);
+            }
+            attributes[i] = builder.build();
+        }
+        int polyLinesCount = buffer.getInt();
+        int polygonsCount = buffer.getInt();
+        int[] positions = new int[polyLinesCount + polygonsCount];
+        for(int i = 0; i < positions.length; i++) {
+            positions[i] = buffer.getInt();
+            if(positions[i] < buffer.position() || positions[i] >= buffer.limit()) {
+                throw new IndexOutOfBoundsException("Entity outside of the file");
+            }
+        }
+        List<Attributed<PolyLine>> polyLines = new LazyList<>(polyLinesCount, i -> {
+            int position = positions[i];
+            Attributes polyLineAttributes = attributes(attributes, buffer.getInt(position));
+            boolean closed = buffer.get(position + 4) != 0;
+            PolyLine.Builder points = readPoints(buffer, position + 5);
+            return new Attributed<>(closed ? points.buildClosed() : points.buildOpen(), polyLineAttributes);
+        });
+        List<Attributed<Polygon>> polygons = new LazyList<>(polygonsCount, i -> {
+            int position = positions[polyLinesCount + i];
+            Attributes polygonAttributes = attributes(attributes, buffer.getInt(position));
+            int holesCount = buffer.getInt(position + 4);
+            position += 8;
+            ClosedPolyLine shell = readPoints(buffer, position).buildClosed();
+            position += 4 + 16 * shell.pointsCount();
+            List<ClosedPolyLine> holes = new ArrayList<>(holesCount);
+            for(int h = 0; h < holesCount; h++) {
+                ClosedPolyLine hole = readPoints(buffer, position).buildClosed();
+                position += 4 + 16 * hole.pointsCount();
+                holes.add(hole);
+            }
+            return new Attributed<>(new Polygon(shell, holes), polygonAttributes);
+        });
+        return new Map(polyLines, polygons, false);
+    }
+
+    /**
+     * Writes a map to a stream
+     * @param map the map
+     * @param key the key of the map
+     * @param o the stream, which is not closed
+     * @throws IOException if something went wrong with the stream
+     */
+    static void write(Map map, String key, OutputStream o) throws IOException {
+        java.util.Map<String, Integer> strings = new HashMap<>();
+        List<String> stringList = new ArrayList<>();
+        java.util.Map<Attributes, Integer> attributes = new HashMap<>();
+        List<Attributes> attributesList = new ArrayList<>();
+        List<Attributed<?>> entities = new ArrayList<>(map.polyLines());
+        entities.addAll(map.polygons());
+        for(Attributed<?> entity : entities) {
+            Attributes a = entity.attributes();
+            if(!a.isEmpty() && !attributes.containsKey(a)) {
+                attributes.put(a, attributesList.size());
+                attributesList.add(a);
+                for(int i = 0; i < a.size(); i++) {
+                    for(String string : new String[] { a.keyAt(i), a.valueAt(i) }) {
+                        if(!strings.containsKey(string)) {
+                            strings.put(string, stringList.size());
+                            stringList.add(string);
+                        }
+                    }
+                }
+            }
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(o, BUFFER_SIZE));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        writeString(out, key);
+        out.writeInt(stringList.size());
+        for(String string : stringList) {
+            writeString(out, string);
+        }
+        out.writeInt(attributesList.size());
+        for(Attributes a : attributesList) {
+            out.writeInt(a.size());
+            for(int i = 0; i < a.size(); i++) {
+                out.writeInt(strings.get(a.keyAt(i)));
+                out.writeInt(strings.get(a.valueAt(i)));
+            }
+        }
+        out.writeInt(map.polyLines().size());
+        out.writeInt(map.polygons().size());
+        //The positions are known from the sizes of the entities, which are written after them
+        long position = out.size() + 4l * entities.size();
+        for(Attributed<PolyLine> polyLine : map.polyLines()) {
+            out.writeInt(checkedPosition(position));
+            position += 9 + 16 * polyLine.value().pointsCount();
+        }
+        for(Attributed<Polygon> polygon : map.polygons()) {
+            out.writeInt(checkedPosition(position));
+            position += 12 + 16 * polygon.value().shell().pointsCount();
+            for(ClosedPolyLine hole : polygon.value().holes()) {
+                position += 4 + 16 * hole.pointsCount();
+            }
+        }
+        for(Attributed<PolyLine> polyLine : map.polyLines()) {
+            out.writeInt(attributesIndex(attributes, polyLine.attributes()));
+            out.writeByte(polyLine.value().isClosed() ? 1 : 0);
+            writePoints(out, polyLine.value());
+        }
+        for(Attributed<Polygon> polygon : map.polygons()) {
+            out.writeInt(attributesIndex(attributes, polygon.attributes()));
+            out.writeInt(polygon.value().holes().size());
+            writePoints(out, polygon.value().shell());
+            for(ClosedPolyLine hole : polygon.value().holes()) {
+                writePoints(out, hole);
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Checks that a position in the file can be written as an int
+     * @param position the position
+     * @return the position
+     * @throws IOException if the file would be too large to be memory-mapped
+     */
+    private static int checkedPosition(long position) throws IOException {
+        if(position > Integer.MAX_VALUE) {
+            throw new IOException("Map too large to be cached");
+        }
+        return (int)position;
+    }
+
+    /**
+     * Returns attributes of the dictionary
+     * @param attributes the dictionary
+     * @param index the attributes' index, NO_ATTRIBUTES if they are empty
+     * @return the attributes
+     */
+    private static Attributes attributes(Attributes[] attributes, int index) {
+        return index == NO_ATTRIBUTES ? new Attributes.Builder().build() : attributes[index];
+    }
+
+    /**
+     * Returns the index of attributes in the dictionary
+     * @param attributes the dictionary
+     * @param a the attributes
+     * @return their index, NO_ATTRIBUTES if they are empty
+     */
+    private static int attributesIndex(java.util.Map<Attributes, Integer> attributes, Attributes a) {
+        return a.isEmpty() ? NO_ATTRIBUTES : attributes.get(a);
+    }
+
+    /**
+     * Reads the points written by writePoints, without changing the position of the buffer
+     * @param buffer the buffer
+     * @param position the position of the points
+     * @return a builder holding the points
+     */
+    private static PolyLine.Builder readPoints(ByteBuffer buffer, int position) {
+        int count = buffer.getInt(position);
+        PolyLine.Builder points = new PolyLine.Builder(count);
+        for(int i = 0; i < count; i++) {
+            int pointPosition = position + 4 + 16 * i;
+            points.addPoint(buffer.getDouble(pointPosition), buffer.getDouble(pointPosition + 8));
+        }
+        return points;
+    }
+
+    /**
+     * Writes the points of a polyline as their number and their coordinates
+     * @param out the stream
+     * @param polyLine the polyline
+     * @throws IOException if something went wrong with the stream
+     */
+    private static void writePoints(DataOutputStream out, PolyLine polyLine) throws IOException {
+        out.writeInt(polyLine.pointsCount());
+        for(int i = 0; i < polyLine.pointsCount(); i++) {
+            out.writeDouble(polyLine.x(i));
+            out.writeDouble(polyLine.y(i));
+        }
+    }
+
+    /**
+     * Reads a string written by writeString
+     * @param buffer the buffer
+     * @return the string
+     */
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a string as its length and its UTF-8 bytes
+     * @param out the stream
+     * @param string the string
+     * @throws IOException if something went wrong with the stream
+     */
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     *  Creator of a map which is not in the cache
+     *
+     *  @author:     José Ferro Pinto (233843)
+     *  @author:     Dorian Laforest (234832)
+     */
+    @FunctionalInterface
+    public interface Source<E extends Exception> {
+        /**
+         * Creates the map
+         * @return the map
+         * @throws E if the creation failed
+         * @throws IOException if something went wrong with a file
+         */
+        Map map() throws E, IOException;
+    }
+
+    /**
+     *  Unmodifiable list whose elements are created when they are accessed for the first time
+     *
+     *  @author:     José Ferro Pinto (233843)
+     *  @author:     Dorian Laforest (234832)
+     */
+    private final static class LazyList<T> extends AbstractList<T> implements RandomAccess {
+        private final Object[] elements;
+        private final IntFunction<T> creator;
+
+        /**
+         * Constructor for LazyList
+         * @param size the number of elements
+         * @param creator the creator of the element of an index
+         */
+        LazyList(int size, IntFunction<T> creator) {
+            this.elements = new Object[size];
+            this.creator = creator;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T get(int index) {
+            //The elements are immutable : if two threads create the same element, both copies are equivalent
+            Object element = elements[index];
+            if(element == null) {
+                element = creator.apply(index);
+                elements[index] = element;
+            }
+            return (T)element;
+        }
+
+        @Override
+        public int size() {
+            return elements.length;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 /**
- *  A class which represents a closed PolyLine
+ *  A class which represents a closed PolyLine. Its signed area is computed the
+ *  first time it is needed and then kept
  *  
  *  @author:     Jose Ferro Pinto (233843)
  *  @author:     Dorian Laforest (234832)
@@ -10,6 +11,9 @@ package ch.epfl.imhof.geometry;
 import java.util.List;
 
 public final class ClosedPolyLine extends PolyLine {
+    //Computed on demand : a Double being immutable, a thread sees either null or the complete value
+    private Double signedArea;
+
     /**
      * Constructor for ClosedPolyLine
      * @param points Represent the points of the ClosedPolyLine to construct
@@ -18,6 +22,14 @@ public final class ClosedPolyLine extends PolyLine {
         super(points);
     }
 
+    /**
+     * Constructor for ClosedPolyLine keeping the given coordinates, see PolyLine.Builder
+     * @param coordinates the coordinates of the points, x and y alternating, which must not be modified afterwards
+     */
+    ClosedPolyLine(double[] coordinates) {
+        super(coordinates);
+    }
+
     /**
      * {@inheritDoc}
      * @return true because a ClosedPolyLine is always closed
@@ -36,38 +48,70 @@ public final class ClosedPolyLine extends PolyLine {
      * @return the area of the ClosedPolyLine
      */
     public double area(){
-        double result = 0;
-        for (int i = 0; i < super.points().size(); i++) {
-            result += (generalizedPoint(i).x()*generalizedPoint(i+1).y()-generalizedPoint(i+1).x()*generalizedPoint(i).y());
+        return Math.abs(signedArea());
+    }
+
+    /**
+     * Returns the ClosedPolyLine's signed area (see area), computed the first time
+     * @return the signed area, positive if the points are in counterclockwise order
+     */
+    public double signedArea(){
+        Double area = signedArea;
+        if (area == null) {
+            int count = pointsCount();
+            double result = 0;
+            for (int i = 0; i < count; i++) {
+                int j = i + 1 == count ? 0 : i + 1;
+                result += x(i)*y(j)-x(j)*y(i);
+            }
+            area = result/2;
+            signedArea = area;
         }
-        return Math.abs(result/2);
+        return area;
+    }
+
+    /**
+     * Tests if the ClosedPolyLine's points are in counterclockwise order
+     * @return true if the signed area is positive, false otherwise
+     */
+    public boolean isCounterClockwise(){
+        return signedArea() > 0;
     }
 
     /**
      * Tests if the point p is inside the PolyLine using the winding number method :
      * The winding number of a closed curve compared to a point is the number of counterclockwise round
      * made by the curve around the point. A point is outside the closed curve if and only if
-     * the winding number is 0
+     * the winding number is 0. A point outside the bounding box is rejected without computing it
      * @param p the point we want to test
      * @return true if p is inside the PolyLine, false otherwise
      */
     public boolean containsPoint(Point p) {
+        if (!envelopeContains(p)) {
+            return false;
+        }
+        int count = pointsCount();
         int index = 0;
+        double pX = p.x();
         double pY = p.y();
-        //For each segment S = (Pi, Pi+1) of the closed PolyLine
-        for(int i = 0; i< super.points().size(); i++) {
-            Point p1 = super.points().get(i);
-            Point p2 = generalizedPoint(i+1);
-            if(p1.y() <= pY) {
+        //For each segment S = (Pi, Pi+1) of the closed PolyLine, the last one going back to the first point
+        double x1 = x(count - 1);
+        double y1 = y(count - 1);
+        for(int i = 0; i < count; i++) {
+            double x2 = x(i);
+            double y2 = y(i);
+            if(y1 <= pY) {
                 //If Pi+1.y <= P.y and P is on the left side of (Pi,Pi+1) : increment the index 
-                if((p2.y() > pY) && (isLeft(p, p1, p2))) {
+                if((y2 > pY) && (isLeft(pX, pY, x1, y1, x2, y2))) {
                     index++;
                 }
             }
             //Else if P2.y <= P.y and P is on the left side of (Pi+1, Pi) : decrement the index
-            else if((p2.y() <= pY) && (isLeft(p, p2, p1))) {
+            else if((y2 <= pY) && (isLeft(pX, pY, x2, y2, x1, y1))) {
                 index--;
             }
+            x1 = x2;
+            y1 = y2;
         }
         return (index != 0);
     }
@@ -76,21 +120,15 @@ public final class ClosedPolyLine extends PolyLine {
      * Private method to know if a point P is on the left side of a segment (P1, P2)
      * We use the signed area of the triangle (P,P1,P2) to know where P is
      * If the signed area is negative then P is on the left side
-     * @param p The point to test
-     * @param p1 The first point to compare
-     * @param p2 The second point to compare
+     * @param pX The x value of the point to test
+     * @param pY The y value of the point to test
+     * @param x1 The x value of the first point to compare
+     * @param y1 The y value of the first point to compare
+     * @param x2 The x value of the second point to compare
+     * @param y2 The y value of the second point to compare
      * @return True if P is on the left side of (P1, P2), false otherwise
      */
-    private boolean isLeft(Point p, Point p1, Point p2){
-        return (p1.x()-p.x())*(p2.y()-p.y())>(p2.x()-p.x())*(p1.y()-p.y());
-    }
-
-    /**
-     * Returns a generalized index's vertex
-     * @param The point's index to be generalized
-     * @return The point with a generalized index
-     */
-    private Point generalizedPoint(int index){
-        return super.points().get(Math.floorMod(index ,super.points().size()));
+    private boolean isLeft(double pX, double pY, double x1, double y1, double x2, double y2){
+        return (x1-pX)*(y2-pY)>(x2-pX)*(y1-pY);
     }
 }
\ No newline at end of file
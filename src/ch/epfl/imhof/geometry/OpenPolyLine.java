@@ -19,6 +19,14 @@ public final class OpenPolyLine extends PolyLine{
         super(points);
     }
 
+    /**
+     * Constructor for OpenPolyLine keeping the given coordinates, see PolyLine.Builder
+     * @param coordinates the coordinates of the points, x and y alternating, which must not be modified afterwards
+     */
+    OpenPolyLine(double[] coordinates) {
+        super(coordinates);
+    }
+
     /**
      * {@inheritDoc}
      * @return boolean false because OpenPolyLine is always open
@@ -1,5 +1,9 @@
 /**
- *  An abstract class which represents any PolyLine
+ *  An abstract class which represents any PolyLine. Its bounding box is computed
+ *  the first time it is needed and then kept.
+ *  The coordinates of the points are packed in a single array, x and y alternating,
+ *  instead of being held by Point objects : the points are only created when they
+ *  are accessed through points(), and should rather be read with x(i) and y(i)
  *  
  *  @author:     Jose Ferro Pinto (233843)
  *  @author:     Dorian Laforest (234832)
@@ -7,12 +11,16 @@
 
 package ch.epfl.imhof.geometry;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.RandomAccess;
 
 public abstract class PolyLine {
-    private final List<Point> polyLine;
+    //The coordinates of point i are coordinates[2 * i] and coordinates[2 * i + 1]
+    private final double[] coordinates;
+    //Computed on demand : an Envelope having only final fields, a thread sees either null or a complete one
+    private Envelope envelope;
 
     /**
      * Constructor for PolyLine
@@ -24,15 +32,72 @@ public abstract class PolyLine {
             throw new IllegalArgumentException("Incorrect point's list");
         }
 
-        polyLine = Collections.unmodifiableList(new ArrayList<Point>(points));
+        coordinates = new double[2 * points.size()];
+        int i = 0;
+        for (Point p : points) {
+            coordinates[i++] = p.x();
+            coordinates[i++] = p.y();
+        }
+    }
+
+    /**
+     * Constructor for PolyLine keeping the given coordinates, see Builder
+     * @param coordinates the coordinates of the points, x and y alternating, which must not be modified afterwards
+     * @throws IllegalArgumentException If there is no point
+     */
+    PolyLine(double[] coordinates) throws IllegalArgumentException{
+        if (coordinates.length == 0) {
+            throw new IllegalArgumentException("Incorrect point's list");
+        }
+        this.coordinates = coordinates;
     }
 
     /**
      * Returns the PolyLine's points list
-     * @return the PolyLine's point list
+     * @return an unmodifiable view of the PolyLine's points, creating each Point when it is accessed
      */
     public List<Point> points(){
-        return polyLine;
+        return new PointList();
+    }
+
+    /**
+     * Returns the number of points
+     * @return the number of points
+     */
+    public int pointsCount(){
+        return coordinates.length / 2;
+    }
+
+    /**
+     * Returns the abscissa of a point
+     * @param i the index of the point
+     * @return the point's x value
+     * @throws IndexOutOfBoundsException if i is not in [0; pointsCount()[
+     */
+    public double x(int i) throws IndexOutOfBoundsException{
+        checkIndex(i);
+        return coordinates[2 * i];
+    }
+
+    /**
+     * Returns the ordinate of a point
+     * @param i the index of the point
+     * @return the point's y value
+     * @throws IndexOutOfBoundsException if i is not in [0; pointsCount()[
+     */
+    public double y(int i) throws IndexOutOfBoundsException{
+        checkIndex(i);
+        return coordinates[2 * i + 1];
+    }
+
+    /**
+     * Returns a point
+     * @param i the index of the point
+     * @return a new Point with the point's coordinates
+     * @throws IndexOutOfBoundsException if i is not in [0; pointsCount()[
+     */
+    public Point point(int i) throws IndexOutOfBoundsException{
+        return new Point(x(i), y(i));
     }
 
     /**
@@ -40,7 +105,18 @@ public abstract class PolyLine {
      * @return the first Point
      */
     public Point firstPoint(){
-        return polyLine.get(0);
+        return new Point(coordinates[0], coordinates[1]);
+    }
+
+    /**
+     * Checks the index of a point, which could otherwise designate a coordinate of the array
+     * @param i the index of the point
+     * @throws IndexOutOfBoundsException if i is not in [0; pointsCount()[
+     */
+    private void checkIndex(int i) throws IndexOutOfBoundsException{
+        if (i < 0 || i >= pointsCount()) {
+            throw new IndexOutOfBoundsException("Invalid point index " + i);
+        }
     }
 
     /**
@@ -49,6 +125,127 @@ public abstract class PolyLine {
      */
     public abstract boolean isClosed();
 
+    /**
+     * Returns the smallest abscissa of the PolyLine's points
+     * @return the left side of the bounding box
+     */
+    public double minX() {
+        return envelope().minX;
+    }
+
+    /**
+     * Returns the smallest ordinate of the PolyLine's points
+     * @return the bottom side of the bounding box
+     */
+    public double minY() {
+        return envelope().minY;
+    }
+
+    /**
+     * Returns the largest abscissa of the PolyLine's points
+     * @return the right side of the bounding box
+     */
+    public double maxX() {
+        return envelope().maxX;
+    }
+
+    /**
+     * Returns the largest ordinate of the PolyLine's points
+     * @return the top side of the bounding box
+     */
+    public double maxY() {
+        return envelope().maxY;
+    }
+
+    /**
+     * Tests if a point is in the PolyLine's bounding box
+     * @param p the point to test
+     * @return true if the point is in the bounding box or on its sides, false otherwise
+     */
+    public boolean envelopeContains(Point p) {
+        Envelope e = envelope();
+        return p.x() >= e.minX && p.x() <= e.maxX && p.y() >= e.minY && p.y() <= e.maxY;
+    }
+
+    /**
+     * Tests if the PolyLine's bounding box intersects a rectangle
+     * @param minX the left side of the rectangle
+     * @param minY the bottom side of the rectangle
+     * @param maxX the right side of the rectangle
+     * @param maxY the top side of the rectangle
+     * @return true if the bounding box and the rectangle have at least a point in common
+     */
+    public boolean envelopeIntersects(double minX, double minY, double maxX, double maxY) {
+        Envelope e = envelope();
+        return e.minX <= maxX && e.maxX >= minX && e.minY <= maxY && e.maxY >= minY;
+    }
+
+    /**
+     * Returns the bounding box, computing it the first time
+     * @return the bounding box
+     */
+    private Envelope envelope() {
+        Envelope e = envelope;
+        if (e == null) {
+            e = new Envelope(coordinates);
+            envelope = e;
+        }
+        return e;
+    }
+
+    /**
+     *  Represents the bounding box of the points of a PolyLine
+     */
+    private final static class Envelope {
+        private final double minX;
+        private final double minY;
+        private final double maxX;
+        private final double maxY;
+
+        /**
+         * Constructor for Envelope
+         * @param coordinates the coordinates of the points, x and y alternating, at least one point
+         */
+        private Envelope(double[] coordinates) {
+            double x1 = Double.POSITIVE_INFINITY, y1 = Double.POSITIVE_INFINITY;
+            double x2 = Double.NEGATIVE_INFINITY, y2 = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < coordinates.length; i += 2) {
+                x1 = Math.min(x1, coordinates[i]);
+                y1 = Math.min(y1, coordinates[i + 1]);
+                x2 = Math.max(x2, coordinates[i]);
+                y2 = Math.max(y2, coordinates[i + 1]);
+            }
+            minX = x1;
+            minY = y1;
+            maxX = x2;
+            maxY = y2;
+        }
+    }
+
+    /**
+     *  Represents the unmodifiable list of the points of the PolyLine
+     */
+    private final class PointList extends AbstractList<Point> implements RandomAccess {
+        /**
+         * Returns a point
+         * @param i the index of the point
+         * @return a new Point with the point's coordinates
+         */
+        @Override
+        public Point get(int i) {
+            return point(i);
+        }
+
+        /**
+         * Returns the number of points
+         * @return the number of points
+         */
+        @Override
+        public int size() {
+            return pointsCount();
+        }
+    }
+
     /**
      *  Represents PolyLine Builder class
      *  
@@ -56,30 +253,66 @@ public abstract class PolyLine {
      *  @author:     Dorian Laforest (234832)
      */
     public final static class Builder {
-        private List<Point> points = new ArrayList<>();
+        private double[] coordinates;
+        private int size = 0;
+
+        /**
+         * Constructor for an empty Builder
+         */
+        public Builder() {
+            this(8);
+        }
+
+        /**
+         * Constructor for an empty Builder able to hold the given number of points without growing
+         * @param expectedSize the number of points expected
+         * @throws IllegalArgumentException if expectedSize is negative
+         */
+        public Builder(int expectedSize) throws IllegalArgumentException {
+            if (expectedSize < 0) {
+                throw new IllegalArgumentException("Negative number of points");
+            }
+            coordinates = new double[2 * expectedSize];
+        }
 
         /**
          * Adds a point at the end of the current list of points
          * @param newPoint Represents the point to add
          */
         public void addPoint(Point newPoint) {
-            points.add(newPoint);
+            addPoint(newPoint.x(), newPoint.y());
+        }
+
+        /**
+         * Adds a point, given by its coordinates, at the end of the current list of points
+         * @param x the x value of the point to add
+         * @param y the y value of the point to add
+         */
+        public void addPoint(double x, double y) {
+            if (2 * size == coordinates.length) {
+                coordinates = Arrays.copyOf(coordinates, Math.max(4 * size, 16));
+            }
+            coordinates[2 * size] = x;
+            coordinates[2 * size + 1] = y;
+            size++;
         }
 
         /**
          * Builds and returns a new OpenPolyLine
          * @return a new OpenPolyLine with the added points until now
+         * @throws IllegalArgumentException if no point was added
          */
-        public OpenPolyLine buildOpen() {
-            return new OpenPolyLine(points);
+        public OpenPolyLine buildOpen() throws IllegalArgumentException {
+            return new OpenPolyLine(Arrays.copyOf(coordinates, 2 * size));
         }
 
         /**
          * Builds and returns a new ClosedPolyLine
          * @return a new ClosedPolyLine with the added points until now
+         * @throws IllegalArgumentException if no point was added
          */
-        public ClosedPolyLine buildClosed() {
-            return new ClosedPolyLine(points);
+        public ClosedPolyLine buildClosed() throws IllegalArgumentException {
+            return new ClosedPolyLine(Arrays.copyOf(coordinates, 2 * size));
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,217 @@
+/**
+ *  Restricts the ways and relations of a map to the ones intersecting a bounding box.
+ *  A way is kept if one of its segments crosses the box or, for a closed way, if
+ *  it encloses the box, and a relation if one of its members intersects the box.
+ *  The kept ways and multipolygons stay complete : all the nodes of the kept ways
+ *  and all the members of the kept multipolygons are kept too, so ways and polygons
+ *  crossing the border of the box are unchanged. The other relations, which are not
+ *  drawn, keep only their members intersecting the box.
+ *  The nodes of the kept ways are copied to a new store (see OSMEntityCopier), so
+ *  that the other nodes can be freed.
+ *
+ *  @author:     José Ferro Pinto (233843)
+ *  @author:     Dorian Laforest (234832)
+ */
+package ch.epfl.imhof.osm;
+
+import ch.epfl.imhof.BoundingBoxGeo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+final class BoundingBoxFilter {
+    private final BoundingBoxGeo boundingBox;
+    private final int west;
+    private final int south;
+    private final int east;
+    private final int north;
+    private final Map<OSMEntity, Boolean> intersections = new IdentityHashMap<>();
+    private final Set<OSMEntity> kept = Collections.newSetFromMap(new IdentityHashMap<>());
+    //The copies of the relations keep only the kept members
+    private final OSMEntityCopier copier = new OSMEntityCopier(new OSMNodeStore(), kept::contains);
+
+    /**
+     * Constructor for BoundingBoxFilter
+     * @param boundingBox the box in which the entities are kept
+     */
+    BoundingBoxFilter(BoundingBoxGeo boundingBox) {
+        this.boundingBox = boundingBox;
+        west = FixedPointCoordinate.fromRadians(boundingBox.bottomLeft().longitude());
+        south = FixedPointCoordinate.fromRadians(boundingBox.bottomLeft().latitude());
+        east = FixedPointCoordinate.fromRadians(boundingBox.topRight().longitude());
+        north = FixedPointCoordinate.fromRadians(boundingBox.topRight().latitude());
+    }
+
+    /**
+     * Filters ways and relations. The entities kept are copies, given in their original order
+     * @param ways the ways to filter
+     * @param relations the relations to filter
+     * @return a map containing the kept ways and relations
+     */
+    OSMMap filter(List<OSMWay> ways, List<OSMRelation> relations) {
+        for(OSMRelation relation : relations) {
+            if(intersects(relation)) {
+                keep(relation);
+            }
+        }
+        for(OSMWay way : ways) {
+            if(intersects(way)) {
+                keep(way);
+            }
+        }
+        List<OSMWay> keptWays = new ArrayList<>();
+        for(OSMWay way : ways) {
+            if(kept.contains(way)) {
+                keptWays.add((OSMWay)copier.copy(way));
+            }
+        }
+        List<OSMRelation> keptRelations = new ArrayList<>();
+        for(OSMRelation relation : relations) {
+            if(kept.contains(relation)) {
+                keptRelations.add((OSMRelation)copier.copy(relation));
+            }
+        }
+        return new OSMMap(keptWays, keptRelations);
+    }
+
+    /**
+     * Tests if an entity intersects the box
+     * @param entity the entity
+     * @return true if the entity is a node in the box, a way crossing or enclosing
+     * the box or a relation with a member intersecting the box
+     */
+    private boolean intersects(OSMEntity entity) {
+        Boolean intersection = intersections.get(entity);
+        if(intersection != null) {
+            return intersection;
+        }
+        boolean intersects = false;
+        if(entity instanceof OSMNode) {
+            intersects = boundingBox.contains(((OSMNode)entity).position());
+        }
+        else if(entity instanceof OSMWay) {
+            intersects = intersects((OSMWay)entity);
+        }
+        else {
+            for(OSMRelation.Member member : ((OSMRelation)entity).members()) {
+                if(intersects(member.member())) {
+                    intersects = true;
+                    break;
+                }
+            }
+        }
+        intersections.put(entity, intersects);
+        return intersects;
+    }
+
+    /**
+     * Tests if a way intersects the box, its envelope being tested first
+     * @param way the way
+     * @return true if a segment of the way crosses the box, or if the way is closed and encloses the box
+     */
+    private boolean intersects(OSMWay way) {
+        OSMNodeStore store = way.nodeStore();
+        int minLongitude = Integer.MAX_VALUE, minLatitude = Integer.MAX_VALUE;
+        int maxLongitude = Integer.MIN_VALUE, maxLatitude = Integer.MIN_VALUE;
+        for(int i = 0; i < way.nodesCount(); i++) {
+            int longitude = store.fixedPointLongitude(way.nodeIndex(i));
+            int latitude = store.fixedPointLatitude(way.nodeIndex(i));
+            minLongitude = Math.min(minLongitude, longitude);
+            minLatitude = Math.min(minLatitude, latitude);
+            maxLongitude = Math.max(maxLongitude, longitude);
+            maxLatitude = Math.max(maxLatitude, latitude);
+        }
+        if(maxLongitude < west || minLongitude > east || maxLatitude < south || minLatitude > north) {
+            return false;
+        }
+        for(int i = 1; i < way.nodesCount(); i++) {
+            if(segmentIntersects(store, way.nodeIndex(i - 1), way.nodeIndex(i))) {
+                return true;
+            }
+        }
+        //No segment touches the box, so the box is either completely inside or completely outside the way
+        return way.isClosed() && encloses(way, ((double)west + east) / 2, ((double)south + north) / 2);
+    }
+
+    /**
+     * Tests if a segment intersects the box, clipping it by the four sides of the box (Liang-Barsky)
+     * @param store the store containing the ends of the segment
+     * @param from the index of the first end
+     * @param to the index of the second end
+     * @return true if a part of the segment, possibly a single point, is in the box
+     */
+    private boolean segmentIntersects(OSMNodeStore store, int from, int to) {
+        double x = store.fixedPointLongitude(from);
+        double y = store.fixedPointLatitude(from);
+        double dx = store.fixedPointLongitude(to) - x;
+        double dy = store.fixedPointLatitude(to) - y;
+        //The part of the segment in the box is between the parameters t0 and t1
+        double t0 = 0, t1 = 1;
+        double[] p = { -dx, dx, -dy, dy };
+        double[] q = { x - west, east - x, y - south, north - y };
+        for(int side = 0; side < 4; side++) {
+            if(p[side] == 0) {
+                //The segment is parallel to the side and outside of it
+                if(q[side] < 0) {
+                    return false;
+                }
+            }
+            else {
+                double t = q[side] / p[side];
+                if(p[side] < 0) {
+                    t0 = Math.max(t0, t);
+                }
+                else {
+                    t1 = Math.min(t1, t);
+                }
+                if(t0 > t1) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tests if a closed way encloses a point, counting the crossings of its segments with
+     * the horizontal half-line on the right of the point
+     * @param way the closed way
+     * @param x the point's longitude in units of 1e-7 degree
+     * @param y the point's latitude in units of 1e-7 degree
+     * @return true if the point is inside the way
+     */
+    private static boolean encloses(OSMWay way, double x, double y) {
+        OSMNodeStore store = way.nodeStore();
+        boolean inside = false;
+        for(int i = 1; i < way.nodesCount(); i++) {
+            double x1 = store.fixedPointLongitude(way.nodeIndex(i - 1));
+            double y1 = store.fixedPointLatitude(way.nodeIndex(i - 1));
+            double x2 = store.fixedPointLongitude(way.nodeIndex(i));
+            double y2 = store.fixedPointLatitude(way.nodeIndex(i));
+            if((y1 > y) != (y2 > y) && x < x1 + (y - y1) * (x2 - x1) / (y2 - y1)) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    /**
+     * Keeps an entity and, for a relation, its members : all of them for a multipolygon,
+     * the ones intersecting the box otherwise
+     * @param entity the entity to keep
+     */
+    private void keep(OSMEntity entity) {
+        if(kept.add(entity) && entity instanceof OSMRelation) {
+            boolean complete = entity.hasAttribute("type") && entity.attributeValue("type").equals("multipolygon");
+            for(OSMRelation.Member member : ((OSMRelation)entity).members()) {
+                if(complete || intersects(member.member())) {
+                    keep(member.member());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ *  Conversions of OSM coordinates to and from 32-bit fixed-point integers
+ *  in units of 1e-7 degree, which is the precision of OSM data.
+ *  This class is not instantiable
+ *
+ *  @author:     José Ferro Pinto (233843)
+ *  @author:     Dorian Laforest (234832)
+ */
+package ch.epfl.imhof.osm;
+
+public final class FixedPointCoordinate {
+    /**
+     * Number of fixed-point units in one degree
+     */
+    public final static int UNITS_PER_DEGREE = 10_000_000;
+    private final static int DECIMALS = 7;
+    private final static int MAX_INTEGER_DIGITS = 3;
+
+    /**
+     * The private FixedPointCoordinate constructor
+     */
+    private FixedPointCoordinate() {
+    }
+
+    /**
+     * Parses a decimal coordinate in degrees (eg. "-46.5194710") directly into fixed-point units,
+     * without going through a double. Decimals beyond the 7th are rounded
+     * @param degrees the textual coordinate
+     * @return the coordinate in units of 1e-7 degree
+     * @throws NumberFormatException if the text is not a decimal number with at most 3 integer digits
+     */
+    public static int parse(CharSequence degrees) throws NumberFormatException {
+        int length = degrees.length();
+        int i = 0;
+        boolean negative = false;
+        if(length > 0 && (degrees.charAt(0) == '-' || degrees.charAt(0) == '+')) {
+            negative = degrees.charAt(0) == '-';
+            i++;
+        }
+        long value = 0;
+        int integerDigits = 0;
+        while(i < length && isDigit(degrees.charAt(i))) {
+            value = value * 10 + (degrees.charAt(i++) - '0');
+            integerDigits++;
+        }
+        int decimals = 0;
+        boolean roundUp = false;
+        if(i < length && degrees.charAt(i) == '.') {
+            i++;
+            while(i < length && isDigit(degrees.charAt(i))) {
+                int digit = degrees.charAt(i++) - '0';
+                if(decimals < DECIMALS) {
+                    value = value * 10 + digit;
+                }
+                else if(decimals == DECIMALS) {
+                    roundUp = digit >= 5;
+                }
+                decimals++;
+            }
+        }
+        if(i != length || integerDigits + decimals == 0 || integerDigits > MAX_INTEGER_DIGITS) {
+            throw new NumberFormatException("Invalid coordinate : " + degrees);
+        }
+        return toFixedPoint(value, decimals, roundUp, negative);
+    }
+
+    /**
+     * Parses a decimal coordinate in degrees written in ASCII in a byte array,
+     * in the same way as parse(CharSequence)
+     * @param bytes the array containing the coordinate
+     * @param from the index of the first byte of the coordinate
+     * @param to the index following the last byte of the coordinate
+     * @return the coordinate in units of 1e-7 degree
+     * @throws NumberFormatException if the bytes are not a decimal number with at most 3 integer digits
+     */
+    public static int parse(byte[] bytes, int from, int to) throws NumberFormatException {
+        int i = from;
+        boolean negative = false;
+        if(i < to && (bytes[i] == '-' || bytes[i] == '+')) {
+            negative = bytes[i] == '-';
+            i++;
+        }
+        long value = 0;
+        int integerDigits = 0;
+        while(i < to && isDigit(bytes[i])) {
+            value = value * 10 + (bytes[i++] - '0');
+            integerDigits++;
+        }
+        int decimals = 0;
+        boolean roundUp = false;
+        if(i < to && bytes[i] == '.') {
+            i++;
+            while(i < to && isDigit(bytes[i])) {
+                int digit = bytes[i++] - '0';
+                if(decimals < DECIMALS) {
+                    value = value * 10 + digit;
+                }
+                else if(decimals == DECIMALS) {
+                    roundUp = digit >= 5;
+                }
+                decimals++;
+            }
+        }
+        if(i != to || integerDigits + decimals == 0 || integerDigits > MAX_INTEGER_DIGITS) {
+            throw new NumberFormatException("Invalid coordinate");
+        }
+        return toFixedPoint(value, decimals, roundUp, negative);
+    }
+
+    /**
+     * Converts a fixed-point coordinate to radians
+     * @param fixedPoint the coordinate in units of 1e-7 degree
+     * @return the coordinate in radians
+     */
+    public static double toRadians(int fixedPoint) {
+        return Math.toRadians(fixedPoint / (double)UNITS_PER_DEGREE);
+    }
+
+    /**
+     * Converts a coordinate in radians to the nearest fixed-point coordinate
+     * @param radians the coordinate in radians
+     * @return the coordinate in units of 1e-7 degree
+     */
+    public static int fromRadians(double radians) {
+        return (int)Math.round(Math.toDegrees(radians) * UNITS_PER_DEGREE);
+    }
+
+    /**
+     * Scales the parsed digits to fixed-point units
+     * @param value the digits read, up to the 7th decimal
+     * @param decimals the number of decimals read
+     * @param roundUp true if the first dropped decimal was 5 or more
+     * @param negative true if the coordinate is negative
+     * @return the coordinate in units of 1e-7 degree
+     * @throws NumberFormatException if the coordinate does not fit in 32 bits
+     */
+    static int toFixedPoint(long value, int decimals, boolean roundUp, boolean negative) throws NumberFormatException {
+        for(int d = decimals; d < DECIMALS; d++) {
+            value *= 10;
+        }
+        if(roundUp) {
+            value++;
+        }
+        if(value > Integer.MAX_VALUE) {
+            throw new NumberFormatException("Coordinate out of range");
+        }
+        return (int)(negative ? -value : value);
+    }
+
+    /**
+     * Tests if the character is an ASCII digit
+     * @param c the character or byte to test
+     * @return true if c is in ['0'; '9'], false otherwise
+     */
+    private static boolean isDigit(int c) {
+        return c >= '0' && c <= '9';
+    }
+}
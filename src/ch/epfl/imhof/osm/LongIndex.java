@@ -0,0 +1,165 @@
+/**
+ *  Assigns consecutive indices to primitive long keys, used to give OSM ids a
+ *  position in parallel arrays without boxing them. The keys are stored densely
+ *  in insertion order and located through an open-addressing table of indices
+ *  with linear probing.
+ *
+ *  @author:     José Ferro Pinto (233843)
+ *  @author:     Dorian Laforest (234832)
+ */
+package ch.epfl.imhof.osm;
+
+import java.util.Arrays;
+
+final class LongIndex {
+    final static int NO_INDEX = -1;
+    private final static int DEFAULT_CAPACITY = 16;
+    private long[] keys;
+    private int[] table;
+    private int mask;
+    private int size;
+
+    /**
+     * Constructor for an empty LongIndex with a default capacity
+     */
+    LongIndex() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor for an empty LongIndex able to hold the given number of keys without growing
+     * @param expectedSize the number of keys expected
+     * @throws IllegalArgumentException if expectedSize is negative
+     */
+    LongIndex(int expectedSize) throws IllegalArgumentException {
+        if(expectedSize < 0) {
+            throw new IllegalArgumentException("The expected size must be positive");
+        }
+        keys = new long[Math.max(expectedSize, DEFAULT_CAPACITY)];
+        rebuildTable();
+        size = 0;
+    }
+
+    /**
+     * Returns the number of keys
+     * @return the number of keys
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of keys the index can hold without growing
+     * @return the capacity
+     */
+    int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * Adds the key if it does not exist yet
+     * @param key the key to add
+     * @return the index of the key, which is size()-1 if the key was added
+     */
+    int add(long key) {
+        int slot = slotOf(key);
+        int index = table[slot];
+        if(index != NO_INDEX) {
+            return index;
+        }
+        if(size == keys.length) {
+            keys = Arrays.copyOf(keys, keys.length * 2);
+            rebuildTable();
+            slot = slotOf(key);
+        }
+        keys[size] = key;
+        table[slot] = size;
+        return size++;
+    }
+
+    /**
+     * Keeps only some of the keys, in their order : the index of a retained key becomes the number
+     * of retained keys before it. The keys are compacted in place and the table of the former keys
+     * is released before the one of the retained keys is built, so that both are never held at once
+     * @param retained for each index, true if the key is retained
+     * @throws IllegalArgumentException if the length of retained is not size()
+     */
+    void retainAll(boolean[] retained) throws IllegalArgumentException {
+        if(retained.length != size) {
+            throw new IllegalArgumentException("One flag per key is expected");
+        }
+        int retainedCount = 0;
+        for(int i = 0; i < size; i++) {
+            if(retained[i]) {
+                keys[retainedCount++] = keys[i];
+            }
+        }
+        size = retainedCount;
+        table = null;
+        keys = Arrays.copyOf(keys, Math.max(size, DEFAULT_CAPACITY));
+        rebuildTable();
+    }
+
+    /**
+     * Returns the index of the key
+     * @param key the key to search
+     * @return the index of the key, NO_INDEX if it does not exist
+     */
+    int indexOf(long key) {
+        return table[slotOf(key)];
+    }
+
+    /**
+     * Returns the key at the given index
+     * @param index the index
+     * @return the key at this index
+     * @throws IndexOutOfBoundsException if the index is not in [0; size()[
+     */
+    long keyAt(int index) throws IndexOutOfBoundsException {
+        if(index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+        return keys[index];
+    }
+
+    /**
+     * Returns the slot of the table containing the key, or the empty slot where it should be inserted
+     * @param key the key to search
+     * @return the slot of the key
+     */
+    private int slotOf(long key) {
+        int slot = hash(key) & mask;
+        int index;
+        while((index = table[slot]) != NO_INDEX && keys[index] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Rebuilds the table for the current capacity, keeping it at most half full
+     * so that probe sequences stay short
+     */
+    private void rebuildTable() {
+        table = new int[Integer.highestOneBit(keys.length - 1) << 2];
+        Arrays.fill(table, NO_INDEX);
+        mask = table.length - 1;
+        for(int i = 0; i < size; i++) {
+            int slot = hash(keys[i]) & mask;
+            while(table[slot] != NO_INDEX) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = i;
+        }
+    }
+
+    /**
+     * Spreads the bits of the key, OSM ids being mostly consecutive
+     * @param key the key to hash
+     * @return the hash of the key
+     */
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int)(h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ *  A map from primitive long keys to values, used to index OSM entities by id
+ *  without boxing the ids. The values are stored densely in insertion order,
+ *  in parallel with the keys of a LongIndex.
+ *
+ *  @author:     José Ferro Pinto (233843)
+ *  @author:     Dorian Laforest (234832)
+ */
+package ch.epfl.imhof.osm;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+final class LongMap<V> {
+    private final LongIndex index;
+    private Object[] values;
+
+    /**
+     * Constructor for an empty LongMap with a default capacity
+     */
+    LongMap() {
+        this(0);
+    }
+
+    /**
+     * Constructor for an empty LongMap able to hold the given number of entries without growing
+     * @param expectedSize the number of entries expected
+     * @throws IllegalArgumentException if expectedSize is negative
+     */
+    LongMap(int expectedSize) throws IllegalArgumentException {
+        index = new LongIndex(expectedSize);
+        values = new Object[index.capacity()];
+    }
+
+    /**
+     * Returns the number of entries
+     * @return the number of entries
+     */
+    int size() {
+        return index.size();
+    }
+
+    /**
+     * Associates the value with the key, replacing the previous value if the key already exists
+     * @param key the key
+     * @param value the value to associate
+     * @return the previous value associated with the key, null if there was none
+     */
+    @SuppressWarnings("unchecked")
+    V put(long key, V value) {
+        int i = index.add(key);
+        if(i >= values.length) {
+            values = Arrays.copyOf(values, index.capacity());
+        }
+        V previous = (V)values[i];
+        values[i] = value;
+        return previous;
+    }
+
+    /**
+     * Returns the value associated with the key
+     * @param key the key to search
+     * @return the value associated with the key, null if it does not exist
+     */
+    @SuppressWarnings("unchecked")
+    V get(long key) {
+        int i = index.indexOf(key);
+        return i == LongIndex.NO_INDEX ? null : (V)values[i];
+    }
+
+    /**
+     * Returns the insertion index of the key
+     * @param key the key to search
+     * @return the insertion index of the key, -1 if it does not exist
+     */
+    int indexOf(long key) {
+        return index.indexOf(key);
+    }
+
+    /**
+     * Checks if the key exists
+     * @param key the key to search
+     * @return true if it exists, false otherwise
+     */
+    boolean containsKey(long key) {
+        return index.indexOf(key) != LongIndex.NO_INDEX;
+    }
+
+    /**
+     * Returns the key inserted at the given index
+     * @param i the insertion index
+     * @return the key at this index
+     * @throws IndexOutOfBoundsException if the index is not in [0; size()[
+     */
+    long keyAt(int i) throws IndexOutOfBoundsException {
+        return index.keyAt(i);
+    }
+
+    /**
+     * Returns the value inserted at the given index
+     * @param i the insertion index
+     * @return the value at this index
+     * @throws IndexOutOfBoundsException if the index is not in [0; size()[
+     */
+    @SuppressWarnings("unchecked")
+    V valueAt(int i) throws IndexOutOfBoundsException {
+        if(i < 0 || i >= index.size()) {
+            throw new IndexOutOfBoundsException("Index " + i + " out of bounds for size " + index.size());
+        }
+        return (V)values[i];
+    }
+
+    /**
+     * Returns an unmodifiable view of the values in insertion order
+     * @return the values
+     */
+    List<V> values() {
+        return new AbstractList<V>() {
+            @Override
+            public V get(int i) {
+                return valueAt(i);
+            }
+
+            @Override
+            public int size() {
+                return index.size();
+            }
+        };
+    }
+}
@@ -0,0 +1,367 @@
+/**
+ *  Represents the content of an OSM change file (osmChange document, usually with
+ *  the .osc extension) : the nodes, ways and relations created, modified or deleted
+ *  since a version of the data. The creations and modifications are not distinguished,
+ *  both giving the new version of the entity, and if an entity appears several times
+ *  the last action is kept.
+ *
+ *  @author:     José Ferro Pinto (233843)
+ *  @author:     Dorian Laforest (234832)
+ */
+package ch.epfl.imhof.osm;
+
+import ch.epfl.imhof.Attributes;
+
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+final class OSMChange {
+    private final OSMNodeStore nodes = new OSMNodeStore();
+    //For each changed node, true if it is deleted and false if it is in nodes
+    private final LongMap<Boolean> nodeDeletions = new LongMap<>();
+    //The new version of each changed way and relation, null if it is deleted
+    private final LongMap<Way> ways = new LongMap<>();
+    private final LongMap<Relation> relations = new LongMap<>();
+
+    /**
+     * Private constructor for OSMChange, see read
+     */
+    private OSMChange() {
+    }
+
+    /**
+     * Reads an osmChange document
+     * @param i the stream of the document
+     * @param attributeKeys the keys of the attributes to keep, null to keep all of them
+     * @param strings the dictionary of the strings of the entities
+     * @return the changes of the document
+     * @throws SAXException if the document is malformed
+     * @throws IOException if something went wrong with the stream
+     */
+    static OSMChange read(InputStream i, Set<String> attributeKeys, StringPool strings) throws SAXException, IOException {
+        OSMChange change = new OSMChange();
+        XMLReader r;
+        try {
+            r = SAXParserFactory.newInstance().newSAXParser().getXMLReader();
+        } catch (ParserConfigurationException e) {
+            throw new SAXException(e);
+        }
+        r.setContentHandler(change.new Handler(attributeKeys, strings));
+        r.parse(new InputSource(i));
+        return change;
+    }
+
+    /**
+     * Returns the number of changed nodes
+     * @return the number of nodes created, modified or deleted
+     */
+    int nodesCount() {
+        return nodeDeletions.size();
+    }
+
+    /**
+     * Returns the id of a changed node
+     * @param i the index of the change, in [0; nodesCount()[
+     * @return the id of the node
+     */
+    long nodeId(int i) {
+        return nodeDeletions.keyAt(i);
+    }
+
+    /**
+     * Tests if a changed node is deleted
+     * @param i the index of the change, in [0; nodesCount()[
+     * @return true if the node is deleted, false if it is created or modified
+     */
+    boolean isNodeDeleted(int i) {
+        return nodeDeletions.valueAt(i);
+    }
+
+    /**
+     * Returns the store of the created and modified nodes
+     * @return the node store
+     */
+    OSMNodeStore nodes() {
+        return nodes;
+    }
+
+    /**
+     * Returns the created, modified and deleted ways
+     * @return the map from the ids of the ways to their new version, null if they are deleted
+     */
+    LongMap<Way> ways() {
+        return ways;
+    }
+
+    /**
+     * Returns the created, modified and deleted relations
+     * @return the map from the ids of the relations to their new version, null if they are deleted
+     */
+    LongMap<Relation> relations() {
+        return relations;
+    }
+
+    /**
+     *  Represents the new version of a way, whose nodes are designated by their ids
+     */
+    final static class Way {
+        final private long[] nodeIds;
+        final private Attributes attributes;
+
+        /**
+         * Constructor for Way
+         * @param nodeIds the ids of the way's nodes
+         * @param attributes the way's attributes
+         */
+        private Way(long[] nodeIds, Attributes attributes) {
+            this.nodeIds = nodeIds;
+            this.attributes = attributes;
+        }
+
+        /**
+         * Returns the ids of the way's nodes
+         * @return the ids of the nodes, in the order of the way
+         */
+        long[] nodeIds() {
+            return nodeIds;
+        }
+
+        /**
+         * Returns the way's attributes
+         * @return the attributes
+         */
+        Attributes attributes() {
+            return attributes;
+        }
+    }
+
+    /**
+     *  Represents the new version of a relation, whose members are designated by their ids
+     */
+    final static class Relation {
+        final private OSMRelation.Member.Type[] memberTypes;
+        final private long[] memberIds;
+        final private String[] memberRoles;
+        final private Attributes attributes;
+
+        /**
+         * Constructor for Relation
+         * @param memberTypes the types of the relation's members
+         * @param memberIds the ids of the relation's members
+         * @param memberRoles the roles of the relation's members
+         * @param attributes the relation's attributes
+         */
+        private Relation(OSMRelation.Member.Type[] memberTypes, long[] memberIds, String[] memberRoles, Attributes attributes) {
+            this.memberTypes = memberTypes;
+            this.memberIds = memberIds;
+            this.memberRoles = memberRoles;
+            this.attributes = attributes;
+        }
+
+        /**
+         * Returns the number of members
+         * @return the number of members
+         */
+        int membersCount() {
+            return memberIds.length;
+        }
+
+        /**
+         * Returns the type of a member
+         * @param i the position of the member
+         * @return the member's type
+         */
+        OSMRelation.Member.Type memberType(int i) {
+            return memberTypes[i];
+        }
+
+        /**
+         * Returns the id of a member
+         * @param i the position of the member
+         * @return the member's id
+         */
+        long memberId(int i) {
+            return memberIds[i];
+        }
+
+        /**
+         * Returns the role of a member
+         * @param i the position of the member
+         * @return the member's role
+         */
+        String memberRole(int i) {
+            return memberRoles[i];
+        }
+
+        /**
+         * Returns the relation's attributes
+         * @return the attributes
+         */
+        Attributes attributes() {
+            return attributes;
+        }
+    }
+
+    /**
+     *  Represents the handler of the elements of an osmChange document
+     */
+    private final class Handler extends DefaultHandler {
+        private final static String CREATE = "create";
+        private final static String MODIFY = "modify";
+        private final static String DELETE = "delete";
+        private final static String NODE = "node";
+        private final static String ND = "nd";
+        private final static String WAY = "way";
+        private final static String RELATION = "relation";
+        private final static String TAG = "tag";
+        private final static String MEMBER = "member";
+        private final Set<String> attributeKeys;
+        private final StringPool strings;
+        private boolean isDeletion = false;
+        private long id;
+        private int longitude;
+        private int latitude;
+        private Attributes.Builder attributes;
+        private final List<Long> references = new ArrayList<>();
+        private final List<OSMRelation.Member.Type> types = new ArrayList<>();
+        private final List<String> roles = new ArrayList<>();
+
+        /**
+         * Constructor for Handler
+         * @param attributeKeys the keys of the attributes to keep, null to keep all of them
+         * @param strings the dictionary of the strings of the entities
+         */
+        private Handler(Set<String> attributeKeys, StringPool strings) {
+            this.attributeKeys = attributeKeys;
+            this.strings = strings;
+        }
+
+        /**
+         * A method called when an open XML tag is encountered : begins an action or an entity, or adds
+         * an element to the current entity
+         * @param uri An unnecessary variable
+         * @param lName An unnecessary variable
+         * @param qName The XML tag name
+         * @param atts The XML attributes
+         * @throws SAXException if an attribute is missing or malformed
+         */
+        @Override
+        public void startElement(String uri, String lName, String qName, org.xml.sax.Attributes atts) throws SAXException {
+            try {
+                switch(qName) {
+                case DELETE:
+                    isDeletion = true;
+                    break;
+                case NODE:
+                case WAY:
+                case RELATION:
+                    id = Long.parseLong(atts.getValue("id"));
+                    if(qName.equals(NODE) && !isDeletion) {
+                        longitude = FixedPointCoordinate.parse(atts.getValue("lon"));
+                        latitude = FixedPointCoordinate.parse(atts.getValue("lat"));
+                    }
+                    attributes = new Attributes.Builder();
+                    references.clear();
+                    types.clear();
+                    roles.clear();
+                    break;
+                case ND:
+                    references.add(Long.parseLong(atts.getValue("ref")));
+                    break;
+                case MEMBER:
+                    types.add(memberType(atts.getValue("type")));
+                    references.add(Long.parseLong(atts.getValue("ref")));
+                    roles.add(strings.intern(atts.getValue("role")));
+                    break;
+                case TAG:
+                    String key = atts.getValue("k");
+                    if(attributeKeys == null || (key != null && attributeKeys.contains(key))) {
+                        attributes.put(strings.intern(key), strings.intern(atts.getValue("v")));
+                    }
+                    break;
+                case CREATE:
+                case MODIFY:
+                    isDeletion = false;
+                    break;
+                default:
+                    break;
+                }
+            }
+            catch(NullPointerException | IllegalArgumentException e) {
+                throw new SAXException("Invalid element " + qName, e);
+            }
+        }
+
+        /**
+         * A method called when a closed XML tag is encountered : records the change of the current entity
+         * @param uri An unnecessary variable
+         * @param lName An unnecessary variable
+         * @param qName The XML tag name
+         */
+        @Override
+        public void endElement(String uri, String lName, String qName) {
+            switch(qName) {
+            case DELETE:
+                isDeletion = false;
+                break;
+            case NODE:
+                nodeDeletions.put(id, isDeletion);
+                if(!isDeletion) {
+                    nodes.addFixedPoint(id, longitude, latitude, attributes.build());
+                }
+                break;
+            case WAY:
+                ways.put(id, isDeletion ? null : new Way(ids(), attributes.build()));
+                break;
+            case RELATION:
+                relations.put(id, isDeletion ? null : new Relation(types.toArray(new OSMRelation.Member.Type[types.size()]),
+                        ids(), roles.toArray(new String[roles.size()]), attributes.build()));
+                break;
+            default:
+                break;
+            }
+        }
+
+        /**
+         * Returns the type of member with the given name
+         * @param type the name of the type in the document
+         * @return the type of member
+         * @throws IllegalArgumentException if the type is unknown
+         */
+        private OSMRelation.Member.Type memberType(String type) throws IllegalArgumentException {
+            switch(type) {
+            case NODE:
+                return OSMRelation.Member.Type.NODE;
+            case WAY:
+                return OSMRelation.Member.Type.WAY;
+            case RELATION:
+                return OSMRelation.Member.Type.RELATION;
+            default:
+                throw new IllegalArgumentException(type + " is not a valid member");
+            }
+        }
+
+        /**
+         * Returns the ids of the nodes or members of the current entity
+         * @return the ids
+         */
+        private long[] ids() {
+            long[] ids = new long[references.size()];
+            for(int i = 0; i < ids.length; i++) {
+                ids[i] = references.get(i);
+            }
+            return ids;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ *  Copies ways and relations to a new node store : the ways are copied with their
+ *  nodes in the new store, and the relations with the copies of their members.
+ *  Each entity and each node is copied once, however many entities refer to it,
+ *  so that the copies refer to each other as the originals do. Used to release
+ *  the nodes no copied way refers to, the original store being freed with the
+ *  original entities. The copies of the relations are restricted to some of
+ *  their members.
+ *
+ *  @author:     José Ferro Pinto (233843)
+ *  @author:     Dorian Laforest (234832)
+ */
+package ch.epfl.imhof.osm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+final class OSMEntityCopier {
+    private final OSMNodeStore nodeStore;
+    private final Predicate<OSMEntity> copiedMembers;
+    private final Map<OSMEntity, OSMEntity> copies = new IdentityHashMap<>();
+    //For each store of the original ways, the indices of its nodes in the new store, -1 if not copied yet
+    private final Map<OSMNodeStore, int[]> nodeIndices = new IdentityHashMap<>();
+
+    /**
+     * Constructor for OSMEntityCopier
+     * @param nodeStore the store to which the nodes of the ways are copied
+     * @param copiedMembers tests if a member of a relation is kept in the copy of the relation
+     */
+    OSMEntityCopier(OSMNodeStore nodeStore, Predicate<OSMEntity> copiedMembers) {
+        this.nodeStore = nodeStore;
+        this.copiedMembers = copiedMembers;
+    }
+
+    /**
+     * Returns the copy of an entity : ways are copied with their nodes in the new store,
+     * and relations with the copies of their copied members. Nodes are not copied
+     * @param entity the entity
+     * @return the copy of the entity, the same for all the calls with this entity
+     */
+    OSMEntity copy(OSMEntity entity) {
+        OSMEntity copy = copies.get(entity);
+        if(copy != null) {
+            return copy;
+        }
+        if(entity instanceof OSMNode) {
+            return entity;
+        }
+        if(entity instanceof OSMWay) {
+            OSMWay way = (OSMWay)entity;
+            OSMNodeStore store = way.nodeStore();
+            int[] storeIndices = storeIndices(store);
+            int[] indices = new int[way.nodesCount()];
+            for(int i = 0; i < indices.length; i++) {
+                int index = way.nodeIndex(i);
+                if(storeIndices[index] < 0) {
+                    storeIndices[index] = nodeStore.copy(store, index);
+                }
+                indices[i] = storeIndices[index];
+            }
+            copy = new OSMWay(way.id(), nodeStore, indices, way.attributes());
+        }
+        else {
+            OSMRelation relation = (OSMRelation)entity;
+            List<OSMRelation.Member> members = new ArrayList<>(relation.members().size());
+            for(OSMRelation.Member member : relation.members()) {
+                if(copiedMembers.test(member.member())) {
+                    members.add(new OSMRelation.Member(member.type(), member.role(), copy(member.member())));
+                }
+            }
+            copy = new OSMRelation(relation.id(), members, relation.attributes());
+        }
+        copies.put(entity, copy);
+        return copy;
+    }
+
+    /**
+     * Returns the indices in the new store of the nodes of a store
+     * @param store the original store
+     * @return for each index of the store, the index of the copy of the node, -1 if it is not copied yet
+     */
+    private int[] storeIndices(OSMNodeStore store) {
+        int[] storeIndices = nodeIndices.get(store);
+        if(storeIndices == null) {
+            storeIndices = new int[store.size()];
+            Arrays.fill(storeIndices, -1);
+            nodeIndices.put(store, storeIndices);
+        }
+        return storeIndices;
+    }
+}
@@ -6,6 +6,8 @@
  */
 package ch.epfl.imhof.osm;
 
+import ch.epfl.imhof.BoundingBoxGeo;
+
 import java.util.*;
 
 public final class OSMMap {
@@ -45,16 +47,40 @@ public final class OSMMap {
      *  @author:     Dorian Laforest (234832)
      */
     public final static class Builder{
-        private Map<Long, OSMWay> waysMap = new HashMap<Long, OSMWay>();
-        private Map<Long, OSMRelation> relationsMap = new HashMap<Long, OSMRelation>();
-        private Map<Long, OSMNode> nodesMap = new HashMap<Long, OSMNode>();
+        private final LongMap<OSMWay> waysMap;
+        private final LongMap<OSMRelation> relationsMap;
+        private OSMNodeStore nodeStore;
+        private BoundingBoxGeo boundingBox = null;
+        private int discardedNodesCount = 0;
+        //The removed entities are kept as null values until the map is built
+        private boolean hasRemovals = false;
 
         /**
-         * Adds a new node to the nodes map
+         * Constructor for an empty Builder
+         */
+        public Builder(){
+            this(0, 0, 0);
+        }
+
+        /**
+         * Constructor for an empty Builder able to hold the given numbers of entities without growing
+         * @param expectedNodes the number of nodes expected
+         * @param expectedWays the number of ways expected
+         * @param expectedRelations the number of relations expected
+         * @throws IllegalArgumentException if one of the numbers is negative
+         */
+        public Builder(int expectedNodes, int expectedWays, int expectedRelations) throws IllegalArgumentException{
+            nodeStore = new OSMNodeStore(expectedNodes);
+            waysMap = new LongMap<OSMWay>(expectedWays);
+            relationsMap = new LongMap<OSMRelation>(expectedRelations);
+        }
+
+        /**
+         * Adds a new node to the node store
          * @param newNode The node to add
          */
         public void addNode(OSMNode newNode){
-            nodesMap.put(newNode.id(), newNode);
+            nodeStore.add(newNode);
         }
 
         /**
@@ -63,7 +89,124 @@ public final class OSMMap {
          * @return the node corresponding to id or null if does not exist
          */
         public OSMNode nodeForId(long id){
-            return nodesMap.get(id);
+            int index = nodeStore.indexOf(id);
+            return index < 0 ? null : nodeStore.node(index);
+        }
+
+        /**
+         * Returns the store containing the added nodes, to which nodes can be added directly
+         * @return the node store
+         */
+        OSMNodeStore nodeStore(){
+            return nodeStore;
+        }
+
+        /**
+         * Keeps only some of the nodes of the node store and releases the other ones, usually the nodes
+         * no way or relation refers to (see OSMNodeStore.retainAll). Must be called before any way is added
+         * @param retained for each index of the node store, true if the node is retained
+         * @throws IllegalStateException if ways were already added
+         * @throws IllegalArgumentException if the length of retained is not the size of the node store
+         */
+        void retainNodes(boolean[] retained) throws IllegalStateException, IllegalArgumentException {
+            if(waysMap.size() > 0) {
+                throw new IllegalStateException("The ways refer to the indices of the nodes");
+            }
+            discardedNodesCount += nodeStore.retainAll(retained);
+        }
+
+        /**
+         * Releases the nodes of the node store no way or relation refers to, once the ways are added.
+         * The store is compacted in place (see OSMNodeStore.retainAll) and the ways referring to it,
+         * in the map or as members of its relations, are given the new indices of their nodes, so
+         * that no entity is copied
+         */
+        void retainReferencedNodes() {
+            Set<OSMWay> ways = Collections.newSetFromMap(new IdentityHashMap<>());
+            Set<OSMRelation> relations = Collections.newSetFromMap(new IdentityHashMap<>());
+            for(OSMWay way : waysMap.values()) {
+                if(way != null) {
+                    ways.add(way);
+                }
+            }
+            for(OSMRelation relation : relationsMap.values()) {
+                if(relation != null) {
+                    addMembers(relation, ways, relations);
+                }
+            }
+            boolean[] retained = new boolean[nodeStore.size()];
+            for(OSMWay way : ways) {
+                if(way.nodeStore() == nodeStore) {
+                    for(int i = 0; i < way.nodesCount(); i++) {
+                        retained[way.nodeIndex(i)] = true;
+                    }
+                }
+            }
+            for(OSMRelation relation : relations) {
+                for(OSMRelation.Member member : relation.members()) {
+                    if(member.type() == OSMRelation.Member.Type.NODE) {
+                        int index = nodeStore.indexOf(member.member().id());
+                        if(index >= 0) {
+                            retained[index] = true;
+                        }
+                    }
+                }
+            }
+            //The retained nodes keep their order : the new index of a node is the number of retained nodes before it
+            int[] newIndices = new int[retained.length];
+            int retainedCount = 0;
+            for(int i = 0; i < retained.length; i++) {
+                newIndices[i] = retainedCount;
+                if(retained[i]) {
+                    retainedCount++;
+                }
+            }
+            if(retainedCount == retained.length) {
+                return;
+            }
+            discardedNodesCount += nodeStore.retainAll(retained);
+            for(OSMWay way : ways) {
+                if(way.nodeStore() == nodeStore) {
+                    way.remapNodeIndices(newIndices);
+                }
+            }
+        }
+
+        /**
+         * Collects a relation and, recursively, its member ways and relations, including the ones
+         * which are no longer in the map
+         * @param relation the relation
+         * @param ways the set receiving the ways
+         * @param relations the set receiving the relations
+         */
+        private static void addMembers(OSMRelation relation, Set<OSMWay> ways, Set<OSMRelation> relations) {
+            if(!relations.add(relation)) {
+                return;
+            }
+            for(OSMRelation.Member member : relation.members()) {
+                if(member.member() instanceof OSMWay) {
+                    ways.add((OSMWay)member.member());
+                }
+                else if(member.member() instanceof OSMRelation) {
+                    addMembers((OSMRelation)member.member(), ways, relations);
+                }
+            }
+        }
+
+        /**
+         * Returns the number of nodes of the node store
+         * @return the number of retained nodes
+         */
+        public int retainedNodesCount(){
+            return nodeStore.size();
+        }
+
+        /**
+         * Returns the number of nodes released because no way or relation refers to them
+         * @return the number of discarded nodes
+         */
+        public int discardedNodesCount(){
+            return discardedNodesCount;
         }
 
         /**
@@ -91,6 +234,28 @@ public final class OSMMap {
             relationsMap.put(newRelation.id(),newRelation);
         }
 
+        /**
+         * Removes the way with the given id, if it exists
+         * @param id the id of the way to remove
+         */
+        public void removeWay(long id){
+            if(waysMap.get(id) != null) {
+                waysMap.put(id, null);
+                hasRemovals = true;
+            }
+        }
+
+        /**
+         * Removes the relation with the given id, if it exists
+         * @param id the id of the relation to remove
+         */
+        public void removeRelation(long id){
+            if(relationsMap.get(id) != null) {
+                relationsMap.put(id, null);
+                hasRemovals = true;
+            }
+        }
+
         /**
          * Returns the relation with the given id or null if it doesn't exist
          * @param id the id to search 
@@ -100,12 +265,41 @@ public final class OSMMap {
             return relationsMap.get(id);
         }
 
+        /**
+         * Restricts the map to build to the ways and relations intersecting a box.
+         * The ways crossing the border of the box keep all their nodes and the relations all their members
+         * @param boundingBox the box, null to keep everything
+         */
+        public void setBoundingBox(BoundingBoxGeo boundingBox){
+            this.boundingBox = boundingBox;
+        }
+
         /**
          * Builds and returns a new OSMMap
-         * @return a new OSMMap with the added ways and relations until now
+         * @return a new OSMMap with the added ways and relations until now, restricted to the bounding box if there is one
          */
         public OSMMap build(){
-            return new OSMMap(waysMap.values(), relationsMap.values());
+            List<OSMWay> ways = hasRemovals ? withoutRemovals(waysMap.values()) : waysMap.values();
+            List<OSMRelation> relations = hasRemovals ? withoutRemovals(relationsMap.values()) : relationsMap.values();
+            if(boundingBox != null) {
+                return new BoundingBoxFilter(boundingBox).filter(ways, relations);
+            }
+            return new OSMMap(ways, relations);
+        }
+
+        /**
+         * Returns the entities which were not removed
+         * @param entities the entities, null for the removed ones
+         * @return the entities which are not null
+         */
+        private static <E> List<E> withoutRemovals(List<E> entities){
+            List<E> kept = new ArrayList<>(entities.size());
+            for(E entity : entities) {
+                if(entity != null) {
+                    kept.add(entity);
+                }
+            }
+            return kept;
         }
     }
 }
\ No newline at end of file
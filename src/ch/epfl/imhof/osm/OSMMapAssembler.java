@@ -0,0 +1,317 @@
+/**
+ *  Builds the OSM entities from the elements of an OSM file, in the order they
+ *  are read, and adds them to an OSMMap builder. Used by the XML parsers of
+ *  OSMMapReader so that they all produce the same map.
+ *  Only the attributes whose key is in a given set are kept, and their keys and
+ *  values, as well as the members' roles, are shared through a string dictionary.
+ *  The references of the ways and relations are either resolved as soon as they are
+ *  read, in which case the nodes and members must come before them, or once the whole
+ *  file is read (see OSMReferenceResolver)
+ *
+ *  @author:     José Ferro Pinto (233843)
+ *  @author:     Dorian Laforest (234832)
+ */
+package ch.epfl.imhof.osm;
+
+import ch.epfl.imhof.Attributes;
+
+import java.util.Set;
+
+final class OSMMapAssembler {
+    private final OSMMap.Builder mapBuilder;
+    private final OSMNodeStore nodeStore;
+    private final Set<String> attributeKeys;
+    private final StringPool strings = new StringPool();
+    //Only used if the references are resolved at the end
+    private final OSMReferenceResolver resolver;
+    private Attributes.Builder entityAttributes;
+    private long entityId;
+    private Attributes.Builder nodeAttributes;
+    private OSMWay.Builder wayBuilder;
+    private OSMRelation.Builder relationBuilder;
+    private boolean isNode = false;
+    private boolean isWay = false;
+    private boolean isRelation = false;
+    private long nodeId;
+    private int nodeLongitude;
+    private int nodeLatitude;
+
+    /**
+     * Constructor for OSMMapAssembler
+     * @param mapBuilder the builder to which the entities are added
+     */
+    OSMMapAssembler(OSMMap.Builder mapBuilder) {
+        this(mapBuilder, null);
+    }
+
+    /**
+     * Constructor for OSMMapAssembler keeping only some attributes
+     * @param mapBuilder the builder to which the entities are added
+     * @param attributeKeys the keys of the attributes to keep, null to keep all of them
+     */
+    OSMMapAssembler(OSMMap.Builder mapBuilder, Set<String> attributeKeys) {
+        this(mapBuilder, attributeKeys, false);
+    }
+
+    /**
+     * Constructor for OSMMapAssembler keeping only some attributes, and resolving the references
+     * immediately or at the end
+     * @param mapBuilder the builder to which the entities are added
+     * @param attributeKeys the keys of the attributes to keep, null to keep all of them
+     * @param defersReferences true to resolve the references of the ways and relations in build()
+     */
+    OSMMapAssembler(OSMMap.Builder mapBuilder, Set<String> attributeKeys, boolean defersReferences) {
+        this(mapBuilder, attributeKeys, defersReferences, OSMSizeEstimate.NONE);
+    }
+
+    /**
+     * Constructor for OSMMapAssembler keeping only some attributes, and resolving the references
+     * immediately or at the end, with the records of the references sized for the estimated entities
+     * @param mapBuilder the builder to which the entities are added
+     * @param attributeKeys the keys of the attributes to keep, null to keep all of them
+     * @param defersReferences true to resolve the references of the ways and relations in build()
+     * @param estimate the estimate of the entities of the file
+     */
+    OSMMapAssembler(OSMMap.Builder mapBuilder, Set<String> attributeKeys, boolean defersReferences, OSMSizeEstimate estimate) {
+        this.mapBuilder = mapBuilder;
+        this.nodeStore = mapBuilder.nodeStore();
+        this.attributeKeys = attributeKeys;
+        this.resolver = defersReferences ? new OSMReferenceResolver(estimate) : null;
+    }
+
+    /**
+     * Returns the dictionary of the strings of the entities
+     * @return the string dictionary
+     */
+    StringPool strings() {
+        return strings;
+    }
+
+    /**
+     * Tests if the attributes with the given key are kept
+     * @param key the attribute's key
+     * @return true if the attribute is kept, false if addTag would ignore it
+     */
+    boolean keepsAttribute(String key) {
+        return attributeKeys == null || (key != null && attributeKeys.contains(key));
+    }
+
+    /**
+     * Begins a node
+     * @param id unique ID from OSM
+     * @param longitude the node's longitude in units of 1e-7 degree
+     * @param latitude the node's latitude in units of 1e-7 degree
+     */
+    void startNode(long id, int longitude, int latitude) {
+        isNode = true;
+        nodeId = id;
+        nodeLongitude = longitude;
+        nodeLatitude = latitude;
+        //Most nodes have no tags : their attributes are only created when needed
+        nodeAttributes = null;
+    }
+
+    /**
+     * Ends the current node and adds it to the map's node store
+     */
+    void endNode() {
+        isNode = false;
+        nodeStore.addFixedPoint(nodeId, nodeLongitude, nodeLatitude, nodeAttributes == null ? null : nodeAttributes.build());
+    }
+
+    /**
+     * Begins a way
+     * @param id unique ID from OSM
+     */
+    void startWay(long id) {
+        isWay = true;
+        if(resolver != null) {
+            entityId = id;
+            entityAttributes = new Attributes.Builder();
+            return;
+        }
+        wayBuilder = new OSMWay.Builder(id, nodeStore);
+    }
+
+    /**
+     * Adds a node to the current way, or declares the way incomplete if the node is unknown
+     * @param ref the node's id
+     */
+    void addNodeReference(long ref) {
+        if(resolver != null) {
+            resolver.addNodeReference(ref);
+            return;
+        }
+        int nodeIndex = nodeStore.indexOf(ref);
+        if(nodeIndex >= 0) {
+            wayBuilder.addNodeIndex(nodeIndex);
+        }
+        else {
+            wayBuilder.setIncomplete();
+        }
+    }
+
+    /**
+     * Ends the current way and adds it to the map if it is complete
+     */
+    void endWay() {
+        isWay = false;
+        if(resolver != null) {
+            resolver.endWay(entityId, entityAttributes.build());
+            return;
+        }
+        if(!wayBuilder.isIncomplete()) {
+            mapBuilder.addWay(wayBuilder.build());
+        }
+    }
+
+    /**
+     * Begins a relation
+     * @param id unique ID from OSM
+     */
+    void startRelation(long id) {
+        isRelation = true;
+        if(resolver != null) {
+            entityId = id;
+            entityAttributes = new Attributes.Builder();
+            return;
+        }
+        relationBuilder = new OSMRelation.Builder(id);
+    }
+
+    /**
+     * Adds a member to the current relation, or declares the relation incomplete if the member is unknown
+     * @param type the member's type
+     * @param ref the member's id
+     * @param role the member's role
+     */
+    void addMember(OSMRelation.Member.Type type, long ref, String role) {
+        if(resolver != null) {
+            resolver.addMember(type, ref, strings.intern(role));
+            return;
+        }
+        OSMEntity member = null;
+        switch(type) {
+        case NODE:
+            int nodeIndex = nodeStore.indexOf(ref);
+            if(nodeIndex >= 0) {
+                member = nodeStore.node(nodeIndex);
+            }
+            break;
+        case WAY:
+            member = mapBuilder.wayForId(ref);
+            break;
+        case RELATION:
+            member = mapBuilder.relationForId(ref);
+            break;
+        }
+        if(member != null) {
+            relationBuilder.addMember(type, strings.intern(role), member);
+        }
+        else {
+            relationBuilder.setIncomplete();
+        }
+    }
+
+    /**
+     * Ends the current relation and adds it to the map if it is complete
+     */
+    void endRelation() {
+        isRelation = false;
+        if(resolver != null) {
+            resolver.endRelation(entityId, entityAttributes.build());
+            return;
+        }
+        if(!relationBuilder.isIncomplete()) {
+            mapBuilder.addRelation(relationBuilder.build());
+        }
+    }
+
+    /**
+     * Adds an attribute to the current node, way or relation, if its key is kept
+     * @param key the attribute's key
+     * @param value the attribute's value
+     */
+    void addTag(String key, String value) {
+        if(!keepsAttribute(key)) {
+            return;
+        }
+        key = strings.intern(key);
+        value = strings.intern(value);
+        if(isNode) {
+            if(nodeAttributes == null) {
+                nodeAttributes = new Attributes.Builder();
+            }
+            nodeAttributes.put(key, value);
+        }
+        else if(resolver != null && (isWay || isRelation)) {
+            entityAttributes.put(key, value);
+        }
+        else if(isWay) {
+            wayBuilder.setAttribute(key, value);
+        }
+        else if(isRelation) {
+            relationBuilder.setAttribute(key, value);
+        }
+    }
+
+    /**
+     * Adds the elements given to this assembler to another one, as if they had been given
+     * to it after its own elements : the nodes are added to its node store, replacing the ones
+     * with the same id, and the ways and relations are recorded in it. Both assemblers must
+     * defer the references
+     * @param target the assembler to which the elements are added
+     * @throws IllegalStateException if one of the assemblers resolves the references immediately
+     */
+    void mergeInto(OSMMapAssembler target) throws IllegalStateException {
+        if(resolver == null || target.resolver == null) {
+            throw new IllegalStateException("Only assemblers deferring the references can be merged");
+        }
+        for(int i = 0; i < nodeStore.size(); i++) {
+            target.nodeStore.copy(nodeStore, i);
+        }
+        target.resolver.addAll(resolver);
+    }
+
+    /**
+     * Returns the number of nodes given to this assembler
+     * @return the number of distinct nodes
+     */
+    int nodesCount() {
+        return nodeStore.size();
+    }
+
+    /**
+     * Returns the number of ways given to this assembler, if the references are deferred
+     * @return the number of ways, including the ones given several times, 0 if the references are resolved immediately
+     */
+    int waysCount() {
+        return resolver == null ? 0 : resolver.waysCount();
+    }
+
+    /**
+     * Returns the number of relations given to this assembler, if the references are deferred
+     * @return the number of distinct relations, 0 if the references are resolved immediately
+     */
+    int relationsCount() {
+        return resolver == null ? 0 : resolver.relationsCount();
+    }
+
+    /**
+     * Ends the reading : releases the nodes no way or relation refers to, before resolving the
+     * references if they were deferred, then builds the map.
+     * Must be called once all the elements are given
+     * @return the map of the elements
+     */
+    OSMMap build() {
+        if(resolver != null) {
+            mapBuilder.retainNodes(resolver.referencedNodes(nodeStore));
+            resolver.resolve(mapBuilder);
+        }
+        else {
+            //The ways are already built : they are copied with the retained nodes
+            mapBuilder.retainReferencedNodes();
+        }
+        return mapBuilder.build();
+    }
+}
@@ -0,0 +1,638 @@
+/**
+ *  Represents a map kept in memory to which OSM change files (osmChange documents,
+ *  usually published every minute, hour or day) are applied, instead of reading
+ *  the whole updated file again.
+ *  The ways and relations are indexed by id in an OSMMap.Builder, and each node,
+ *  way and relation knows the entities referring to it, so that applying a change
+ *  only costs in proportion to the changed entities and to the ones referring to them.
+ *  The maps already returned never change : the nodes of the initial map are kept
+ *  in a store which is not written anymore, and the ways using a node created,
+ *  moved or deleted by a change are built again, with their nodes copied to a new
+ *  store for this change (copy on write).
+ *  Each change reports the ways and relations whose geometry is invalidated, whose
+ *  Polygons and PolyLines must be transformed again (see OSMToGeoTransformer).
+ *  As when a file is read, the incomplete ways and relations are dropped : a way
+ *  dropped when the map was read, or by a change, is only added again by a later
+ *  change of the way itself.
+ *  Only the changed nodes which may be used are kept : the nodes already known, the
+ *  ones used by the ways and relations of the same change and the ones in the bounding
+ *  box of the options. A way of a later change using another node is incomplete.
+ *
+ *  @author:     José Ferro Pinto (233843)
+ *  @author:     Dorian Laforest (234832)
+ */
+package ch.epfl.imhof.osm;
+
+import ch.epfl.imhof.Attributes;
+import ch.epfl.imhof.BoundingBoxGeo;
+
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongPredicate;
+
+public final class OSMMapIndex {
+    private final OSMMap.Builder mapBuilder;
+    //The nodes of the initial map, only written by the constructor
+    private final OSMNodeStore nodeStore;
+    //The last version of the nodes created or modified by the changes, to which no way refers
+    private final OSMNodeStore updatedNodes = new OSMNodeStore();
+    private final Set<String> attributeKeys;
+    private final BoundingBoxGeo boundingBox;
+    private final StringPool strings = new StringPool();
+    //The deleted nodes stay in the stores, but no entity can refer to them anymore : true if the last
+    //version of a node of the stores is deleted, false if it was created again
+    private final LongMap<Boolean> deletedNodes = new LongMap<>();
+    //For each entity, the ids of the entities referring to it when they were added. The references are
+    //not removed when the entities change, so they are checked, and the stale ones removed, when they are read
+    private final LongMap<Referrers> waysOfNodes = new LongMap<>();
+    private final LongMap<Referrers> relationsOfNodes = new LongMap<>();
+    private final LongMap<Referrers> relationsOfWays = new LongMap<>();
+    private final LongMap<Referrers> relationsOfRelations = new LongMap<>();
+
+    /**
+     * Constructor for OSMMapIndex
+     * @param map the map to which the changes are applied
+     */
+    public OSMMapIndex(OSMMap map) {
+        this(map, OSMReadOptions.DEFAULT);
+    }
+
+    /**
+     * Constructor for OSMMapIndex, applying the changes with the given options : only the attributes
+     * whose key is kept are read from the changes, and the maps are restricted to the bounding box.
+     * The map should be read with the same options
+     * @param map the map to which the changes are applied
+     * @param options the options of the reading of the map
+     */
+    public OSMMapIndex(OSMMap map, OSMReadOptions options) {
+        mapBuilder = options.newMapBuilder();
+        nodeStore = mapBuilder.nodeStore();
+        attributeKeys = options.attributeKeys();
+        boundingBox = options.boundingBox();
+        for(OSMWay way : map.ways()) {
+            addWay(way);
+        }
+        for(OSMRelation relation : map.relations()) {
+            addRelation(relation);
+        }
+    }
+
+    /**
+     * Returns the current map. The map is built from all the indexed entities, so it should only be asked for
+     * once the changes are applied
+     * @return the map
+     */
+    public OSMMap map() {
+        return mapBuilder.build();
+    }
+
+    /**
+     * Applies the changes of an osmChange document
+     * @param i the stream of the document
+     * @return the ways and relations invalidated by the changes
+     * @throws SAXException if the document is malformed
+     * @throws IOException if something went wrong with the stream
+     */
+    public Update applyChange(InputStream i) throws SAXException, IOException {
+        return apply(OSMChange.read(i, attributeKeys, strings));
+    }
+
+    /**
+     * Applies the changes of an OSM change file
+     * @param fileName the path of the file
+     * @param unGZip true if the file is compressed with GZip
+     * @return the ways and relations invalidated by the changes
+     * @throws SAXException if the document is malformed
+     * @throws IOException if something went wrong with the file
+     */
+    public Update applyChangeFile(String fileName, boolean unGZip) throws SAXException, IOException {
+        try(InputStream i = OSMMapReader.openFile(fileName, unGZip)) {
+            return applyChange(i);
+        }
+    }
+
+    /**
+     * Adds a way of the initial map, with its nodes
+     * @param way the way
+     * @return the way of the index
+     */
+    private OSMWay addWay(OSMWay way) {
+        OSMWay added = mapBuilder.wayForId(way.id());
+        if(added == null) {
+            int[] nodeIndices = new int[way.nodesCount()];
+            for(int i = 0; i < nodeIndices.length; i++) {
+                nodeIndices[i] = nodeStore.copy(way.nodeStore(), way.nodeIndex(i));
+                addReference(waysOfNodes, nodeStore.id(nodeIndices[i]), way.id());
+            }
+            added = new OSMWay(way.id(), nodeStore, nodeIndices, way.attributes());
+            mapBuilder.addWay(added);
+        }
+        return added;
+    }
+
+    /**
+     * Adds a relation of the initial map, with its members
+     * @param relation the relation
+     * @return the relation of the index
+     */
+    private OSMRelation addRelation(OSMRelation relation) {
+        OSMRelation added = mapBuilder.relationForId(relation.id());
+        if(added == null) {
+            List<OSMRelation.Member> members = new ArrayList<>(relation.members().size());
+            for(OSMRelation.Member member : relation.members()) {
+                OSMEntity entity;
+                switch(member.type()) {
+                case NODE:
+                    entity = nodeStore.node(nodeStore.add((OSMNode)member.member()));
+                    break;
+                case WAY:
+                    entity = addWay((OSMWay)member.member());
+                    break;
+                default:
+                    entity = addRelation((OSMRelation)member.member());
+                    break;
+                }
+                members.add(new OSMRelation.Member(member.type(), member.role(), entity));
+                addReference(referrers(member.type()), entity.id(), relation.id());
+            }
+            added = new OSMRelation(relation.id(), members, relation.attributes());
+            mapBuilder.addRelation(added);
+        }
+        return added;
+    }
+
+    /**
+     * Applies changes to the indexed entities : first the nodes, then the ways, then the relations, so that
+     * an entity may refer to the entities created after it in the document
+     * @param change the changes
+     * @return the ways and relations invalidated by the changes
+     */
+    private Update apply(OSMChange change) {
+        Set<Long> invalidatedWays = new LinkedHashSet<>();
+        Set<Long> invalidatedRelations = new LinkedHashSet<>();
+        //The ways and relations to build again, because their nodes or members changed
+        Set<Long> rebuiltWays = new HashSet<>();
+        Set<Long> rebuiltRelations = new HashSet<>();
+        //The nodes of the ways built again by this change
+        OSMNodeStore rebuiltNodes = new OSMNodeStore();
+
+        OSMNodeStore changedNodes = change.nodes();
+        LongIndex usedNodes = usedNodes(change);
+        for(int i = 0; i < change.nodesCount(); i++) {
+            long id = change.nodeId(i);
+            boolean isKnown = nodeStore.indexOf(id) >= 0 || updatedNodes.indexOf(id) >= 0;
+            if(change.isNodeDeleted(i)) {
+                //A node which is not known can not be used anyway
+                if(!isKnown) {
+                    continue;
+                }
+                deletedNodes.put(id, Boolean.TRUE);
+            }
+            else {
+                int index = changedNodes.indexOf(id);
+                if(!isKnown && usedNodes.indexOf(id) < 0
+                        && boundingBox != null && !boundingBox.contains(changedNodes.position(index))) {
+                    continue;
+                }
+                if(deletedNodes.containsKey(id)) {
+                    deletedNodes.put(id, Boolean.FALSE);
+                }
+                updatedNodes.copy(changedNodes, index);
+            }
+            //The stores of the ways are not written, so the ways using the node are built again
+            for(long wayId : waysOfNodes(id)) {
+                invalidatedWays.add(wayId);
+                rebuiltWays.add(wayId);
+            }
+            //The relations refer to node objects, which do not follow the changes of the store
+            for(long relationId : relationsOf(OSMRelation.Member.Type.NODE, id)) {
+                invalidatedRelations.add(relationId);
+                rebuiltRelations.add(relationId);
+            }
+        }
+
+        LongMap<OSMChange.Way> changedWays = change.ways();
+        for(int i = 0; i < changedWays.size(); i++) {
+            invalidatedWays.add(changedWays.keyAt(i));
+            rebuiltWays.add(changedWays.keyAt(i));
+        }
+        for(long id : rebuiltWays) {
+            rebuildWay(id, changedWays, rebuiltNodes);
+        }
+        for(long id : invalidatedWays) {
+            for(long relationId : relationsOf(OSMRelation.Member.Type.WAY, id)) {
+                invalidatedRelations.add(relationId);
+                if(rebuiltWays.contains(id)) {
+                    rebuiltRelations.add(relationId);
+                }
+            }
+        }
+
+        LongMap<OSMChange.Relation> changedRelations = change.relations();
+        for(int i = 0; i < changedRelations.size(); i++) {
+            invalidatedRelations.add(changedRelations.keyAt(i));
+            rebuiltRelations.add(changedRelations.keyAt(i));
+        }
+        //The relations containing an invalidated relation are invalidated, and rebuilt if it is rebuilt
+        Deque<Long> pending = new ArrayDeque<>(invalidatedRelations);
+        while(!pending.isEmpty()) {
+            long id = pending.pop();
+            for(long parentId : relationsOf(OSMRelation.Member.Type.RELATION, id)) {
+                boolean isRebuilt = rebuiltRelations.contains(id) && rebuiltRelations.add(parentId);
+                if(invalidatedRelations.add(parentId) || isRebuilt) {
+                    pending.push(parentId);
+                }
+            }
+        }
+        Map<Long, OSMRelation> resolved = new HashMap<>();
+        for(long id : rebuiltRelations) {
+            rebuildRelation(id, changedRelations, rebuiltRelations, resolved);
+        }
+        return new Update(invalidatedWays, invalidatedRelations, currentEntities(invalidatedWays, invalidatedRelations));
+    }
+
+    /**
+     * Returns the nodes used by the ways and relations of a change
+     * @param change the change
+     * @return the ids of the nodes
+     */
+    private static LongIndex usedNodes(OSMChange change) {
+        LongIndex usedNodes = new LongIndex();
+        LongMap<OSMChange.Way> changedWays = change.ways();
+        for(int i = 0; i < changedWays.size(); i++) {
+            OSMChange.Way way = changedWays.valueAt(i);
+            if(way != null) {
+                for(long nodeId : way.nodeIds()) {
+                    usedNodes.add(nodeId);
+                }
+            }
+        }
+        LongMap<OSMChange.Relation> changedRelations = change.relations();
+        for(int i = 0; i < changedRelations.size(); i++) {
+            OSMChange.Relation relation = changedRelations.valueAt(i);
+            for(int m = 0; relation != null && m < relation.membersCount(); m++) {
+                if(relation.memberType(m) == OSMRelation.Member.Type.NODE) {
+                    usedNodes.add(relation.memberId(m));
+                }
+            }
+        }
+        return usedNodes;
+    }
+
+    /**
+     * Returns the current version of some ways and relations
+     * @param wayIds the ids of the ways
+     * @param relationIds the ids of the relations
+     * @return the map of the ways and relations which exist
+     */
+    private OSMMap currentEntities(Set<Long> wayIds, Set<Long> relationIds) {
+        List<OSMWay> ways = new ArrayList<>(wayIds.size());
+        for(long id : wayIds) {
+            OSMWay way = mapBuilder.wayForId(id);
+            if(way != null) {
+                ways.add(way);
+            }
+        }
+        List<OSMRelation> relations = new ArrayList<>(relationIds.size());
+        for(long id : relationIds) {
+            OSMRelation relation = mapBuilder.relationForId(id);
+            if(relation != null) {
+                relations.add(relation);
+            }
+        }
+        return new OSMMap(ways, relations);
+    }
+
+    /**
+     * Builds a way again from its new version, or from its current nodes if it did not change itself,
+     * and removes it if it is deleted or incomplete
+     * @param id the way's id
+     * @param changedWays the changed ways
+     * @param rebuiltNodes the store to which the last version of the way's nodes is copied
+     */
+    private void rebuildWay(long id, LongMap<OSMChange.Way> changedWays, OSMNodeStore rebuiltNodes) {
+        long[] nodeIds;
+        Attributes attributes;
+        boolean hasChanged = changedWays.containsKey(id);
+        if(hasChanged) {
+            OSMChange.Way changedWay = changedWays.get(id);
+            if(changedWay == null) {
+                mapBuilder.removeWay(id);
+                return;
+            }
+            nodeIds = changedWay.nodeIds();
+            attributes = changedWay.attributes();
+        }
+        else {
+            OSMWay way = mapBuilder.wayForId(id);
+            if(way == null) {
+                return;
+            }
+            nodeIds = new long[way.nodesCount()];
+            for(int i = 0; i < nodeIds.length; i++) {
+                nodeIds[i] = way.nodeStore().id(way.nodeIndex(i));
+            }
+            attributes = way.attributes();
+        }
+        int[] nodeIndices = nodeIds.length >= 2 ? new int[nodeIds.length] : null;
+        for(int i = 0; nodeIndices != null && i < nodeIds.length; i++) {
+            nodeIndices[i] = copyNode(nodeIds[i], rebuiltNodes);
+            if(nodeIndices[i] < 0) {
+                nodeIndices = null;
+            }
+        }
+        if(nodeIndices == null) {
+            mapBuilder.removeWay(id);
+            return;
+        }
+        mapBuilder.addWay(new OSMWay(id, rebuiltNodes, nodeIndices, attributes));
+        if(hasChanged) {
+            for(long nodeId : nodeIds) {
+                addReference(waysOfNodes, nodeId, id);
+            }
+        }
+    }
+
+    /**
+     * Builds a relation again, after its rebuilt member relations, from its new version or from its current
+     * members if it did not change itself, and removes it if it is deleted or incomplete
+     * @param id the relation's id
+     * @param changedRelations the changed relations
+     * @param rebuiltRelations the ids of the relations to build again
+     * @param resolved the relations already built again, null for the incomplete ones
+     * @return the relation, null if it is incomplete
+     */
+    private OSMRelation rebuildRelation(long id, LongMap<OSMChange.Relation> changedRelations, Set<Long> rebuiltRelations,
+            Map<Long, OSMRelation> resolved) {
+        if(resolved.containsKey(id)) {
+            //A relation which is being built is a member of itself : it can not be built
+            return resolved.get(id);
+        }
+        resolved.put(id, null);
+        boolean hasChanged = changedRelations.containsKey(id);
+        OSMChange.Relation changedRelation = changedRelations.get(id);
+        OSMRelation relation = mapBuilder.relationForId(id);
+        if(hasChanged ? changedRelation == null : relation == null) {
+            mapBuilder.removeRelation(id);
+            return null;
+        }
+        int membersCount = hasChanged ? changedRelation.membersCount() : relation.members().size();
+        List<OSMRelation.Member> members = new ArrayList<>(membersCount);
+        for(int m = 0; m < membersCount; m++) {
+            OSMRelation.Member.Type type = hasChanged ? changedRelation.memberType(m) : relation.members().get(m).type();
+            long memberId = hasChanged ? changedRelation.memberId(m) : relation.members().get(m).member().id();
+            String role = hasChanged ? changedRelation.memberRole(m) : relation.members().get(m).role();
+            OSMEntity member = null;
+            switch(type) {
+            case NODE:
+                member = node(memberId);
+                break;
+            case WAY:
+                member = mapBuilder.wayForId(memberId);
+                break;
+            case RELATION:
+                member = rebuiltRelations.contains(memberId) ? rebuildRelation(memberId, changedRelations, rebuiltRelations, resolved)
+                        : mapBuilder.relationForId(memberId);
+                break;
+            }
+            if(member == null) {
+                mapBuilder.removeRelation(id);
+                return null;
+            }
+            members.add(new OSMRelation.Member(type, role, member));
+        }
+        OSMRelation rebuilt = new OSMRelation(id, members, hasChanged ? changedRelation.attributes() : relation.attributes());
+        mapBuilder.addRelation(rebuilt);
+        resolved.put(id, rebuilt);
+        if(hasChanged) {
+            for(OSMRelation.Member member : members) {
+                addReference(referrers(member.type()), member.member().id(), id);
+            }
+        }
+        return rebuilt;
+    }
+
+    /**
+     * Returns the last version of a node
+     * @param id the node's id
+     * @return the node, null if it is deleted or does not exist
+     */
+    private OSMNode node(long id) {
+        if(isDeleted(id)) {
+            return null;
+        }
+        int index = updatedNodes.indexOf(id);
+        if(index >= 0) {
+            return updatedNodes.node(index);
+        }
+        index = nodeStore.indexOf(id);
+        return index < 0 ? null : nodeStore.node(index);
+    }
+
+    /**
+     * Copies the last version of a node to a store
+     * @param id the node's id
+     * @param target the store to which the node is copied
+     * @return the index of the node in target, -1 if it is deleted or does not exist
+     */
+    private int copyNode(long id, OSMNodeStore target) {
+        if(isDeleted(id)) {
+            return -1;
+        }
+        int index = updatedNodes.indexOf(id);
+        if(index >= 0) {
+            return target.copy(updatedNodes, index);
+        }
+        index = nodeStore.indexOf(id);
+        return index < 0 ? -1 : target.copy(nodeStore, index);
+    }
+
+    /**
+     * Tests if the last version of a node is deleted
+     * @param id the node's id
+     * @return true if the node is deleted
+     */
+    private boolean isDeleted(long id) {
+        return Boolean.TRUE.equals(deletedNodes.get(id));
+    }
+
+    /**
+     * Returns the ways currently using a node
+     * @param nodeId the node's id
+     * @return the ids of the ways
+     */
+    private Set<Long> waysOfNodes(long nodeId) {
+        return currentReferrers(waysOfNodes, nodeId, wayId -> {
+            OSMWay way = mapBuilder.wayForId(wayId);
+            for(int i = 0; way != null && i < way.nodesCount(); i++) {
+                if(way.nodeStore().id(way.nodeIndex(i)) == nodeId) {
+                    return true;
+                }
+            }
+            return false;
+        });
+    }
+
+    /**
+     * Returns the relations currently containing an entity
+     * @param type the entity's type
+     * @param id the entity's id
+     * @return the ids of the relations
+     */
+    private Set<Long> relationsOf(OSMRelation.Member.Type type, long id) {
+        return currentReferrers(referrers(type), id, relationId -> {
+            OSMRelation relation = mapBuilder.relationForId(relationId);
+            if(relation != null) {
+                for(OSMRelation.Member member : relation.members()) {
+                    if(member.type() == type && member.member().id() == id) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        });
+    }
+
+    /**
+     * Returns the references to the relations containing the entities of a type
+     * @param type the type of the entities
+     * @return the map from the ids of the entities to the ids of the relations
+     */
+    private LongMap<Referrers> referrers(OSMRelation.Member.Type type) {
+        switch(type) {
+        case NODE:
+            return relationsOfNodes;
+        case WAY:
+            return relationsOfWays;
+        default:
+            return relationsOfRelations;
+        }
+    }
+
+    /**
+     * Returns the entities which still refer to an entity, and forgets the other ones
+     * @param references the references
+     * @param id the entity's id
+     * @param refersToIt tests if the entity of an id still refers to the entity
+     * @return the ids of the entities referring to it
+     */
+    private static Set<Long> currentReferrers(LongMap<Referrers> references, long id, LongPredicate refersToIt) {
+        Set<Long> current = new LinkedHashSet<>();
+        Referrers referrers = references.get(id);
+        if(referrers == null) {
+            return current;
+        }
+        int count = 0;
+        for(int r = 0; r < referrers.count; r++) {
+            long referrerId = referrers.ids[r];
+            if(refersToIt.test(referrerId)) {
+                referrers.ids[count++] = referrerId;
+                current.add(referrerId);
+            }
+        }
+        referrers.count = count;
+        return current;
+    }
+
+    /**
+     * Records that an entity refers to another one
+     * @param references the references
+     * @param id the id of the entity referred to
+     * @param referrerId the id of the entity referring to it
+     */
+    private static void addReference(LongMap<Referrers> references, long id, long referrerId) {
+        Referrers referrers = references.get(id);
+        if(referrers == null) {
+            referrers = new Referrers();
+            references.put(id, referrers);
+        }
+        referrers.add(referrerId);
+    }
+
+    /**
+     *  The ids of the entities referring to an entity, in an array growing by doubling
+     */
+    private final static class Referrers {
+        private long[] ids = new long[2];
+        private int count = 0;
+
+        /**
+         * Adds the id of an entity if it is not there yet
+         * @param id the id
+         */
+        private void add(long id) {
+            for(int r = 0; r < count; r++) {
+                if(ids[r] == id) {
+                    return;
+                }
+            }
+            if(count == ids.length) {
+                ids = Arrays.copyOf(ids, count * 2);
+            }
+            ids[count++] = id;
+        }
+    }
+
+    /**
+     *  Represents the result of the application of a change : the ways and relations whose geometry is
+     *  invalidated, because they or their nodes or members were created, modified or deleted
+     *
+     *  @author:     José Ferro Pinto (233843)
+     *  @author:     Dorian Laforest (234832)
+     */
+    public final static class Update {
+        final private Set<Long> invalidatedWayIds;
+        final private Set<Long> invalidatedRelationIds;
+        final private OSMMap changedEntities;
+
+        /**
+         * Constructor for Update
+         * @param invalidatedWayIds the ids of the invalidated ways
+         * @param invalidatedRelationIds the ids of the invalidated relations
+         * @param changedEntities the invalidated ways and relations which still exist
+         */
+        private Update(Set<Long> invalidatedWayIds, Set<Long> invalidatedRelationIds, OSMMap changedEntities) {
+            this.invalidatedWayIds = Collections.unmodifiableSet(invalidatedWayIds);
+            this.invalidatedRelationIds = Collections.unmodifiableSet(invalidatedRelationIds);
+            this.changedEntities = changedEntities;
+        }
+
+        /**
+         * Returns the ids of the ways whose geometry is invalidated, including the deleted and incomplete ones
+         * @return the unmodifiable set of the ids of the ways
+         */
+        public Set<Long> invalidatedWayIds() {
+            return invalidatedWayIds;
+        }
+
+        /**
+         * Returns the ids of the relations whose geometry is invalidated, including the deleted and incomplete ones
+         * @return the unmodifiable set of the ids of the relations
+         */
+        public Set<Long> invalidatedRelationIds() {
+            return invalidatedRelationIds;
+        }
+
+        /**
+         * Returns the version of the invalidated ways and relations after the change, for those which still
+         * exist, to transform them again. The other ones were deleted or are incomplete
+         * @return the map of the invalidated entities
+         */
+        public OSMMap changedEntities() {
+            return changedEntities;
+        }
+    }
+}
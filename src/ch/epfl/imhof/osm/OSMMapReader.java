@@ -6,7 +6,6 @@
  */
 package ch.epfl.imhof.osm;
 
-import ch.epfl.imhof.PointGeo;
 import org.xml.sax.Attributes;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
@@ -21,6 +20,10 @@ import java.io.InputStream;
 import java.util.zip.GZIPInputStream;
 
 public final class OSMMapReader {
+    private final static int GZIP_BUFFER_SIZE = 1 << 16;
+    //With a single processor the two threads can not run in parallel and only add the cost of switching between them
+    private final static boolean PIPELINE_DECOMPRESSION = Runtime.getRuntime().availableProcessors() > 1;
+
     /**
      * The private OSMMapReader constructor
      */
@@ -28,7 +31,9 @@ public final class OSMMapReader {
     }
 
     /**
-     * Static method to read an OSMFile in XML format
+     * Static method to read an OSMFile in XML format.
+     * The file is read by a streaming parser dedicated to OSM files. The files using XML features
+     * this parser does not handle, and the malformed ones, are read again with a SAX parser
      * @param fileName The path of the XML file
      * @param unGZip A boolean to know if the file is compressed with GZip
      * @return a new OSMMap constructed with the XML file's informations
@@ -36,186 +41,241 @@ public final class OSMMapReader {
      * @throws IOException An exception thrown if something went wrong with the file (eg the filename is wrong, or the file doesn't exist)
      */
     public static OSMMap readOSMFile(String fileName, boolean unGZip) throws SAXException, IOException {
-        InputStream i;
-        //If the file is compressed with GZip, uncompressed it
-        if(unGZip) {
-            i = new GZIPInputStream(new BufferedInputStream(new FileInputStream(fileName)));
+        return readOSMFile(fileName, unGZip, OSMReadOptions.DEFAULT);
+    }
+
+    /**
+     * Static method to read an OSMFile in XML format, with the given options
+     * (see readOSMFile(String, boolean)). If the options use a snapshot, the map is read from the
+     * snapshot of the file when it is up to date, and the snapshot is written otherwise
+     * @param fileName The path of the XML file
+     * @param unGZip A boolean to know if the file is compressed with GZip
+     * @param options the options of the reading
+     * @return a new OSMMap constructed with the XML file's informations
+     * @throws SAXException An exception thrown if something went wrong with the XML reader
+     * @throws IOException An exception thrown if something went wrong with the file (eg the filename is wrong, or the file doesn't exist)
+     */
+    public static OSMMap readOSMFile(String fileName, boolean unGZip, OSMReadOptions options) throws SAXException, IOException {
+        return OSMMapSnapshot.readFile(fileName, options, o -> parseOSMFile(fileName, unGZip, o));
+    }
+
+    /**
+     * Parses an OSMFile in XML format
+     * @param fileName The path of the XML file
+     * @param unGZip A boolean to know if the file is compressed with GZip
+     * @param options the options of the reading
+     * @return a new OSMMap constructed with the XML file's informations
+     * @throws SAXException An exception thrown if something went wrong with the XML reader
+     * @throws IOException An exception thrown if something went wrong with the file
+     */
+    private static OSMMap parseOSMFile(String fileName, boolean unGZip, OSMReadOptions options) throws SAXException, IOException {
+        return assembleOSMFile(fileName, unGZip, options).build();
+    }
+
+    /**
+     * Gives the elements of an OSMFile in XML format to a new assembler, configured with the given options
+     * and sized from the size of the file.
+     * The file is read by the streaming parser, or again by a SAX parser if the streaming parser does not handle it
+     * @param fileName The path of the XML file
+     * @param unGZip A boolean to know if the file is compressed with GZip
+     * @param options the options of the reading
+     * @return the assembler, whose map is not built yet
+     * @throws SAXException An exception thrown if something went wrong with the XML reader
+     * @throws IOException An exception thrown if something went wrong with the file
+     */
+    static OSMMapAssembler assembleOSMFile(String fileName, boolean unGZip, OSMReadOptions options) throws SAXException, IOException {
+        OSMSizeEstimate estimate = OSMSizeEstimate.ofXMLFile(fileName, unGZip);
+        try(InputStream i = openFile(fileName, unGZip)) {
+            OSMMapAssembler assembler = options.newAssembler(estimate);
+            new OSMXMLParser(i, assembler).parse();
+            return assembler;
         }
-        else {
-            i = new BufferedInputStream(new FileInputStream(fileName));
+        catch(OSMXMLParser.UnsupportedXMLException e) {
+            //The elements already given to the first assembler are dropped with it
+            try(InputStream i = openFile(fileName, unGZip)) {
+                OSMMapAssembler assembler = options.newAssembler(estimate);
+                parseOSMWithSAX(i, assembler);
+                return assembler;
+            }
         }
-        OSMMap.Builder mapBuilder = new OSMMap.Builder();
-        try {
-            XMLReader r = XMLReaderFactory.createXMLReader();  
+    }
+
+    /**
+     * Opens a file for reading
+     * @param fileName The path of the file
+     * @param unGZip A boolean to know if the file is compressed with GZip
+     * @return the stream of the file's content, uncompressed
+     * @throws IOException if the file can not be opened
+     */
+    static InputStream openFile(String fileName, boolean unGZip) throws IOException {
+        //If the file is compressed with GZip, uncompressed it on another thread while it is parsed
+        if(unGZip) {
+            InputStream i = new GZIPInputStream(new FileInputStream(fileName), GZIP_BUFFER_SIZE);
+            return PIPELINE_DECOMPRESSION ? new PipelinedInputStream(i) : i;
+        }
+        return new BufferedInputStream(new FileInputStream(fileName));
+    }
+
+    /**
+     * Reads an OSM XML document with the streaming parser
+     * @param i the stream of the document
+     * @return a new OSMMap constructed with the document's informations
+     * @throws OSMXMLParser.UnsupportedXMLException if the document is malformed or uses XML features the parser does not handle
+     * @throws IOException if something went wrong with the stream
+     */
+    static OSMMap readOSM(InputStream i) throws OSMXMLParser.UnsupportedXMLException, IOException {
+        return readOSM(i, OSMReadOptions.DEFAULT);
+    }
+
+    /**
+     * Reads an OSM XML document with the streaming parser
+     * @param i the stream of the document
+     * @param options the options of the reading
+     * @return a new OSMMap constructed with the document's informations
+     * @throws OSMXMLParser.UnsupportedXMLException if the document is malformed or uses XML features the parser does not handle
+     * @throws IOException if something went wrong with the stream
+     */
+    static OSMMap readOSM(InputStream i, OSMReadOptions options) throws OSMXMLParser.UnsupportedXMLException, IOException {
+        OSMMapAssembler assembler = options.newAssembler();
+        new OSMXMLParser(i, assembler).parse();
+        return assembler.build();
+    }
+
+    /**
+     * Reads an OSM XML document with a SAX parser
+     * @param i the stream of the document
+     * @return a new OSMMap constructed with the document's informations
+     * @throws SAXException An exception thrown if something went wrong with the XML reader
+     * @throws IOException if something went wrong with the stream
+     */
+    static OSMMap readOSMWithSAX(InputStream i) throws SAXException, IOException {
+        return readOSMWithSAX(i, OSMReadOptions.DEFAULT);
+    }
+
+    /**
+     * Reads an OSM XML document with a SAX parser
+     * @param i the stream of the document
+     * @param options the options of the reading
+     * @return a new OSMMap constructed with the document's informations
+     * @throws SAXException An exception thrown if something went wrong with the XML reader
+     * @throws IOException if something went wrong with the stream
+     */
+    static OSMMap readOSMWithSAX(InputStream i, OSMReadOptions options) throws SAXException, IOException {
+        OSMMapAssembler assembler = options.newAssembler();
+        parseOSMWithSAX(i, assembler);
+        return assembler.build();
+    }
+
+    /**
+     * Gives the elements of an OSM XML document to an assembler, with a SAX parser
+     * @param i the stream of the document
+     * @param assembler the assembler
+     * @throws SAXException An exception thrown if something went wrong with the XML reader
+     * @throws IOException if something went wrong with the stream
+     */
+    private static void parseOSMWithSAX(InputStream i, OSMMapAssembler assembler) throws SAXException, IOException {
+        XMLReader r = XMLReaderFactory.createXMLReader();  
+        /**
+         * Anonymous subclass for the ContentHandler
+         */
+        r.setContentHandler(new DefaultHandler() {
+            private long ref = 0l;
+            private String type = "";
+            private String role = "";
+            private final static String NODE = "node";
+            private final static String ND = "nd";
+            private final static String WAY = "way";
+            private final static String RELATION = "relation";
+            private final static String TAG = "tag";
+            private final static String MEMBER = "member";
+            private final static String ID = "id";
+            private final static String LATITUDE = "lat";
+            private final static String LONGITUDE = "lon";
+            private final static String REFERENCE = "ref";
+            private final static String TYPE = "type";
+            private final static String ROLE = "role";
+            private final static String KEY = "k";
+            private final static String VALUE = "v";
+
             /**
-             * Anonymous subclass for the ContentHandler
+             * A method called when an open XML tag is encountered
+             * This method gives the XML file informations to the assembler
+             * @param uri An unnecessary variable (for this project)
+             * @param lName An unnecessary variable (for this project)
+             * @param qName The XML tag name
+             * @param atts The XML attributes
+             * @throws SAXException An exception thrown if something went wrong with the XML reader
              */
-            r.setContentHandler(new DefaultHandler() {
-                private OSMNode.Builder nodeBuilder;
-                private OSMRelation.Builder relationBuilder;
-                private OSMWay.Builder wayBuilder;
-                private PointGeo position;
-                private boolean isWay = false;
-                private boolean isRelation = false;
-                private boolean isNode = false;
-                private OSMEntity entityForId;
-                private double lat = 0d;
-                private double lon = 0d;
-                private long id = 0l;
-                private long ref = 0l;
-                private String v = "";
-                private String k = "";
-                private String type = "";
-                private String role = "";
-                private final static String NODE = "node";
-                private final static String ND = "nd";
-                private final static String WAY = "way";
-                private final static String RELATION = "relation";
-                private final static String TAG = "tag";
-                private final static String MEMBER = "member";
-                private final static String ID = "id";
-                private final static String LATITUDE = "lat";
-                private final static String LONGITUDE = "lon";
-                private final static String REFERENCE = "ref";
-                private final static String TYPE = "type";
-                private final static String ROLE = "role";
-                private final static String KEY = "k";
-                private final static String VALUE = "v";
-
-                /**
-                 * A method called when an open XML tag is encountered
-                 * This method initialize the various OSM Builder with the XML file informations 
-                 * @param uri An unnecessary variable (for this project)
-                 * @param lName An unnecessary variable (for this project)
-                 * @param qName The XML tag name
-                 * @param atts The XML attributes
-                 * @throws SAXException An exception thrown if something went wrong with the XML reader
-                 */
-                @Override
-                public void startElement(String uri, String lName, String qName, Attributes atts) throws SAXException {
-                    switch(qName) {
-                    case NODE:
-                        isNode = true;
-                        id = Long.parseLong(atts.getValue(ID));
-                        lat = Double.parseDouble(atts.getValue(LATITUDE));
-                        lon = Double.parseDouble(atts.getValue(LONGITUDE));
-                        position = new PointGeo(Math.toRadians(lon), Math.toRadians(lat));
-                        nodeBuilder = new OSMNode.Builder(id, position);
-                        break;
-                    case ND:
-                        ref = Long.parseLong(atts.getValue(REFERENCE));
-                        entityForId = mapBuilder.nodeForId(ref);
-                        if(entityForId != null) {
-                            wayBuilder.addNode((OSMNode)entityForId);
-                        }
-                        else {
-                            wayBuilder.setIncomplete();
-                        }
-                        break;
+            @Override
+            public void startElement(String uri, String lName, String qName, Attributes atts) throws SAXException {
+                switch(qName) {
+                case NODE:
+                    //The coordinates are kept in fixed-point until they are projected
+                    assembler.startNode(Long.parseLong(atts.getValue(ID)),
+                            FixedPointCoordinate.parse(atts.getValue(LONGITUDE)),
+                            FixedPointCoordinate.parse(atts.getValue(LATITUDE)));
+                    break;
+                case ND:
+                    assembler.addNodeReference(Long.parseLong(atts.getValue(REFERENCE)));
+                    break;
+                case WAY:
+                    assembler.startWay(Long.parseLong(atts.getValue(ID)));
+                    break;
+                case RELATION:
+                    assembler.startRelation(Long.parseLong(atts.getValue(ID)));
+                    break;
+                case TAG:
+                    assembler.addTag(atts.getValue(KEY), atts.getValue(VALUE));
+                    break;
+                    //if "member" appears, we have to specify with the type and build the right relation
+                case MEMBER:
+                    type = atts.getValue(TYPE);
+                    role = atts.getValue(ROLE);
+                    ref = Long.parseLong(atts.getValue(REFERENCE));
+                    switch(type) {
                     case WAY:
-                        isWay = true;
-                        id = Long.parseLong(atts.getValue(ID));
-                        wayBuilder = new OSMWay.Builder(id);
-                        break;
-                    case RELATION:
-                        isRelation = true;
-                        id = Long.parseLong(atts.getValue(ID));
-                        relationBuilder = new OSMRelation.Builder(id);
-                        break;
-                    case TAG:
-                        k = atts.getValue(KEY);
-                        v = atts.getValue(VALUE);
-                        if(isNode) {
-                            nodeBuilder.setAttribute(k, v);
-                        }
-                        else if(isWay) {
-                            wayBuilder.setAttribute(k, v);
-                        }
-                        else if(isRelation) {
-                            relationBuilder.setAttribute(k, v);
-                        }
-                        break;
-                        //if "member" appears, we have to specify with the type and build the right relation
-                    case MEMBER:
-                        type = atts.getValue(TYPE);
-                        role = atts.getValue(ROLE);
-                        id = Long.parseLong(atts.getValue(REFERENCE));
-                        switch(type) {
-                        case WAY:
-                            entityForId = mapBuilder.wayForId(id);
-                            if(entityForId != null) {
-                                relationBuilder.addMember(OSMRelation.Member.Type.WAY, role, (OSMWay)entityForId);
-                            }
-                            else {
-                                relationBuilder.setIncomplete();
-                            }
-                            break;
-                        case NODE:
-                            entityForId = mapBuilder.nodeForId(id);
-                            if(entityForId != null) {
-                                relationBuilder.addMember(OSMRelation.Member.Type.NODE, role, (OSMNode)entityForId);
-                            }
-                            else {
-                                relationBuilder.setIncomplete();
-                            }
-                            break;
-                        case RELATION:
-                            entityForId = mapBuilder.relationForId(id);
-                            if(entityForId != null) {
-                                relationBuilder.addMember(OSMRelation.Member.Type.RELATION, role, (OSMRelation)entityForId);
-                            }
-                            else {
-                                relationBuilder.setIncomplete();
-                            }
-                            break;
-                        default:
-                            throw new SAXException(type + "is not a valid member");
-                        }
+                        assembler.addMember(OSMRelation.Member.Type.WAY, ref, role);
                         break;
-                    default:
-                        break;
-                    }
-                }
-
-                /**
-                 * A method called when a closed XML tag is encountered
-                 * This method build the various OSMEntity and add them in the OSMMap
-                 * @param uri An unnecessary variable (for this project)
-                 * @param lName An unnecessary variable (for this project)
-                 * @param qName The XML tag name
-                 * @throws SAXException An exception thrown if something went wrong with the XML reader
-                 */
-                @Override
-                public void endElement(String uri, String lName, String qName) throws SAXException {
-                    switch(qName) {
                     case NODE:
-                        isNode = false;
-                        if(!nodeBuilder.isIncomplete()) {
-                            mapBuilder.addNode(nodeBuilder.build());
-                        }
-                        break;
-                    case WAY:
-                        isWay = false;
-                        if(!wayBuilder.isIncomplete()) {
-                            mapBuilder.addWay(wayBuilder.build());
-                        }
+                        assembler.addMember(OSMRelation.Member.Type.NODE, ref, role);
                         break;
                     case RELATION:
-                        isRelation = false;
-                        if(!relationBuilder.isIncomplete()) {
-                            mapBuilder.addRelation(relationBuilder.build());
-                        }
+                        assembler.addMember(OSMRelation.Member.Type.RELATION, ref, role);
                         break;
                     default:
-                        break;
+                        throw new SAXException(type + "is not a valid member");
                     }
+                    break;
+                default:
+                    break;
                 }
-            });
-            r.parse(new InputSource(i));
-        }
-        finally {
-            i.close();
-        }
-        return mapBuilder.build();
+            }
+
+            /**
+             * A method called when a closed XML tag is encountered
+             * This method tells the assembler to build the various OSMEntity and add them in the OSMMap
+             * @param uri An unnecessary variable (for this project)
+             * @param lName An unnecessary variable (for this project)
+             * @param qName The XML tag name
+             * @throws SAXException An exception thrown if something went wrong with the XML reader
+             */
+            @Override
+            public void endElement(String uri, String lName, String qName) throws SAXException {
+                switch(qName) {
+                case NODE:
+                    assembler.endNode();
+                    break;
+                case WAY:
+                    assembler.endWay();
+                    break;
+                case RELATION:
+                    assembler.endRelation();
+                    break;
+                default:
+                    break;
+                }
+            }
+        });
+        r.parse(new InputSource(i));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,595 @@
+/**
+ *  Reads and writes OSM maps in a compact binary format, used as a cache of the
+ *  parsed OSM files : loading a snapshot only reads arrays of numbers from a
+ *  memory-mapped file, with the strings and attributes stored once in dictionaries.
+ *  A snapshot keeps the attributes of a given set of keys, it is only used to
+ *  read the file again with the same set and the same resolution of the references.
+ *  This class is not instantiable
+ *
+ *  The snapshot contains, in big-endian order :
+ *  - the magic number and the version of the format,
+ *  - the keys of the attributes kept, -1 if all attributes are kept, and 1 if the references were deferred, 0 otherwise,
+ *  - the dictionary of the strings (keys, values and roles),
+ *  - the dictionary of the attributes, as indices in the strings,
+ *  - the nodes : their ids, their coordinates in fixed-point and the attributes of the nodes having some,
+ *  - the ways : id, attributes and indices of their nodes, the ways of the map first, then the other member ways,
+ *  - the relations : id, attributes and members (type, role, index), each one after its member relations,
+ *  - the indices of the relations of the map, in their order.
+ *
+ *  @author:     José Ferro Pinto (233843)
+ *  @author:     Dorian Laforest (234832)
+ */
+package ch.epfl.imhof.osm;
+
+import ch.epfl.imhof.Attributes;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+final class OSMMapSnapshot {
+    private final static int MAGIC = 0x494D4846;
+    private final static int VERSION = 2;
+    private final static int NULL_STRING = -1;
+    private final static int ALL_ATTRIBUTES = -1;
+    private final static int NO_ATTRIBUTES = -1;
+    private final static OSMRelation.Member.Type[] MEMBER_TYPES = OSMRelation.Member.Type.values();
+    private final static String EXTENSION = ".snapshot";
+
+    /**
+     * The private OSMMapSnapshot constructor
+     */
+    private OSMMapSnapshot() {
+    }
+
+    /**
+     * Reads an OSM file with the given options. If the options use a snapshot, the map is read from
+     * the snapshot of the file when it is up to date, otherwise the file is parsed without the bounding box
+     * and the snapshot is written
+     * @param fileName the path of the OSM file
+     * @param options the options of the reading
+     * @param parser the parser of the file
+     * @return the map of the file
+     * @throws E if the parser failed
+     * @throws IOException if something went wrong with the file
+     */
+    static <E extends Exception> OSMMap readFile(String fileName, OSMReadOptions options, Parser<E> parser) throws E, IOException {
+        if(!options.usesSnapshot()) {
+            return parser.parse(options);
+        }
+        Path snapshot = snapshotOf(fileName);
+        if(isUpToDate(Path.of(fileName), snapshot)) {
+            try {
+                return options.restrict(read(snapshot, options));
+            }
+            catch(IOException e) {
+                //The snapshot was made with other options or by another version : the file is parsed again
+            }
+        }
+        OSMMap map = parser.parse(options.withoutBoundingBox());
+        try {
+            write(map, options, snapshot);
+        }
+        catch(IOException e) {
+            //The snapshot is only a cache, the map is still returned if it can not be written
+        }
+        return options.restrict(map);
+    }
+
+    /**
+     * Returns the path of the snapshot of a file
+     * @param fileName the path of the OSM file
+     * @return the path of its snapshot, next to it
+     */
+    static Path snapshotOf(String fileName) {
+        return Path.of(fileName + EXTENSION);
+    }
+
+    /**
+     * Tests if a snapshot exists and is more recent than the file it was made from
+     * @param source the OSM file
+     * @param snapshot the snapshot
+     * @return true if the snapshot can replace the file
+     */
+    static boolean isUpToDate(Path source, Path snapshot) {
+        try {
+            return Files.getLastModifiedTime(snapshot).compareTo(Files.getLastModifiedTime(source)) > 0;
+        }
+        catch(IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads a snapshot
+     * @param snapshot the snapshot's path
+     * @param options the options with which the map must have been read
+     * @return the map of the snapshot
+     * @throws IOException if the file can not be read, is malformed or was made with other options
+     */
+    static OSMMap read(Path snapshot, OSMReadOptions options) throws IOException {
+        ByteBuffer buffer;
+        try(FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            return read(buffer, options);
+        }
+        catch(BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException | IllegalArgumentException e) {
+            throw new IOException("Malformed snapshot " + snapshot, e);
+        }
+    }
+
+    /**
+     * Writes a snapshot. The file is written next to its final path and then moved to it,
+     * so that a snapshot being written is never read
+     * @param map the map to write
+     * @param options the options with which the map was read
+     * @param snapshot the snapshot's path
+     * @throws IOException if the file can not be written
+     */
+    static void write(OSMMap map, OSMReadOptions options, Path snapshot) throws IOException {
+        Path directory = snapshot.toAbsolutePath().getParent();
+        Path temporary = Files.createTempFile(directory, snapshot.getFileName().toString(), ".tmp");
+        try {
+            try(OutputStream o = Files.newOutputStream(temporary)) {
+                write(map, options, o);
+            }
+            Files.move(temporary, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Reads a snapshot from a buffer
+     * @param buffer the snapshot's content
+     * @param options the options with which the map must have been read
+     * @return the map of the snapshot
+     * @throws IOException if the snapshot has another version or was made with other options
+     */
+    static OSMMap read(ByteBuffer buffer, OSMReadOptions options) throws IOException {
+        if(buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("Not a snapshot of this version");
+        }
+        int keysCount = buffer.getInt();
+        Set<String> keys = null;
+        if(keysCount != ALL_ATTRIBUTES) {
+            keys = new HashSet<>();
+            for(int i = 0; i < keysCount; i++) {
+                keys.add(readString(buffer));
+            }
+        }
+        if(keys == null ? options.attributeKeys() != null : !keys.equals(options.attributeKeys())) {
+            throw new IOException("Snapshot made with other attribute keys");
+        }
+        if((buffer.get() != 0) != options.defersReferences()) {
+            throw new IOException("Snapshot made with another resolution of the references");
+        }
+
+        String[] strings = new String[buffer.getInt()];
+        for(int i = 0; i < strings.length; i++) {
+            strings[i] = readString(buffer);
+        }
+        Attributes[] attributes = new Attributes[buffer.getInt()];
+        for(int i = 0; i < attributes.length; i++) {
+            int size = buffer.getInt();
+            Attributes.Builder builder = new Attributes.Builder(size);
+            for(int j = 0; j < size; j++) {
+                String key = string(strings, buffer.getInt());
+                builder.put(key, string(strings, buffer.getInt()));
+            }
+            attributes[i] = builder.build();
+        }
+
+        int nodesCount = buffer.getInt();
+        OSMNodeStore nodeStore = new OSMNodeStore(nodesCount);
+        long[] ids = new long[nodesCount];
+        int[] longitudes = new int[nodesCount];
+        for(int i = 0; i < nodesCount; i++) {
+            ids[i] = buffer.getLong();
+        }
+        for(int i = 0; i < nodesCount; i++) {
+            longitudes[i] = buffer.getInt();
+        }
+        for(int i = 0; i < nodesCount; i++) {
+            //The nodes are added in the order of their indices, which are kept
+            nodeStore.addFixedPoint(ids[i], longitudes[i], buffer.getInt(), null);
+        }
+        int attributedNodes = buffer.getInt();
+        for(int i = 0; i < attributedNodes; i++) {
+            int index = buffer.getInt();
+            nodeStore.addFixedPoint(ids[index], longitudes[index], nodeStore.fixedPointLatitude(index), attributes[buffer.getInt()]);
+        }
+
+        OSMWay[] ways = new OSMWay[buffer.getInt()];
+        int listedWays = buffer.getInt();
+        for(int i = 0; i < ways.length; i++) {
+            long id = buffer.getLong();
+            Attributes wayAttributes = attributes(attributes, buffer.getInt());
+            int[] nodeIndices = new int[buffer.getInt()];
+            for(int j = 0; j < nodeIndices.length; j++) {
+                nodeIndices[j] = buffer.getInt();
+                if(nodeIndices[j] < 0 || nodeIndices[j] >= nodesCount) {
+                    throw new IndexOutOfBoundsException("Unknown node");
+                }
+            }
+            ways[i] = new OSMWay(id, nodeStore, nodeIndices, wayAttributes);
+        }
+
+        OSMRelation[] relations = new OSMRelation[buffer.getInt()];
+        for(int i = 0; i < relations.length; i++) {
+            long id = buffer.getLong();
+            Attributes relationAttributes = attributes(attributes, buffer.getInt());
+            int membersCount = buffer.getInt();
+            List<OSMRelation.Member> members = new ArrayList<>(membersCount);
+            for(int j = 0; j < membersCount; j++) {
+                OSMRelation.Member.Type type = MEMBER_TYPES[buffer.get()];
+                String role = string(strings, buffer.getInt());
+                int index = buffer.getInt();
+                OSMEntity member;
+                switch(type) {
+                case NODE:
+                    member = nodeStore.node(index);
+                    break;
+                case WAY:
+                    member = ways[index];
+                    break;
+                default:
+                    //The member relations are written before the relations containing them
+                    if(index >= i) {
+                        throw new IndexOutOfBoundsException("Relation not read yet");
+                    }
+                    member = relations[index];
+                    break;
+                }
+                members.add(new OSMRelation.Member(type, role, member));
+            }
+            relations[i] = new OSMRelation(id, members, relationAttributes);
+        }
+        List<OSMRelation> listedRelations = new ArrayList<>();
+        int listedRelationsCount = buffer.getInt();
+        for(int i = 0; i < listedRelationsCount; i++) {
+            listedRelations.add(relations[buffer.getInt()]);
+        }
+        return new OSMMap(Arrays.asList(ways).subList(0, listedWays), listedRelations);
+    }
+
+    /**
+     * Writes a snapshot to a stream
+     * @param map the map to write
+     * @param options the options with which the map was read
+     * @param o the stream, which is not closed
+     * @throws IOException if something went wrong with the stream
+     */
+    static void write(OSMMap map, OSMReadOptions options, OutputStream o) throws IOException {
+        Writer writer = new Writer(map);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(o, 1 << 16));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        if(options.attributeKeys() == null) {
+            out.writeInt(ALL_ATTRIBUTES);
+        }
+        else {
+            out.writeInt(options.attributeKeys().size());
+            for(String key : new TreeSet<>(options.attributeKeys())) {
+                writeString(out, key);
+            }
+        }
+        out.writeByte(options.defersReferences() ? 1 : 0);
+        writer.write(out);
+        out.flush();
+    }
+
+    /**
+     * Returns a string of the dictionary
+     * @param strings the dictionary
+     * @param index the string's index, NULL_STRING for null
+     * @return the string
+     */
+    private static String string(String[] strings, int index) {
+        return index == NULL_STRING ? null : strings[index];
+    }
+
+    /**
+     * Returns attributes of the dictionary
+     * @param attributes the dictionary
+     * @param index the attributes' index, NO_ATTRIBUTES if they are empty
+     * @return the attributes
+     */
+    private static Attributes attributes(Attributes[] attributes, int index) {
+        return index == NO_ATTRIBUTES ? new Attributes.Builder().build() : attributes[index];
+    }
+
+    /**
+     * Reads a string written by writeString
+     * @param buffer the buffer
+     * @return the string
+     */
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if(length == NULL_STRING) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes a string as its length and its UTF-8 bytes
+     * @param out the stream
+     * @param string the string, possibly null
+     * @throws IOException if something went wrong with the stream
+     */
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        if(string == null) {
+            out.writeInt(NULL_STRING);
+            return;
+        }
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     *  Parser of an OSM file
+     *
+     *  @author:     José Ferro Pinto (233843)
+     *  @author:     Dorian Laforest (234832)
+     */
+    @FunctionalInterface
+    interface Parser<E extends Exception> {
+        /**
+         * Parses the file
+         * @param options the options of the reading
+         * @return the map of the file
+         * @throws E if the parser failed
+         * @throws IOException if something went wrong with the file
+         */
+        OSMMap parse(OSMReadOptions options) throws E, IOException;
+    }
+
+    /**
+     *  Numbers the entities of a map and fills the dictionaries, then writes the snapshot
+     *
+     *  @author:     José Ferro Pinto (233843)
+     *  @author:     Dorian Laforest (234832)
+     */
+    private final static class Writer {
+        private final Map<String, Integer> strings = new HashMap<>();
+        private final List<String> stringList = new ArrayList<>();
+        private final Map<Attributes, Integer> attributes = new HashMap<>();
+        private final List<Attributes> attributesList = new ArrayList<>();
+        //The nodes of all the ways and the member nodes, gathered in a single store
+        private final OSMNodeStore nodeStore = new OSMNodeStore();
+        //For each store of the ways, the indices of its nodes in nodeStore
+        private final Map<OSMNodeStore, int[]> nodeIndices = new IdentityHashMap<>();
+        private final Map<OSMEntity, Integer> wayIndices = new IdentityHashMap<>();
+        private final List<OSMWay> ways = new ArrayList<>();
+        private final Map<OSMEntity, Integer> relationIndices = new IdentityHashMap<>();
+        private final List<OSMRelation> relations = new ArrayList<>();
+        private final OSMMap map;
+        private final int listedWays;
+
+        /**
+         * Constructor for Writer, numbering the entities of the map
+         * @param map the map to write
+         */
+        Writer(OSMMap map) {
+            this.map = map;
+            for(OSMWay way : map.ways()) {
+                addWay(way);
+            }
+            listedWays = ways.size();
+            for(OSMRelation relation : map.relations()) {
+                addRelation(relation);
+            }
+        }
+
+        /**
+         * Writes the dictionaries and the entities
+         * @param out the stream
+         * @throws IOException if something went wrong with the stream
+         */
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(stringList.size());
+            for(String string : stringList) {
+                writeString(out, string);
+            }
+            out.writeInt(attributesList.size());
+            for(Attributes a : attributesList) {
+                out.writeInt(a.size());
+                for(int i = 0; i < a.size(); i++) {
+                    out.writeInt(stringIndex(a.keyAt(i)));
+                    out.writeInt(stringIndex(a.valueAt(i)));
+                }
+            }
+
+            int nodesCount = nodeStore.size();
+            out.writeInt(nodesCount);
+            for(int i = 0; i < nodesCount; i++) {
+                out.writeLong(nodeStore.id(i));
+            }
+            for(int i = 0; i < nodesCount; i++) {
+                out.writeInt(nodeStore.fixedPointLongitude(i));
+            }
+            for(int i = 0; i < nodesCount; i++) {
+                out.writeInt(nodeStore.fixedPointLatitude(i));
+            }
+            List<Integer> attributedNodes = new ArrayList<>();
+            for(int i = 0; i < nodesCount; i++) {
+                if(!nodeStore.attributes(i).isEmpty()) {
+                    attributedNodes.add(i);
+                }
+            }
+            out.writeInt(attributedNodes.size());
+            for(int index : attributedNodes) {
+                out.writeInt(index);
+                out.writeInt(attributesIndex(nodeStore.attributes(index)));
+            }
+
+            out.writeInt(ways.size());
+            out.writeInt(listedWays);
+            for(OSMWay way : ways) {
+                out.writeLong(way.id());
+                out.writeInt(attributesIndex(way.attributes()));
+                int[] storeIndices = nodeIndices.get(way.nodeStore());
+                out.writeInt(way.nodesCount());
+                for(int i = 0; i < way.nodesCount(); i++) {
+                    out.writeInt(storeIndices[way.nodeIndex(i)]);
+                }
+            }
+
+            out.writeInt(relations.size());
+            for(OSMRelation relation : relations) {
+                out.writeLong(relation.id());
+                out.writeInt(attributesIndex(relation.attributes()));
+                out.writeInt(relation.members().size());
+                for(OSMRelation.Member member : relation.members()) {
+                    out.writeByte(member.type().ordinal());
+                    out.writeInt(stringIndex(member.role()));
+                    out.writeInt(memberIndex(member.member()));
+                }
+            }
+            out.writeInt(map.relations().size());
+            for(OSMRelation relation : map.relations()) {
+                out.writeInt(relationIndices.get(relation));
+            }
+        }
+
+        /**
+         * Numbers a way and its nodes, if it was not already
+         * @param way the way
+         */
+        private void addWay(OSMWay way) {
+            if(wayIndices.containsKey(way)) {
+                return;
+            }
+            wayIndices.put(way, ways.size());
+            ways.add(way);
+            addAttributes(way.attributes());
+            OSMNodeStore store = way.nodeStore();
+            int[] storeIndices = nodeIndices.get(store);
+            if(storeIndices == null) {
+                storeIndices = new int[store.size()];
+                Arrays.fill(storeIndices, -1);
+                nodeIndices.put(store, storeIndices);
+            }
+            for(int i = 0; i < way.nodesCount(); i++) {
+                int index = way.nodeIndex(i);
+                if(storeIndices[index] < 0) {
+                    storeIndices[index] = nodeStore.copy(store, index);
+                    addAttributes(store.attributes(index));
+                }
+            }
+        }
+
+        /**
+         * Numbers a relation after its members, if it was not already
+         * @param relation the relation
+         */
+        private void addRelation(OSMRelation relation) {
+            if(relationIndices.containsKey(relation)) {
+                return;
+            }
+            for(OSMRelation.Member member : relation.members()) {
+                addString(member.role());
+                OSMEntity entity = member.member();
+                if(entity instanceof OSMWay) {
+                    addWay((OSMWay)entity);
+                }
+                else if(entity instanceof OSMRelation) {
+                    addRelation((OSMRelation)entity);
+                }
+                else {
+                    OSMNode node = (OSMNode)entity;
+                    nodeStore.add(node.id(), node.position().longitude(), node.position().latitude(), node.attributes());
+                    addAttributes(node.attributes());
+                }
+            }
+            addAttributes(relation.attributes());
+            relationIndices.put(relation, relations.size());
+            relations.add(relation);
+        }
+
+        /**
+         * Adds attributes and their strings to the dictionaries
+         * @param a the attributes
+         */
+        private void addAttributes(Attributes a) {
+            if(a.isEmpty() || attributes.containsKey(a)) {
+                return;
+            }
+            attributes.put(a, attributesList.size());
+            attributesList.add(a);
+            for(int i = 0; i < a.size(); i++) {
+                addString(a.keyAt(i));
+                addString(a.valueAt(i));
+            }
+        }
+
+        /**
+         * Adds a string to the dictionary
+         * @param string the string, null is not added
+         */
+        private void addString(String string) {
+            if(string != null && !strings.containsKey(string)) {
+                strings.put(string, stringList.size());
+                stringList.add(string);
+            }
+        }
+
+        /**
+         * Returns the index of a string in the dictionary
+         * @param string the string
+         * @return its index, NULL_STRING for null
+         */
+        private int stringIndex(String string) {
+            return string == null ? NULL_STRING : strings.get(string);
+        }
+
+        /**
+         * Returns the index of attributes in the dictionary
+         * @param a the attributes
+         * @return their index, NO_ATTRIBUTES if they are empty
+         */
+        private int attributesIndex(Attributes a) {
+            return a.isEmpty() ? NO_ATTRIBUTES : attributes.get(a);
+        }
+
+        /**
+         * Returns the index of a member among the entities of its type
+         * @param member the member
+         * @return its index
+         */
+        private int memberIndex(OSMEntity member) {
+            if(member instanceof OSMWay) {
+                return wayIndices.get(member);
+            }
+            if(member instanceof OSMRelation) {
+                return relationIndices.get(member);
+            }
+            return nodeStore.indexOf(member.id());
+        }
+    }
+}
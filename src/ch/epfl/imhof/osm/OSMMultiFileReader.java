@@ -0,0 +1,313 @@
+/**
+ *  Represents a reader of several OSM files merged into a single OSMMap, eg. the
+ *  extracts of neighbouring regions. The files are parsed in parallel, each one
+ *  on its own thread up to the number of processors, then merged in the order
+ *  of the list : an entity present in several files, usually at their border,
+ *  is kept once, as given by the last of these files. The references are resolved
+ *  once all the files are merged, so that a way or a relation may refer to the
+ *  entities of another file, the ways being resolved in parallel (see
+ *  OSMReferenceResolver). The merge of the nodes of each file stays on the calling
+ *  thread, since the nodes of all the files are indexed in the same store.
+ *  This class is not instantiable
+ *
+ *  @author:     José Ferro Pinto (233843)
+ *  @author:     Dorian Laforest (234832)
+ */
+package ch.epfl.imhof.osm;
+
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public final class OSMMultiFileReader {
+    private final static int THREADS = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The private OSMMultiFileReader constructor
+     */
+    private OSMMultiFileReader() {
+    }
+
+    /**
+     * Reads several OSM files and merges them into a single map. The format of each file is given by its
+     * extension : ".pbf" for the PBF format, ".gz" for the XML format compressed with GZip, and the XML
+     * format otherwise. The bounding box and the attribute keys of the options are applied to the merged map,
+     * whose references are always resolved once all the files are read. No snapshot is used
+     * @param fileNames the paths of the files, in the order in which they are merged
+     * @param options the options of the reading
+     * @return the merged map, with a report of the reading of each file
+     * @throws SAXException An exception thrown if something went wrong with the XML reader
+     * @throws IOException An exception thrown if something went wrong with one of the files
+     * @throws IllegalArgumentException if there is no file
+     */
+    public static Result read(List<String> fileNames, OSMReadOptions options) throws SAXException, IOException, IllegalArgumentException {
+        if(fileNames.isEmpty()) {
+            throw new IllegalArgumentException("No file to read");
+        }
+        OSMReadOptions partOptions = options.forPart();
+        int threads = Math.min(fileNames.size(), THREADS);
+        //With a single thread the files are read one after the other on the calling thread
+        ExecutorService executor = threads > 1 ? Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "OSM file reader");
+            t.setDaemon(true);
+            return t;
+        }) : null;
+        List<Future<Part>> pending = new ArrayList<>(fileNames.size());
+        try {
+            OSMSizeEstimate estimate = OSMSizeEstimate.NONE;
+            for(String fileName : fileNames) {
+                estimate = estimate.plus(fileName.endsWith(".pbf") ? OSMSizeEstimate.ofPBFFile(fileName)
+                        : OSMSizeEstimate.ofXMLFile(fileName, fileName.endsWith(".gz")));
+            }
+            OSMMapAssembler merged = new OSMMapAssembler(options.newMapBuilder(estimate), options.attributeKeys(), true, estimate);
+            List<FileReport> reports = new ArrayList<>(fileNames.size());
+            if(executor != null) {
+                for(String fileName : fileNames) {
+                    pending.add(executor.submit(() -> readPart(fileName, partOptions)));
+                }
+            }
+            for(int i = 0; i < fileNames.size(); i++) {
+                Part part;
+                if(executor == null) {
+                    part = readPart(fileNames.get(i), partOptions);
+                }
+                else {
+                    part = result(pending.get(i));
+                    //The part is dropped once merged, to free its memory before the next one is merged
+                    pending.set(i, null);
+                }
+                long mergeStart = System.nanoTime();
+                part.assembler.mergeInto(merged);
+                reports.add(new FileReport(fileNames.get(i), part.assembler.nodesCount(), part.assembler.waysCount(),
+                        part.assembler.relationsCount(), part.milliseconds, (System.nanoTime() - mergeStart) / 1_000_000));
+            }
+            long resolveStart = System.nanoTime();
+            OSMMap map = merged.build();
+            return new Result(map, reports, (System.nanoTime() - resolveStart) / 1_000_000);
+        }
+        finally {
+            if(executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Parses one of the files
+     * @param fileName the path of the file
+     * @param options the options of the reading of a part
+     * @return the assembler of the file, with the time taken to parse it
+     * @throws SAXException An exception thrown if something went wrong with the XML reader
+     * @throws IOException An exception thrown if something went wrong with the file
+     */
+    private static Part readPart(String fileName, OSMReadOptions options) throws SAXException, IOException {
+        long start = System.nanoTime();
+        OSMMapAssembler assembler;
+        if(fileName.endsWith(".pbf")) {
+            assembler = OSMPBFReader.assemblePBFFile(fileName, options);
+        }
+        else {
+            assembler = OSMMapReader.assembleOSMFile(fileName, fileName.endsWith(".gz"), options);
+        }
+        return new Part(assembler, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Waits for a file to be parsed
+     * @param part the parsing of the file
+     * @return the parsed file
+     * @throws SAXException if the XML reader failed
+     * @throws IOException if the reading failed or the thread was interrupted
+     */
+    private static Part result(Future<Part> part) throws SAXException, IOException {
+        try {
+            return part.get();
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        catch(ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof IOException) {
+                throw (IOException)cause;
+            }
+            if(cause instanceof SAXException) {
+                throw (SAXException)cause;
+            }
+            if(cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            }
+            if(cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     *  Represents a parsed file, not merged yet
+     */
+    private final static class Part {
+        final private OSMMapAssembler assembler;
+        final private long milliseconds;
+
+        /**
+         * Constructor for Part
+         * @param assembler the assembler of the file
+         * @param milliseconds the time taken to parse the file
+         */
+        private Part(OSMMapAssembler assembler, long milliseconds) {
+            this.assembler = assembler;
+            this.milliseconds = milliseconds;
+        }
+    }
+
+    /**
+     *  Represents the result of the reading : the merged map and a report for each file
+     *
+     *  @author:     José Ferro Pinto (233843)
+     *  @author:     Dorian Laforest (234832)
+     */
+    public final static class Result {
+        final private OSMMap map;
+        final private List<FileReport> reports;
+        final private long resolveMilliseconds;
+
+        /**
+         * Constructor for Result
+         * @param map the merged map
+         * @param reports the reports of the files, in the order of the files
+         * @param resolveMilliseconds the time taken to resolve the references of the merged files
+         */
+        private Result(OSMMap map, List<FileReport> reports, long resolveMilliseconds) {
+            this.map = map;
+            this.reports = Collections.unmodifiableList(reports);
+            this.resolveMilliseconds = resolveMilliseconds;
+        }
+
+        /**
+         * Returns the merged map
+         * @return the map
+         */
+        public OSMMap map() {
+            return map;
+        }
+
+        /**
+         * Returns the reports of the reading of each file
+         * @return the unmodifiable list of the reports, in the order of the files
+         */
+        public List<FileReport> reports() {
+            return reports;
+        }
+
+        /**
+         * Returns the time taken to resolve the references once all the files are merged,
+         * which belongs to none of the files
+         * @return the time in milliseconds
+         */
+        public long resolveMilliseconds() {
+            return resolveMilliseconds;
+        }
+    }
+
+    /**
+     *  Represents the report of the reading of a file : the numbers of entities it contains,
+     *  the time taken to parse it and the time taken to merge it
+     *
+     *  @author:     José Ferro Pinto (233843)
+     *  @author:     Dorian Laforest (234832)
+     */
+    public final static class FileReport {
+        final private String fileName;
+        final private int nodesCount;
+        final private int waysCount;
+        final private int relationsCount;
+        final private long milliseconds;
+        final private long mergeMilliseconds;
+
+        /**
+         * Constructor for FileReport
+         * @param fileName the path of the file
+         * @param nodesCount the number of distinct nodes of the file
+         * @param waysCount the number of ways of the file
+         * @param relationsCount the number of distinct relations of the file
+         * @param milliseconds the time taken to parse the file
+         * @param mergeMilliseconds the time taken to merge the file with the previous ones
+         */
+        private FileReport(String fileName, int nodesCount, int waysCount, int relationsCount, long milliseconds, long mergeMilliseconds) {
+            this.fileName = fileName;
+            this.nodesCount = nodesCount;
+            this.waysCount = waysCount;
+            this.relationsCount = relationsCount;
+            this.milliseconds = milliseconds;
+            this.mergeMilliseconds = mergeMilliseconds;
+        }
+
+        /**
+         * Returns the path of the file
+         * @return the file name
+         */
+        public String fileName() {
+            return fileName;
+        }
+
+        /**
+         * Returns the number of distinct nodes of the file
+         * @return the number of nodes
+         */
+        public int nodesCount() {
+            return nodesCount;
+        }
+
+        /**
+         * Returns the number of ways of the file, complete or not
+         * @return the number of ways
+         */
+        public int waysCount() {
+            return waysCount;
+        }
+
+        /**
+         * Returns the number of distinct relations of the file, complete or not
+         * @return the number of relations
+         */
+        public int relationsCount() {
+            return relationsCount;
+        }
+
+        /**
+         * Returns the time taken to parse the file
+         * @return the time in milliseconds
+         */
+        public long milliseconds() {
+            return milliseconds;
+        }
+
+        /**
+         * Returns the time taken to merge the file with the previous ones, on the calling thread
+         * @return the time in milliseconds
+         */
+        public long mergeMilliseconds() {
+            return mergeMilliseconds;
+        }
+
+        /**
+         * Returns a description of the report, to be logged
+         * @return the description
+         */
+        @Override
+        public String toString() {
+            return fileName + " : " + nodesCount + " nodes, " + waysCount + " ways, " + relationsCount + " relations, parsed in " + milliseconds + " ms, merged in " + mergeMilliseconds + " ms";
+        }
+    }
+}
@@ -0,0 +1,288 @@
+/**
+ *  A columnar storage of OSM nodes : the ids, longitudes and latitudes are kept
+ *  in parallel primitive arrays and the attributes only for the nodes having some.
+ *  The coordinates are stored as fixed-point integers (see FixedPointCoordinate)
+ *  and only converted to radians when a position is asked for.
+ *  Each node is designated by its index in the store, OSMNode objects are only
+ *  created when asked for.
+ *
+ *  @author:     José Ferro Pinto (233843)
+ *  @author:     Dorian Laforest (234832)
+ */
+package ch.epfl.imhof.osm;
+
+import ch.epfl.imhof.Attributes;
+import ch.epfl.imhof.PointGeo;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+final class OSMNodeStore {
+    private final static Attributes EMPTY_ATTRIBUTES = new Attributes(Collections.emptyMap());
+    private final static int MAX_LONGITUDE = 180 * FixedPointCoordinate.UNITS_PER_DEGREE;
+    private final static int MAX_LATITUDE = 90 * FixedPointCoordinate.UNITS_PER_DEGREE;
+    private LongIndex ids;
+    private int[] longitudes;
+    private int[] latitudes;
+    private LongMap<Attributes> attributes = new LongMap<>();
+    //Only allocated when nodes are added as objects, to give them back unchanged
+    private OSMNode[] nodes = null;
+
+    /**
+     * Constructor for an empty OSMNodeStore
+     */
+    OSMNodeStore() {
+        this(0);
+    }
+
+    /**
+     * Constructor for an empty OSMNodeStore able to hold the given number of nodes without growing
+     * @param expectedSize the number of nodes expected
+     * @throws IllegalArgumentException if expectedSize is negative
+     */
+    OSMNodeStore(int expectedSize) throws IllegalArgumentException {
+        ids = new LongIndex(expectedSize);
+        longitudes = new int[ids.capacity()];
+        latitudes = new int[ids.capacity()];
+    }
+
+    /**
+     * Returns the number of nodes
+     * @return the number of nodes
+     */
+    int size() {
+        return ids.size();
+    }
+
+    /**
+     * Adds a node or replaces the node with the same id.
+     * The coordinates are rounded to 1e-7 degree
+     * @param id unique ID from OSM
+     * @param longitude the node's longitude in radians
+     * @param latitude the node's latitude in radians
+     * @param attributes the node's attributes, null if it has none
+     * @return the index of the node
+     * @throws IllegalArgumentException if longitude is not in [-π; π] or latitude not in [-π/2; π/2]
+     */
+    int add(long id, double longitude, double latitude, Attributes attributes) throws IllegalArgumentException {
+        if (Math.abs(longitude) > Math.PI || Math.abs(latitude) > Math.PI / 2) {
+            throw new IllegalArgumentException("Out of bounds");
+        }
+        return addFixedPoint(id, FixedPointCoordinate.fromRadians(longitude), FixedPointCoordinate.fromRadians(latitude), attributes);
+    }
+
+    /**
+     * Adds a node or replaces the node with the same id
+     * @param id unique ID from OSM
+     * @param longitude the node's longitude in units of 1e-7 degree
+     * @param latitude the node's latitude in units of 1e-7 degree
+     * @param attributes the node's attributes, null if it has none
+     * @return the index of the node
+     * @throws IllegalArgumentException if longitude is not in [-180°; 180°] or latitude not in [-90°; 90°]
+     */
+    int addFixedPoint(long id, int longitude, int latitude, Attributes attributes) throws IllegalArgumentException {
+        if (Math.abs(longitude) > MAX_LONGITUDE || Math.abs(latitude) > MAX_LATITUDE) {
+            throw new IllegalArgumentException("Out of bounds");
+        }
+        int index = ids.add(id);
+        if(index >= longitudes.length) {
+            longitudes = Arrays.copyOf(longitudes, ids.capacity());
+            latitudes = Arrays.copyOf(latitudes, ids.capacity());
+        }
+        longitudes[index] = longitude;
+        latitudes[index] = latitude;
+        if(attributes != null && !attributes.isEmpty()) {
+            this.attributes.put(index, attributes);
+        }
+        else if(this.attributes.containsKey(index)) {
+            this.attributes.put(index, null);
+        }
+        if(nodes != null && index < nodes.length) {
+            nodes[index] = null;
+        }
+        return index;
+    }
+
+    /**
+     * Adds a node or replaces the node with the same id.
+     * The node object itself is kept and returned by node(int)
+     * @param node the node to add
+     * @return the index of the node
+     */
+    int add(OSMNode node) {
+        PointGeo position = node.position();
+        int index = add(node.id(), position.longitude(), position.latitude(), node.attributes());
+        keepObject(index, node);
+        return index;
+    }
+
+    /**
+     * Adds a node of another store or replaces the node with the same id.
+     * If the node was added to the other store as an object, this object is kept too
+     * @param source the store containing the node
+     * @param index the node's index in source
+     * @return the index of the node in this store
+     */
+    int copy(OSMNodeStore source, int index) {
+        int copy = addFixedPoint(source.id(index), source.longitudes[index], source.latitudes[index], source.attributes.get(index));
+        if(source.nodes != null && index < source.nodes.length && source.nodes[index] != null) {
+            keepObject(copy, source.nodes[index]);
+        }
+        return copy;
+    }
+
+    /**
+     * Keeps only some of the nodes and releases the memory of the other ones. The retained nodes keep their order
+     * but not their indices, so the ways using the store must be given the new indices (see OSMWay.remapNodeIndices)
+     * @param retained for each index, true if the node is retained
+     * @return the number of discarded nodes
+     * @throws IllegalArgumentException if the length of retained is not size()
+     */
+    int retainAll(boolean[] retained) throws IllegalArgumentException {
+        if(retained.length != size()) {
+            throw new IllegalArgumentException("One flag per node is expected");
+        }
+        int retainedCount = 0;
+        for(boolean isRetained : retained) {
+            if(isRetained) {
+                retainedCount++;
+            }
+        }
+        int discardedCount = size() - retainedCount;
+        if(discardedCount == 0) {
+            return 0;
+        }
+        LongMap<Attributes> retainedAttributes = new LongMap<>();
+        //Each retained node moves to an index lower or equal to its own, so the columns are compacted in place
+        int index = 0;
+        for(int i = 0; i < retained.length; i++) {
+            if(retained[i]) {
+                longitudes[index] = longitudes[i];
+                latitudes[index] = latitudes[i];
+                Attributes nodeAttributes = attributes.get(i);
+                if(nodeAttributes != null) {
+                    retainedAttributes.put(index, nodeAttributes);
+                }
+                if(nodes != null && index < nodes.length) {
+                    nodes[index] = i < nodes.length ? nodes[i] : null;
+                }
+                index++;
+            }
+        }
+        ids.retainAll(retained);
+        attributes = retainedAttributes;
+        longitudes = Arrays.copyOf(longitudes, ids.capacity());
+        latitudes = Arrays.copyOf(latitudes, ids.capacity());
+        if(nodes != null) {
+            nodes = Arrays.copyOf(nodes, Math.min(nodes.length, ids.capacity()));
+            Arrays.fill(nodes, Math.min(retainedCount, nodes.length), nodes.length, null);
+        }
+        return discardedCount;
+    }
+
+    /**
+     * Keeps the object of a node, to give it back unchanged
+     * @param index the node's index
+     * @param node the node
+     */
+    private void keepObject(int index, OSMNode node) {
+        if(nodes == null) {
+            nodes = new OSMNode[longitudes.length];
+        }
+        else if(index >= nodes.length) {
+            nodes = Arrays.copyOf(nodes, longitudes.length);
+        }
+        nodes[index] = node;
+    }
+
+    /**
+     * Returns the index of the node with the given id
+     * @param id the id to search
+     * @return the index of the node, -1 if it does not exist
+     */
+    int indexOf(long id) {
+        return ids.indexOf(id);
+    }
+
+    /**
+     * Returns the id of a node
+     * @param index the node's index
+     * @return the node's id
+     * @throws IndexOutOfBoundsException if the index is not in [0; size()[
+     */
+    long id(int index) throws IndexOutOfBoundsException {
+        return ids.keyAt(index);
+    }
+
+    /**
+     * Returns the longitude of a node
+     * @param index the node's index
+     * @return the node's longitude in radians
+     */
+    double longitude(int index) {
+        return FixedPointCoordinate.toRadians(longitudes[index]);
+    }
+
+    /**
+     * Returns the latitude of a node
+     * @param index the node's index
+     * @return the node's latitude in radians
+     */
+    double latitude(int index) {
+        return FixedPointCoordinate.toRadians(latitudes[index]);
+    }
+
+    /**
+     * Returns the longitude of a node
+     * @param index the node's index
+     * @return the node's longitude in units of 1e-7 degree
+     */
+    int fixedPointLongitude(int index) {
+        return longitudes[index];
+    }
+
+    /**
+     * Returns the latitude of a node
+     * @param index the node's index
+     * @return the node's latitude in units of 1e-7 degree
+     */
+    int fixedPointLatitude(int index) {
+        return latitudes[index];
+    }
+
+    /**
+     * Returns the position of a node
+     * @param index the node's index
+     * @return the node's position
+     */
+    PointGeo position(int index) {
+        if(nodes != null && index < nodes.length && nodes[index] != null) {
+            return nodes[index].position();
+        }
+        return new PointGeo(longitude(index), latitude(index));
+    }
+
+    /**
+     * Returns the attributes of a node
+     * @param index the node's index
+     * @return the node's attributes, empty if it has none
+     */
+    Attributes attributes(int index) {
+        Attributes nodeAttributes = attributes.get(index);
+        return nodeAttributes == null ? EMPTY_ATTRIBUTES : nodeAttributes;
+    }
+
+    /**
+     * Returns a node. If it was added as an object, this object is returned,
+     * otherwise a new OSMNode is created
+     * @param index the node's index
+     * @return the node
+     * @throws IndexOutOfBoundsException if the index is not in [0; size()[
+     */
+    OSMNode node(int index) throws IndexOutOfBoundsException {
+        if(nodes != null && index < nodes.length && nodes[index] != null) {
+            return nodes[index];
+        }
+        return new OSMNode(id(index), new PointGeo(longitude(index), latitude(index)), attributes(index));
+    }
+}
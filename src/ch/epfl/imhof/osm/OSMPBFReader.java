@@ -0,0 +1,307 @@
+/**
+ *  Represents a reader of OSM files in the PBF format
+ *  (https://wiki.openstreetmap.org/wiki/PBF_Format), producing the same OSMMap
+ *  as OSMMapReader for the same data. The blocks of the file are decompressed
+ *  and decoded in parallel, then added to the map in the order of the file.
+ *  This class is not instantiable
+ *
+ *  @author:     José Ferro Pinto (233843)
+ *  @author:     Dorian Laforest (234832)
+ */
+package ch.epfl.imhof.osm;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+public final class OSMPBFReader {
+    private final static String HEADER_TYPE = "OSMHeader";
+    private final static String DATA_TYPE = "OSMData";
+    private final static Set<String> SUPPORTED_FEATURES = new HashSet<>(Arrays.asList("OsmSchema-V0.6", "DenseNodes"));
+    //Maximum sizes given by the format's specification
+    private final static int MAX_HEADER_SIZE = 64 * 1024;
+    private final static int MAX_BLOB_SIZE = 32 * 1024 * 1024;
+    private final static int THREADS = Runtime.getRuntime().availableProcessors();
+    //Number of blocks decoded in advance by each thread, which bounds the memory used
+    private final static int BLOCKS_PER_THREAD = 2;
+
+    /**
+     * The private OSMPBFReader constructor
+     */
+    private OSMPBFReader() {
+    }
+
+    /**
+     * Static method to read an OSM file in PBF format
+     * @param fileName The path of the PBF file
+     * @return a new OSMMap constructed with the file's informations
+     * @throws IOException if something went wrong with the file (eg the file doesn't exist, is malformed, or uses unsupported features)
+     */
+    public static OSMMap readPBFFile(String fileName) throws IOException {
+        return readPBFFile(fileName, OSMReadOptions.DEFAULT);
+    }
+
+    /**
+     * Static method to read an OSM file in PBF format, with the given options
+     * (see OSMReadOptions.Builder.setUsesSnapshot for the use of a snapshot)
+     * @param fileName The path of the PBF file
+     * @param options the options of the reading
+     * @return a new OSMMap constructed with the file's informations
+     * @throws IOException if something went wrong with the file (eg the file doesn't exist, is malformed, or uses unsupported features)
+     */
+    public static OSMMap readPBFFile(String fileName, OSMReadOptions options) throws IOException {
+        return OSMMapSnapshot.readFile(fileName, options, o -> assemblePBFFile(fileName, o).build());
+    }
+
+    /**
+     * Gives the entities of an OSM file in PBF format to a new assembler, configured with the given options
+     * and sized from the size of the file
+     * @param fileName The path of the PBF file
+     * @param options the options of the reading
+     * @return the assembler, whose map is not built yet
+     * @throws IOException if something went wrong with the file (eg the file doesn't exist, is malformed, or uses unsupported features)
+     */
+    static OSMMapAssembler assemblePBFFile(String fileName, OSMReadOptions options) throws IOException {
+        try(InputStream i = new BufferedInputStream(new FileInputStream(fileName))) {
+            OSMMapAssembler assembler = options.newAssembler(OSMSizeEstimate.ofPBFFile(fileName));
+            parsePBF(i, assembler);
+            return assembler;
+        }
+    }
+
+    /**
+     * Reads an OSM PBF document
+     * @param i the stream of the document
+     * @return a new OSMMap constructed with the document's informations
+     * @throws IOException if something went wrong with the stream, or if the document is malformed or uses unsupported features
+     */
+    static OSMMap readPBF(InputStream i) throws IOException {
+        return readPBF(i, OSMReadOptions.DEFAULT);
+    }
+
+    /**
+     * Reads an OSM PBF document
+     * @param i the stream of the document
+     * @param options the options of the reading
+     * @return a new OSMMap constructed with the document's informations
+     * @throws IOException if something went wrong with the stream, or if the document is malformed or uses unsupported features
+     */
+    static OSMMap readPBF(InputStream i, OSMReadOptions options) throws IOException {
+        OSMMapAssembler assembler = options.newAssembler();
+        parsePBF(i, assembler);
+        return assembler.build();
+    }
+
+    /**
+     * Gives the entities of an OSM PBF document to an assembler
+     * @param i the stream of the document
+     * @param assembler the assembler
+     * @throws IOException if something went wrong with the stream, or if the document is malformed or uses unsupported features
+     */
+    static void parsePBF(InputStream i, OSMMapAssembler assembler) throws IOException {
+        DataInputStream input = new DataInputStream(i);
+        //With a single processor the blocks are decoded as they are read
+        ExecutorService executor = THREADS > 1 ? Executors.newFixedThreadPool(THREADS, r -> {
+            Thread t = new Thread(r, "PBF decoder");
+            t.setDaemon(true);
+            return t;
+        }) : null;
+        Queue<Future<PBFPrimitiveBlock>> pending = new ArrayDeque<>();
+        try {
+            byte[] header;
+            boolean headerRead = false;
+            while((header = readBlobHeader(input)) != null) {
+                String type = null;
+                int dataSize = -1;
+                ProtobufReader r = new ProtobufReader(header);
+                while(r.next()) {
+                    if(r.field() == 1) {
+                        type = r.string();
+                    }
+                    else if(r.field() == 3) {
+                        dataSize = (int)r.varint();
+                    }
+                    else {
+                        r.skip();
+                    }
+                }
+                if(type == null || dataSize < 0 || dataSize > MAX_BLOB_SIZE) {
+                    throw new IOException("Invalid blob header");
+                }
+                byte[] blob = new byte[dataSize];
+                input.readFully(blob);
+                if(type.equals(HEADER_TYPE)) {
+                    checkHeader(blobData(blob));
+                    headerRead = true;
+                }
+                else if(type.equals(DATA_TYPE)) {
+                    if(!headerRead) {
+                        throw new IOException("Data before the header block");
+                    }
+                    if(executor == null) {
+                        PBFPrimitiveBlock.decode(blobData(blob)).applyTo(assembler);
+                    }
+                    else {
+                        pending.add(executor.submit(() -> PBFPrimitiveBlock.decode(blobData(blob))));
+                        if(pending.size() >= THREADS * BLOCKS_PER_THREAD) {
+                            result(pending.remove()).applyTo(assembler);
+                        }
+                    }
+                }
+                //The blobs of unknown types must be skipped
+            }
+            while(!pending.isEmpty()) {
+                result(pending.remove()).applyTo(assembler);
+            }
+        }
+        finally {
+            if(executor != null) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Reads the size and the content of a BlobHeader
+     * @param input the stream of the document
+     * @return the BlobHeader message, null at the end of the document
+     * @throws IOException if the header is truncated or too big
+     */
+    private static byte[] readBlobHeader(DataInputStream input) throws IOException {
+        int first = input.read();
+        if(first < 0) {
+            return null;
+        }
+        int size = (first << 24) | (input.readUnsignedByte() << 16) | (input.readUnsignedShort());
+        if(size < 0 || size > MAX_HEADER_SIZE) {
+            throw new IOException("Invalid blob header size " + size);
+        }
+        byte[] header = new byte[size];
+        input.readFully(header);
+        return header;
+    }
+
+    /**
+     * Returns the uncompressed data of a Blob
+     * @param blob the Blob message
+     * @return the data
+     * @throws IOException if the Blob is malformed or uses an unsupported compression
+     */
+    static byte[] blobData(byte[] blob) throws IOException {
+        byte[] raw = null;
+        byte[] zlib = null;
+        int rawSize = -1;
+        ProtobufReader r = new ProtobufReader(blob);
+        while(r.next()) {
+            switch(r.field()) {
+            case 1:
+                raw = r.bytes();
+                break;
+            case 2:
+                rawSize = (int)r.varint();
+                break;
+            case 3:
+                zlib = r.bytes();
+                break;
+            case 4: case 5: case 6: case 7:
+                throw new IOException("Unsupported blob compression");
+            default:
+                r.skip();
+                break;
+            }
+        }
+        if(raw != null) {
+            return raw;
+        }
+        if(zlib == null || rawSize < 0 || rawSize > MAX_BLOB_SIZE) {
+            throw new IOException("Invalid blob");
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(zlib);
+            byte[] data = new byte[rawSize];
+            int size = 0;
+            while(size < rawSize && !inflater.finished()) {
+                int inflated = inflater.inflate(data, size, rawSize - size);
+                if(inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                size += inflated;
+            }
+            if(size != rawSize) {
+                throw new IOException("Truncated blob");
+            }
+            return data;
+        }
+        catch(DataFormatException e) {
+            throw new IOException("Invalid compressed blob", e);
+        }
+        finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Checks that the features required by the file are supported
+     * @param data the HeaderBlock message
+     * @throws IOException if the message is malformed or a required feature is not supported
+     */
+    private static void checkHeader(byte[] data) throws IOException {
+        ProtobufReader r = new ProtobufReader(data);
+        while(r.next()) {
+            if(r.field() == 4) {
+                String feature = r.string();
+                if(!SUPPORTED_FEATURES.contains(feature)) {
+                    throw new IOException("Unsupported feature " + feature);
+                }
+            }
+            else {
+                r.skip();
+            }
+        }
+    }
+
+    /**
+     * Waits for a block to be decoded
+     * @param block the decoding of the block
+     * @return the decoded block
+     * @throws IOException if the decoding failed or the thread was interrupted
+     */
+    private static PBFPrimitiveBlock result(Future<PBFPrimitiveBlock> block) throws IOException {
+        try {
+            return block.get();
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        catch(ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof IOException) {
+                throw (IOException)cause;
+            }
+            if(cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            }
+            if(cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
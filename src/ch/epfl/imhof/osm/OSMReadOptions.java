@@ -0,0 +1,215 @@
+/**
+ *  Represents the options of the reading of an OSM file, common to all the
+ *  readers : the entities and attributes to keep, the resolution of the references
+ *  and the use of a snapshot
+ *
+ *  @author:     José Ferro Pinto (233843)
+ *  @author:     Dorian Laforest (234832)
+ */
+package ch.epfl.imhof.osm;
+
+import ch.epfl.imhof.BoundingBoxGeo;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+public final class OSMReadOptions {
+    /**
+     * The default options : the whole file is kept
+     */
+    public final static OSMReadOptions DEFAULT = new Builder().build();
+    private final BoundingBoxGeo boundingBox;
+    private final Set<String> attributeKeys;
+    private final boolean defersReferences;
+    private final boolean usesSnapshot;
+
+    /**
+     * Constructor for OSMReadOptions
+     * @param boundingBox the box outside of which entities are dropped, null to keep everything
+     * @param attributeKeys the keys of the attributes to keep, null to keep all of them
+     * @param defersReferences true if the references are resolved once the whole file is read
+     * @param usesSnapshot true if the file is read from its snapshot when possible
+     */
+    private OSMReadOptions(BoundingBoxGeo boundingBox, Set<String> attributeKeys, boolean defersReferences, boolean usesSnapshot) {
+        this.boundingBox = boundingBox;
+        this.attributeKeys = attributeKeys;
+        this.defersReferences = defersReferences;
+        this.usesSnapshot = usesSnapshot;
+    }
+
+    /**
+     * Returns the box outside of which entities are dropped
+     * @return the bounding box, null if everything is kept
+     */
+    public BoundingBoxGeo boundingBox() {
+        return boundingBox;
+    }
+
+    /**
+     * Returns the keys of the attributes kept
+     * @return the unmodifiable set of keys, null if all attributes are kept
+     */
+    public Set<String> attributeKeys() {
+        return attributeKeys;
+    }
+
+    /**
+     * Tests if the references of the ways and relations are resolved once the whole file is read
+     * @return true if the references are resolved at the end
+     */
+    public boolean defersReferences() {
+        return defersReferences;
+    }
+
+    /**
+     * Tests if the file is read from its snapshot when possible
+     * @return true if a snapshot is used
+     */
+    public boolean usesSnapshot() {
+        return usesSnapshot;
+    }
+
+    /**
+     * Returns a description of the bounding box, of the attribute keys and of the resolution of the references, which is the same
+     * for all the options reading the same map from a file (eg. to name a cache of the map)
+     * @return the description of the options
+     */
+    public String description() {
+        StringBuilder b = new StringBuilder("box=");
+        if(boundingBox == null) {
+            b.append("all");
+        }
+        else {
+            b.append(boundingBox.bottomLeft().longitude()).append(',').append(boundingBox.bottomLeft().latitude()).append(',')
+                    .append(boundingBox.topRight().longitude()).append(',').append(boundingBox.topRight().latitude());
+        }
+        b.append(";keys=").append(attributeKeys == null ? "all" : String.join(",", new TreeSet<>(attributeKeys)));
+        b.append(";references=").append(defersReferences ? "deferred" : "immediate");
+        return b.toString();
+    }
+
+    /**
+     * Returns a new map builder configured with these options
+     * @return a new map builder
+     */
+    OSMMap.Builder newMapBuilder() {
+        return newMapBuilder(OSMSizeEstimate.NONE);
+    }
+
+    /**
+     * Returns a new map builder configured with these options, sized for the estimated entities
+     * @param estimate the estimate of the entities of the file
+     * @return a new map builder
+     */
+    OSMMap.Builder newMapBuilder(OSMSizeEstimate estimate) {
+        OSMMap.Builder mapBuilder = new OSMMap.Builder(estimate.nodesCount(), estimate.waysCount(), estimate.relationsCount());
+        mapBuilder.setBoundingBox(boundingBox);
+        return mapBuilder;
+    }
+
+    /**
+     * Returns a new assembler configured with these options, adding the entities to a new map builder
+     * @return a new assembler
+     */
+    OSMMapAssembler newAssembler() {
+        return newAssembler(OSMSizeEstimate.NONE);
+    }
+
+    /**
+     * Returns a new assembler configured with these options, adding the entities to a new map builder,
+     * both sized for the estimated entities
+     * @param estimate the estimate of the entities of the file
+     * @return a new assembler
+     */
+    OSMMapAssembler newAssembler(OSMSizeEstimate estimate) {
+        return new OSMMapAssembler(newMapBuilder(estimate), attributeKeys, defersReferences, estimate);
+    }
+
+    /**
+     * Returns the same options without the bounding box
+     * @return options keeping the whole file
+     */
+    OSMReadOptions withoutBoundingBox() {
+        return boundingBox == null ? this : new OSMReadOptions(null, attributeKeys, defersReferences, usesSnapshot);
+    }
+
+    /**
+     * Returns the options to read one of several files merged into a single map : the same attribute keys,
+     * but without the bounding box, which is applied to the merged map, nor snapshot, and with the
+     * references resolved once all the files are read
+     * @return options to read a part of the map
+     */
+    OSMReadOptions forPart() {
+        return new OSMReadOptions(null, attributeKeys, true, false);
+    }
+
+    /**
+     * Restricts a map read without the bounding box to the bounding box of these options
+     * @param map the map
+     * @return the map restricted to the bounding box, map itself if there is none
+     */
+    OSMMap restrict(OSMMap map) {
+        return boundingBox == null ? map : new BoundingBoxFilter(boundingBox).filter(map.ways(), map.relations());
+    }
+
+    /**
+     *  Represents OSMReadOptions Builder class
+     *
+     *  @author:     José Ferro Pinto (233843)
+     *  @author:     Dorian Laforest (234832)
+     */
+    public final static class Builder {
+        private BoundingBoxGeo boundingBox = null;
+        private Set<String> attributeKeys = null;
+        private boolean defersReferences = false;
+        private boolean usesSnapshot = false;
+
+        /**
+         * Keeps only the ways and relations intersecting a box (see OSMMap.Builder.setBoundingBox)
+         * @param boundingBox the box, usually the area to draw with a margin, null to keep everything
+         */
+        public void setBoundingBox(BoundingBoxGeo boundingBox) {
+            this.boundingBox = boundingBox;
+        }
+
+        /**
+         * Keeps only the attributes whose key is in the given set, the other ones being dropped while
+         * the file is read. OSMToGeoTransformer.ATTRIBUTE_KEYS keeps the attributes used to draw the map
+         * @param attributeKeys the keys of the attributes to keep, null to keep all of them
+         */
+        public void setAttributeKeys(Set<String> attributeKeys) {
+            this.attributeKeys = attributeKeys == null ? null : Collections.unmodifiableSet(new HashSet<>(attributeKeys));
+        }
+
+        /**
+         * Resolves the references of the ways to their nodes and of the relations to their members
+         * once the whole file is read, instead of as soon as they are read. The entities can then be
+         * in any order, eg. in concatenated or unsorted files, at the cost of keeping the ids of the
+         * references until the end
+         * @param defersReferences true to resolve the references at the end
+         */
+        public void setDefersReferences(boolean defersReferences) {
+            this.defersReferences = defersReferences;
+        }
+
+        /**
+         * Reads the file from a snapshot (a binary copy of the map, next to the file) when there is one
+         * more recent than the file, and writes the snapshot otherwise. A snapshot is made with the
+         * attribute keys but without the bounding box, which is applied when it is read
+         * @param usesSnapshot true to use a snapshot
+         */
+        public void setUsesSnapshot(boolean usesSnapshot) {
+            this.usesSnapshot = usesSnapshot;
+        }
+
+        /**
+         * Builds and returns new OSMReadOptions
+         * @return new OSMReadOptions
+         */
+        public OSMReadOptions build() {
+            return new OSMReadOptions(boundingBox, attributeKeys, defersReferences, usesSnapshot);
+        }
+    }
+}
@@ -0,0 +1,383 @@
+/**
+ *  Records the ways and relations of an OSM file with the ids of their nodes and
+ *  members, in primitive arrays, and resolves all these references once the whole
+ *  file is read. The entities can then be in any order in the file : a way may come
+ *  before its nodes and a relation before its members.
+ *  If an entity is recorded several times, the last one is kept, or none if the last
+ *  one is incomplete.
+ *  The nodes of large numbers of ways are looked up in parallel, by ranges of ways on
+ *  the common fork-join pool, the ways being then added to the map in their order.
+ *
+ *  @author:     José Ferro Pinto (233843)
+ *  @author:     Dorian Laforest (234832)
+ */
+package ch.epfl.imhof.osm;
+
+import ch.epfl.imhof.Attributes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+final class OSMReferenceResolver {
+    private final static OSMRelation.Member.Type[] MEMBER_TYPES = OSMRelation.Member.Type.values();
+    private final static byte NOT_RESOLVED = 0;
+    private final static byte RESOLVING = 1;
+    private final static byte RESOLVED = 2;
+    private final static int INITIAL_CAPACITY = 16;
+    private final static int THREADS = Runtime.getRuntime().availableProcessors();
+    //Below this number of ways a range is resolved by a single task
+    private final static int WAYS_PER_TASK = 2048;
+
+    //The ways, and the ids of their nodes one after the other
+    private long[] wayIds;
+    private Attributes[] wayAttributes;
+    private int[] wayReferenceEnds;
+    private int waysCount = 0;
+    private long[] wayReferences;
+    private int wayReferencesCount = 0;
+
+    //The relations, indexed by id, and their members one after the other
+    private final LongIndex relationIds;
+    private int[] relationRecords;
+    private Attributes[] relationAttributes;
+    private int[] memberEnds;
+    private int relationRecordsCount = 0;
+    private byte[] memberTypes;
+    private long[] memberReferences;
+    private String[] memberRoles;
+    private int membersCount = 0;
+
+    /**
+     * Constructor for an empty OSMReferenceResolver
+     */
+    OSMReferenceResolver() {
+        this(OSMSizeEstimate.NONE);
+    }
+
+    /**
+     * Constructor for an empty OSMReferenceResolver able to record the estimated entities without growing
+     * @param estimate the estimate of the entities of the file
+     */
+    OSMReferenceResolver(OSMSizeEstimate estimate) {
+        int ways = Math.max(estimate.waysCount(), INITIAL_CAPACITY);
+        wayIds = new long[ways];
+        wayAttributes = new Attributes[ways];
+        wayReferenceEnds = new int[ways];
+        wayReferences = new long[Math.max(estimate.nodeReferencesCount(), INITIAL_CAPACITY)];
+        relationIds = new LongIndex(estimate.relationsCount());
+        relationRecords = new int[relationIds.capacity()];
+        relationAttributes = new Attributes[relationIds.capacity()];
+        memberEnds = new int[relationIds.capacity()];
+        int members = Math.max(estimate.membersCount(), INITIAL_CAPACITY);
+        memberTypes = new byte[members];
+        memberReferences = new long[members];
+        memberRoles = new String[members];
+    }
+
+    /**
+     * Records a node of the current way
+     * @param ref the node's id
+     */
+    void addNodeReference(long ref) {
+        if(wayReferencesCount == wayReferences.length) {
+            wayReferences = Arrays.copyOf(wayReferences, wayReferencesCount * 2);
+        }
+        wayReferences[wayReferencesCount++] = ref;
+    }
+
+    /**
+     * Records a way, whose nodes are the ones recorded since the previous way
+     * @param id the way's id
+     * @param attributes the way's attributes
+     */
+    void endWay(long id, Attributes attributes) {
+        if(waysCount == wayIds.length) {
+            int capacity = waysCount * 2;
+            wayIds = Arrays.copyOf(wayIds, capacity);
+            wayAttributes = Arrays.copyOf(wayAttributes, capacity);
+            wayReferenceEnds = Arrays.copyOf(wayReferenceEnds, capacity);
+        }
+        wayIds[waysCount] = id;
+        wayAttributes[waysCount] = attributes;
+        wayReferenceEnds[waysCount++] = wayReferencesCount;
+    }
+
+    /**
+     * Records a member of the current relation
+     * @param type the member's type
+     * @param ref the member's id
+     * @param role the member's role
+     */
+    void addMember(OSMRelation.Member.Type type, long ref, String role) {
+        if(membersCount == memberTypes.length) {
+            int capacity = membersCount * 2;
+            memberTypes = Arrays.copyOf(memberTypes, capacity);
+            memberReferences = Arrays.copyOf(memberReferences, capacity);
+            memberRoles = Arrays.copyOf(memberRoles, capacity);
+        }
+        memberTypes[membersCount] = (byte)type.ordinal();
+        memberReferences[membersCount] = ref;
+        memberRoles[membersCount++] = role;
+    }
+
+    /**
+     * Records a relation, whose members are the ones recorded since the previous relation
+     * @param id the relation's id
+     * @param attributes the relation's attributes
+     */
+    void endRelation(long id, Attributes attributes) {
+        if(relationRecordsCount == relationAttributes.length) {
+            int capacity = relationRecordsCount * 2;
+            relationAttributes = Arrays.copyOf(relationAttributes, capacity);
+            memberEnds = Arrays.copyOf(memberEnds, capacity);
+        }
+        relationAttributes[relationRecordsCount] = attributes;
+        memberEnds[relationRecordsCount] = membersCount;
+        int index = relationIds.add(id);
+        if(index >= relationRecords.length) {
+            relationRecords = Arrays.copyOf(relationRecords, relationRecords.length * 2);
+        }
+        relationRecords[index] = relationRecordsCount++;
+    }
+
+    /**
+     * Records all the ways and relations recorded by another resolver, after the ones of this resolver
+     * @param other the other resolver
+     */
+    void addAll(OSMReferenceResolver other) {
+        //The ways are copied as blocks, their ends being shifted by the references already recorded
+        if(wayReferencesCount + other.wayReferencesCount > wayReferences.length) {
+            wayReferences = Arrays.copyOf(wayReferences, Math.max(wayReferencesCount * 2, wayReferencesCount + other.wayReferencesCount));
+        }
+        if(waysCount + other.waysCount > wayIds.length) {
+            int capacity = Math.max(waysCount * 2, waysCount + other.waysCount);
+            wayIds = Arrays.copyOf(wayIds, capacity);
+            wayAttributes = Arrays.copyOf(wayAttributes, capacity);
+            wayReferenceEnds = Arrays.copyOf(wayReferenceEnds, capacity);
+        }
+        System.arraycopy(other.wayReferences, 0, wayReferences, wayReferencesCount, other.wayReferencesCount);
+        System.arraycopy(other.wayIds, 0, wayIds, waysCount, other.waysCount);
+        System.arraycopy(other.wayAttributes, 0, wayAttributes, waysCount, other.waysCount);
+        for(int w = 0; w < other.waysCount; w++) {
+            wayReferenceEnds[waysCount + w] = wayReferencesCount + other.wayReferenceEnds[w];
+        }
+        waysCount += other.waysCount;
+        wayReferencesCount += other.wayReferencesCount;
+        //The records of the other resolver, in the order in which they were recorded
+        long[] recordIds = new long[other.relationRecordsCount];
+        boolean[] isRecorded = new boolean[other.relationRecordsCount];
+        for(int i = 0; i < other.relationIds.size(); i++) {
+            recordIds[other.relationRecords[i]] = other.relationIds.keyAt(i);
+            isRecorded[other.relationRecords[i]] = true;
+        }
+        int start = 0;
+        for(int record = 0; record < other.relationRecordsCount; record++) {
+            //Only the last record of each relation is kept by the other resolver
+            if(isRecorded[record]) {
+                for(int m = start; m < other.memberEnds[record]; m++) {
+                    addMember(MEMBER_TYPES[other.memberTypes[m]], other.memberReferences[m], other.memberRoles[m]);
+                }
+                endRelation(recordIds[record], other.relationAttributes[record]);
+            }
+            start = other.memberEnds[record];
+        }
+    }
+
+    /**
+     * Finds the nodes of a store referred to by the recorded ways and relations
+     * @param nodeStore the node store
+     * @return for each index of the store, true if the node is referred to
+     */
+    boolean[] referencedNodes(OSMNodeStore nodeStore) {
+        boolean[] referenced = new boolean[nodeStore.size()];
+        for(int r = 0; r < wayReferencesCount; r++) {
+            int index = nodeStore.indexOf(wayReferences[r]);
+            if(index >= 0) {
+                referenced[index] = true;
+            }
+        }
+        for(int m = 0; m < membersCount; m++) {
+            if(MEMBER_TYPES[memberTypes[m]] == OSMRelation.Member.Type.NODE) {
+                int index = nodeStore.indexOf(memberReferences[m]);
+                if(index >= 0) {
+                    referenced[index] = true;
+                }
+            }
+        }
+        return referenced;
+    }
+
+    /**
+     * Returns the number of recorded ways
+     * @return the number of ways, including the ones recorded several times
+     */
+    int waysCount() {
+        return waysCount;
+    }
+
+    /**
+     * Returns the number of recorded relations
+     * @return the number of distinct relations
+     */
+    int relationsCount() {
+        return relationIds.size();
+    }
+
+    /**
+     * Resolves the references of the recorded ways and relations, and adds the complete ones
+     * to a map builder, whose node store must contain all the nodes of the file. The entities
+     * whose last record is incomplete are removed from the builder
+     * @param mapBuilder the map builder
+     */
+    void resolve(OSMMap.Builder mapBuilder) {
+        OSMNodeStore nodeStore = mapBuilder.nodeStore();
+        OSMWay[] ways = new OSMWay[waysCount];
+        //With a single processor the tasks would only add the cost of their scheduling
+        if(THREADS > 1 && waysCount > WAYS_PER_TASK) {
+            ForkJoinPool.commonPool().invoke(new WaysResolution(nodeStore, ways, 0, waysCount));
+        }
+        else {
+            resolveWays(nodeStore, ways, 0, waysCount);
+        }
+        for(int w = 0; w < waysCount; w++) {
+            if(ways[w] != null) {
+                mapBuilder.addWay(ways[w]);
+            }
+            else {
+                //An earlier record of the way must not stand for this one
+                mapBuilder.removeWay(wayIds[w]);
+            }
+        }
+
+        byte[] states = new byte[relationIds.size()];
+        OSMRelation[] relations = new OSMRelation[relationIds.size()];
+        for(int i = 0; i < relationIds.size(); i++) {
+            resolveRelation(i, states, relations, mapBuilder);
+        }
+    }
+
+    /**
+     * Builds a range of the recorded ways with the nodes of a store. Only reads the store
+     * and the records, so that ranges may be resolved in parallel
+     * @param nodeStore the node store
+     * @param ways the array receiving each way at its index, or null if it is incomplete
+     * @param from the index of the first way of the range
+     * @param to the index following the last way of the range
+     */
+    private void resolveWays(OSMNodeStore nodeStore, OSMWay[] ways, int from, int to) {
+        int start = from == 0 ? 0 : wayReferenceEnds[from - 1];
+        for(int w = from; w < to; w++) {
+            int end = wayReferenceEnds[w];
+            int[] nodeIndices = end - start >= 2 ? new int[end - start] : null;
+            for(int r = start; nodeIndices != null && r < end; r++) {
+                nodeIndices[r - start] = nodeStore.indexOf(wayReferences[r]);
+                if(nodeIndices[r - start] < 0) {
+                    nodeIndices = null;
+                }
+            }
+            if(nodeIndices != null) {
+                ways[w] = new OSMWay(wayIds[w], nodeStore, nodeIndices, wayAttributes[w]);
+            }
+            start = end;
+        }
+    }
+
+    /**
+     * Resolves a relation after its member relations, and adds it to the map builder if it is complete
+     * @param index the relation's index in relationIds
+     * @param states the resolution state of each relation
+     * @param relations the resolved relations, null for the incomplete ones
+     * @param mapBuilder the map builder
+     * @return the relation, null if it is incomplete
+     */
+    private OSMRelation resolveRelation(int index, byte[] states, OSMRelation[] relations, OSMMap.Builder mapBuilder) {
+        if(states[index] != NOT_RESOLVED) {
+            //A relation which is being resolved is a member of itself : it can not be built
+            return relations[index];
+        }
+        states[index] = RESOLVING;
+        int record = relationRecords[index];
+        int start = record == 0 ? 0 : memberEnds[record - 1];
+        List<OSMRelation.Member> members = new ArrayList<>(memberEnds[record] - start);
+        for(int m = start; m < memberEnds[record] && members != null; m++) {
+            OSMRelation.Member.Type type = MEMBER_TYPES[memberTypes[m]];
+            OSMEntity member = null;
+            switch(type) {
+            case NODE:
+                int nodeIndex = mapBuilder.nodeStore().indexOf(memberReferences[m]);
+                if(nodeIndex >= 0) {
+                    member = mapBuilder.nodeStore().node(nodeIndex);
+                }
+                break;
+            case WAY:
+                member = mapBuilder.wayForId(memberReferences[m]);
+                break;
+            case RELATION:
+                int relationIndex = relationIds.indexOf(memberReferences[m]);
+                if(relationIndex >= 0) {
+                    member = resolveRelation(relationIndex, states, relations, mapBuilder);
+                }
+                break;
+            }
+            if(member != null) {
+                members.add(new OSMRelation.Member(type, memberRoles[m], member));
+            }
+            else {
+                members = null;
+            }
+        }
+        if(members != null) {
+            relations[index] = new OSMRelation(relationIds.keyAt(index), members, relationAttributes[record]);
+            mapBuilder.addRelation(relations[index]);
+        }
+        else {
+            mapBuilder.removeRelation(relationIds.keyAt(index));
+        }
+        states[index] = RESOLVED;
+        return relations[index];
+    }
+
+    /**
+     *  Represents the resolution of a range of ways, split in two halves resolved
+     *  in parallel as long as it is larger than WAYS_PER_TASK
+     */
+    private final class WaysResolution extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        final private OSMNodeStore nodeStore;
+        final private OSMWay[] ways;
+        final private int from;
+        final private int to;
+
+        /**
+         * Constructor for WaysResolution
+         * @param nodeStore the node store
+         * @param ways the array receiving each way at its index
+         * @param from the index of the first way of the range
+         * @param to the index following the last way of the range
+         */
+        private WaysResolution(OSMNodeStore nodeStore, OSMWay[] ways, int from, int to) {
+            this.nodeStore = nodeStore;
+            this.ways = ways;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * Resolves the range, directly if it is small enough and by two sub-tasks otherwise
+         */
+        @Override
+        protected void compute() {
+            if(to - from <= WAYS_PER_TASK) {
+                resolveWays(nodeStore, ways, from, to);
+            }
+            else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new WaysResolution(nodeStore, ways, from, middle),
+                        new WaysResolution(nodeStore, ways, middle, to));
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ *  Represents an estimate of the number of entities of an OSM file, computed
+ *  from the size of the file before it is read, used to give their final size
+ *  to the structures of the reading instead of growing them repeatedly.
+ *  The ratios are the usual ones of OSM extracts : an overestimate wastes
+ *  memory whereas an underestimate only makes the structures grow a few times,
+ *  so the estimate is rather low.
+ *
+ *  @author:     José Ferro Pinto (233843)
+ *  @author:     Dorian Laforest (234832)
+ */
+package ch.epfl.imhof.osm;
+
+import java.io.File;
+
+final class OSMSizeEstimate {
+    /**
+     * The estimate of an unknown file : the structures start with their default size
+     */
+    final static OSMSizeEstimate NONE = new OSMSizeEstimate(0);
+    //Bytes of an XML file per node, the nodes being the most numerous entities
+    private final static int XML_BYTES_PER_NODE = 120;
+    private final static int GZIP_COMPRESSION_RATIO = 8;
+    private final static int PBF_BYTES_PER_NODE = 8;
+    private final static int NODES_PER_WAY = 12;
+    private final static int NODE_REFERENCES_PER_WAY = 8;
+    private final static int WAYS_PER_RELATION = 10;
+    private final static int MEMBERS_PER_RELATION = 6;
+    //Beyond this number of nodes, the structures rather grow than risk allocating too much at once
+    private final static int MAX_NODES = 1 << 26;
+    final private int nodesCount;
+
+    /**
+     * Constructor for OSMSizeEstimate
+     * @param nodesCount the estimated number of nodes
+     */
+    private OSMSizeEstimate(long nodesCount) {
+        this.nodesCount = (int)Math.min(nodesCount, MAX_NODES);
+    }
+
+    /**
+     * Returns the estimate of an OSM file in XML format
+     * @param fileName the path of the file
+     * @param unGZip true if the file is compressed with GZip
+     * @return the estimate, NONE if the size of the file is unknown
+     */
+    static OSMSizeEstimate ofXMLFile(String fileName, boolean unGZip) {
+        long size = new File(fileName).length() * (unGZip ? GZIP_COMPRESSION_RATIO : 1);
+        return new OSMSizeEstimate(size / XML_BYTES_PER_NODE);
+    }
+
+    /**
+     * Returns the estimate of an OSM file in PBF format
+     * @param fileName the path of the file
+     * @return the estimate, NONE if the size of the file is unknown
+     */
+    static OSMSizeEstimate ofPBFFile(String fileName) {
+        return new OSMSizeEstimate(new File(fileName).length() / PBF_BYTES_PER_NODE);
+    }
+
+    /**
+     * Returns the estimate of several files read into the same map
+     * @param other the estimate of the other files
+     * @return the estimate of all the files
+     */
+    OSMSizeEstimate plus(OSMSizeEstimate other) {
+        return new OSMSizeEstimate((long)nodesCount + other.nodesCount);
+    }
+
+    /**
+     * Returns the estimated number of nodes
+     * @return the number of nodes
+     */
+    int nodesCount() {
+        return nodesCount;
+    }
+
+    /**
+     * Returns the estimated number of ways
+     * @return the number of ways
+     */
+    int waysCount() {
+        return nodesCount / NODES_PER_WAY;
+    }
+
+    /**
+     * Returns the estimated number of references of the ways to their nodes
+     * @return the number of node references
+     */
+    int nodeReferencesCount() {
+        return waysCount() * NODE_REFERENCES_PER_WAY;
+    }
+
+    /**
+     * Returns the estimated number of relations
+     * @return the number of relations
+     */
+    int relationsCount() {
+        return waysCount() / WAYS_PER_RELATION;
+    }
+
+    /**
+     * Returns the estimated number of members of the relations
+     * @return the number of members
+     */
+    int membersCount() {
+        return relationsCount() * MEMBERS_PER_RELATION;
+    }
+}
@@ -1,5 +1,14 @@
 /**
- *  Represents the OSMToGeoTransformer class : a converter from OSM data to a map
+ *  Represents the OSMToGeoTransformer class : a converter from OSM data to a map.
+ *  The ways of large maps are converted in parallel, by ranges on the common
+ *  fork-join pool, each way giving its geometry at its own index so that the
+ *  map keeps the order of the ways whatever the order of the conversions.
+ *  The multipolygon relations are assembled the same way, each one as a task,
+ *  and the outer and inner rings of the largest ones are built by two tasks.
+ *  Each node is projected once per transformation, even if it belongs to several
+ *  ways or rings (see ProjectedNodeCache).
+ *  A transformer has no state besides its projection and may be used by several
+ *  threads at once
  *  
  *  @author:     Jose Ferro Pinto (233843)
  *  @author:     Dorian Laforest (234832)
@@ -8,7 +17,6 @@ package ch.epfl.imhof.osm;
 
 import ch.epfl.imhof.Attributed;
 import ch.epfl.imhof.Attributes;
-import ch.epfl.imhof.Graph;
 import ch.epfl.imhof.Map;
 import ch.epfl.imhof.geometry.ClosedPolyLine;
 import ch.epfl.imhof.geometry.PolyLine;
@@ -16,10 +24,19 @@ import ch.epfl.imhof.geometry.Polygon;
 import ch.epfl.imhof.projection.Projection;
 
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 public final class OSMToGeoTransformer {
+    private final static int THREADS = Runtime.getRuntime().availableProcessors();
+    //Below this number of ways a range is converted by a single task
+    private final static int WAYS_PER_TASK = 2048;
+    //The assembly of a multipolygon costs much more than the conversion of a way
+    private final static int RELATIONS_PER_TASK = 16;
+    //Beyond this number of members, the rings of each role of a multipolygon are built by their own task
+    private final static int MEMBERS_PER_TASK = 256;
     private final Projection projectionType;
-    private Map.Builder mapBuilder;
     private final static Set<String> SURFACE_ATTRIBUTES = new HashSet<>(Arrays.asList(
             "aeroway", "amenity", "building", "harbour", "historic",
             "landuse", "leisure", "man_made", "military", "natural",
@@ -31,6 +48,11 @@ public final class OSMToGeoTransformer {
     private final static Set<String> POLYLINE_ATTRIBUTES = new HashSet<>(Arrays.asList(
             "bridge", "highway", "layer", "man_made", "railway",
             "tunnel", "waterway"));
+    /**
+     * The keys of all the attributes used by the transformation, to which the attributes
+     * of the OSM entities can be restricted when they are read (see OSMReadOptions)
+     */
+    public final static Set<String> ATTRIBUTE_KEYS = Collections.unmodifiableSet(attributeKeys());
 
     /**
      * Constructor for OSMTogeoTransformer
@@ -40,89 +62,171 @@ public final class OSMToGeoTransformer {
         projectionType = projection;
     }
 
+    /**
+     * Gathers the keys of the attributes used by the transformation
+     * @return the keys of the surface, polygon and polyline attributes, and "area" and "type"
+     */
+    private static Set<String> attributeKeys() {
+        Set<String> keys = new HashSet<>(SURFACE_ATTRIBUTES);
+        keys.addAll(POLYGON_ATTRIBUTES);
+        keys.addAll(POLYLINE_ATTRIBUTES);
+        keys.add("area");
+        keys.add("type");
+        return keys;
+    }
+
     /**
      * Transforms an OSMMap to a Map
      * @param map the map to transform
      * @return the transformed map
      */
     public Map transform(OSMMap map) {
-        mapBuilder = new Map.Builder();
-        waysConverter(map.ways());
-        relationsConverter(map.relations());
-        return mapBuilder.build();
+        return transformWithMetrics(map).map();
+    }
+
+    /**
+     * Transforms an OSMMap to a Map, measuring the projections of the nodes
+     * @param map the map to transform
+     * @return the transformed map, with the metrics of the transformation
+     */
+    public Result transformWithMetrics(OSMMap map) {
+        List<OSMWay> ways = map.ways();
+        ProjectedNodeCache cache = new ProjectedNodeCache(projectionType);
+        //Each way gives at most one PolyLine or Polygon, stored at the way's index
+        List<Attributed<PolyLine>> wayPolyLines = nulls(ways.size());
+        List<Attributed<Polygon>> wayPolygons = nulls(ways.size());
+        //With a single processor the tasks would only add the cost of their scheduling
+        if(THREADS > 1 && ways.size() > WAYS_PER_TASK) {
+            ForkJoinPool.commonPool().invoke(new WaysConversion(ways, 0, ways.size(), wayPolyLines, wayPolygons, cache));
+        }
+        else {
+            waysConverter(ways, 0, ways.size(), wayPolyLines, wayPolygons, cache);
+        }
+        Map.Builder mapBuilder = new Map.Builder(ways.size(), ways.size() + map.relations().size());
+        for(int i = 0; i < ways.size(); i++) {
+            if(wayPolyLines.get(i) != null) {
+                mapBuilder.addPolyLine(wayPolyLines.get(i));
+            }
+            else if(wayPolygons.get(i) != null) {
+                mapBuilder.addPolygon(wayPolygons.get(i));
+            }
+        }
+        relationsConverter(map.relations(), mapBuilder, cache);
+        return new Result(mapBuilder.build(), new Metrics(cache.projectionsCount(), cache.hitsCount()));
     }
 
     /**
-     * Converts the ways in attributed PolyLines (open or closed) and Polygons
+     * Converts a range of ways in attributed PolyLines (open or closed) and Polygons
      * @param ways The way's list to convert
+     * @param from the index of the first way of the range
+     * @param to the index following the last way of the range
+     * @param polyLines the list receiving the attributed PolyLine of each way, at the way's index
+     * @param polygons the list receiving the attributed Polygon of each way, at the way's index
+     * @param cache the projections of the nodes
      */
-    private void waysConverter(List<OSMWay> ways) {
+    private void waysConverter(List<OSMWay> ways, int from, int to, List<Attributed<PolyLine>> polyLines, List<Attributed<Polygon>> polygons, ProjectedNodeCache cache) {
         Attributes attPolygon;
         Attributes attPolyLine;
         PolyLine.Builder polyLineBuilder;
         Polygon polygon;
         PolyLine polyLine;
-        for (OSMWay currentWay : ways) {
+        for (int i = from; i < to; i++) {
+            OSMWay currentWay = ways.get(i);
             //Reset PolyLine Builder
-            polyLineBuilder = new PolyLine.Builder();
-            attPolygon = currentWay.attributes().keepOnlyKeys(POLYGON_ATTRIBUTES);
-            attPolyLine = currentWay.attributes().keepOnlyKeys(POLYLINE_ATTRIBUTES);
+            polyLineBuilder = new PolyLine.Builder(currentWay.nodesCount());
             //If it is a Polygon
             if(currentWay.isClosed() && wayDescribeSurface(currentWay)) {
-                List<OSMNode> nonRepeatingNodes = currentWay.nonRepeatingNodes();
+                //The attributes are only filtered for the kind of geometry of the way
+                attPolygon = currentWay.attributes().keepOnlyKeys(POLYGON_ATTRIBUTES);
                 //Create a Polygon without holes if the filtered attributes list is not empty
                 if(!attPolygon.isEmpty()) {
-                    for (OSMNode currentNode : nonRepeatingNodes) {
-                        polyLineBuilder.addPoint(projectionType.project(currentNode.position()));
-                    }
+                    addNonRepeatingNodes(currentWay, polyLineBuilder, cache);
                     polygon = new Polygon(polyLineBuilder.buildClosed());
-                    mapBuilder.addPolygon(new Attributed<Polygon>(polygon,attPolygon));
+                    polygons.set(i, new Attributed<Polygon>(polygon,attPolygon));
                 }
             }
             //Else it is a PolyLine
             else {
+                attPolyLine = currentWay.attributes().keepOnlyKeys(POLYLINE_ATTRIBUTES);
                 //If the filtered attributes is not empty
                 if(!attPolyLine.isEmpty()) {
-                    List<OSMNode> nonRepeatingNodes = currentWay.nonRepeatingNodes();
-                    for(OSMNode currentNode : nonRepeatingNodes) {
-                        polyLineBuilder.addPoint(projectionType.project(currentNode.position()));
-                    }
+                    addNonRepeatingNodes(currentWay, polyLineBuilder, cache);
                     if(currentWay.isClosed()) {
                         //Create a ClosedPolyLine
                         polyLine = polyLineBuilder.buildClosed();
-                        mapBuilder.addPolyLine(new Attributed<PolyLine>(polyLine, attPolyLine));
+                        polyLines.set(i, new Attributed<PolyLine>(polyLine, attPolyLine));
                     }
                     else {
                         //Create an OpenPolyLine
                         polyLine = polyLineBuilder.buildOpen();
-                        mapBuilder.addPolyLine(new Attributed<PolyLine>(polyLine, attPolyLine));
+                        polyLines.set(i, new Attributed<PolyLine>(polyLine, attPolyLine));
                     }
                 }
             }
         }
     }
 
+    /**
+     * Adds the projections of the nodes of a way, without the last one if the way is closed, to a PolyLine
+     * @param way the way
+     * @param polyLineBuilder the builder of the PolyLine
+     * @param cache the projections of the nodes
+     */
+    private void addNonRepeatingNodes(OSMWay way, PolyLine.Builder polyLineBuilder, ProjectedNodeCache cache) {
+        //The nodes are taken from the store, without creating their OSMNode
+        int nodesCount = way.isClosed() ? way.nodesCount() - 1 : way.nodesCount();
+        for(int i = 0; i < nodesCount; i++) {
+            polyLineBuilder.addPoint(cache.project(way.nodeStore(), way.nodeIndex(i)));
+        }
+    }
+
     /**
      * Converts the relations in attributed Polygons
      * @param relations The relation's list to convert
+     * @param mapBuilder the builder receiving the Polygons
+     * @param cache the projections of the nodes
      */
-    private void relationsConverter(List<OSMRelation> relations) {
+    private void relationsConverter(List<OSMRelation> relations, Map.Builder mapBuilder, ProjectedNodeCache cache) {
+        //The Polygons of each relation, stored at the relation's index
+        List<List<Attributed<Polygon>>> relationPolygons = nulls(relations.size());
+        if(THREADS > 1 && !relations.isEmpty()) {
+            ForkJoinPool.commonPool().invoke(new RelationsConversion(relations, 0, relations.size(), relationPolygons, cache));
+        }
+        else {
+            relationsConverter(relations, 0, relations.size(), relationPolygons, false, cache);
+        }
+        //Add all the attributedPolygon in the Map's builder
+        for(List<Attributed<Polygon>> attributedPolygon : relationPolygons) {
+            if(attributedPolygon != null) {
+                for(Attributed<Polygon> currentAttPolygon : attributedPolygon) {
+                    mapBuilder.addPolygon(currentAttPolygon);
+                }
+            }
+        }
+    }
+
+    /**
+     * Converts a range of relations in attributed Polygons
+     * @param relations The relation's list to convert
+     * @param from the index of the first relation of the range
+     * @param to the index following the last relation of the range
+     * @param polygons the list receiving the attributed Polygons of each relation, at the relation's index
+     * @param inTask true if the conversion runs in a fork-join task, which may then fork the ring building
+     * @param cache the projections of the nodes
+     */
+    private void relationsConverter(List<OSMRelation> relations, int from, int to, List<List<Attributed<Polygon>>> polygons, boolean inTask, ProjectedNodeCache cache) {
         Attributes attMultiPolygon;
-        List<Attributed<Polygon>> attributedPolygon = new ArrayList<>();
-        for(OSMRelation currentRelation : relations) {
+        for(int i = from; i < to; i++) {
+            OSMRelation currentRelation = relations.get(i);
             attMultiPolygon = currentRelation.attributes().keepOnlyKeys(POLYGON_ATTRIBUTES);
             //If the relation describe a multiPolygon and the filtered attributes list is not empty
             if(!attMultiPolygon.isEmpty() && currentRelation.hasAttribute("type") && currentRelation.attributeValue("type").equals("multipolygon")) {
-                List<Attributed<Polygon>> attributedPolygonToAdd = assemblePolygon(currentRelation, attMultiPolygon);
+                List<Attributed<Polygon>> attributedPolygonToAdd = assemblePolygon(currentRelation, attMultiPolygon, inTask, cache);
                 if(!attributedPolygonToAdd.isEmpty()) {
-                    attributedPolygon.addAll(attributedPolygonToAdd);
-                } 
+                    polygons.set(i, attributedPolygonToAdd);
+                }
             }
         }
-        //Add all the attributedPolygon in the Map's builder
-        for(Attributed<Polygon> currentAttPolygon : attributedPolygon) {
-            mapBuilder.addPolygon(currentAttPolygon);
-        }
     }
 
     /**
@@ -134,93 +238,41 @@ public final class OSMToGeoTransformer {
         String key = way.attributeValue("area");
         //Returns true if the way has the attributes "area" and the value is "yes", "1" or "true" 
         //or if the way has one or more attributes in the SURFACE_ATTRIBUTES list
-        return (key != null && (key.equals("yes") || key.equals("1") || key.equals("true"))) || (!way.attributes().keepOnlyKeys(SURFACE_ATTRIBUTES).isEmpty());
+        return (key != null && (key.equals("yes") || key.equals("1") || key.equals("true"))) || hasOneOfKeys(way.attributes(), SURFACE_ATTRIBUTES);
+    }
+
+    /**
+     * Tests if attributes have at least one of the given keys, without filtering them
+     * @param attributes the attributes to test
+     * @param keys the keys to search
+     * @return true if one of the attributes' keys is in keys, false otherwise
+     */
+    private static boolean hasOneOfKeys(Attributes attributes, Set<String> keys) {
+        for(int i = 0; i < attributes.size(); i++) {
+            if(keys.contains(attributes.keyAt(i))) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
      * Returns a list with all the rings (ClosedPolyLine) for the given relation and role
      * @param relation the relation to filter
      * @param role filtering by role
+     * @param cache the projections of the nodes
      * @return a filtered list of ClosedPolyLine or an empty list if the ring's computation fails
      */
-    private List<ClosedPolyLine> ringsForRole(OSMRelation relation, String role) {
-        //First step: Only have the members with the given role and the WAY type
-        ArrayList<OSMRelation.Member> members = new ArrayList<OSMRelation.Member>(relation.members());
-        ArrayList<OSMRelation.Member> clearedMembers = new ArrayList<OSMRelation.Member>();
-
-        for (OSMRelation.Member member : members) {
+    private List<ClosedPolyLine> ringsForRole(OSMRelation relation, String role, ProjectedNodeCache cache) {
+        //Only have the members with the given role and the WAY type
+        List<OSMWay> ways = new ArrayList<>();
+        for (OSMRelation.Member member : relation.members()) {
             if (member.role()!=null&&member.role().equals(role)&&member.type().equals(OSMRelation.Member.Type.WAY)){
-                clearedMembers.add(member);
-            }
-        }
-
-        //Second step creating the PolyLines
-
-        //Creates a Graph with all the nodes and their neighbors
-        Graph.Builder<OSMNode> graphBuilder = new Graph.Builder<OSMNode>();
-        for (OSMRelation.Member member : clearedMembers) {
-            OSMNode addedNode = null;
-            for (OSMNode node : ((OSMWay) member.member()).nodes()) {
-                graphBuilder.addNode(node);
-                if (addedNode != null) {
-                    graphBuilder.addEdge(node, addedNode);
-                }
-                addedNode = node;
-            }
-        }
-
-        Graph<OSMNode> graphed = graphBuilder.build();
-        Set<OSMNode> nodes = graphed.nodes();
-        Set<OSMNode> usedPoints = new HashSet<OSMNode>();
-        List<ClosedPolyLine> rings = new ArrayList<ClosedPolyLine>();
-
-        //Checking if all the nodes have exactly 2 neighbors
-        for(OSMNode node : nodes) {
-            if(graphed.neighborsOf(node).size() != 2) {
-                return rings;
+                ways.add((OSMWay) member.member());
             }
         }
-
-        //Creating all the ClosedPolyLines
-        for (OSMNode node : nodes) {
-            //If the node is not already used
-            if(!usedPoints.contains(node)) {
-                //Represents the list of the node's neighbors
-                Set<OSMNode> neighbors = graphed.neighborsOf(node);
-                int nodesAdded = 1;
-                boolean change = false;
-                PolyLine.Builder polyLine = new PolyLine.Builder();
-                //Adding the first point in the PolyLine Builder
-                polyLine.addPoint(projectionType.project(node.position()));
-                //Adding the first point in the usedPoints list
-                usedPoints.add(node);
-                //Iterates on all the node's neighbors until it closes the PolyLine
-                do {
-                    change = false;
-                    //For each node's neighbors
-                    for(OSMNode neighbor : neighbors) {
-                        //If the point is not already used
-                        if(!usedPoints.contains(neighbor)) {
-                            //Adds the point to the PolyLine
-                            polyLine.addPoint(projectionType.project(neighbor.position()));
-                            change = true;
-                            //Changes the neighbors list to the a list of neighbors of the added point
-                            neighbors = graphed.neighborsOf(neighbor);
-                            //Adds the added point to the usedPoints list
-                            usedPoints.add(neighbor);
-                            nodesAdded++;
-                            //Leave the for each loop
-                            break;
-                        }
-                    }
-                }while(change);
-                //If the PolyLine has 2 or more points, add the PolyLine to the rings list
-                if (nodesAdded>2) {
-                    rings.add(polyLine.buildClosed());
-                }
-            }
-        }
-        return rings;
+        //Joins the ways end to end into rings
+        return RingAssembler.rings(ways, cache);
     }
 
 
@@ -230,58 +282,264 @@ public final class OSMToGeoTransformer {
      * or an empty list if the outer rings computation has failed
      * @param relation the current multiPolygon to assemble
      * @param attributes The multipolygon's attributes
+     * @param inTask true if the assembly runs in a fork-join task, which may then fork the ring building
+     * @param cache the projections of the nodes
      * @return A list of the multipolygon's attributed Polygon
      */
-    private List<Attributed<Polygon>> assemblePolygon(OSMRelation relation, Attributes attributes) {
+    private List<Attributed<Polygon>> assemblePolygon(OSMRelation relation, Attributes attributes, boolean inTask, ProjectedNodeCache cache) {
         List<Attributed<Polygon>> attributedPolygon = new ArrayList<>();
-        //A comparator for ClosedPolyLine : compare the area
-        Comparator<ClosedPolyLine> c = (ClosedPolyLine cp1, ClosedPolyLine cp2) -> 
-            Double.valueOf(cp1.area()).compareTo(Double.valueOf(cp2.area()));
-
-        //A list with the outer rings
-        List<ClosedPolyLine> outerPolyLines = ringsForRole(relation, "outer");
-        //A list with the inner rings
-        List<ClosedPolyLine> innerPolyLines = ringsForRole(relation, "inner");
+        List<ClosedPolyLine> outerPolyLines;
+        List<ClosedPolyLine> innerPolyLines;
+        if(inTask && relation.members().size() > MEMBERS_PER_TASK) {
+            //The inner rings are built by another task while this one builds the outer rings
+            ForkJoinTask<List<ClosedPolyLine>> innerRings = ForkJoinTask.adapt(() -> ringsForRole(relation, "inner", cache)).fork();
+            outerPolyLines = ringsForRole(relation, "outer", cache);
+            innerPolyLines = innerRings.join();
+        }
+        else {
+            //A list with the outer rings
+            outerPolyLines = ringsForRole(relation, "outer", cache);
+            //A list with the inner rings
+            innerPolyLines = ringsForRole(relation, "inner", cache);
+        }
 
         //Tests if ringsForRole has worked for the outer rings <=> the outer rings list is not empty
         if(!outerPolyLines.isEmpty()) {
-            //Sorts the outer rings according to their areas in ascending order
-            Collections.sort(outerPolyLines, c);
-            //Tests if ringsForRole has worked for the inner rings <=> the inner rings list is not empty
+            //Sorts the outer and inner rings according to their areas in ascending order
+            outerPolyLines = sortedByArea(outerPolyLines);
+            innerPolyLines = sortedByArea(innerPolyLines);
+            //The holes of each outer ring, an empty list shared by the rings which have none
+            List<List<ClosedPolyLine>> holes = new ArrayList<>(Collections.nCopies(outerPolyLines.size(), Collections.emptyList()));
             if(!innerPolyLines.isEmpty()) {
-                //Sorts the inner rings according to their areas in ascending order
-                Collections.sort(innerPolyLines, c);
-                //A set containing the already used inner rings
-                Set<ClosedPolyLine> usedInnerPolyLine = new HashSet<>();
-                List<ClosedPolyLine> currentHoles = new ArrayList<>();
-
-                for(ClosedPolyLine currentOuterPolyLine : outerPolyLines) {
-                    currentHoles.clear();
-
-                    for(ClosedPolyLine currentInnerPolyLine : innerPolyLines) {
-                        //If the inner ring is not already used and is contained in the current outer ring
-                        if(!usedInnerPolyLine.contains(currentInnerPolyLine) && currentOuterPolyLine.containsPoint(currentInnerPolyLine.firstPoint())) {
-                            usedInnerPolyLine.add(currentInnerPolyLine);
-                            currentHoles.add(currentInnerPolyLine);
+                OuterRingIndex outerIndex = new OuterRingIndex(outerPolyLines);
+                for(ClosedPolyLine currentInnerPolyLine : innerPolyLines) {
+                    //Each inner ring is a hole of the smallest outer ring containing it
+                    int outer = outerIndex.ringContaining(currentInnerPolyLine.firstPoint());
+                    if(outer != -1) {
+                        if(holes.get(outer).isEmpty()) {
+                            holes.set(outer, new ArrayList<>());
                         }
-                    }
-                    //Creates an attributed Polygon with holes
-                    if(!currentHoles.isEmpty()) {
-                        attributedPolygon.add(new Attributed<Polygon>(new Polygon(currentOuterPolyLine, currentHoles), attributes));
-                    }
-                    //Creates an attributed Polygon without holes
-                    else {
-                        attributedPolygon.add(new Attributed<Polygon>(new Polygon(currentOuterPolyLine), attributes));
+                        holes.get(outer).add(currentInnerPolyLine);
                     }
                 }
             }
-            //Creates an attributed Polygon without holes
-            else {
-                for(ClosedPolyLine currentOuterPolyLine : outerPolyLines) {
-                    attributedPolygon.add(new Attributed<Polygon>(new Polygon(currentOuterPolyLine), attributes));
+            for(int i = 0; i < outerPolyLines.size(); i++) {
+                //Creates an attributed Polygon with holes
+                if(!holes.get(i).isEmpty()) {
+                    attributedPolygon.add(new Attributed<Polygon>(new Polygon(outerPolyLines.get(i), holes.get(i)), attributes));
+                }
+                //Creates an attributed Polygon without holes
+                else {
+                    attributedPolygon.add(new Attributed<Polygon>(new Polygon(outerPolyLines.get(i)), attributes));
                 }
             }
         }
         return attributedPolygon;
     }
-}
\ No newline at end of file
+
+    /**
+     * Sorts rings according to their areas
+     * @param rings the rings to sort
+     * @return the rings in ascending order of area, the rings of equal areas keeping their order
+     */
+    private static List<ClosedPolyLine> sortedByArea(List<ClosedPolyLine> rings) {
+        //The areas are computed once by the rings
+        List<ClosedPolyLine> sorted = new ArrayList<>(rings);
+        sorted.sort(Comparator.comparingDouble(ClosedPolyLine::area));
+        return sorted;
+    }
+
+    /**
+     * Returns a list of nulls, whose elements are set at the index of the converted entities. The tasks
+     * setting different indices of the list do not interfere, since its size does not change
+     * @param size the size of the list
+     * @return the modifiable list of nulls
+     */
+    private static <E> List<E> nulls(int size) {
+        return new ArrayList<>(Collections.nCopies(size, null));
+    }
+
+    /**
+     *  Represents the conversion of a range of ways, split in two halves converted
+     *  in parallel as long as it is larger than WAYS_PER_TASK
+     */
+    private final class WaysConversion extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        final private List<OSMWay> ways;
+        final private int from;
+        final private int to;
+        final private List<Attributed<PolyLine>> polyLines;
+        final private List<Attributed<Polygon>> polygons;
+        final private ProjectedNodeCache cache;
+
+        /**
+         * Constructor for WaysConversion
+         * @param ways The way's list to convert
+         * @param from the index of the first way of the range
+         * @param to the index following the last way of the range
+         * @param polyLines the list receiving the attributed PolyLine of each way
+         * @param polygons the list receiving the attributed Polygon of each way
+         * @param cache the projections of the nodes
+         */
+        private WaysConversion(List<OSMWay> ways, int from, int to, List<Attributed<PolyLine>> polyLines, List<Attributed<Polygon>> polygons, ProjectedNodeCache cache) {
+            this.ways = ways;
+            this.from = from;
+            this.to = to;
+            this.polyLines = polyLines;
+            this.polygons = polygons;
+            this.cache = cache;
+        }
+
+        /**
+         * Converts the range, directly if it is small enough and by two sub-tasks otherwise
+         */
+        @Override
+        protected void compute() {
+            if(to - from <= WAYS_PER_TASK) {
+                waysConverter(ways, from, to, polyLines, polygons, cache);
+            }
+            else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new WaysConversion(ways, from, middle, polyLines, polygons, cache),
+                        new WaysConversion(ways, middle, to, polyLines, polygons, cache));
+            }
+        }
+    }
+
+    /**
+     *  Represents the conversion of a range of relations, split in two halves converted
+     *  in parallel as long as it is larger than RELATIONS_PER_TASK
+     */
+    private final class RelationsConversion extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        final private List<OSMRelation> relations;
+        final private int from;
+        final private int to;
+        final private List<List<Attributed<Polygon>>> polygons;
+        final private ProjectedNodeCache cache;
+
+        /**
+         * Constructor for RelationsConversion
+         * @param relations The relation's list to convert
+         * @param from the index of the first relation of the range
+         * @param to the index following the last relation of the range
+         * @param polygons the list receiving the attributed Polygons of each relation
+         * @param cache the projections of the nodes
+         */
+        private RelationsConversion(List<OSMRelation> relations, int from, int to, List<List<Attributed<Polygon>>> polygons, ProjectedNodeCache cache) {
+            this.relations = relations;
+            this.from = from;
+            this.to = to;
+            this.polygons = polygons;
+            this.cache = cache;
+        }
+
+        /**
+         * Converts the range, directly if it is small enough and by two sub-tasks otherwise
+         */
+        @Override
+        protected void compute() {
+            if(to - from <= RELATIONS_PER_TASK) {
+                relationsConverter(relations, from, to, polygons, true, cache);
+            }
+            else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new RelationsConversion(relations, from, middle, polygons, cache),
+                        new RelationsConversion(relations, middle, to, polygons, cache));
+            }
+        }
+    }
+
+    /**
+     *  Represents the result of a transformation : the map and the metrics of its transformation
+     *
+     *  @author:     José Ferro Pinto (233843)
+     *  @author:     Dorian Laforest (234832)
+     */
+    public final static class Result {
+        final private Map map;
+        final private Metrics metrics;
+
+        /**
+         * Constructor for Result
+         * @param map the transformed map
+         * @param metrics the metrics of the transformation
+         */
+        private Result(Map map, Metrics metrics) {
+            this.map = map;
+            this.metrics = metrics;
+        }
+
+        /**
+         * Returns the transformed map
+         * @return the map
+         */
+        public Map map() {
+            return map;
+        }
+
+        /**
+         * Returns the metrics of the transformation
+         * @return the metrics
+         */
+        public Metrics metrics() {
+            return metrics;
+        }
+    }
+
+    /**
+     *  Represents the metrics of a transformation : how many projections of nodes were
+     *  computed, and how many were taken from the cache of the projected nodes
+     *
+     *  @author:     José Ferro Pinto (233843)
+     *  @author:     Dorian Laforest (234832)
+     */
+    public final static class Metrics {
+        final private long projectionsCount;
+        final private long cacheHitsCount;
+
+        /**
+         * Constructor for Metrics
+         * @param projectionsCount the number of projections computed
+         * @param cacheHitsCount the number of projections taken from the cache
+         */
+        private Metrics(long projectionsCount, long cacheHitsCount) {
+            this.projectionsCount = projectionsCount;
+            this.cacheHitsCount = cacheHitsCount;
+        }
+
+        /**
+         * Returns the number of projections computed
+         * @return the number of projections
+         */
+        public long projectionsCount() {
+            return projectionsCount;
+        }
+
+        /**
+         * Returns the number of projections taken from the cache
+         * @return the number of cache hits
+         */
+        public long cacheHitsCount() {
+            return cacheHitsCount;
+        }
+
+        /**
+         * Returns the proportion of the projected nodes taken from the cache
+         * @return the hit rate, in [0; 1], 0 if no node was projected
+         */
+        public double cacheHitRate() {
+            long total = projectionsCount + cacheHitsCount;
+            return total == 0 ? 0 : (double)cacheHitsCount / total;
+        }
+
+        /**
+         * Returns a description of the metrics, to be logged
+         * @return the description
+         */
+        @Override
+        public String toString() {
+            return projectionsCount + " projections, " + cacheHitsCount + " cache hits (" + Math.round(cacheHitRate() * 100) + " %)";
+        }
+    }
+}
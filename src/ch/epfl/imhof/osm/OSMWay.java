@@ -8,11 +8,14 @@ package ch.epfl.imhof.osm;
 
 import ch.epfl.imhof.Attributes;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.RandomAccess;
 
 public final class OSMWay extends OSMEntity {
+    final private OSMNodeStore store;
+    final private int[] nodeIndices;
     final private List<OSMNode> nodes;
 
     /**
@@ -23,11 +26,37 @@ public final class OSMWay extends OSMEntity {
      * @throws IllegalArgumentException if there is less than 2 nodes in the way
      */
     public OSMWay(long id, List<OSMNode> nodes, Attributes attributes) throws IllegalArgumentException{
+        this(id, new OSMNodeStore(nodes.size()), nodes, attributes);
+    }
+
+    /**
+     * Constructor for OSMWay whose nodes are designated by their index in a node store
+     * @param id the unique ID from OSM
+     * @param store the store containing the way's nodes
+     * @param nodeIndices the indices of the way's nodes in the store
+     * @param attributes the way's attributes
+     * @throws IllegalArgumentException if there is less than 2 nodes in the way
+     */
+    OSMWay(long id, OSMNodeStore store, int[] nodeIndices, Attributes attributes) throws IllegalArgumentException{
         super(id, attributes);
-        if(nodes.size() < 2) {
+        if(nodeIndices.length < 2) {
             throw new IllegalArgumentException("Can not create a way with less than 2 nodes");
         }
-        this.nodes = Collections.unmodifiableList(new ArrayList<>(nodes));
+        this.store = store;
+        this.nodeIndices = nodeIndices.clone();
+        this.nodes = new NodeList();
+    }
+
+    /**
+     * Private constructor adding the given nodes to the given store
+     * @param id the unique ID from OSM
+     * @param store the store where to add the nodes
+     * @param nodes the way's nodes
+     * @param attributes the way's attributes
+     * @throws IllegalArgumentException if there is less than 2 nodes in the way
+     */
+    private OSMWay(long id, OSMNodeStore store, List<OSMNode> nodes, Attributes attributes) throws IllegalArgumentException{
+        this(id, store, indicesOf(store, nodes), attributes);
     }
 
     /**
@@ -35,7 +64,7 @@ public final class OSMWay extends OSMEntity {
      * @return number of nodes
      */
     public int nodesCount() {
-        return nodes.size();
+        return nodeIndices.length;
     }
 
     /**
@@ -52,17 +81,45 @@ public final class OSMWay extends OSMEntity {
      */
     public List<OSMNode> nonRepeatingNodes() {
         if(isClosed()) {
-            return Collections.unmodifiableList(nodes.subList(0, nodes.size()-1));
+            return nodes.subList(0, nodes.size()-1);
         }
         return nodes;
     }
 
+    /**
+     * Returns the store containing the way's nodes
+     * @return the node store
+     */
+    OSMNodeStore nodeStore() {
+        return store;
+    }
+
+    /**
+     * Returns the index in the node store of the way's i-th node
+     * @param i the position of the node in the way
+     * @return the index of the node in the store
+     */
+    int nodeIndex(int i) {
+        return nodeIndices[i];
+    }
+
+    /**
+     * Gives the nodes of the way their new indices once their store is compacted
+     * (see OSMNodeStore.retainAll). Only used before the way is given out of the map builder
+     * @param newIndices for each former index of the store, the node's new index
+     */
+    void remapNodeIndices(int[] newIndices) {
+        for(int i = 0; i < nodeIndices.length; i++) {
+            nodeIndices[i] = newIndices[nodeIndices[i]];
+        }
+    }
+
     /**
      * Returns the first Node
      * @return the first node
      */
     public OSMNode firstNode() {
-        return nodes.get(0);
+        return store.node(nodeIndices[0]);
     }
 
     /**
@@ -70,7 +127,7 @@ public final class OSMWay extends OSMEntity {
      * @return the last node
      */
     public OSMNode lastNode() {
-        return nodes.get(nodesCount()-1);
+        return store.node(nodeIndices[nodeIndices.length-1]);
     }
 
     /**
@@ -78,7 +135,39 @@ public final class OSMWay extends OSMEntity {
      * @return true if the node is closed, false otherwise
      */
     public boolean isClosed() {
-        return firstNode() == lastNode();
+        return nodeIndices[0] == nodeIndices[nodeIndices.length-1];
+    }
+
+    /**
+     * Adds the nodes to the store
+     * @param store the store where to add the nodes
+     * @param nodes the nodes to add
+     * @return the indices of the nodes in the store
+     */
+    private static int[] indicesOf(OSMNodeStore store, List<OSMNode> nodes) {
+        int[] indices = new int[nodes.size()];
+        for(int i = 0; i < indices.length; i++) {
+            indices[i] = store.add(nodes.get(i));
+        }
+        return indices;
+    }
+
+    /**
+     *  Unmodifiable view of the way's nodes, created from the node store when accessed
+     *  
+     *  @author:     José Ferro Pinto (233843)
+     *  @author:     Dorian Laforest (234832)
+     */
+    private final class NodeList extends AbstractList<OSMNode> implements RandomAccess {
+        @Override
+        public OSMNode get(int index) {
+            return store.node(nodeIndices[index]);
+        }
+
+        @Override
+        public int size() {
+            return nodeIndices.length;
+        }
     }
 
     /**
@@ -88,14 +177,26 @@ public final class OSMWay extends OSMEntity {
      *  @author:     Dorian Laforest (234832)
      */
     public final static class Builder extends OSMEntity.Builder {
-        private List<OSMNode> nodes = new ArrayList<>();
+        private final OSMNodeStore store;
+        private int[] nodeIndices = new int[8];
+        private int nodesCount = 0;
 
         /**
          * Constructor for OSMWay.Builder
          * @param id unique ID from OSM
          */
         public Builder(long id) {
+            this(id, new OSMNodeStore());
+        }
+
+        /**
+         * Constructor for OSMWay.Builder whose nodes are taken from the given store
+         * @param id unique ID from OSM
+         * @param store the store containing the way's nodes
+         */
+        Builder(long id, OSMNodeStore store) {
             super(id);
+            this.store = store;
         }
 
         /**
@@ -103,7 +204,19 @@ public final class OSMWay extends OSMEntity {
          * @param newNode the node to add
          */
         public void addNode(OSMNode newNode) {
-            nodes.add(newNode);
+            int index = store.indexOf(newNode.id());
+            addNodeIndex(index < 0 ? store.add(newNode) : index);
+        }
+
+        /**
+         * Adds a Node of the store to the list of nodes
+         * @param index the index of the node in the store
+         */
+        void addNodeIndex(int index) {
+            if(nodesCount == nodeIndices.length) {
+                nodeIndices = Arrays.copyOf(nodeIndices, nodesCount * 2);
+            }
+            nodeIndices[nodesCount++] = index;
         }
 
         /**
@@ -112,7 +225,7 @@ public final class OSMWay extends OSMEntity {
          */
         @Override
         public boolean isIncomplete() {
-            return super.isIncomplete() || (nodes.size() < 2);
+            return super.isIncomplete() || (nodesCount < 2);
         }
 
         /**
@@ -124,7 +237,7 @@ public final class OSMWay extends OSMEntity {
             if(isIncomplete()) {
                 throw new IllegalStateException("Incomplete way");
             }
-            return new OSMWay(super.id, nodes, super.attributes.build());
+            return new OSMWay(super.id, store, Arrays.copyOf(nodeIndices, nodesCount), super.attributes.build());
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,769 @@
+/**
+ *  A streaming parser for the XML dialect of OSM files. It works directly on a
+ *  buffer of the document's bytes : the element and attribute names are compared
+ *  as bytes, the ids and coordinates are parsed from the bytes, and only the tag
+ *  keys, values and member roles are turned into Strings. The elements are given
+ *  to an OSMMapAssembler as they are read.
+ *
+ *  Only the subset of XML used by OSM files is handled : a document in UTF-8
+ *  made of elements, attributes, comments and processing instructions. An
+ *  UnsupportedXMLException is thrown for anything else (DTD, CDATA, other
+ *  encodings) and for malformed documents, which can then be read by a
+ *  complete XML parser.
+ *
+ *  @author:     José Ferro Pinto (233843)
+ *  @author:     Dorian Laforest (234832)
+ */
+package ch.epfl.imhof.osm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+final class OSMXMLParser {
+    private final static int BUFFER_SIZE = 1 << 16;
+    private final static byte[] NODE = ascii("node");
+    private final static byte[] ND = ascii("nd");
+    private final static byte[] WAY = ascii("way");
+    private final static byte[] RELATION = ascii("relation");
+    private final static byte[] TAG = ascii("tag");
+    private final static byte[] MEMBER = ascii("member");
+    private final static byte[] ID = ascii("id");
+    private final static byte[] LATITUDE = ascii("lat");
+    private final static byte[] LONGITUDE = ascii("lon");
+    private final static byte[] REFERENCE = ascii("ref");
+    private final static byte[] TYPE = ascii("type");
+    private final static byte[] ROLE = ascii("role");
+    private final static byte[] KEY = ascii("k");
+    private final static byte[] VALUE = ascii("v");
+    private final static byte[] ENCODING = ascii("encoding");
+    private final static byte[] COMMENT_START = ascii("!--");
+    private final static byte[] COMMENT_END = ascii("-->");
+    private final static byte[] PROCESSING_INSTRUCTION_END = ascii("?>");
+    private final static byte[] XML_DECLARATION = ascii("?xml");
+
+    private final InputStream input;
+    private final OSMMapAssembler assembler;
+    private final StringPool strings;
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    private int position = 0;
+    private int limit = 0;
+    private boolean endOfInput = false;
+    private boolean documentStart = true;
+    private boolean rootRead = false;
+    //The names of the open elements, as hashes, to check that the elements are well nested
+    private long[] openElements = new long[16];
+    private int depth = 0;
+    //The start and end indices in the buffer of the current tag's attribute names and values
+    private int[] attributes = new int[32];
+    private int attributesCount = 0;
+
+    /**
+     * Constructor for OSMXMLParser
+     * @param input the stream of the document
+     * @param assembler the assembler to which the elements are given
+     */
+    OSMXMLParser(InputStream input, OSMMapAssembler assembler) {
+        this.input = input;
+        this.assembler = assembler;
+        this.strings = assembler.strings();
+    }
+
+    /**
+     * Parses the whole document
+     * @throws UnsupportedXMLException if the document is malformed or uses XML features this parser does not handle
+     * @throws IOException if something went wrong with the stream
+     */
+    void parse() throws UnsupportedXMLException, IOException {
+        skipByteOrderMark();
+        while(true) {
+            int markupStart = nextMarkup();
+            if(markupStart < 0) {
+                break;
+            }
+            position = markupStart;
+            int next = byteAt(position + 1);
+            if(next == '?') {
+                readProcessingInstruction();
+            }
+            else if(next == '!') {
+                readComment();
+            }
+            else if(next == '/') {
+                readEndTag();
+            }
+            else {
+                readStartTag();
+            }
+            documentStart = false;
+        }
+        if(!rootRead || depth != 0) {
+            throw new UnsupportedXMLException("Unexpected end of document");
+        }
+    }
+
+    /**
+     * Skips the text up to the next markup, which must only be white spaces outside the root element
+     * @return the index of the next '<', -1 at the end of the document
+     * @throws UnsupportedXMLException if there is text outside the root element
+     * @throws IOException if something went wrong with the stream
+     */
+    private int nextMarkup() throws UnsupportedXMLException, IOException {
+        int i = position;
+        while(true) {
+            if(i == limit) {
+                position = i;
+                i = refill(i);
+                if(i < 0) {
+                    return -1;
+                }
+            }
+            byte b = buffer[i];
+            if(b == '<') {
+                return i;
+            }
+            if(depth == 0 && !isWhiteSpace(b)) {
+                throw new UnsupportedXMLException("Text outside of the root element");
+            }
+            i++;
+        }
+    }
+
+    /**
+     * Reads a start tag or an empty element tag, beginning at the current position
+     * @throws UnsupportedXMLException if the tag is malformed
+     * @throws IOException if something went wrong with the stream
+     */
+    private void readStartTag() throws UnsupportedXMLException, IOException {
+        int end = tagEnd();
+        int i = position + 1;
+        int nameStart = i;
+        while(i < end && !isWhiteSpace(buffer[i]) && buffer[i] != '/') {
+            i++;
+        }
+        int nameEnd = i;
+        if(nameEnd == nameStart || !isNameStart(buffer[nameStart])) {
+            throw new UnsupportedXMLException("Invalid element name");
+        }
+        boolean isEmpty = buffer[end - 1] == '/' && end - 1 >= nameEnd;
+        readAttributes(nameEnd, isEmpty ? end - 1 : end);
+
+        if(depth == 0) {
+            if(rootRead) {
+                throw new UnsupportedXMLException("Several root elements");
+            }
+            rootRead = true;
+        }
+        startElement(nameStart, nameEnd);
+        if(isEmpty) {
+            endElement(nameStart, nameEnd);
+        }
+        else {
+            if(depth == openElements.length) {
+                openElements = Arrays.copyOf(openElements, depth * 2);
+            }
+            openElements[depth++] = hash(nameStart, nameEnd);
+        }
+        position = end + 1;
+    }
+
+    /**
+     * Reads an end tag, beginning at the current position
+     * @throws UnsupportedXMLException if the tag is malformed or does not close the last open element
+     * @throws IOException if something went wrong with the stream
+     */
+    private void readEndTag() throws UnsupportedXMLException, IOException {
+        int end = tagEnd();
+        int nameStart = position + 2;
+        int nameEnd = end;
+        while(nameEnd > nameStart && isWhiteSpace(buffer[nameEnd - 1])) {
+            nameEnd--;
+        }
+        for(int i = nameStart; i < nameEnd; i++) {
+            if(isWhiteSpace(buffer[i])) {
+                throw new UnsupportedXMLException("Invalid end tag");
+            }
+        }
+        if(depth == 0 || openElements[depth - 1] != hash(nameStart, nameEnd)) {
+            throw new UnsupportedXMLException("Unbalanced end tag");
+        }
+        depth--;
+        endElement(nameStart, nameEnd);
+        position = end + 1;
+    }
+
+    /**
+     * Reads a comment, beginning at the current position
+     * @throws UnsupportedXMLException if the markup is not a comment (DTD, CDATA section)
+     * @throws IOException if something went wrong with the stream
+     */
+    private void readComment() throws UnsupportedXMLException, IOException {
+        if(!startsWith(position + 1, COMMENT_START)) {
+            throw new UnsupportedXMLException("Unsupported markup declaration");
+        }
+        position = find(position + 4, COMMENT_END) + COMMENT_END.length;
+    }
+
+    /**
+     * Reads a processing instruction, beginning at the current position, and checks
+     * the encoding declared by the XML declaration
+     * @throws UnsupportedXMLException if the instruction is not closed or the encoding is not UTF-8
+     * @throws IOException if something went wrong with the stream
+     */
+    private void readProcessingInstruction() throws UnsupportedXMLException, IOException {
+        int end = find(position + 2, PROCESSING_INSTRUCTION_END);
+        if(startsWith(position + 1, XML_DECLARATION) && isWhiteSpace(buffer[position + 5])) {
+            if(!documentStart) {
+                throw new UnsupportedXMLException("Misplaced XML declaration");
+            }
+            readAttributes(position + 5, end);
+            int encoding = attribute(ENCODING);
+            if(encoding >= 0) {
+                String name = new String(buffer, attributes[encoding + 2], attributes[encoding + 3] - attributes[encoding + 2], StandardCharsets.US_ASCII);
+                if(!name.equalsIgnoreCase("UTF-8") && !name.equalsIgnoreCase("US-ASCII")) {
+                    throw new UnsupportedXMLException("Unsupported encoding " + name);
+                }
+            }
+        }
+        position = end + PROCESSING_INSTRUCTION_END.length;
+    }
+
+    /**
+     * Gives an element's start to the assembler
+     * @param nameStart the index of the element name's first byte
+     * @param nameEnd the index following the element name's last byte
+     * @throws UnsupportedXMLException if a needed attribute is missing or invalid
+     */
+    private void startElement(int nameStart, int nameEnd) throws UnsupportedXMLException {
+        if(nameEquals(nameStart, nameEnd, NODE)) {
+            assembler.startNode(longValue(ID), coordinateValue(LONGITUDE), coordinateValue(LATITUDE));
+        }
+        else if(nameEquals(nameStart, nameEnd, ND)) {
+            assembler.addNodeReference(longValue(REFERENCE));
+        }
+        else if(nameEquals(nameStart, nameEnd, WAY)) {
+            assembler.startWay(longValue(ID));
+        }
+        else if(nameEquals(nameStart, nameEnd, RELATION)) {
+            assembler.startRelation(longValue(ID));
+        }
+        else if(nameEquals(nameStart, nameEnd, TAG)) {
+            //The value is only decoded if the attribute is kept
+            String key = stringValue(KEY);
+            if(assembler.keepsAttribute(key)) {
+                assembler.addTag(key, stringValue(VALUE));
+            }
+        }
+        else if(nameEquals(nameStart, nameEnd, MEMBER)) {
+            OSMRelation.Member.Type type = memberType();
+            String role = stringValue(ROLE);
+            assembler.addMember(type, longValue(REFERENCE), role);
+        }
+    }
+
+    /**
+     * Gives an element's end to the assembler
+     * @param nameStart the index of the element name's first byte
+     * @param nameEnd the index following the element name's last byte
+     */
+    private void endElement(int nameStart, int nameEnd) {
+        if(nameEquals(nameStart, nameEnd, NODE)) {
+            assembler.endNode();
+        }
+        else if(nameEquals(nameStart, nameEnd, WAY)) {
+            assembler.endWay();
+        }
+        else if(nameEquals(nameStart, nameEnd, RELATION)) {
+            assembler.endRelation();
+        }
+    }
+
+    /**
+     * Reads the attributes of a tag and stores their bounds
+     * @param from the index following the tag's name
+     * @param to the index of the end of the attributes
+     * @throws UnsupportedXMLException if the attributes are malformed
+     */
+    private void readAttributes(int from, int to) throws UnsupportedXMLException {
+        attributesCount = 0;
+        int i = from;
+        while(true) {
+            int separatorStart = i;
+            while(i < to && isWhiteSpace(buffer[i])) {
+                i++;
+            }
+            if(i == to) {
+                return;
+            }
+            if(i == separatorStart) {
+                throw new UnsupportedXMLException("Missing white space between attributes");
+            }
+            int nameStart = i;
+            while(i < to && buffer[i] != '=' && !isWhiteSpace(buffer[i])) {
+                i++;
+            }
+            int nameEnd = i;
+            while(i < to && isWhiteSpace(buffer[i])) {
+                i++;
+            }
+            if(nameEnd == nameStart || !isNameStart(buffer[nameStart]) || i == to || buffer[i] != '=') {
+                throw new UnsupportedXMLException("Invalid attribute");
+            }
+            i++;
+            while(i < to && isWhiteSpace(buffer[i])) {
+                i++;
+            }
+            if(i == to || (buffer[i] != '"' && buffer[i] != '\'')) {
+                throw new UnsupportedXMLException("Invalid attribute value");
+            }
+            byte quote = buffer[i++];
+            int valueStart = i;
+            while(i < to && buffer[i] != quote) {
+                i++;
+            }
+            if(i == to) {
+                throw new UnsupportedXMLException("Invalid attribute value");
+            }
+            for(int a = 0; a < attributesCount; a += 4) {
+                if(regionsEqual(attributes[a], attributes[a + 1], nameStart, nameEnd)) {
+                    throw new UnsupportedXMLException("Duplicate attribute");
+                }
+            }
+            if(attributesCount == attributes.length) {
+                attributes = Arrays.copyOf(attributes, attributesCount * 2);
+            }
+            attributes[attributesCount++] = nameStart;
+            attributes[attributesCount++] = nameEnd;
+            attributes[attributesCount++] = valueStart;
+            attributes[attributesCount++] = i;
+            i++;
+        }
+    }
+
+    /**
+     * Returns the position of an attribute of the current tag
+     * @param name the attribute's name
+     * @return the index in attributes of the attribute's bounds, -1 if the tag does not have it
+     */
+    private int attribute(byte[] name) {
+        for(int a = 0; a < attributesCount; a += 4) {
+            if(nameEquals(attributes[a], attributes[a + 1], name)) {
+                return a;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the value of a numeric attribute of the current tag
+     * @param name the attribute's name
+     * @return the attribute's value
+     * @throws UnsupportedXMLException if the tag does not have the attribute or if it is not a simple integer
+     */
+    private long longValue(byte[] name) throws UnsupportedXMLException {
+        int a = attribute(name);
+        if(a < 0) {
+            throw new UnsupportedXMLException("Missing attribute");
+        }
+        int i = attributes[a + 2];
+        int end = attributes[a + 3];
+        boolean negative = i < end && buffer[i] == '-';
+        if(negative) {
+            i++;
+        }
+        //A long has at most 19 digits, longer numbers are left to the complete parser
+        if(i == end || end - i > 18) {
+            throw new UnsupportedXMLException("Invalid number");
+        }
+        long value = 0;
+        for(; i < end; i++) {
+            int digit = buffer[i] - '0';
+            if(digit < 0 || digit > 9) {
+                throw new UnsupportedXMLException("Invalid number");
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * Returns the value of a coordinate attribute of the current tag
+     * @param name the attribute's name
+     * @return the coordinate in units of 1e-7 degree
+     * @throws UnsupportedXMLException if the tag does not have the attribute or if it is not a decimal number
+     */
+    private int coordinateValue(byte[] name) throws UnsupportedXMLException {
+        int a = attribute(name);
+        if(a < 0) {
+            throw new UnsupportedXMLException("Missing attribute");
+        }
+        try {
+            return FixedPointCoordinate.parse(buffer, attributes[a + 2], attributes[a + 3]);
+        }
+        catch(NumberFormatException e) {
+            throw new UnsupportedXMLException("Invalid coordinate");
+        }
+    }
+
+    /**
+     * Returns the type of the current member tag
+     * @return the member's type
+     * @throws UnsupportedXMLException if the tag does not have a valid type
+     */
+    private OSMRelation.Member.Type memberType() throws UnsupportedXMLException {
+        int a = attribute(TYPE);
+        if(a >= 0) {
+            if(nameEquals(attributes[a + 2], attributes[a + 3], WAY)) {
+                return OSMRelation.Member.Type.WAY;
+            }
+            if(nameEquals(attributes[a + 2], attributes[a + 3], NODE)) {
+                return OSMRelation.Member.Type.NODE;
+            }
+            if(nameEquals(attributes[a + 2], attributes[a + 3], RELATION)) {
+                return OSMRelation.Member.Type.RELATION;
+            }
+        }
+        throw new UnsupportedXMLException("Invalid member type");
+    }
+
+    /**
+     * Returns the value of a textual attribute of the current tag, with its references replaced
+     * and its white spaces normalized as an XML parser does. The values without references
+     * are taken from the string dictionary without being decoded if they are in it
+     * @param name the attribute's name
+     * @return the attribute's value, null if the tag does not have it
+     * @throws UnsupportedXMLException if the value contains an invalid reference
+     */
+    private String stringValue(byte[] name) throws UnsupportedXMLException {
+        int a = attribute(name);
+        if(a < 0) {
+            return null;
+        }
+        int from = attributes[a + 2];
+        int to = attributes[a + 3];
+        int i = from;
+        while(i < to && buffer[i] != '&' && buffer[i] != '\t' && buffer[i] != '\n' && buffer[i] != '\r') {
+            i++;
+        }
+        if(i == to) {
+            return strings.intern(buffer, from, to);
+        }
+        StringBuilder value = new StringBuilder(to - from);
+        int runStart = from;
+        for(; i < to; i++) {
+            byte b = buffer[i];
+            if(b == '&') {
+                value.append(new String(buffer, runStart, i - runStart, StandardCharsets.UTF_8));
+                int semicolon = i + 1;
+                while(semicolon < to && buffer[semicolon] != ';') {
+                    semicolon++;
+                }
+                if(semicolon == to) {
+                    throw new UnsupportedXMLException("Invalid reference");
+                }
+                value.appendCodePoint(reference(i + 1, semicolon));
+                i = semicolon;
+                runStart = i + 1;
+            }
+            else if(b == '\t' || b == '\n' || b == '\r') {
+                value.append(new String(buffer, runStart, i - runStart, StandardCharsets.UTF_8)).append(' ');
+                //A line break "\r\n" is normalized to a single space
+                if(b == '\r' && i + 1 < to && buffer[i + 1] == '\n') {
+                    i++;
+                }
+                runStart = i + 1;
+            }
+        }
+        value.append(new String(buffer, runStart, to - runStart, StandardCharsets.UTF_8));
+        return value.toString();
+    }
+
+    /**
+     * Returns the character designated by a predefined entity or a character reference
+     * @param from the index following the '&'
+     * @param to the index of the ';'
+     * @return the code point of the character
+     * @throws UnsupportedXMLException if the reference is not a predefined entity nor a valid character reference
+     */
+    private int reference(int from, int to) throws UnsupportedXMLException {
+        String name = new String(buffer, from, to - from, StandardCharsets.US_ASCII);
+        switch(name) {
+        case "amp":
+            return '&';
+        case "lt":
+            return '<';
+        case "gt":
+            return '>';
+        case "quot":
+            return '"';
+        case "apos":
+            return '\'';
+        default:
+            boolean hexadecimal = name.startsWith("#x");
+            int radix = hexadecimal ? 16 : 10;
+            int start = hexadecimal ? 2 : 1;
+            int codePoint = 0;
+            if(!name.startsWith("#") || name.length() == start || name.length() > start + 6) {
+                throw new UnsupportedXMLException("Invalid reference &" + name + ";");
+            }
+            for(int i = start; i < name.length(); i++) {
+                int digit = Character.digit(name.charAt(i), radix);
+                if(digit < 0) {
+                    throw new UnsupportedXMLException("Invalid reference &" + name + ";");
+                }
+                codePoint = codePoint * radix + digit;
+            }
+            if(codePoint == 0 || !Character.isValidCodePoint(codePoint)) {
+                throw new UnsupportedXMLException("Invalid reference &" + name + ";");
+            }
+            return codePoint;
+        }
+    }
+
+    /**
+     * Finds the '>' ending the tag beginning at the current position, ignoring the ones in attribute values,
+     * and makes sure the whole tag is in the buffer
+     * @return the index of the '>'
+     * @throws UnsupportedXMLException if the tag is not closed
+     * @throws IOException if something went wrong with the stream
+     */
+    private int tagEnd() throws UnsupportedXMLException, IOException {
+        int i = position + 1;
+        byte quote = 0;
+        while(true) {
+            if(i == limit) {
+                i = refill(i);
+                if(i < 0) {
+                    throw new UnsupportedXMLException("Unclosed tag");
+                }
+            }
+            byte b = buffer[i];
+            if(quote != 0) {
+                if(b == quote) {
+                    quote = 0;
+                }
+                else if(b == '<') {
+                    throw new UnsupportedXMLException("'<' in attribute value");
+                }
+            }
+            else if(b == '"' || b == '\'') {
+                quote = b;
+            }
+            else if(b == '>') {
+                return i;
+            }
+            else if(b == '<') {
+                throw new UnsupportedXMLException("Unclosed tag");
+            }
+            i++;
+        }
+    }
+
+    /**
+     * Finds a sequence of bytes and makes sure everything from the current position to it is in the buffer
+     * @param from the index from which to search
+     * @param sequence the bytes to find
+     * @return the index of the first byte of the sequence
+     * @throws UnsupportedXMLException if the sequence is not found
+     * @throws IOException if something went wrong with the stream
+     */
+    private int find(int from, byte[] sequence) throws UnsupportedXMLException, IOException {
+        int i = from;
+        while(true) {
+            if(i + sequence.length > limit) {
+                i = refill(i);
+                if(i < 0) {
+                    throw new UnsupportedXMLException("Unclosed markup");
+                }
+                continue;
+            }
+            if(startsWithLoaded(i, sequence)) {
+                return i;
+            }
+            i++;
+        }
+    }
+
+    /**
+     * Tests if the bytes at the given index are the given sequence, reading more of the stream if needed
+     * @param from the index to test
+     * @param sequence the expected bytes
+     * @return true if the bytes match, false otherwise (and at the end of the document)
+     * @throws IOException if something went wrong with the stream
+     */
+    private boolean startsWith(int from, byte[] sequence) throws IOException {
+        while(from + sequence.length > limit) {
+            from = refill(from);
+            if(from < 0) {
+                return false;
+            }
+        }
+        return startsWithLoaded(from, sequence);
+    }
+
+    /**
+     * Returns the byte at the given index, reading more of the stream if needed
+     * @param index the index of the byte
+     * @return the byte, -1 at the end of the document
+     * @throws IOException if something went wrong with the stream
+     */
+    private int byteAt(int index) throws IOException {
+        while(index >= limit) {
+            index = refill(index);
+            if(index < 0) {
+                return -1;
+            }
+        }
+        return buffer[index];
+    }
+
+    /**
+     * Reads more of the stream into the buffer, first moving the bytes from the current position
+     * to the beginning of the buffer, and enlarging it if it is full
+     * @param index an index in the buffer
+     * @return the index where the byte at the given index has been moved, -1 at the end of the stream
+     * @throws IOException if something went wrong with the stream
+     */
+    private int refill(int index) throws IOException {
+        if(endOfInput) {
+            return -1;
+        }
+        if(position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            index -= position;
+            position = 0;
+        }
+        if(limit == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        int read = input.read(buffer, limit, buffer.length - limit);
+        if(read < 0) {
+            endOfInput = true;
+            return -1;
+        }
+        limit += read;
+        return index;
+    }
+
+    /**
+     * Skips the UTF-8 byte order mark if the document begins with it
+     * @throws UnsupportedXMLException if the document begins with an UTF-16 byte order mark
+     * @throws IOException if something went wrong with the stream
+     */
+    private void skipByteOrderMark() throws UnsupportedXMLException, IOException {
+        int first = byteAt(0) & 0xFF;
+        if(first == 0xEF && (byteAt(1) & 0xFF) == 0xBB && (byteAt(2) & 0xFF) == 0xBF) {
+            position = 3;
+        }
+        else if(first == 0xFE || first == 0xFF) {
+            throw new UnsupportedXMLException("Unsupported encoding");
+        }
+    }
+
+    /**
+     * Tests if the loaded bytes at the given index are the given sequence
+     * @param from the index to test
+     * @param sequence the expected bytes
+     * @return true if the bytes match, false otherwise
+     */
+    private boolean startsWithLoaded(int from, byte[] sequence) {
+        for(int j = 0; j < sequence.length; j++) {
+            if(buffer[from + j] != sequence[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tests if the bytes between the given indices are the given name
+     * @param from the index of the first byte
+     * @param to the index following the last byte
+     * @param name the expected name
+     * @return true if the bytes are the name, false otherwise
+     */
+    private boolean nameEquals(int from, int to, byte[] name) {
+        return to - from == name.length && startsWithLoaded(from, name);
+    }
+
+    /**
+     * Tests if two regions of the buffer have the same bytes
+     * @param from1 the index of the first region's first byte
+     * @param to1 the index following the first region's last byte
+     * @param from2 the index of the second region's first byte
+     * @param to2 the index following the second region's last byte
+     * @return true if the regions have the same bytes, false otherwise
+     */
+    private boolean regionsEqual(int from1, int to1, int from2, int to2) {
+        if(to1 - from1 != to2 - from2) {
+            return false;
+        }
+        for(int i = 0; i < to1 - from1; i++) {
+            if(buffer[from1 + i] != buffer[from2 + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Computes a hash of the bytes between the given indices, used to compare element names
+     * @param from the index of the first byte
+     * @param to the index following the last byte
+     * @return the hash of the bytes, with their number in the high bits
+     */
+    private long hash(int from, int to) {
+        long h = 0;
+        for(int i = from; i < to; i++) {
+            h = 31 * h + buffer[i];
+        }
+        return (h & 0xFFFFFFFFFFFFL) | ((long)(to - from) << 48);
+    }
+
+    /**
+     * Tests if the byte is an XML white space
+     * @param b the byte to test
+     * @return true if b is a space, a tab, a carriage return or a line feed
+     */
+    private static boolean isWhiteSpace(byte b) {
+        return b == ' ' || b == '\n' || b == '\t' || b == '\r';
+    }
+
+    /**
+     * Tests if the byte can begin an XML name
+     * @param b the byte to test
+     * @return true if b is a letter, '_', ':' or part of a non ASCII character
+     */
+    private static boolean isNameStart(byte b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || b == '_' || b == ':' || b < 0;
+    }
+
+    /**
+     * Returns the ASCII bytes of a name
+     * @param name the name
+     * @return the bytes of the name
+     */
+    private static byte[] ascii(String name) {
+        return name.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     *  Thrown when a document is malformed or uses XML features this parser does not handle
+     *
+     *  @author:     José Ferro Pinto (233843)
+     *  @author:     Dorian Laforest (234832)
+     */
+    static final class UnsupportedXMLException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Constructor for UnsupportedXMLException
+         * @param message the reason why the document is not supported
+         */
+        UnsupportedXMLException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/**
+ *  A spatial index of the outer rings of a multipolygon, giving the outer ring
+ *  containing a point of an inner ring. The bounding boxes of the rings are
+ *  registered in the cells of a uniform grid covering them, so that the
+ *  point-in-polygon test is only done on the rings whose box contains the
+ *  point, instead of on all the outer rings.
+ *
+ *  @author:     José Ferro Pinto (233843)
+ *  @author:     Dorian Laforest (234832)
+ */
+package ch.epfl.imhof.osm;
+
+import ch.epfl.imhof.geometry.ClosedPolyLine;
+import ch.epfl.imhof.geometry.Point;
+
+import java.util.Arrays;
+import java.util.List;
+
+final class OuterRingIndex {
+    //Beyond this number of cells a ring is rather tested for all the points, eg. a lake covering the whole relation
+    private final static int MAX_CELLS_PER_RING = 64;
+    private final List<ClosedPolyLine> rings;
+    private final double gridMinX;
+    private final double gridMinY;
+    private final double cellWidth;
+    private final double cellHeight;
+    private final int columns;
+    private final int rows;
+    //The rings of cell c are cellRings[cellOffsets[c]] to cellRings[cellOffsets[c + 1] - 1], in increasing order
+    private final int[] cellOffsets;
+    private final int[] cellRings;
+    //The rings covering too many cells, in increasing order
+    private final int[] largeRings;
+
+    /**
+     * Constructor for OuterRingIndex
+     * @param rings the outer rings, in the order in which they are preferred when several contain a point
+     */
+    OuterRingIndex(List<ClosedPolyLine> rings) {
+        this.rings = rings;
+        int n = rings.size();
+        double allMinX = Double.POSITIVE_INFINITY, allMinY = Double.POSITIVE_INFINITY;
+        double allMaxX = Double.NEGATIVE_INFINITY, allMaxY = Double.NEGATIVE_INFINITY;
+        for(ClosedPolyLine ring : rings) {
+            allMinX = Math.min(allMinX, ring.minX());
+            allMinY = Math.min(allMinY, ring.minY());
+            allMaxX = Math.max(allMaxX, ring.maxX());
+            allMaxY = Math.max(allMaxY, ring.maxY());
+        }
+        //About one cell per ring
+        int side = Math.max(1, (int)Math.ceil(Math.sqrt(n)));
+        columns = side;
+        rows = side;
+        gridMinX = allMinX;
+        gridMinY = allMinY;
+        cellWidth = n == 0 ? 1 : Math.max((allMaxX - allMinX) / columns, Double.MIN_NORMAL);
+        cellHeight = n == 0 ? 1 : Math.max((allMaxY - allMinY) / rows, Double.MIN_NORMAL);
+
+        //Counts the rings of each cell, then places them
+        cellOffsets = new int[columns * rows + 1];
+        int largeCount = 0;
+        for(int i = 0; i < n; i++) {
+            if(isLarge(i)) {
+                largeCount++;
+                continue;
+            }
+            ClosedPolyLine ring = rings.get(i);
+            for(int r = row(ring.minY()); r <= row(ring.maxY()); r++) {
+                for(int c = column(ring.minX()); c <= column(ring.maxX()); c++) {
+                    cellOffsets[r * columns + c + 1]++;
+                }
+            }
+        }
+        for(int c = 0; c < columns * rows; c++) {
+            cellOffsets[c + 1] += cellOffsets[c];
+        }
+        cellRings = new int[cellOffsets[columns * rows]];
+        largeRings = new int[largeCount];
+        int[] filled = Arrays.copyOf(cellOffsets, columns * rows);
+        largeCount = 0;
+        for(int i = 0; i < n; i++) {
+            if(isLarge(i)) {
+                largeRings[largeCount++] = i;
+                continue;
+            }
+            ClosedPolyLine ring = rings.get(i);
+            for(int r = row(ring.minY()); r <= row(ring.maxY()); r++) {
+                for(int c = column(ring.minX()); c <= column(ring.maxX()); c++) {
+                    cellRings[filled[r * columns + c]++] = i;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the first ring containing a point
+     * @param p the point
+     * @return the index of the first ring, in the order of the list, containing the point, -1 if there is none
+     */
+    int ringContaining(Point p) {
+        int found = -1;
+        //The rings of the cell and the large rings are both in increasing order
+        if(p.x() >= gridMinX && p.y() >= gridMinY) {
+            int c = (int)((p.x() - gridMinX) / cellWidth);
+            int r = (int)((p.y() - gridMinY) / cellHeight);
+            if(c <= columns && r <= rows) {
+                int cell = Math.min(r, rows - 1) * columns + Math.min(c, columns - 1);
+                for(int k = cellOffsets[cell]; k < cellOffsets[cell + 1]; k++) {
+                    if(contains(cellRings[k], p)) {
+                        found = cellRings[k];
+                        break;
+                    }
+                }
+            }
+        }
+        for(int large : largeRings) {
+            if(found != -1 && large > found) {
+                break;
+            }
+            if(contains(large, p)) {
+                return large;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Tests if a ring contains a point, the ring testing its bounding box first
+     * @param i the index of the ring
+     * @param p the point
+     * @return true if the ring contains the point
+     */
+    private boolean contains(int i, Point p) {
+        return rings.get(i).containsPoint(p);
+    }
+
+    /**
+     * Tests if a ring covers too many cells to be registered in each of them
+     * @param i the index of the ring
+     * @return true if the ring covers more than MAX_CELLS_PER_RING cells
+     */
+    private boolean isLarge(int i) {
+        ClosedPolyLine ring = rings.get(i);
+        return (long)(column(ring.maxX()) - column(ring.minX()) + 1) * (row(ring.maxY()) - row(ring.minY()) + 1) > MAX_CELLS_PER_RING;
+    }
+
+    /**
+     * Returns the column of the grid containing an abscissa of the boxes
+     * @param x the abscissa
+     * @return the column
+     */
+    private int column(double x) {
+        return Math.min((int)((x - gridMinX) / cellWidth), columns - 1);
+    }
+
+    /**
+     * Returns the row of the grid containing an ordinate of the boxes
+     * @param y the ordinate
+     * @return the row
+     */
+    private int row(double y) {
+        return Math.min((int)((y - gridMinY) / cellHeight), rows - 1);
+    }
+}
@@ -0,0 +1,467 @@
+/**
+ *  The content of a PrimitiveBlock of an OSM PBF file, decoded into columns of
+ *  ids, coordinates, references and tags. A block is self-contained, so blocks
+ *  can be decoded in parallel, and are then given one after the other to an
+ *  OSMMapAssembler in the order of the file.
+ *  The coordinates are converted to units of 1e-7 degree, as in OSMNodeStore.
+ *
+ *  @author:     José Ferro Pinto (233843)
+ *  @author:     Dorian Laforest (234832)
+ */
+package ch.epfl.imhof.osm;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+final class PBFPrimitiveBlock {
+    //Default granularity of the coordinates, in units of 1e-9 degree
+    private final static int DEFAULT_GRANULARITY = 100;
+    //Number of units of 1e-9 degree in a fixed-point unit
+    private final static int NANODEGREES_PER_UNIT = 100;
+    private final static OSMRelation.Member.Type[] MEMBER_TYPES = {
+        OSMRelation.Member.Type.NODE, OSMRelation.Member.Type.WAY, OSMRelation.Member.Type.RELATION };
+    private String[] strings = new String[0];
+    private long granularity = DEFAULT_GRANULARITY;
+    private long latitudeOffset = 0;
+    private long longitudeOffset = 0;
+    //The tags of all the entities, each entity having a range of them
+    private final List<String> tagKeys = new ArrayList<>();
+    private final List<String> tagValues = new ArrayList<>();
+    private final LongArray nodeIds = new LongArray();
+    private final LongArray nodeLongitudes = new LongArray();
+    private final LongArray nodeLatitudes = new LongArray();
+    private final LongArray nodeTagEnds = new LongArray();
+    private final LongArray wayIds = new LongArray();
+    private final LongArray wayReferences = new LongArray();
+    private final LongArray wayReferenceEnds = new LongArray();
+    private final LongArray wayTagEnds = new LongArray();
+    private final LongArray relationIds = new LongArray();
+    private final LongArray memberIds = new LongArray();
+    private final List<OSMRelation.Member.Type> memberTypes = new ArrayList<>();
+    private final List<String> memberRoles = new ArrayList<>();
+    private final LongArray memberEnds = new LongArray();
+    private final LongArray relationTagEnds = new LongArray();
+
+    /**
+     * The private PBFPrimitiveBlock constructor, blocks are created by decode
+     */
+    private PBFPrimitiveBlock() {
+    }
+
+    /**
+     * Decodes a PrimitiveBlock message
+     * @param data the uncompressed message
+     * @return the decoded block
+     * @throws IOException if the message is malformed
+     */
+    static PBFPrimitiveBlock decode(byte[] data) throws IOException {
+        PBFPrimitiveBlock block = new PBFPrimitiveBlock();
+        //The string table and the coordinates' scale may follow the groups using them
+        List<ProtobufReader> groups = new ArrayList<>();
+        ProtobufReader r = new ProtobufReader(data);
+        while(r.next()) {
+            switch(r.field()) {
+            case 1:
+                block.readStringTable(r.message());
+                break;
+            case 2:
+                groups.add(r.message());
+                break;
+            case 17:
+                block.granularity = r.varint();
+                break;
+            case 19:
+                block.latitudeOffset = r.varint();
+                break;
+            case 20:
+                block.longitudeOffset = r.varint();
+                break;
+            default:
+                r.skip();
+                break;
+            }
+        }
+        for(ProtobufReader group : groups) {
+            block.readGroup(group);
+        }
+        return block;
+    }
+
+    /**
+     * Gives the block's nodes, ways and relations to an assembler, in this order
+     * @param assembler the assembler
+     */
+    void applyTo(OSMMapAssembler assembler) {
+        int tag = 0;
+        for(int i = 0; i < nodeIds.size; i++) {
+            assembler.startNode(nodeIds.values[i], (int)nodeLongitudes.values[i], (int)nodeLatitudes.values[i]);
+            tag = addTags(assembler, tag, nodeTagEnds.values[i]);
+            assembler.endNode();
+        }
+        int reference = 0;
+        for(int i = 0; i < wayIds.size; i++) {
+            assembler.startWay(wayIds.values[i]);
+            for(; reference < wayReferenceEnds.values[i]; reference++) {
+                assembler.addNodeReference(wayReferences.values[reference]);
+            }
+            tag = addTags(assembler, tag, wayTagEnds.values[i]);
+            assembler.endWay();
+        }
+        int member = 0;
+        for(int i = 0; i < relationIds.size; i++) {
+            assembler.startRelation(relationIds.values[i]);
+            for(; member < memberEnds.values[i]; member++) {
+                assembler.addMember(memberTypes.get(member), memberIds.values[member], memberRoles.get(member));
+            }
+            tag = addTags(assembler, tag, relationTagEnds.values[i]);
+            assembler.endRelation();
+        }
+    }
+
+    /**
+     * Gives a range of tags to an assembler
+     * @param assembler the assembler
+     * @param from the index of the first tag
+     * @param to the index following the last tag
+     * @return the index following the last tag
+     */
+    private int addTags(OSMMapAssembler assembler, int from, long to) {
+        int tag = from;
+        for(; tag < to; tag++) {
+            assembler.addTag(tagKeys.get(tag), tagValues.get(tag));
+        }
+        return tag;
+    }
+
+    /**
+     * Reads the string table. Each string is decoded once and shared by all the tags and roles using it
+     * @param r the reader of the StringTable message
+     * @throws IOException if the message is malformed
+     */
+    private void readStringTable(ProtobufReader r) throws IOException {
+        List<String> table = new ArrayList<>();
+        while(r.next()) {
+            if(r.field() == 1) {
+                table.add(r.string());
+            }
+            else {
+                r.skip();
+            }
+        }
+        strings = table.toArray(new String[table.size()]);
+    }
+
+    /**
+     * Reads a PrimitiveGroup
+     * @param r the reader of the PrimitiveGroup message
+     * @throws IOException if the message is malformed
+     */
+    private void readGroup(ProtobufReader r) throws IOException {
+        while(r.next()) {
+            switch(r.field()) {
+            case 1:
+                readNode(r.message());
+                break;
+            case 2:
+                readDenseNodes(r.message());
+                break;
+            case 3:
+                readWay(r.message());
+                break;
+            case 4:
+                readRelation(r.message());
+                break;
+            default:
+                r.skip();
+                break;
+            }
+        }
+    }
+
+    /**
+     * Reads a Node
+     * @param r the reader of the Node message
+     * @throws IOException if the message is malformed
+     */
+    private void readNode(ProtobufReader r) throws IOException {
+        long id = 0, latitude = 0, longitude = 0;
+        LongArray keys = new LongArray();
+        LongArray values = new LongArray();
+        while(r.next()) {
+            switch(r.field()) {
+            case 1:
+                id = r.signedVarint();
+                break;
+            case 2:
+                readPacked(r, keys, false);
+                break;
+            case 3:
+                readPacked(r, values, false);
+                break;
+            case 8:
+                latitude = r.signedVarint();
+                break;
+            case 9:
+                longitude = r.signedVarint();
+                break;
+            default:
+                r.skip();
+                break;
+            }
+        }
+        nodeIds.add(id);
+        nodeLongitudes.add(fixedPoint(longitudeOffset, longitude));
+        nodeLatitudes.add(fixedPoint(latitudeOffset, latitude));
+        readTags(keys, values);
+        nodeTagEnds.add(tagKeys.size());
+    }
+
+    /**
+     * Reads a DenseNodes message, whose ids and coordinates are delta encoded
+     * and whose tags are all in a single list, each node's ones ending by 0
+     * @param r the reader of the DenseNodes message
+     * @throws IOException if the message is malformed
+     */
+    private void readDenseNodes(ProtobufReader r) throws IOException {
+        LongArray ids = new LongArray();
+        LongArray latitudes = new LongArray();
+        LongArray longitudes = new LongArray();
+        LongArray keysValues = new LongArray();
+        while(r.next()) {
+            switch(r.field()) {
+            case 1:
+                readPacked(r, ids, true);
+                break;
+            case 8:
+                readPacked(r, latitudes, true);
+                break;
+            case 9:
+                readPacked(r, longitudes, true);
+                break;
+            case 10:
+                readPacked(r, keysValues, false);
+                break;
+            default:
+                r.skip();
+                break;
+            }
+        }
+        if(latitudes.size != ids.size || longitudes.size != ids.size) {
+            throw new IOException("Inconsistent dense nodes");
+        }
+        long id = 0, latitude = 0, longitude = 0;
+        int keyValue = 0;
+        for(int i = 0; i < ids.size; i++) {
+            id += ids.values[i];
+            latitude += latitudes.values[i];
+            longitude += longitudes.values[i];
+            nodeIds.add(id);
+            nodeLongitudes.add(fixedPoint(longitudeOffset, longitude));
+            nodeLatitudes.add(fixedPoint(latitudeOffset, latitude));
+            //Without tags in the block, the list is empty
+            while(keyValue < keysValues.size && keysValues.values[keyValue] != 0) {
+                if(keyValue + 1 == keysValues.size) {
+                    throw new IOException("Inconsistent dense nodes tags");
+                }
+                addTag(keysValues.values[keyValue], keysValues.values[keyValue + 1]);
+                keyValue += 2;
+            }
+            keyValue++;
+            nodeTagEnds.add(tagKeys.size());
+        }
+    }
+
+    /**
+     * Reads a Way, whose node references are delta encoded
+     * @param r the reader of the Way message
+     * @throws IOException if the message is malformed
+     */
+    private void readWay(ProtobufReader r) throws IOException {
+        long id = 0;
+        LongArray keys = new LongArray();
+        LongArray values = new LongArray();
+        LongArray references = new LongArray();
+        while(r.next()) {
+            switch(r.field()) {
+            case 1:
+                id = r.varint();
+                break;
+            case 2:
+                readPacked(r, keys, false);
+                break;
+            case 3:
+                readPacked(r, values, false);
+                break;
+            case 8:
+                readPacked(r, references, true);
+                break;
+            default:
+                r.skip();
+                break;
+            }
+        }
+        wayIds.add(id);
+        long reference = 0;
+        for(int i = 0; i < references.size; i++) {
+            reference += references.values[i];
+            wayReferences.add(reference);
+        }
+        wayReferenceEnds.add(wayReferences.size);
+        readTags(keys, values);
+        wayTagEnds.add(tagKeys.size());
+    }
+
+    /**
+     * Reads a Relation, whose member ids are delta encoded
+     * @param r the reader of the Relation message
+     * @throws IOException if the message is malformed
+     */
+    private void readRelation(ProtobufReader r) throws IOException {
+        long id = 0;
+        LongArray keys = new LongArray();
+        LongArray values = new LongArray();
+        LongArray roles = new LongArray();
+        LongArray ids = new LongArray();
+        LongArray types = new LongArray();
+        while(r.next()) {
+            switch(r.field()) {
+            case 1:
+                id = r.varint();
+                break;
+            case 2:
+                readPacked(r, keys, false);
+                break;
+            case 3:
+                readPacked(r, values, false);
+                break;
+            case 8:
+                readPacked(r, roles, false);
+                break;
+            case 9:
+                readPacked(r, ids, true);
+                break;
+            case 10:
+                readPacked(r, types, false);
+                break;
+            default:
+                r.skip();
+                break;
+            }
+        }
+        if(roles.size != ids.size || types.size != ids.size) {
+            throw new IOException("Inconsistent relation members");
+        }
+        relationIds.add(id);
+        long memberId = 0;
+        for(int i = 0; i < ids.size; i++) {
+            memberId += ids.values[i];
+            if(types.values[i] < 0 || types.values[i] >= MEMBER_TYPES.length) {
+                throw new IOException(types.values[i] + " is not a valid member type");
+            }
+            memberIds.add(memberId);
+            memberTypes.add(MEMBER_TYPES[(int)types.values[i]]);
+            memberRoles.add(string(roles.values[i]));
+        }
+        memberEnds.add(memberIds.size);
+        readTags(keys, values);
+        relationTagEnds.add(tagKeys.size());
+    }
+
+    /**
+     * Adds the tags given as parallel lists of keys and values
+     * @param keys the indices of the keys in the string table
+     * @param values the indices of the values in the string table
+     * @throws IOException if the lists do not have the same size
+     */
+    private void readTags(LongArray keys, LongArray values) throws IOException {
+        if(keys.size != values.size) {
+            throw new IOException("Inconsistent tags");
+        }
+        for(int i = 0; i < keys.size; i++) {
+            addTag(keys.values[i], values.values[i]);
+        }
+    }
+
+    /**
+     * Adds a tag
+     * @param key the index of the key in the string table
+     * @param value the index of the value in the string table
+     * @throws IOException if an index is not in the string table
+     */
+    private void addTag(long key, long value) throws IOException {
+        tagKeys.add(string(key));
+        tagValues.add(string(value));
+    }
+
+    /**
+     * Returns a string of the string table
+     * @param index the string's index
+     * @return the string
+     * @throws IOException if the index is not in the string table
+     */
+    private String string(long index) throws IOException {
+        if(index < 0 || index >= strings.length) {
+            throw new IOException("Invalid string index " + index);
+        }
+        return strings[(int)index];
+    }
+
+    /**
+     * Converts a coordinate of the block to fixed-point units, rounding it to the nearest unit
+     * @param offset the offset of the block's coordinates, in units of 1e-9 degree
+     * @param coordinate the coordinate in units of the block's granularity
+     * @return the coordinate in units of 1e-7 degree
+     * @throws IOException if the coordinate does not fit in 32 bits
+     */
+    private long fixedPoint(long offset, long coordinate) throws IOException {
+        long nanodegrees = offset + granularity * coordinate;
+        long fixedPoint = Math.floorDiv(nanodegrees + NANODEGREES_PER_UNIT / 2, NANODEGREES_PER_UNIT);
+        if(fixedPoint > Integer.MAX_VALUE || fixedPoint < Integer.MIN_VALUE) {
+            throw new IOException("Coordinate out of range");
+        }
+        return fixedPoint;
+    }
+
+    /**
+     * Reads a repeated integer field, packed or not
+     * @param r the reader, positioned after the field's key
+     * @param values the list to which the values are added
+     * @param signed true for zigzag encoded values (sint32 and sint64 fields)
+     * @throws IOException if the field is malformed
+     */
+    private static void readPacked(ProtobufReader r, LongArray values, boolean signed) throws IOException {
+        if(r.wireType() == ProtobufReader.LENGTH_DELIMITED) {
+            ProtobufReader packed = r.message();
+            while(packed.hasRemaining()) {
+                values.add(signed ? packed.signedVarint() : packed.varint());
+            }
+        }
+        else if(r.wireType() == ProtobufReader.VARINT) {
+            values.add(signed ? r.signedVarint() : r.varint());
+        }
+        else {
+            throw new IOException("Invalid wire type for an integer field");
+        }
+    }
+
+    /**
+     *  A growable list of longs
+     */
+    private final static class LongArray {
+        private long[] values = new long[16];
+        private int size = 0;
+
+        /**
+         * Adds a value at the end of the list
+         * @param value the value
+         */
+        private void add(long value) {
+            if(size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+/**
+ *  An input stream reading its source on a background thread, so that the
+ *  production of the bytes (eg. their decompression) and their consumption
+ *  run in parallel. The bytes are passed through a fixed ring of reusable
+ *  buffers : the reading thread waits when all of them are full, which bounds
+ *  the memory used, and the consumer waits when all of them are empty.
+ *  The exceptions of the source are thrown to the consumer once it has read
+ *  all the bytes preceding them.
+ *
+ *  @author:     José Ferro Pinto (233843)
+ *  @author:     Dorian Laforest (234832)
+ */
+package ch.epfl.imhof.osm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+final class PipelinedInputStream extends InputStream {
+    private final static int DEFAULT_BUFFER_SIZE = 1 << 16;
+    private final static int DEFAULT_BUFFER_COUNT = 8;
+    //Marks the end of the source in the queue of filled buffers
+    private final static Chunk END = new Chunk(0);
+    private final InputStream source;
+    private final BlockingQueue<Chunk> emptyChunks;
+    private final BlockingQueue<Chunk> filledChunks;
+    private final Thread reader;
+    private volatile IOException failure = null;
+    private Chunk current = null;
+    private int position = 0;
+    private boolean closed = false;
+
+    /**
+     * Constructor for PipelinedInputStream, with 8 buffers of 64 KiB
+     * @param source the stream to read on the background thread
+     */
+    PipelinedInputStream(InputStream source) {
+        this(source, DEFAULT_BUFFER_SIZE, DEFAULT_BUFFER_COUNT);
+    }
+
+    /**
+     * Constructor for PipelinedInputStream. The reading of the source begins immediately
+     * @param source the stream to read on the background thread
+     * @param bufferSize the size of each buffer, in bytes
+     * @param bufferCount the number of buffers
+     * @throws IllegalArgumentException if bufferSize or bufferCount is not strictly positive
+     */
+    PipelinedInputStream(InputStream source, int bufferSize, int bufferCount) throws IllegalArgumentException {
+        if(bufferSize <= 0 || bufferCount <= 0) {
+            throw new IllegalArgumentException("bufferSize and bufferCount must be strictly positive");
+        }
+        this.source = source;
+        emptyChunks = new ArrayBlockingQueue<>(bufferCount);
+        //One more place for the end marker
+        filledChunks = new ArrayBlockingQueue<>(bufferCount + 1);
+        for(int i = 0; i < bufferCount; i++) {
+            emptyChunks.add(new Chunk(bufferSize));
+        }
+        reader = new Thread(this::fill, "OSM input reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if(!nextChunk()) {
+            return -1;
+        }
+        return current.bytes[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if(off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if(len == 0) {
+            return 0;
+        }
+        if(!nextChunk()) {
+            return -1;
+        }
+        int count = Math.min(len, current.length - position);
+        System.arraycopy(current.bytes, position, b, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return current == null || current == END ? 0 : current.length - position;
+    }
+
+    /**
+     * Stops the background thread and closes the source
+     * @throws IOException if the source can not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if(closed) {
+            return;
+        }
+        closed = true;
+        reader.interrupt();
+        try {
+            reader.join();
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        source.close();
+    }
+
+    /**
+     * Makes sure the current buffer has bytes left to read, giving the exhausted one
+     * back to the background thread
+     * @return true if there are bytes to read, false at the end of the source
+     * @throws IOException if the source failed or if the stream is closed
+     */
+    private boolean nextChunk() throws IOException {
+        if(closed) {
+            throw new IOException("Stream closed");
+        }
+        while(current == null || (current != END && position == current.length)) {
+            if(current != null) {
+                emptyChunks.add(current);
+            }
+            try {
+                current = filledChunks.take();
+            }
+            catch(InterruptedException e) {
+                current = null;
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            position = 0;
+        }
+        if(current == END) {
+            if(failure != null) {
+                throw failure;
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reads the source into the empty buffers until its end, run by the background thread.
+     * The end is always queued, even if the thread dies of an error, so that the consumer
+     * never waits for it forever
+     */
+    private void fill() {
+        try {
+            int read = 0;
+            while(read >= 0) {
+                Chunk chunk = emptyChunks.take();
+                chunk.length = 0;
+                try {
+                    while(chunk.length < chunk.bytes.length
+                            && (read = source.read(chunk.bytes, chunk.length, chunk.bytes.length - chunk.length)) >= 0) {
+                        chunk.length += read;
+                    }
+                }
+                catch(IOException e) {
+                    failure = e;
+                    read = -1;
+                }
+                catch(Throwable e) {
+                    //Runtime exceptions and errors (eg. of the decompression) are given to the consumer too
+                    failure = new IOException(e);
+                    read = -1;
+                }
+                //The bytes read before a failure are given too
+                if(chunk.length > 0) {
+                    filledChunks.put(chunk);
+                }
+            }
+        }
+        catch(InterruptedException e) {
+            //The stream is closed
+        }
+        catch(Throwable e) {
+            if(failure == null) {
+                failure = new IOException(e);
+            }
+        }
+        finally {
+            //There is always a place left for the end marker
+            filledChunks.offer(END);
+        }
+    }
+
+    /**
+     *  A buffer and the number of bytes it holds
+     */
+    private final static class Chunk {
+        private final byte[] bytes;
+        private int length = 0;
+
+        /**
+         * Constructor for Chunk
+         * @param size the size of the buffer
+         */
+        private Chunk(int size) {
+            bytes = new byte[size];
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/**
+ *  A cache of the projections of the nodes of the node stores, used during a single
+ *  transformation so that a node shared by several ways, or by a way and the ring
+ *  of a multipolygon, is projected only once. The projected points are stored in
+ *  an array parallel to each store, created when a node of the store is first
+ *  projected, so that the ways of several stores (eg. the ones rebuilt by each
+ *  change of an OSMMapIndex) are cached too. Several threads may fill an array at
+ *  once : a Point having only final fields, a thread sees either no point or a
+ *  complete one, and at worst a node is projected twice to the same point.
+ *
+ *  @author:     José Ferro Pinto (233843)
+ *  @author:     Dorian Laforest (234832)
+ */
+package ch.epfl.imhof.osm;
+
+import ch.epfl.imhof.geometry.Point;
+import ch.epfl.imhof.projection.Projection;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+final class ProjectedNodeCache {
+    private final Projection projection;
+    //The stores do not redefine equals, so they are compared by identity
+    private final Map<OSMNodeStore, Point[]> points = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Constructor for ProjectedNodeCache
+     * @param projection the projection of the nodes
+     */
+    ProjectedNodeCache(Projection projection) {
+        this.projection = projection;
+    }
+
+    /**
+     * Returns the projection of a node
+     * @param nodeStore the store containing the node
+     * @param index the node's index in the store
+     * @return the projected position of the node
+     */
+    Point project(OSMNodeStore nodeStore, int index) {
+        Point[] storePoints = points.computeIfAbsent(nodeStore, store -> new Point[store.size()]);
+        if(index >= storePoints.length) {
+            //A node added to the store after its array was created
+            misses.increment();
+            return projection.project(nodeStore.position(index));
+        }
+        Point point = storePoints[index];
+        if(point != null) {
+            hits.increment();
+            return point;
+        }
+        misses.increment();
+        point = projection.project(nodeStore.position(index));
+        storePoints[index] = point;
+        return point;
+    }
+
+    /**
+     * Returns the number of projections computed
+     * @return the number of nodes projected, counting again those which could not be cached
+     */
+    long projectionsCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of projections taken from the cache
+     * @return the number of cache hits
+     */
+    long hitsCount() {
+        return hits.sum();
+    }
+}
@@ -0,0 +1,215 @@
+/**
+ *  Reads the fields of a message encoded in the protocol buffers wire format
+ *  (https://developers.google.com/protocol-buffers/docs/encoding), directly
+ *  from an array of bytes. Only the wire types used by the OSM PBF format are
+ *  supported : varints, length-delimited fields and fixed 32 and 64 bits values.
+ *
+ *  @author:     José Ferro Pinto (233843)
+ *  @author:     Dorian Laforest (234832)
+ */
+package ch.epfl.imhof.osm;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+final class ProtobufReader {
+    /**
+     * Wire type of the varint fields
+     */
+    final static int VARINT = 0;
+    /**
+     * Wire type of the 64 bits fields
+     */
+    final static int FIXED_64 = 1;
+    /**
+     * Wire type of the length-delimited fields (strings, bytes, messages, packed repeated fields)
+     */
+    final static int LENGTH_DELIMITED = 2;
+    /**
+     * Wire type of the 32 bits fields
+     */
+    final static int FIXED_32 = 5;
+    private final byte[] bytes;
+    private int position;
+    private final int limit;
+    private int field = 0;
+    private int wireType = 0;
+
+    /**
+     * Constructor for ProtobufReader
+     * @param bytes the array containing the message
+     * @param from the index of the message's first byte
+     * @param to the index following the message's last byte
+     * @throws IndexOutOfBoundsException if the bounds are not in the array
+     */
+    ProtobufReader(byte[] bytes, int from, int to) throws IndexOutOfBoundsException {
+        if(from < 0 || to > bytes.length || from > to) {
+            throw new IndexOutOfBoundsException();
+        }
+        this.bytes = bytes;
+        this.position = from;
+        this.limit = to;
+    }
+
+    /**
+     * Constructor for ProtobufReader, for a message filling the whole array
+     * @param bytes the message
+     */
+    ProtobufReader(byte[] bytes) {
+        this(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Tests if there are bytes left to read
+     * @return true if the end of the message is not reached
+     */
+    boolean hasRemaining() {
+        return position < limit;
+    }
+
+    /**
+     * Reads the key of the next field
+     * @return true if a field has been read, false at the end of the message
+     * @throws IOException if the key is malformed
+     */
+    boolean next() throws IOException {
+        if(position == limit) {
+            return false;
+        }
+        long key = varint();
+        field = (int)(key >>> 3);
+        wireType = (int)(key & 7);
+        if(field <= 0) {
+            throw new IOException("Invalid protocol buffers field " + field);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of the field whose key was read last
+     * @return the field number
+     */
+    int field() {
+        return field;
+    }
+
+    /**
+     * Returns the wire type of the field whose key was read last
+     * @return the wire type
+     */
+    int wireType() {
+        return wireType;
+    }
+
+    /**
+     * Reads a varint
+     * @return the value read, as an unsigned 64 bits integer
+     * @throws IOException if the varint is truncated or longer than 10 bytes
+     */
+    long varint() throws IOException {
+        long value = 0;
+        for(int shift = 0; shift < 64; shift += 7) {
+            if(position == limit) {
+                throw new IOException("Truncated varint");
+            }
+            byte b = bytes[position++];
+            value |= (long)(b & 0x7F) << shift;
+            if(b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    /**
+     * Reads a zigzag encoded varint (sint32 and sint64 fields)
+     * @return the signed value read
+     * @throws IOException if the varint is malformed
+     */
+    long signedVarint() throws IOException {
+        long value = varint();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Reads the length of a length-delimited field and skips its content
+     * @return the index of the content's first byte, the content ending at the current position
+     * @throws IOException if the field is longer than the message
+     */
+    int lengthDelimited() throws IOException {
+        long length = varint();
+        if(length > limit - position) {
+            throw new IOException("Truncated field");
+        }
+        int start = position;
+        position += (int)length;
+        return start;
+    }
+
+    /**
+     * Reads a length-delimited field containing a message or a packed repeated field
+     * @return a reader for the field's content
+     * @throws IOException if the field is longer than the message
+     */
+    ProtobufReader message() throws IOException {
+        int start = lengthDelimited();
+        return new ProtobufReader(bytes, start, position);
+    }
+
+    /**
+     * Reads a length-delimited field containing bytes
+     * @return a copy of the bytes
+     * @throws IOException if the field is longer than the message
+     */
+    byte[] bytes() throws IOException {
+        int start = lengthDelimited();
+        byte[] content = new byte[position - start];
+        System.arraycopy(bytes, start, content, 0, content.length);
+        return content;
+    }
+
+    /**
+     * Reads a length-delimited field containing an UTF-8 string
+     * @return the string
+     * @throws IOException if the field is longer than the message
+     */
+    String string() throws IOException {
+        int start = lengthDelimited();
+        return new String(bytes, start, position - start, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Skips the content of the field whose key was read last
+     * @throws IOException if the field is truncated or its wire type unsupported
+     */
+    void skip() throws IOException {
+        switch(wireType) {
+        case VARINT:
+            varint();
+            break;
+        case FIXED_64:
+            skipBytes(8);
+            break;
+        case LENGTH_DELIMITED:
+            lengthDelimited();
+            break;
+        case FIXED_32:
+            skipBytes(4);
+            break;
+        default:
+            throw new IOException("Unsupported wire type " + wireType);
+        }
+    }
+
+    /**
+     * Skips a given number of bytes
+     * @param count the number of bytes
+     * @throws IOException if there are less bytes left in the message
+     */
+    private void skipBytes(int count) throws IOException {
+        if(count > limit - position) {
+            throw new IOException("Truncated field");
+        }
+        position += count;
+    }
+}
@@ -0,0 +1,232 @@
+/**
+ *  Assembles the ways of a multipolygon role into rings, joining them end to end
+ *  through their first and last nodes and reversing them where needed, in time
+ *  linear in the number of nodes. The ways ending at the same node are chained
+ *  in primitive arrays indexed through a LongIndex of the end nodes' ids.
+ *  When a chain comes back to a node it already went through, eg. at the node
+ *  where two rings touch, the loop is cut out as a ring of its own.
+ *  This class is not instantiable
+ *
+ *  @author:     José Ferro Pinto (233843)
+ *  @author:     Dorian Laforest (234832)
+ */
+package ch.epfl.imhof.osm;
+
+import ch.epfl.imhof.geometry.ClosedPolyLine;
+import ch.epfl.imhof.geometry.Point;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+final class RingAssembler {
+    private final static int NONE = -1;
+    private final List<OSMWay> ways;
+    private final ProjectedNodeCache cache;
+    //The end nodes, and for each of them the first way end at this node
+    private final LongIndex endNodes;
+    private final int[] firstEnd;
+    //The ends of the ways, 2 * way for the first node and 2 * way + 1 for the last one,
+    //each one linked to the next end at the same node
+    private final int[] nextEnd;
+    private final boolean[] used;
+    //The position in the current chain of each end node it went through, NONE otherwise
+    private final int[] chainPosition;
+    private final List<Point> chain = new ArrayList<>();
+    //The end nodes of the current chain, in its order
+    private final int[] chainJoints;
+    private int chainJointsCount = 0;
+    private final List<ClosedPolyLine> rings = new ArrayList<>();
+
+    /**
+     * Private constructor for RingAssembler, see rings
+     * @param ways the distinct ways to assemble
+     * @param cache the projections of the nodes
+     */
+    private RingAssembler(List<OSMWay> ways, ProjectedNodeCache cache) {
+        this.ways = ways;
+        this.cache = cache;
+        endNodes = new LongIndex(2 * ways.size());
+        nextEnd = new int[2 * ways.size()];
+        used = new boolean[ways.size()];
+        for(int end = 0; end < nextEnd.length; end++) {
+            endNodes.add(endNodeId(end));
+        }
+        firstEnd = new int[endNodes.size()];
+        Arrays.fill(firstEnd, NONE);
+        chainPosition = new int[endNodes.size()];
+        Arrays.fill(chainPosition, NONE);
+        chainJoints = new int[endNodes.size()];
+        //The ends are linked in reverse order, so that the ways are joined in their order in the relation
+        for(int end = nextEnd.length - 1; end >= 0; end--) {
+            int node = endNodes.indexOf(endNodeId(end));
+            nextEnd[end] = firstEnd[node];
+            firstEnd[node] = end;
+        }
+    }
+
+    /**
+     * Assembles ways into rings
+     * @param ways the ways to assemble, a way listed several times being used once
+     * @param cache the projections of the nodes
+     * @return the rings, or an empty list if some ways can not be joined into rings
+     */
+    static List<ClosedPolyLine> rings(List<OSMWay> ways, ProjectedNodeCache cache) {
+        Set<OSMWay> distinctWays = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<OSMWay> openWays = new ArrayList<>(ways.size());
+        List<ClosedPolyLine> closedRings = new ArrayList<>();
+        for(OSMWay way : ways) {
+            if(distinctWays.add(way)) {
+                if(nodeId(way, 0) == nodeId(way, way.nodesCount() - 1)) {
+                    //A closed way is a ring by itself
+                    List<Point> points = new ArrayList<>(way.nodesCount() - 1);
+                    for(int i = 0; i < way.nodesCount() - 1; i++) {
+                        points.add(cache.project(way.nodeStore(), way.nodeIndex(i)));
+                    }
+                    if(points.size() > 2) {
+                        closedRings.add(new ClosedPolyLine(points));
+                    }
+                }
+                else {
+                    openWays.add(way);
+                }
+            }
+        }
+        if(openWays.isEmpty()) {
+            return closedRings;
+        }
+        RingAssembler assembler = new RingAssembler(openWays, cache);
+        if(!assembler.joinWays()) {
+            return new ArrayList<>();
+        }
+        closedRings.addAll(assembler.rings);
+        return closedRings;
+    }
+
+    /**
+     * Joins all the open ways into rings
+     * @return true if all the ways were joined into rings, false if a chain of ways could not be closed
+     */
+    private boolean joinWays() {
+        for(int way = 0; way < ways.size(); way++) {
+            if(used[way]) {
+                continue;
+            }
+            used[way] = true;
+            addNode(2 * way, 0);
+            joint(endNodes.indexOf(endNodeId(2 * way)));
+            int end = addWay(2 * way);
+            while(!chain.isEmpty()) {
+                int node = endNodes.indexOf(endNodeId(end));
+                if(chainPosition[node] != NONE) {
+                    closeLoop(node);
+                    if(chain.size() == 1) {
+                        //The chain came back to its first node
+                        chainPosition[node] = NONE;
+                        chain.clear();
+                        chainJointsCount = 0;
+                        break;
+                    }
+                }
+                else {
+                    joint(node);
+                }
+                int next = unusedEnd(node);
+                if(next == NONE) {
+                    return false;
+                }
+                used[next / 2] = true;
+                end = addWay(next);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds a way to the chain, without its node already at the end of the chain
+     * @param start the end of the way by which it is joined to the chain
+     * @return the other end of the way, now at the end of the chain
+     */
+    private int addWay(int start) {
+        OSMWay way = ways.get(start / 2);
+        int last = way.nodesCount() - 1;
+        //A way joined by its last node is walked backward
+        boolean forward = start % 2 == 0;
+        for(int i = 1; i <= last; i++) {
+            addNode(start, forward ? i : last - i);
+        }
+        return start ^ 1;
+    }
+
+    /**
+     * Adds the projection of a node of a way to the chain
+     * @param end an end of the way
+     * @param i the position of the node in the way
+     */
+    private void addNode(int end, int i) {
+        OSMWay way = ways.get(end / 2);
+        chain.add(cache.project(way.nodeStore(), way.nodeIndex(i)));
+    }
+
+    /**
+     * Records that the last point of the chain is an end node
+     * @param node the index of the end node
+     */
+    private void joint(int node) {
+        chainPosition[node] = chain.size() - 1;
+        chainJoints[chainJointsCount++] = node;
+    }
+
+    /**
+     * Cuts the loop between the previous passage of the chain at an end node and its last point into a ring
+     * @param node the index of the end node, already in the chain
+     */
+    private void closeLoop(int node) {
+        int position = chainPosition[node];
+        List<Point> loop = chain.subList(position, chain.size() - 1);
+        if(loop.size() > 2) {
+            rings.add(new ClosedPolyLine(loop));
+        }
+        chain.subList(position + 1, chain.size()).clear();
+        //The end nodes of the loop are no longer in the chain
+        while(chainJoints[chainJointsCount - 1] != node) {
+            chainPosition[chainJoints[--chainJointsCount]] = NONE;
+        }
+    }
+
+    /**
+     * Returns an end of an unused way at an end node
+     * @param node the index of the end node
+     * @return the end, NONE if all the ways ending at the node are used
+     */
+    private int unusedEnd(int node) {
+        //The used ends are dropped from the list, so that each end is skipped at most once
+        while(firstEnd[node] != NONE && used[firstEnd[node] / 2]) {
+            firstEnd[node] = nextEnd[firstEnd[node]];
+        }
+        return firstEnd[node];
+    }
+
+    /**
+     * Returns the id of the node at an end of a way
+     * @param end the end of the way
+     * @return the id of the first node of the way if end is even, of its last node otherwise
+     */
+    private long endNodeId(int end) {
+        OSMWay way = ways.get(end / 2);
+        return nodeId(way, end % 2 == 0 ? 0 : way.nodesCount() - 1);
+    }
+
+    /**
+     * Returns the id of a node of a way
+     * @param way the way
+     * @param i the position of the node in the way
+     * @return the node's id
+     */
+    private static long nodeId(OSMWay way, int i) {
+        return way.nodeStore().id(way.nodeIndex(i));
+    }
+}
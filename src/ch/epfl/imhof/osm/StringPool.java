@@ -0,0 +1,140 @@
+/**
+ *  A dictionary of strings, so that the strings repeated in an OSM file (tag keys
+ *  and values like "highway" or "residential", member roles) exist only once in
+ *  memory. Strings can be looked up directly from their bytes, without creating
+ *  a String when they already are in the dictionary.
+ *  Only short strings are kept and the number of strings is bounded, so that
+ *  unique values (names, notes) do not fill the dictionary.
+ *
+ *  @author:     José Ferro Pinto (233843)
+ *  @author:     Dorian Laforest (234832)
+ */
+package ch.epfl.imhof.osm;
+
+import java.nio.charset.StandardCharsets;
+
+final class StringPool {
+    private final static int MAX_LENGTH = 64;
+    private final static int MAX_SIZE = 1 << 16;
+    //Open addressing table, kept at most half full
+    private String[] table = new String[1 << 10];
+    private int size = 0;
+
+    /**
+     * Returns the string of the dictionary equal to the given one, adding it if needed
+     * @param s the string
+     * @return the string of the dictionary, or s itself if it is too long or the dictionary full
+     */
+    String intern(String s) {
+        if(s == null || s.length() > MAX_LENGTH) {
+            return s;
+        }
+        int mask = table.length - 1;
+        int i = mix(s.hashCode()) & mask;
+        for(String entry = table[i]; entry != null; entry = table[i]) {
+            if(entry == s || entry.equals(s)) {
+                return entry;
+            }
+            i = (i + 1) & mask;
+        }
+        return add(i, s);
+    }
+
+    /**
+     * Returns the string of the dictionary encoded by the given UTF-8 bytes, adding it if needed
+     * @param bytes the array containing the string
+     * @param from the index of the string's first byte
+     * @param to the index following the string's last byte
+     * @return the string of the dictionary, or a new string if it is too long or the dictionary full
+     */
+    String intern(byte[] bytes, int from, int to) {
+        int length = to - from;
+        if(length > MAX_LENGTH) {
+            return new String(bytes, from, length, StandardCharsets.UTF_8);
+        }
+        //Computes String.hashCode() from the bytes, which is only possible if they are all ASCII
+        int hash = 0;
+        for(int j = from; j < to; j++) {
+            if(bytes[j] < 0) {
+                return intern(new String(bytes, from, length, StandardCharsets.UTF_8));
+            }
+            hash = 31 * hash + bytes[j];
+        }
+        int mask = table.length - 1;
+        int i = mix(hash) & mask;
+        for(String entry = table[i]; entry != null; entry = table[i]) {
+            if(equals(entry, bytes, from, to)) {
+                return entry;
+            }
+            i = (i + 1) & mask;
+        }
+        return add(i, new String(bytes, from, length, StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Returns the number of strings in the dictionary
+     * @return the number of strings
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Adds a string to the dictionary if it is not full
+     * @param i the free slot of the table where the string belongs
+     * @param s the string
+     * @return s
+     */
+    private String add(int i, String s) {
+        if(size == MAX_SIZE) {
+            return s;
+        }
+        table[i] = s;
+        size++;
+        if(2 * size > table.length) {
+            String[] old = table;
+            table = new String[old.length * 2];
+            int mask = table.length - 1;
+            for(String entry : old) {
+                if(entry != null) {
+                    int j = mix(entry.hashCode()) & mask;
+                    while(table[j] != null) {
+                        j = (j + 1) & mask;
+                    }
+                    table[j] = entry;
+                }
+            }
+        }
+        return s;
+    }
+
+    /**
+     * Tests if a string is equal to ASCII bytes
+     * @param s the string
+     * @param bytes the array containing the bytes
+     * @param from the index of the first byte
+     * @param to the index following the last byte
+     * @return true if the string has the characters of the bytes
+     */
+    private static boolean equals(String s, byte[] bytes, int from, int to) {
+        if(s.length() != to - from) {
+            return false;
+        }
+        for(int j = 0; j < s.length(); j++) {
+            if(s.charAt(j) != bytes[from + j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Spreads the bits of a hash code, whose low bits are used to index the table
+     * @param hash the hash code
+     * @return the mixed hash
+     */
+    private static int mix(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -26,6 +26,13 @@ public class Java2DCanvas implements Canvas {
     private final BufferedImage image;
     private final Graphics2D ctx;
     private final double RESOLUTION_FACTOR = 72d;
+    //The drawn area, in the coordinates of the map
+    private final Point bottomLeft;
+    private final Point topRight;
+    //The size of a unit of the canvas in the coordinates of the map
+    private final double mapUnitsPerCanvasUnit;
+    //The miter limit of the strokes
+    private final float MITER_LIMIT = 10.0f;
     
     /**
      * JAva2DCanvas' constructor using the change of reference
@@ -56,6 +63,9 @@ public class Java2DCanvas implements Canvas {
         }
         
         double dilatation = resolution/RESOLUTION_FACTOR;
+        this.bottomLeft = pBL;
+        this.topRight = pTR;
+        this.mapUnitsPerCanvasUnit = (pTR.x() - pBL.x()) / (width/dilatation);
         this.frameChange = Point.alignedCoordinateChange(pBL, new Point(0, height/dilatation), pTR, new Point(width/dilatation, 0));
         this.image = new BufferedImage(width, height, TYPE_INT_RGB);
         this.ctx = image.createGraphics();
@@ -75,11 +85,16 @@ public class Java2DCanvas implements Canvas {
     
     @Override
     public void drawPolyLine(PolyLine polyLine, LineStyle lineStyle) {
+        //A line outside the drawn area is skipped, the stroke's joins extending it by at most the miter limit times its half width
+        double margin = MITER_LIMIT * lineStyle.width() / 2 * mapUnitsPerCanvasUnit;
+        if(!isVisible(polyLine, margin)) {
+            return;
+        }
         Path2D polyLinePath = generatePath(polyLine);
         
         float[] dashingPattern = lineStyle.dashingPattern().length == 0 ? null : lineStyle.dashingPattern();
         
-        Stroke stroke = new BasicStroke(lineStyle.width(), lineStyle.lineCap().ordinal(), lineStyle.lineJoin().ordinal(), 10.0f, dashingPattern, 0f);
+        Stroke stroke = new BasicStroke(lineStyle.width(), lineStyle.lineCap().ordinal(), lineStyle.lineJoin().ordinal(), MITER_LIMIT, dashingPattern, 0f);
         
         ctx.setStroke(stroke);
         ctx.setColor(lineStyle.color().toAWTColor());
@@ -88,6 +103,10 @@ public class Java2DCanvas implements Canvas {
     
     @Override
     public void drawPolygon(Polygon polygon, Color color) {
+        //A polygon outside the drawn area is skipped, its holes being inside its shell
+        if(!isVisible(polygon.shell(), 0)) {
+            return;
+        }
         Path2D shellPath = generatePath(polygon.shell());
         
         Area shell = new Area(shellPath);
@@ -99,6 +118,16 @@ public class Java2DCanvas implements Canvas {
         ctx.setColor(color.toAWTColor());
         ctx.fill(shell);
     }
+    /**
+     * Tests if a PolyLine may be visible, comparing its bounding box with the drawn area
+     * @param polyLine the PolyLine to test
+     * @param margin the distance around the PolyLine which may be drawn, in the coordinates of the map
+     * @return false if the PolyLine is certainly outside the drawn area, true otherwise
+     */
+    private boolean isVisible(PolyLine polyLine, double margin) {
+        return polyLine.envelopeIntersects(bottomLeft.x() - margin, bottomLeft.y() - margin, topRight.x() + margin, topRight.y() + margin);
+    }
+
     /**
      * Generates the path for te given polyLine
      * @param polyLine The PolyLine to generate path with
@@ -106,11 +135,12 @@ public class Java2DCanvas implements Canvas {
      */
     private Path2D generatePath(PolyLine polyLine) {
         Path2D path = new Path2D.Double();
-        path.moveTo(frameChange.apply(polyLine.firstPoint()).x(), frameChange.apply(polyLine.firstPoint()).y());
-        for(Point p : polyLine.points()) {
-            if(p != polyLine.firstPoint()){
-                path.lineTo(frameChange.apply(p).x(), frameChange.apply(p).y());
-            }
+        Point first = frameChange.apply(polyLine.firstPoint());
+        path.moveTo(first.x(), first.y());
+        //The points are read by index from the packed coordinates
+        for(int i = 1; i < polyLine.pointsCount(); i++) {
+            Point p = frameChange.apply(new Point(polyLine.x(i), polyLine.y(i)));
+            path.lineTo(p.x(), p.y());
         }
         
         if(polyLine.isClosed()){
@@ -0,0 +1,84 @@
+package ch.epfl.imhof;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import ch.epfl.imhof.osm.OSMMap;
+import ch.epfl.imhof.osm.OSMMapReader;
+import ch.epfl.imhof.osm.OSMToGeoTransformer;
+import ch.epfl.imhof.projection.CH1903Projection;
+
+/**
+ * Measures the retained heap of Attributes, the cost of the three keepOnlyKeys
+ * done for each way by OSMToGeoTransformer, and optionally the transform time of an OSM file.
+ * Run with a fixed heap (eg. -Xms2g -Xmx2g) : java ch.epfl.imhof.AttributesBenchmark [attributes] [file.osm.gz]
+ */
+public class AttributesBenchmark {
+    private final static String[] KEYS = { "highway", "name", "surface", "lanes", "maxspeed", "oneway",
+            "building", "addr:street", "addr:housenumber", "source", "landuse", "layer" };
+    private final static String[] VALUES = { "residential", "yes", "asphalt", "2", "50", "no", "1", "survey" };
+    //The sets of keys filtered by OSMToGeoTransformer for each way
+    private final static Set<String> SURFACE = new HashSet<>(Arrays.asList("aeroway", "amenity", "building", "harbour",
+            "historic", "landuse", "leisure", "man_made", "military", "natural", "office", "place", "power",
+            "public_transport", "shop", "sport", "tourism", "water", "waterway", "wetland"));
+    private final static Set<String> POLYGON = new HashSet<>(Arrays.asList("building", "landuse", "layer",
+            "leisure", "natural", "waterway"));
+    private final static Set<String> POLYLINE = new HashSet<>(Arrays.asList("bridge", "highway", "layer",
+            "man_made", "railway", "tunnel", "waterway"));
+    private final static int ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Random random = new Random(0);
+        Attributes[] attributes = new Attributes[count];
+        long before = usedMemory();
+        for (int i = 0; i < count; i++) {
+            Attributes.Builder builder = new Attributes.Builder();
+            //Between 1 and 5 tags, as most OSM ways
+            int tags = 1 + random.nextInt(5);
+            for (int t = 0; t < tags; t++) {
+                builder.put(KEYS[random.nextInt(KEYS.length)], VALUES[random.nextInt(VALUES.length)]);
+            }
+            attributes[i] = builder.build();
+        }
+        long bytes = usedMemory() - before;
+
+        long bestNanos = Long.MAX_VALUE;
+        int kept = 0;
+        for (int r = 0; r < ROUNDS; r++) {
+            long start = System.nanoTime();
+            for (Attributes a : attributes) {
+                kept += a.keepOnlyKeys(POLYGON).isEmpty() ? 0 : 1;
+                kept += a.keepOnlyKeys(POLYLINE).isEmpty() ? 0 : 1;
+                kept += a.keepOnlyKeys(SURFACE).isEmpty() ? 0 : 1;
+            }
+            bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+        }
+        System.out.printf("%d attributes : %6.1f bytes/attributes, %6.1f ns for the 3 keepOnlyKeys (%d)%n",
+                count, bytes / (double) count, bestNanos / (double) count, kept);
+
+        if (args.length > 1) {
+            OSMMap map = OSMMapReader.readOSMFile(args[1], args[1].endsWith(".gz"));
+            bestNanos = Long.MAX_VALUE;
+            for (int r = 0; r < ROUNDS; r++) {
+                long start = System.nanoTime();
+                new OSMToGeoTransformer(new CH1903Projection()).transform(map);
+                bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+            }
+            System.out.printf("transform : %d ms, %6.2f us/way%n", bestNanos / 1_000_000,
+                    bestNanos / 1000.0 / map.ways().size());
+        }
+        //Keeps the attributes reachable until the end of the measures
+        System.out.println(attributes.length);
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -2,10 +2,15 @@ package ch.epfl.imhof;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Test;
 
@@ -148,4 +153,108 @@ public class AttributesTest {
 		assertTrue(testResult.isEmpty());
 	}
 
+	@Test
+	public void keepingAllKeysReturnsSameAttributes() {
+		Attributes testAttributes = new Attributes(sampleAttributesValues());
+		HashSet<String> keptKeys = new HashSet<>(sampleAttributesValues().keySet());
+		Attributes testResult = testAttributes.keepOnlyKeys(keptKeys);
+		assertSame(testAttributes, testResult);
+		assertSame(testResult, testResult.keepOnlyKeys(keptKeys));
+	}
+
+	@Test
+	public void equalAttributesAreShared() {
+		Attributes.Builder builder1 = new Attributes.Builder();
+		Attributes.Builder builder2 = new Attributes.Builder();
+		builder1.put("building", "yes");
+		builder1.put("name", "testValue 1");
+		builder2.put("name", new String("testValue 1"));
+		builder2.put("building", new String("yes"));
+		Attributes testAttributes = builder1.build();
+		assertSame(testAttributes, builder2.build());
+		HashSet<String> keptKeys = new HashSet<>();
+		keptKeys.add("building");
+		Attributes building1 = testAttributes.keepOnlyKeys(keptKeys);
+		Attributes building2 = new Attributes(sampleAttributesValues()).keepOnlyKeys(keptKeys);
+		HashMap<String, String> testData = new HashMap<>();
+		testData.put("building", "yes");
+		testData.put("layer", "1");
+		assertSame(building1, new Attributes(testData).keepOnlyKeys(keptKeys));
+		assertTrue(building2.isEmpty());
+	}
+
+	@Test
+	public void equalsAndHashCodeCompareContent() {
+		HashMap<String, String> testData = sampleAttributesValues();
+		Attributes testAttributes = new Attributes(testData);
+		assertEquals(testAttributes, new Attributes(testData));
+		assertEquals(testAttributes.hashCode(), new Attributes(testData).hashCode());
+		testData.put("testKey 1", "testValue 4");
+		assertFalse(testAttributes.equals(new Attributes(testData)));
+		assertFalse(testAttributes.equals(null));
+	}
+
+	@Test
+	public void builderReplacesExistingKey() {
+		Attributes.Builder builder = new Attributes.Builder();
+		builder.put("testKey 1", "testValue 1");
+		builder.put("testKey 2", "testValue 2");
+		builder.put("testKey 1", "testValue 3");
+		Attributes testAttributes = builder.build();
+		assertEquals("testValue 3", testAttributes.get("testKey 1"));
+		assertEquals("testValue 2", testAttributes.get("testKey 2"));
+		HashSet<String> keptKeys = new HashSet<>();
+		keptKeys.add("testKey 1");
+		assertFalse(testAttributes.keepOnlyKeys(keptKeys).contains("testKey 2"));
+	}
+
+	@Test
+	public void manyAttributesAreFound() {
+		HashMap<String, String> testData = new HashMap<>();
+		for (int i = 0; i < 50; i++) {
+			testData.put("testKey " + i, "testValue " + i);
+		}
+		Attributes testAttributes = new Attributes(testData);
+		for (int i = 0; i < 50; i++) {
+			assertEquals("testValue " + i, testAttributes.get("testKey " + i));
+		}
+		assertNull(testAttributes.get("testKey 50"));
+		assertFalse(testAttributes.contains(null));
+	}
+
+	@Test
+	public void presizedBuilderGrows() {
+		Attributes.Builder builder = new Attributes.Builder(1);
+		builder.put("testKey 2", "testValue 2");
+		builder.put("testKey 1", "testValue 1");
+		builder.put("testKey 3", "testValue 3");
+		assertEquals(new Attributes(sampleAttributesValues()), builder.build());
+		assertSame(new Attributes.Builder().build(), new Attributes.Builder(0).build());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void negativeBuilderSizeIsRejected() {
+		new Attributes.Builder(-1);
+	}
+
+	@Test
+	public void attributesBuiltByConcurrentThreadsAreShared() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			Future<?>[] results = new Future<?>[64];
+			for (int i = 0; i < results.length; i++) {
+				int n = i % 8;
+				results[i] = executor.submit(() -> {
+					Attributes.Builder builder = new Attributes.Builder();
+					builder.put("concurrent", new String("value " + n));
+					return builder.build();
+				});
+			}
+			for (int i = 0; i < results.length; i++) {
+				assertSame(results[i % 8].get(), results[i].get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
 }
@@ -0,0 +1,57 @@
+package ch.epfl.imhof;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class BoundingBoxGeoTest {
+    private static final double DELTA = 1e-12;
+
+    private static BoundingBoxGeo box(double west, double south, double east, double north) {
+        return new BoundingBoxGeo(new PointGeo(west, south), new PointGeo(east, north));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorFailsOnInvertedLongitudes() {
+        box(0.2, 0, 0.1, 0.1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorFailsOnInvertedLatitudes() {
+        box(0, 0.2, 0.1, 0.1);
+    }
+
+    @Test
+    public void containsIncludesBorders() {
+        BoundingBoxGeo box = box(0.1, 0.8, 0.2, 0.9);
+        assertTrue(box.contains(new PointGeo(0.15, 0.85)));
+        assertTrue(box.contains(0.1, 0.8));
+        assertTrue(box.contains(0.2, 0.9));
+        assertFalse(box.contains(0.09, 0.85));
+        assertFalse(box.contains(0.15, 0.91));
+    }
+
+    @Test
+    public void marginEnlargesLongitudesMore() {
+        BoundingBoxGeo box = box(0.1, 0.8, 0.2, 0.9).withMargin(0.01);
+        assertEquals(0.79, box.bottomLeft().latitude(), DELTA);
+        assertEquals(0.91, box.topRight().latitude(), DELTA);
+        assertEquals(0.1 - 0.01 / Math.cos(0.91), box.bottomLeft().longitude(), DELTA);
+        assertEquals(0.2 + 0.01 / Math.cos(0.91), box.topRight().longitude(), DELTA);
+    }
+
+    @Test
+    public void marginIsLimitedToTheEarth() {
+        BoundingBoxGeo box = box(-3, 1.5, 3, 1.55).withMargin(0.1);
+        assertEquals(-Math.PI, box.bottomLeft().longitude(), DELTA);
+        assertEquals(Math.PI, box.topRight().longitude(), DELTA);
+        assertEquals(Math.PI / 2, box.topRight().latitude(), DELTA);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeMarginFails() {
+        box(0.1, 0.8, 0.2, 0.9).withMargin(-0.01);
+    }
+}
@@ -0,0 +1,76 @@
+package ch.epfl.imhof;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class IntGraphTest {
+
+    private static IntGraph square() {
+        //A square 0-1-2-3 with its diagonal 0-2 given twice, and an isolated node 4
+        IntGraph.Builder builder = new IntGraph.Builder(5);
+        builder.addEdge(0, 1);
+        builder.addEdge(2, 1);
+        builder.addEdge(2, 3);
+        builder.addEdge(3, 0);
+        builder.addEdge(0, 2);
+        builder.addEdge(2, 0);
+        return builder.build();
+    }
+
+    @Test
+    public void neighborsAreSortedAndDistinct() {
+        IntGraph graph = square();
+        assertEquals(5, graph.nodesCount());
+        assertEquals(3, graph.degree(0));
+        assertEquals(1, graph.neighbor(0, 0));
+        assertEquals(2, graph.neighbor(0, 1));
+        assertEquals(3, graph.neighbor(0, 2));
+        assertEquals(2, graph.degree(1));
+        assertEquals(0, graph.degree(4));
+        assertTrue(graph.areNeighbors(3, 2));
+        assertFalse(graph.areNeighbors(1, 3));
+    }
+
+    @Test
+    public void graphViewHasTheSameNeighbors() {
+        Graph<Integer> graph = square().asGraph();
+        assertEquals(new HashSet<>(Arrays.asList(0, 1, 2, 3, 4)), graph.nodes());
+        assertEquals(new HashSet<>(Arrays.asList(1, 2, 3)), graph.neighborsOf(0));
+        assertEquals(new HashSet<>(), graph.neighborsOf(4));
+        assertTrue(graph.neighborsOf(2).contains(3));
+        assertFalse(graph.neighborsOf(2).contains(2));
+        try {
+            graph.neighborsOf(5);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void graphViewIsUnmodifiable() {
+        Set<Integer> neighbors = square().asGraph().neighborsOf(0);
+        neighbors.clear();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void edgeToUnknownNodeFails() {
+        new IntGraph.Builder(2).addEdge(0, 2);
+    }
+
+    @Test
+    public void selfLoopIsOneNeighbor() {
+        IntGraph.Builder builder = new IntGraph.Builder(1, 1);
+        builder.addEdge(0, 0);
+        IntGraph graph = builder.build();
+        assertEquals(1, graph.degree(0));
+        assertEquals(0, graph.neighbor(0, 0));
+    }
+}
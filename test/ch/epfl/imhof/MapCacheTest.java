@@ -0,0 +1,228 @@
+package ch.epfl.imhof;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.Test;
+
+import ch.epfl.imhof.geometry.ClosedPolyLine;
+import ch.epfl.imhof.geometry.OpenPolyLine;
+import ch.epfl.imhof.geometry.Point;
+import ch.epfl.imhof.geometry.PolyLine;
+import ch.epfl.imhof.geometry.Polygon;
+import ch.epfl.imhof.projection.CH1903Projection;
+import ch.epfl.imhof.projection.EquirectangularProjection;
+
+public class MapCacheTest {
+
+    private static Attributes attributes(String key, String value) {
+        HashMap<String, String> data = new HashMap<>();
+        data.put(key, value);
+        return new Attributes(data);
+    }
+
+    private static ClosedPolyLine square(double x, double y, double side) {
+        return new ClosedPolyLine(Arrays.asList(new Point(x, y), new Point(x + side, y),
+                new Point(x + side, y + side), new Point(x, y + side)));
+    }
+
+    private static Map sampleMap() {
+        Map.Builder builder = new Map.Builder();
+        builder.addPolyLine(new Attributed<>(new OpenPolyLine(Arrays.asList(new Point(1.5, -2.25), new Point(533000.125, 152000.5))),
+                attributes("highway", "residential")));
+        builder.addPolyLine(new Attributed<>(square(0, 0, 1), new Attributes(Collections.emptyMap())));
+        builder.addPolygon(new Attributed<>(new Polygon(square(0, 0, 10), Arrays.asList(square(1, 1, 2), square(5, 5, 2))),
+                attributes("building", "Léman")));
+        builder.addPolygon(new Attributed<>(new Polygon(square(20, 20, 10)), attributes("building", "Léman")));
+        return builder.build();
+    }
+
+    private static String describe(PolyLine polyLine) {
+        StringBuilder b = new StringBuilder(polyLine.isClosed() ? "closed" : "open");
+        for (Point point : polyLine.points()) {
+            b.append(' ').append(point.x()).append(',').append(point.y());
+        }
+        return b.toString();
+    }
+
+    private static String describe(Attributes attributes) {
+        StringBuilder b = new StringBuilder("{");
+        for (int i = 0; i < attributes.size(); i++) {
+            b.append(attributes.keyAt(i)).append('=').append(attributes.valueAt(i)).append(';');
+        }
+        return b.append('}').toString();
+    }
+
+    private static String describe(Map map) {
+        StringBuilder b = new StringBuilder();
+        for (Attributed<PolyLine> polyLine : map.polyLines()) {
+            b.append(describe(polyLine.attributes())).append(describe(polyLine.value())).append('\n');
+        }
+        for (Attributed<Polygon> polygon : map.polygons()) {
+            b.append(describe(polygon.attributes())).append(describe(polygon.value().shell()));
+            for (ClosedPolyLine hole : polygon.value().holes()) {
+                b.append(" hole ").append(describe(hole));
+            }
+            b.append('\n');
+        }
+        return b.toString();
+    }
+
+    private static Map roundTrip(Map map, String key) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MapCache.write(map, key, out);
+        return MapCache.read(ByteBuffer.wrap(out.toByteArray()), key);
+    }
+
+    @Test
+    public void cachedMapIsTheSame() throws Exception {
+        Map map = sampleMap();
+        Map copy = roundTrip(map, "key");
+        assertEquals(describe(map), describe(copy));
+        assertTrue(copy.polyLines().get(1).value().isClosed());
+        assertFalse(copy.polyLines().get(0).value().isClosed());
+    }
+
+    @Test
+    public void cachedEntitiesAreCreatedOnce() throws Exception {
+        Map copy = roundTrip(sampleMap(), "key");
+        List<Attributed<Polygon>> polygons = copy.polygons();
+        assertSame(polygons.get(1), polygons.get(1));
+        //The identical attributes are shared
+        assertSame(polygons.get(0).attributes(), polygons.get(1).attributes());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void cachedMapIsUnmodifiable() throws Exception {
+        roundTrip(sampleMap(), "key").polygons().remove(0);
+    }
+
+    @Test(expected = IOException.class)
+    public void cacheOfAnotherMapIsRejected() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MapCache.write(sampleMap(), "key", out);
+        MapCache.read(ByteBuffer.wrap(out.toByteArray()), "other key");
+    }
+
+    @Test
+    public void keyDependsOnFileAndProjection() throws Exception {
+        Path file = Files.createTempFile("map", ".osm");
+        try {
+            Files.write(file, "content".getBytes(StandardCharsets.UTF_8));
+            String key = MapCache.key(file, new CH1903Projection(), "");
+            assertEquals(key, MapCache.key(file, new CH1903Projection(), ""));
+            assertFalse(key.equals(MapCache.key(file, new EquirectangularProjection(), "")));
+            assertFalse(key.equals(MapCache.key(file, new CH1903Projection(), "variant")));
+            rewrite(file, "contenu");
+            assertFalse(key.equals(MapCache.key(file, new CH1903Projection(), "")));
+        } finally {
+            Files.delete(file);
+            Files.deleteIfExists(Path.of(file + ".crc"));
+        }
+    }
+
+    @Test
+    public void checksumIsComputedAgainOnlyWhenTheFileChanges() throws Exception {
+        Path file = Files.createTempFile("map", ".osm");
+        try {
+            Files.write(file, "content".getBytes(StandardCharsets.UTF_8));
+            FileTime modified = Files.getLastModifiedTime(file);
+            long checksum = MapCache.checksum(file);
+            //Same size and same modification time : the stored checksum is used
+            Files.write(file, "contenu".getBytes(StandardCharsets.UTF_8));
+            Files.setLastModifiedTime(file, modified);
+            assertEquals(checksum, MapCache.checksum(file));
+            Files.setLastModifiedTime(file, FileTime.fromMillis(modified.toMillis() + 1000));
+            assertFalse(checksum == MapCache.checksum(file));
+        } finally {
+            Files.delete(file);
+            Files.deleteIfExists(Path.of(file + ".crc"));
+        }
+    }
+
+    @Test
+    public void mapIsCreatedOnlyWhenNotCached() throws Exception {
+        Path directory = Files.createTempDirectory("cache");
+        Path file = directory.resolve("map.osm");
+        int[] created = { 0 };
+        MapCache.Source<IOException> source = () -> {
+            created[0]++;
+            return sampleMap();
+        };
+        try {
+            Files.write(file, "content".getBytes(StandardCharsets.UTF_8));
+            Map map = MapCache.map(file.toString(), new CH1903Projection(), "", source);
+            Map cached = MapCache.map(file.toString(), new CH1903Projection(), "", source);
+            assertEquals(1, created[0]);
+            assertEquals(describe(map), describe(cached));
+            MapCache.map(file.toString(), new EquirectangularProjection(), "", source);
+            assertEquals(2, created[0]);
+            rewrite(file, "contenu");
+            MapCache.map(file.toString(), new CH1903Projection(), "", source);
+            assertEquals(3, created[0]);
+        } finally {
+            deleteDirectory(directory);
+        }
+    }
+
+    @Test
+    public void leastRecentlyUsedMapsAreEvicted() throws Exception {
+        Path directory = Files.createTempDirectory("cache");
+        Path file = directory.resolve("map.osm");
+        int[] created = { 0 };
+        MapCache.Source<IOException> source = () -> {
+            created[0]++;
+            return sampleMap();
+        };
+        try {
+            Files.write(file, "content".getBytes(StandardCharsets.UTF_8));
+            MapCache.map(file.toString(), new CH1903Projection(), "first", source);
+            for (int i = 0; i < MapCache.MAX_MAPS_PER_SOURCE + 2; i++) {
+                //The first map is used again before each new one
+                MapCache.map(file.toString(), new CH1903Projection(), "first", source);
+                MapCache.map(file.toString(), new CH1903Projection(), "variant " + i, source);
+                Thread.sleep(20);
+            }
+            assertEquals(MapCache.MAX_MAPS_PER_SOURCE + 3, created[0]);
+            try (java.util.stream.Stream<Path> files = Files.list(directory)) {
+                assertEquals(MapCache.MAX_MAPS_PER_SOURCE, files.filter(f -> f.toString().endsWith(".map")).count());
+            }
+            MapCache.map(file.toString(), new CH1903Projection(), "first", source);
+            assertEquals(MapCache.MAX_MAPS_PER_SOURCE + 3, created[0]);
+            MapCache.map(file.toString(), new CH1903Projection(), "variant 0", source);
+            assertEquals(MapCache.MAX_MAPS_PER_SOURCE + 4, created[0]);
+        } finally {
+            deleteDirectory(directory);
+        }
+    }
+
+    private static void rewrite(Path file, String content) throws IOException {
+        FileTime modified = Files.getLastModifiedTime(file);
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        //The file may be written again within the resolution of the modification times
+        Files.setLastModifiedTime(file, FileTime.fromMillis(modified.toMillis() + 1000));
+    }
+
+    private static void deleteDirectory(Path directory) throws IOException {
+        try (java.util.stream.Stream<Path> files = Files.list(directory)) {
+            for (Path cacheFile : (Iterable<Path>) files::iterator) {
+                Files.delete(cacheFile);
+            }
+        }
+        Files.delete(directory);
+    }
+}
@@ -122,4 +122,25 @@ public class ClosedPolyLineTest extends PolyLineTest {
         assertFalse(l2.containsPoint(new Point(33, 51)));
         
     }
+
+    @Test
+    public void signedAreaGivesTheOrientation() {
+        //(36, 54), (36, 55), (37, 55) turns clockwise
+        ClosedPolyLine l = new ClosedPolyLine(ptsTriangle);
+        assertEquals(-0.5, l.signedArea(), DELTA);
+        assertFalse(l.isCounterClockwise());
+
+        ClosedPolyLine l2 = new ClosedPolyLine(Arrays.asList(new Point(37, 55), new Point(36, 55), new Point(36, 54)));
+        assertEquals(0.5, l2.signedArea(), DELTA);
+        assertTrue(l2.isCounterClockwise());
+        assertEquals(l.area(), l2.area(), DELTA);
+    }
+
+    @Test
+    public void containsPointRejectsPointsOutsideTheEnvelope() {
+        ClosedPolyLine l = new ClosedPolyLine(ptsRectangle);
+        assertFalse(l.envelopeContains(new Point(35, 58)));
+        assertFalse(l.containsPoint(new Point(35, 58)));
+        assertTrue(l.envelopeContains(new Point(48, 62)));
+    }
 }
@@ -1,6 +1,7 @@
 package ch.epfl.imhof.geometry;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
@@ -106,4 +107,46 @@ public abstract class PolyLineTest {
         assertTrue(ol instanceof ClosedPolyLine);
         assertEqualsPoints(ol.points(),pts2, DELTA);
     }
+
+    @Test
+    public void envelopeContainsAllThePoints() {
+        PolyLine l = newPolyLine(ptsRectangle);
+        assertEquals(36, l.minX(), DELTA);
+        assertEquals(54, l.minY(), DELTA);
+        assertEquals(48, l.maxX(), DELTA);
+        assertEquals(62, l.maxY(), DELTA);
+        assertTrue(l.envelopeIntersects(47, 61, 50, 70));
+        assertTrue(l.envelopeIntersects(30, 50, 50, 70));
+        assertFalse(l.envelopeIntersects(49, 50, 50, 70));
+    }
+
+    @Test
+    public void indexedAccessorsGiveThePoints() {
+        PolyLine l = newPolyLine(ptsRectangle);
+        assertEquals(ptsRectangle.size(), l.pointsCount());
+        for (int i = 0; i < ptsRectangle.size(); i++) {
+            assertEquals(ptsRectangle.get(i).x(), l.x(i), 0);
+            assertEquals(ptsRectangle.get(i).y(), l.y(i), 0);
+            assertEquals(ptsRectangle.get(i).x(), l.point(i).x(), 0);
+        }
+        assertEqualsPoints(ptsRectangle, l.points(), 0);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void indexedAccessorsCheckTheIndex() {
+        newPolyLine(ptsTriangle).y(3);
+    }
+
+    @Test
+    public void builderAcceptsCoordinates() {
+        PolyLine.Builder b = new PolyLine.Builder(0);
+        for (Point p : ptsRectangle) {
+            b.addPoint(p.x(), p.y());
+        }
+        assertEqualsPoints(ptsRectangle, b.buildOpen().points(), 0);
+        b.addPoint(new Point(1, 2));
+        PolyLine l = b.buildClosed();
+        assertEquals(ptsRectangle.size() + 1, l.pointsCount());
+        assertEquals(2, l.y(ptsRectangle.size()), 0);
+    }
 }
@@ -0,0 +1,60 @@
+package ch.epfl.imhof.osm;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class FixedPointCoordinateTest {
+
+    @Test
+    public void parseOSMPrecision() {
+        assertEquals(465194710, FixedPointCoordinate.parse("46.5194710"));
+        assertEquals(-1234567, FixedPointCoordinate.parse("-0.1234567"));
+        assertEquals(1_800_000_000, FixedPointCoordinate.parse("180"));
+        assertEquals(65000000, FixedPointCoordinate.parse("6.5"));
+        assertEquals(5000000, FixedPointCoordinate.parse(".5"));
+        assertEquals(70000000, FixedPointCoordinate.parse("+7."));
+    }
+
+    @Test
+    public void parseRoundsExtraDecimals() {
+        assertEquals(12345678, FixedPointCoordinate.parse("1.23456775"));
+        assertEquals(12345677, FixedPointCoordinate.parse("1.23456774999"));
+        assertEquals(-12345678, FixedPointCoordinate.parse("-1.23456775"));
+    }
+
+    @Test
+    public void parseGivesSameRadiansAsParseDouble() {
+        String[] coordinates = { "46.5000072", "6.6508", "-33.8567844", "151.2152967", "0.0000001" };
+        for (String coordinate : coordinates) {
+            assertEquals(Math.toRadians(Double.parseDouble(coordinate)),
+                    FixedPointCoordinate.toRadians(FixedPointCoordinate.parse(coordinate)), 0);
+        }
+    }
+
+    @Test
+    public void fromRadiansIsInverseOfToRadians() {
+        assertEquals(465194710, FixedPointCoordinate.fromRadians(FixedPointCoordinate.toRadians(465194710)));
+        assertEquals(-1_800_000_000, FixedPointCoordinate.fromRadians(-Math.PI));
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void parseEmpty() {
+        FixedPointCoordinate.parse("");
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void parseSignOnly() {
+        FixedPointCoordinate.parse("-");
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void parseExponent() {
+        FixedPointCoordinate.parse("4.6e1");
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void parseTooManyIntegerDigits() {
+        FixedPointCoordinate.parse("1000.5");
+    }
+}
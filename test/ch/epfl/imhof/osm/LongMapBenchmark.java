@@ -0,0 +1,81 @@
+package ch.epfl.imhof.osm;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Compares the retained heap and the lookup throughput of LongMap and of the
+ * HashMap<Long, ?> previously used by OSMMap.Builder.
+ * Run with a fixed heap (eg. -Xms2g -Xmx2g) : java ch.epfl.imhof.osm.LongMapBenchmark [entries]
+ */
+public class LongMapBenchmark {
+    private final static int LOOKUPS = 10_000_000;
+
+    public static void main(String[] args) {
+        int entries = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+        long[] ids = new long[entries];
+        long id = 20_000_000L;
+        Random random = new Random(0);
+        for (int i = 0; i < entries; i++) {
+            //OSM ids are increasing with gaps
+            id += 1 + random.nextInt(8);
+            ids[i] = id;
+        }
+        Object value = new Object();
+
+        long before = usedMemory();
+        Map<Long, Object> hashMap = new HashMap<>();
+        for (long key : ids) {
+            hashMap.put(key, value);
+        }
+        long hashMapBytes = usedMemory() - before;
+        long hashMapNanos = lookups(ids, k -> hashMap.get(k));
+
+        before = usedMemory();
+        LongMap<Object> longMap = new LongMap<>();
+        for (long key : ids) {
+            longMap.put(key, value);
+        }
+        long longMapBytes = usedMemory() - before;
+        long longMapNanos = lookups(ids, k -> longMap.get(k));
+
+        System.out.printf("%d entries%n", entries);
+        System.out.printf("HashMap<Long, ?> : %6.1f bytes/entry, %6.1f ns/lookup%n",
+                hashMapBytes / (double) entries, hashMapNanos / (double) LOOKUPS);
+        System.out.printf("LongMap<?>       : %6.1f bytes/entry, %6.1f ns/lookup%n",
+                longMapBytes / (double) entries, longMapNanos / (double) LOOKUPS);
+        //Keeps both maps reachable until the end of the measures
+        System.out.println(hashMap.size() == longMap.size());
+    }
+
+    private interface Lookup {
+        Object get(long key);
+    }
+
+    private static long lookups(long[] ids, Lookup lookup) {
+        Random random = new Random(1);
+        int found = 0;
+        //Warm-up
+        for (int i = 0; i < LOOKUPS; i++) {
+            found += lookup.get(ids[random.nextInt(ids.length)]) != null ? 1 : 0;
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            found += lookup.get(ids[random.nextInt(ids.length)]) != null ? 1 : 0;
+        }
+        long elapsed = System.nanoTime() - start;
+        if (found != 2 * LOOKUPS) {
+            throw new AssertionError("Missing keys");
+        }
+        return elapsed;
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
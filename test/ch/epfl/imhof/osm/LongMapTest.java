@@ -0,0 +1,88 @@
+package ch.epfl.imhof.osm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class LongMapTest {
+
+    @Test
+    public void getReturnsPutValues() {
+        LongMap<String> map = new LongMap<>();
+        map.put(42L, "a");
+        map.put(-7L, "b");
+        map.put(Long.MAX_VALUE, "c");
+        assertEquals("a", map.get(42L));
+        assertEquals("b", map.get(-7L));
+        assertEquals("c", map.get(Long.MAX_VALUE));
+        assertEquals(null, map.get(43L));
+        assertEquals(3, map.size());
+    }
+
+    @Test
+    public void putReplacesExistingValue() {
+        LongMap<String> map = new LongMap<>();
+        assertEquals(null, map.put(1L, "a"));
+        assertEquals("a", map.put(1L, "b"));
+        assertEquals("b", map.get(1L));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void growsAndKeepsAllEntries() {
+        LongMap<Long> map = new LongMap<>(2);
+        for (long id = 0; id < 100_000; id += 3) {
+            map.put(id, id * 2);
+        }
+        for (long id = 0; id < 100_000; id++) {
+            if (id % 3 == 0) {
+                assertEquals(Long.valueOf(id * 2), map.get(id));
+            } else {
+                assertFalse(map.containsKey(id));
+            }
+        }
+    }
+
+    @Test
+    public void valuesAreInInsertionOrder() {
+        LongMap<String> map = new LongMap<>();
+        map.put(30L, "a");
+        map.put(10L, "b");
+        map.put(20L, "c");
+        map.put(10L, "d");
+        List<String> values = map.values();
+        assertEquals(3, values.size());
+        assertEquals("a", values.get(0));
+        assertEquals("d", values.get(1));
+        assertEquals("c", values.get(2));
+        assertEquals(1, map.indexOf(10L));
+        assertEquals(10L, map.keyAt(1));
+        assertEquals(-1, map.indexOf(11L));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void valuesAreUnmodifiable() {
+        LongMap<String> map = new LongMap<>();
+        map.put(1L, "a");
+        map.values().add("b");
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void valueAtOutOfBounds() {
+        LongMap<String> map = new LongMap<>();
+        map.put(1L, "a");
+        map.valueAt(1);
+    }
+
+    @Test
+    public void containsKey() {
+        LongMap<String> map = new LongMap<>();
+        map.put(5L, "a");
+        assertTrue(map.containsKey(5L));
+        assertFalse(map.containsKey(6L));
+    }
+}
@@ -0,0 +1,200 @@
+package ch.epfl.imhof.osm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import ch.epfl.imhof.BoundingBoxGeo;
+import ch.epfl.imhof.PointGeo;
+
+public class OSMMapIndexTest {
+    private final static String NODES =
+            "  <node id=\"1\" lat=\"46.5194710\" lon=\"6.5620370\"/>\n"
+            + "  <node id=\"2\" lat=\"46.519\" lon=\"6.563\"/>\n"
+            + "  <node id=\"3\" lat=\"46.52\" lon=\"6.563\"><tag k=\"name\" v=\"Rolex\"/></node>\n"
+            + "  <node id=\"4\" lat=\"46.53\" lon=\"6.564\"/>\n";
+    private final static String WAYS =
+            "  <way id=\"10\"><nd ref=\"1\"/><nd ref=\"2\"/><nd ref=\"3\"/><nd ref=\"1\"/>"
+            + "<tag k=\"building\" v=\"yes\"/></way>\n"
+            + "  <way id=\"11\"><nd ref=\"3\"/><nd ref=\"4\"/></way>\n";
+    private final static String RELATIONS =
+            "  <relation id=\"20\"><member type=\"way\" ref=\"10\" role=\"outer\"/>"
+            + "<member type=\"node\" ref=\"3\" role=\"\"/><tag k=\"type\" v=\"multipolygon\"/></relation>\n"
+            + "  <relation id=\"21\"><member type=\"relation\" ref=\"20\" role=\"part\"/></relation>\n"
+            + "  <relation id=\"22\"><member type=\"way\" ref=\"11\" role=\"\"/></relation>\n";
+
+    private static InputStream stream(String document) {
+        return new ByteArrayInputStream(document.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static OSMMapIndex index() throws Exception {
+        return new OSMMapIndex(OSMMapReader.readOSM(stream("<osm>" + NODES + WAYS + RELATIONS + "</osm>")));
+    }
+
+    private static OSMMapIndex.Update apply(OSMMapIndex index, String change) throws Exception {
+        return index.applyChange(stream("<osmChange version=\"0.6\">" + change + "</osmChange>"));
+    }
+
+    private static String describe(OSMEntity entity) {
+        StringBuilder b = new StringBuilder().append(entity.id()).append(entity.attributes().get("building"))
+                .append(entity.attributes().get("name"));
+        if (entity instanceof OSMNode) {
+            b.append('(').append(((OSMNode) entity).position().longitude()).append(',')
+                    .append(((OSMNode) entity).position().latitude()).append(')');
+        } else if (entity instanceof OSMWay) {
+            for (OSMNode node : ((OSMWay) entity).nodes()) {
+                b.append(' ').append(describe(node));
+            }
+        } else {
+            for (OSMRelation.Member member : ((OSMRelation) entity).members()) {
+                b.append(" [").append(member.role()).append(' ').append(describe(member.member())).append(']');
+            }
+        }
+        return b.toString();
+    }
+
+    //The entities of the map, whatever their order
+    private static Set<String> describe(OSMMap map) {
+        Set<String> entities = new TreeSet<>();
+        for (OSMWay way : map.ways()) {
+            entities.add("way " + describe(way));
+        }
+        for (OSMRelation relation : map.relations()) {
+            entities.add("relation " + describe(relation));
+        }
+        return entities;
+    }
+
+    private static Set<Long> ids(Long... ids) {
+        return new HashSet<>(Arrays.asList(ids));
+    }
+
+    @Test
+    public void indexContainsTheMap() throws Exception {
+        OSMMap map = OSMMapReader.readOSM(stream("<osm>" + NODES + WAYS + RELATIONS + "</osm>"));
+        assertEquals(describe(map), describe(new OSMMapIndex(map).map()));
+    }
+
+    @Test
+    public void movedNodeInvalidatesItsWaysAndRelations() throws Exception {
+        OSMMapIndex index = index();
+        OSMMapIndex.Update update = apply(index,
+                "<modify><node id=\"2\" lat=\"46.518\" lon=\"6.563\"/></modify>");
+        assertEquals(ids(10L), update.invalidatedWayIds());
+        assertEquals(ids(20L, 21L), update.invalidatedRelationIds());
+        assertEquals(1, update.changedEntities().ways().size());
+        String updated = NODES.replace("lat=\"46.519\"", "lat=\"46.518\"");
+        assertEquals(describe(OSMMapReader.readOSM(stream("<osm>" + updated + WAYS + RELATIONS + "</osm>"))),
+                describe(index.map()));
+    }
+
+    @Test
+    public void mapsAlreadyReturnedDoNotChange() throws Exception {
+        OSMMapIndex index = index();
+        OSMMap before = index.map();
+        Set<String> described = describe(before);
+        OSMMapIndex.Update first = apply(index, "<modify><node id=\"1\" lat=\"40.0\" lon=\"6.5620370\"/></modify>");
+        OSMMap between = index.map();
+        apply(index, "<modify><node id=\"2\" lat=\"40.0\" lon=\"6.563\"/></modify>"
+                + "<delete><node id=\"4\"/></delete>");
+        assertEquals(described, describe(before));
+        assertEquals(46.5194710, Math.toDegrees(before.ways().get(0).firstNode().position().latitude()), 1e-7);
+        //The way of the first update and the map built after it keep the first version either
+        assertEquals(40.0, Math.toDegrees(first.changedEntities().ways().get(0).firstNode().position().latitude()), 1e-7);
+        assertEquals(46.519, Math.toDegrees(first.changedEntities().ways().get(0).nodes().get(1).position().latitude()), 1e-7);
+        assertEquals(2, between.ways().size());
+        assertEquals(1, index.map().ways().size());
+    }
+
+    @Test
+    public void changedWayMayUseNodesCreatedAfterIt() throws Exception {
+        OSMMapIndex index = index();
+        OSMMapIndex.Update update = apply(index, "<modify><way id=\"11\"><nd ref=\"3\"/><nd ref=\"5\"/>"
+                + "<tag k=\"name\" v=\"Avenue\"/></way></modify>"
+                + "<create><node id=\"5\" lat=\"46.54\" lon=\"6.565\"/></create>");
+        assertEquals(ids(11L), update.invalidatedWayIds());
+        assertEquals(ids(22L), update.invalidatedRelationIds());
+        OSMMap map = index.map();
+        OSMWay way11 = map.ways().stream().filter(w -> w.id() == 11).findFirst().get();
+        assertEquals(5, way11.lastNode().id());
+        assertEquals("Avenue", way11.attributes().get("name"));
+        //The relation refers to the new way
+        OSMRelation relation22 = map.relations().stream().filter(r -> r.id() == 22).findFirst().get();
+        assertSame(way11, relation22.members().get(0).member());
+    }
+
+    @Test
+    public void deletedNodeMakesItsWaysAndRelationsIncomplete() throws Exception {
+        OSMMapIndex index = index();
+        OSMMapIndex.Update update = apply(index, "<delete><node id=\"3\"/></delete>");
+        assertEquals(ids(10L, 11L), update.invalidatedWayIds());
+        assertEquals(ids(20L, 21L, 22L), update.invalidatedRelationIds());
+        assertEquals(0, update.changedEntities().ways().size());
+        OSMMap map = index.map();
+        assertEquals(0, map.ways().size());
+        assertEquals(0, map.relations().size());
+    }
+
+    @Test
+    public void changesGiveTheMapOfTheUpdatedFile() throws Exception {
+        OSMMapIndex index = index();
+        apply(index, "<create><node id=\"6\" lat=\"46.55\" lon=\"6.566\"/>"
+                + "<way id=\"12\"><nd ref=\"4\"/><nd ref=\"6\"/></way>"
+                + "<relation id=\"23\"><member type=\"relation\" ref=\"21\" role=\"\"/>"
+                + "<member type=\"way\" ref=\"12\" role=\"\"/></relation></create>"
+                + "<modify><node id=\"3\" lat=\"46.521\" lon=\"6.563\"><tag k=\"name\" v=\"Rolex Center\"/></node>"
+                + "<relation id=\"20\"><member type=\"way\" ref=\"10\" role=\"inner\"/></relation></modify>"
+                + "<delete><relation id=\"22\"/></delete>");
+        String updated = "<osm>" + NODES.replace("lat=\"46.52\"", "lat=\"46.521\"").replace("Rolex", "Rolex Center")
+                + "  <node id=\"6\" lat=\"46.55\" lon=\"6.566\"/>\n" + WAYS
+                + "  <way id=\"12\"><nd ref=\"4\"/><nd ref=\"6\"/></way>\n"
+                + "  <relation id=\"20\"><member type=\"way\" ref=\"10\" role=\"inner\"/></relation>\n"
+                + "  <relation id=\"21\"><member type=\"relation\" ref=\"20\" role=\"part\"/></relation>\n"
+                + "  <relation id=\"23\"><member type=\"relation\" ref=\"21\" role=\"\"/>"
+                + "<member type=\"way\" ref=\"12\" role=\"\"/></relation>\n</osm>";
+        assertEquals(describe(OSMMapReader.readOSM(stream(updated))), describe(index.map()));
+        //The relations refer to the entities of the map
+        OSMMap map = index.map();
+        OSMRelation relation23 = map.relations().stream().filter(r -> r.id() == 23).findFirst().get();
+        assertTrue(map.relations().contains(relation23.members().get(0).member()));
+    }
+
+    @Test
+    public void deletedEntityMayBeRestored() throws Exception {
+        OSMMapIndex index = index();
+        apply(index, "<delete><way id=\"11\"/></delete>");
+        assertEquals(1, index.map().ways().size());
+        apply(index, "<modify><way id=\"11\"><nd ref=\"3\"/><nd ref=\"4\"/></way></modify>");
+        assertEquals(2, index.map().ways().size());
+    }
+
+    @Test
+    public void unusedNodesOutsideOfTheBoxAreNotKept() throws Exception {
+        OSMReadOptions.Builder builder = new OSMReadOptions.Builder();
+        builder.setBoundingBox(new BoundingBoxGeo(new PointGeo(Math.toRadians(6.55), Math.toRadians(46.51)),
+                new PointGeo(Math.toRadians(6.57), Math.toRadians(46.56))));
+        OSMReadOptions options = builder.build();
+        OSMMapIndex index = new OSMMapIndex(OSMMapReader.readOSM(stream("<osm>" + NODES + WAYS + RELATIONS + "</osm>"), options),
+                options);
+        //Node 9 is outside of the box, but used by a way of the same change
+        apply(index, "<create><node id=\"7\" lat=\"46.8\" lon=\"7.5\"/><node id=\"8\" lat=\"46.54\" lon=\"6.565\"/>"
+                + "<node id=\"9\" lat=\"46.8\" lon=\"7.6\"/><way id=\"15\"><nd ref=\"1\"/><nd ref=\"9\"/></way></create>");
+        apply(index, "<create><way id=\"13\"><nd ref=\"1\"/><nd ref=\"7\"/></way>"
+                + "<way id=\"14\"><nd ref=\"1\"/><nd ref=\"8\"/></way></create>");
+        Set<Long> wayIds = new HashSet<>();
+        for (OSMWay way : index.map().ways()) {
+            wayIds.add(way.id());
+        }
+        assertEquals(ids(10L, 11L, 14L, 15L), wayIds);
+    }
+}
@@ -0,0 +1,66 @@
+package ch.epfl.imhof.osm;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Compares the reading time of an OSM file by the streaming parser and by the SAX parser,
+ * and for compressed files the reading time when the decompression is pipelined.
+ * The times are given with the number of nodes read per second, and the speedup of the
+ * streaming parser is compared to the 3x target of the parser.
+ * Usage : java ch.epfl.imhof.osm.OSMMapReaderBenchmark file.osm[.gz] [runs]
+ */
+public class OSMMapReaderBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        String fileName = args[0];
+        int runs = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        long streamingNanos = Long.MAX_VALUE;
+        long saxNanos = Long.MAX_VALUE;
+        long pipelinedNanos = Long.MAX_VALUE;
+        int nodesCount;
+        try (InputStream i = open(fileName, false)) {
+            OSMMapAssembler assembler = new OSMMapAssembler(new OSMMap.Builder());
+            new OSMXMLParser(i, assembler).parse();
+            nodesCount = assembler.nodesCount();
+        }
+        for (int r = 0; r < runs; r++) {
+            long start = System.nanoTime();
+            try (InputStream i = open(fileName, false)) {
+                OSMMapReader.readOSM(i);
+            }
+            streamingNanos = Math.min(streamingNanos, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            try (InputStream i = open(fileName, true)) {
+                OSMMapReader.readOSM(i);
+            }
+            pipelinedNanos = Math.min(pipelinedNanos, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            try (InputStream i = open(fileName, false)) {
+                OSMMapReader.readOSMWithSAX(i);
+            }
+            saxNanos = Math.min(saxNanos, System.nanoTime() - start);
+        }
+        System.out.printf("streaming parser : %6d ms, %,12d nodes/s%n", streamingNanos / 1_000_000, nodesPerSecond(nodesCount, streamingNanos));
+        System.out.printf("SAX parser       : %6d ms, %,12d nodes/s%n", saxNanos / 1_000_000, nodesPerSecond(nodesCount, saxNanos));
+        System.out.printf("pipelined input  : %6d ms, %,12d nodes/s%n", pipelinedNanos / 1_000_000, nodesPerSecond(nodesCount, pipelinedNanos));
+        System.out.printf("speedup          : %6.2fx (target 3x)%n", (double) saxNanos / streamingNanos);
+    }
+
+    private static long nodesPerSecond(int nodesCount, long nanos) {
+        return Math.round(nodesCount * 1e9 / nanos);
+    }
+
+    private static InputStream open(String fileName, boolean pipelined) throws IOException {
+        InputStream i = new BufferedInputStream(new FileInputStream(fileName));
+        if (fileName.endsWith(".gz")) {
+            i = new GZIPInputStream(i, 1 << 16);
+        }
+        return pipelined ? new PipelinedInputStream(i) : i;
+    }
+}
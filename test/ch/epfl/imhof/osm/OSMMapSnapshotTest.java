@@ -0,0 +1,199 @@
+package ch.epfl.imhof.osm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import ch.epfl.imhof.Attributes;
+import ch.epfl.imhof.BoundingBoxGeo;
+import ch.epfl.imhof.PointGeo;
+
+public class OSMMapSnapshotTest {
+    private final static String DOCUMENT = "<?xml version='1.0' encoding='UTF-8'?>\n<osm>\n"
+            + "  <node id=\"1\" lat=\"46.5194710\" lon=\"6.5620370\"/>\n"
+            + "  <node id=\"2\" lat=\"46.519\" lon=\"6.563\"/>\n"
+            + "  <node id=\"3\" lat=\"46.52\" lon=\"6.563\"><tag k=\"name\" v=\"Rolex\"/></node>\n"
+            + "  <node id=\"4\" lat=\"47.1\" lon=\"7.1\"/>\n"
+            + "  <node id=\"5\" lat=\"47.2\" lon=\"7.2\"/>\n"
+            + "  <node id=\"6\" lat=\"47.3\" lon=\"7.1\"/>\n"
+            + "  <way id=\"10\"><nd ref=\"1\"/><nd ref=\"2\"/><nd ref=\"3\"/><nd ref=\"1\"/>"
+            + "<tag k=\"building\" v=\"yes\"/><tag k=\"name\" v=\"Léman\"/></way>\n"
+            + "  <way id=\"11\"><nd ref=\"4\"/><nd ref=\"5\"/><nd ref=\"6\"/><nd ref=\"4\"/>"
+            + "<tag k=\"building\" v=\"yes\"/></way>\n"
+            + "  <relation id=\"20\"><member type=\"way\" ref=\"11\" role=\"outer\"/>"
+            + "<member type=\"node\" ref=\"3\" role=\"\"/><tag k=\"type\" v=\"multipolygon\"/></relation>\n"
+            + "  <relation id=\"21\"><member type=\"relation\" ref=\"20\" role=\"part\"/>"
+            + "<member type=\"way\" ref=\"10\" role=\"outer\"/></relation>\n"
+            + "</osm>\n";
+
+    private static OSMMap read(String document, OSMReadOptions options) throws Exception {
+        return OSMMapReader.readOSM(new ByteArrayInputStream(document.getBytes(StandardCharsets.UTF_8)), options);
+    }
+
+    private static OSMMap roundTrip(OSMMap map, OSMReadOptions options) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OSMMapSnapshot.write(map, options, out);
+        return OSMMapSnapshot.read(ByteBuffer.wrap(out.toByteArray()), options);
+    }
+
+    private static String describe(Attributes attributes) {
+        StringBuilder b = new StringBuilder("{");
+        for (int i = 0; i < attributes.size(); i++) {
+            b.append(attributes.keyAt(i)).append('=').append(attributes.valueAt(i)).append(';');
+        }
+        return b.append('}').toString();
+    }
+
+    private static String describe(OSMEntity entity) {
+        StringBuilder b = new StringBuilder().append(entity.id()).append(describe(entity.attributes()));
+        if (entity instanceof OSMNode) {
+            PointGeo position = ((OSMNode) entity).position();
+            b.append('(').append(FixedPointCoordinate.fromRadians(position.longitude())).append(',')
+                    .append(FixedPointCoordinate.fromRadians(position.latitude())).append(')');
+        } else if (entity instanceof OSMWay) {
+            for (OSMNode node : ((OSMWay) entity).nodes()) {
+                b.append(' ').append(describe(node));
+            }
+        } else {
+            for (OSMRelation.Member member : ((OSMRelation) entity).members()) {
+                b.append(" [").append(member.type()).append(' ').append(member.role()).append(' ')
+                        .append(describe(member.member())).append(']');
+            }
+        }
+        return b.toString();
+    }
+
+    private static String describe(OSMMap map) {
+        StringBuilder b = new StringBuilder();
+        for (OSMWay way : map.ways()) {
+            b.append(describe(way)).append('\n');
+        }
+        for (OSMRelation relation : map.relations()) {
+            b.append(describe(relation)).append('\n');
+        }
+        return b.toString();
+    }
+
+    @Test
+    public void snapshotContainsTheSameMap() throws Exception {
+        OSMMap map = read(DOCUMENT, OSMReadOptions.DEFAULT);
+        OSMMap copy = roundTrip(map, OSMReadOptions.DEFAULT);
+        assertEquals(describe(map), describe(copy));
+        assertEquals(2, copy.ways().size());
+        assertEquals(2, copy.relations().size());
+    }
+
+    @Test
+    public void membersAreTheEntitiesOfTheMap() throws Exception {
+        OSMMap copy = roundTrip(read(DOCUMENT, OSMReadOptions.DEFAULT), OSMReadOptions.DEFAULT);
+        for (OSMRelation relation : copy.relations()) {
+            for (OSMRelation.Member member : relation.members()) {
+                if (member.type() == OSMRelation.Member.Type.WAY) {
+                    assertTrue(copy.ways().stream().anyMatch(w -> w == member.member()));
+                } else if (member.type() == OSMRelation.Member.Type.RELATION) {
+                    assertTrue(copy.relations().stream().anyMatch(r -> r == member.member()));
+                }
+            }
+        }
+        //The identical attributes are shared
+        assertSame(copy.ways().get(0).attributes().keepOnlyKeys(new HashSet<>(Arrays.asList("building"))),
+                copy.ways().get(1).attributes());
+    }
+
+    @Test
+    public void memberEntitiesOutsideOfTheMapAreKept() throws Exception {
+        OSMMap map = read(DOCUMENT, OSMReadOptions.DEFAULT);
+        //Only the relation containing the other one
+        OSMRelation relation = map.relations().stream().filter(r -> r.id() == 21).findFirst().get();
+        OSMMap partial = new OSMMap(Arrays.asList(), Arrays.asList(relation));
+        OSMMap copy = roundTrip(partial, OSMReadOptions.DEFAULT);
+        assertEquals(0, copy.ways().size());
+        assertEquals(describe(partial), describe(copy));
+    }
+
+    @Test(expected = IOException.class)
+    public void snapshotWithOtherAttributeKeysIsRejected() throws Exception {
+        Set<String> keys = new HashSet<>(Arrays.asList("building", "type"));
+        OSMReadOptions.Builder builder = new OSMReadOptions.Builder();
+        builder.setAttributeKeys(keys);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OSMMapSnapshot.write(read(DOCUMENT, builder.build()), builder.build(), out);
+        OSMMapSnapshot.read(ByteBuffer.wrap(out.toByteArray()), OSMReadOptions.DEFAULT);
+    }
+
+    @Test(expected = IOException.class)
+    public void snapshotWithOtherResolutionIsRejected() throws Exception {
+        OSMReadOptions.Builder builder = new OSMReadOptions.Builder();
+        builder.setDefersReferences(true);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OSMMapSnapshot.write(read(DOCUMENT, builder.build()), builder.build(), out);
+        OSMMapSnapshot.read(ByteBuffer.wrap(out.toByteArray()), OSMReadOptions.DEFAULT);
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedSnapshotIsRejected() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OSMMapSnapshot.write(read(DOCUMENT, OSMReadOptions.DEFAULT), OSMReadOptions.DEFAULT, out);
+        Path snapshot = Files.createTempFile("map", ".snapshot");
+        try {
+            Files.write(snapshot, Arrays.copyOf(out.toByteArray(), out.size() / 2));
+            OSMMapSnapshot.read(snapshot, OSMReadOptions.DEFAULT);
+        } finally {
+            Files.delete(snapshot);
+        }
+    }
+
+    @Test
+    public void readerUsesSnapshotUntilFileChanges() throws Exception {
+        Path directory = Files.createTempDirectory("snapshot");
+        Path file = directory.resolve("map.osm");
+        Path snapshot = OSMMapSnapshot.snapshotOf(file.toString());
+        try {
+            //Without the relations, which would keep their members outside of the box
+            Files.write(file, DOCUMENT.replaceAll("  <relation.*\n", "").getBytes(StandardCharsets.UTF_8));
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - 60_000));
+            OSMReadOptions.Builder builder = new OSMReadOptions.Builder();
+            builder.setUsesSnapshot(true);
+            builder.setBoundingBox(new BoundingBoxGeo(new PointGeo(Math.toRadians(7), Math.toRadians(47)),
+                    new PointGeo(Math.toRadians(7.5), Math.toRadians(47.5))));
+            OSMMap map = OSMMapReader.readOSMFile(file.toString(), false, builder.build());
+            assertTrue(Files.exists(snapshot));
+
+            //The file is not read anymore while the snapshot is more recent
+            Files.write(file, "<osm>".getBytes(StandardCharsets.UTF_8));
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - 60_000));
+            OSMMap fromSnapshot = OSMMapReader.readOSMFile(file.toString(), false, builder.build());
+            assertEquals(describe(map), describe(fromSnapshot));
+            //The bounding box is applied to the snapshot, which contains the whole file
+            assertEquals(1, fromSnapshot.ways().size());
+            assertEquals(11, fromSnapshot.ways().get(0).id());
+
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 60_000));
+            try {
+                OSMMapReader.readOSMFile(file.toString(), false, builder.build());
+                fail("The modified file should have been read");
+            } catch (Exception e) {
+                //The modified file is malformed
+            }
+        } finally {
+            Files.deleteIfExists(snapshot);
+            Files.deleteIfExists(file);
+            Files.delete(directory);
+        }
+    }
+}
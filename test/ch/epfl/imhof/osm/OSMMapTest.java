@@ -10,6 +10,7 @@ import java.util.List;
 import org.junit.Test;
 
 import ch.epfl.imhof.Attributes;
+import ch.epfl.imhof.BoundingBoxGeo;
 import ch.epfl.imhof.PointGeo;
 import ch.epfl.imhof.osm.OSMRelation.Member;
 
@@ -536,4 +537,150 @@ public class OSMMapTest {
         
     }
     
+    private static OSMNode boxNode(long id, double longitude, double latitude) {
+        return new OSMNode(id, new PointGeo(longitude, latitude), new Attributes(new HashMap<>()));
+    }
+
+    private static OSMWay boxWay(long id, OSMNode... nodes) {
+        List<OSMNode> list = new ArrayList<>();
+        for (OSMNode node : nodes) {
+            list.add(node);
+        }
+        return new OSMWay(id, list, new Attributes(new HashMap<>()));
+    }
+
+    @Test
+    public void testBoundingBoxKeepsIntersectingEntitiesComplete() {
+        OSMNode inside = boxNode(1, 0.15, 0.85);
+        OSMNode outside1 = boxNode(2, 0.3, 0.85);
+        OSMNode outside2 = boxNode(3, 0.3, 0.95);
+        OSMNode outside3 = boxNode(4, 0.35, 0.95);
+        OSMWay crossing = boxWay(10, inside, outside1, outside2);
+        OSMWay away = boxWay(11, outside2, outside3);
+        OSMWay away2 = boxWay(12, outside3, outside1);
+        OSMRelation.Builder partlyIn = new OSMRelation.Builder(20);
+        partlyIn.setAttribute("type", "multipolygon");
+        partlyIn.addMember(Member.Type.WAY, "outer", crossing);
+        partlyIn.addMember(Member.Type.WAY, "outer", away);
+        OSMRelation partlyInRelation = partlyIn.build();
+        OSMRelation.Builder outsideBuilder = new OSMRelation.Builder(21);
+        outsideBuilder.addMember(Member.Type.WAY, "outer", away2);
+        OSMRelation outsideRelation = outsideBuilder.build();
+        OSMRelation.Builder parent = new OSMRelation.Builder(22);
+        parent.addMember(Member.Type.RELATION, "", partlyInRelation);
+        OSMRelation.Builder nodeRelation = new OSMRelation.Builder(23);
+        nodeRelation.addMember(Member.Type.NODE, "", inside);
+
+        OSMMap.Builder builder = new OSMMap.Builder();
+        builder.addWay(crossing);
+        builder.addWay(away);
+        builder.addWay(away2);
+        builder.addRelation(partlyInRelation);
+        builder.addRelation(outsideRelation);
+        builder.addRelation(parent.build());
+        builder.addRelation(nodeRelation.build());
+        builder.setBoundingBox(new BoundingBoxGeo(new PointGeo(0.1, 0.8), new PointGeo(0.2, 0.9)));
+        OSMMap map = builder.build();
+
+        //way 11 does not intersect the box but is a member of the multipolygon 20
+        assertEquals(2, map.ways().size());
+        assertEquals(10, map.ways().get(0).id());
+        assertEquals(3, map.ways().get(0).nodesCount());
+        assertEquals(3, map.ways().get(0).nodes().get(2).id());
+        assertEquals(0.95, map.ways().get(0).nodes().get(2).position().latitude(), 1e-9);
+        assertEquals(11, map.ways().get(1).id());
+        assertEquals(3, map.relations().size());
+        assertEquals(20, map.relations().get(0).id());
+        assertEquals(22, map.relations().get(1).id());
+        assertEquals(23, map.relations().get(2).id());
+        assertSame(map.ways().get(0), map.relations().get(0).members().get(0).member());
+        assertSame(map.ways().get(1), map.relations().get(0).members().get(1).member());
+        assertSame(map.relations().get(0), map.relations().get(1).members().get(0).member());
+        assertSame(inside, map.relations().get(2).members().get(0).member());
+        //The nodes are the same as the ones added
+        assertSame(inside, map.ways().get(0).firstNode());
+        //Only the nodes of the kept ways remain in the store
+        assertEquals(4, map.ways().get(0).nodeStore().size());
+    }
+
+    @Test
+    public void testBoundingBoxRestrictsOtherRelationsToIntersectingMembers() {
+        OSMNode inside = boxNode(1, 0.15, 0.85);
+        OSMNode outside1 = boxNode(2, 0.3, 0.85);
+        OSMNode outside2 = boxNode(3, 0.3, 0.95);
+        OSMWay crossing = boxWay(10, inside, outside1);
+        OSMWay away = boxWay(11, outside1, outside2);
+        OSMRelation.Builder route = new OSMRelation.Builder(20);
+        route.setAttribute("type", "route");
+        route.addMember(Member.Type.WAY, "", crossing);
+        route.addMember(Member.Type.WAY, "", away);
+        route.addMember(Member.Type.NODE, "stop", outside2);
+        route.addMember(Member.Type.NODE, "stop", inside);
+
+        OSMMap.Builder builder = new OSMMap.Builder();
+        builder.addWay(crossing);
+        builder.addWay(away);
+        builder.addRelation(route.build());
+        builder.setBoundingBox(new BoundingBoxGeo(new PointGeo(0.1, 0.8), new PointGeo(0.2, 0.9)));
+        OSMMap map = builder.build();
+
+        assertEquals(1, map.ways().size());
+        assertEquals(10, map.ways().get(0).id());
+        assertEquals(1, map.relations().size());
+        List<Member> members = map.relations().get(0).members();
+        assertEquals(2, members.size());
+        assertSame(map.ways().get(0), members.get(0).member());
+        assertSame(inside, members.get(1).member());
+        assertEquals("stop", members.get(1).role());
+    }
+
+    @Test
+    public void testBoundingBoxKeepsSegmentCrossingIt() {
+        //Both ends are outside of the box, on each side of it
+        OSMWay crossing = boxWay(1, boxNode(1, 0.05, 0.85), boxNode(2, 0.25, 0.85));
+        OSMWay passing = boxWay(2, boxNode(3, 0.05, 0.95), boxNode(4, 0.25, 0.95));
+        OSMWay corner = boxWay(3, boxNode(5, 0.05, 0.85), boxNode(6, 0.15, 0.75));
+        OSMMap.Builder builder = new OSMMap.Builder();
+        builder.addWay(crossing);
+        builder.addWay(passing);
+        builder.addWay(corner);
+        builder.setBoundingBox(new BoundingBoxGeo(new PointGeo(0.1, 0.8), new PointGeo(0.2, 0.9)));
+        OSMMap map = builder.build();
+        assertEquals(1, map.ways().size());
+        assertEquals(1, map.ways().get(0).id());
+    }
+
+    @Test
+    public void testBoundingBoxKeepsClosedWayEnclosingIt() {
+        OSMNode n1 = boxNode(1, 0.0, 0.7);
+        OSMNode n2 = boxNode(2, 0.3, 0.7);
+        OSMNode n3 = boxNode(3, 0.3, 1.0);
+        OSMNode n4 = boxNode(4, 0.0, 1.0);
+        OSMWay enclosing = boxWay(1, n1, n2, n3, n4, n1);
+        //Same nodes, but not closed
+        OSMWay open = boxWay(2, n1, n2, n3, n4);
+        OSMNode m1 = boxNode(5, 0.25, 0.7);
+        OSMNode m2 = boxNode(6, 0.3, 0.7);
+        OSMNode m3 = boxNode(7, 0.3, 1.0);
+        OSMWay beside = boxWay(3, m1, m2, m3, m1);
+        OSMMap.Builder builder = new OSMMap.Builder();
+        builder.addWay(enclosing);
+        builder.addWay(open);
+        builder.addWay(beside);
+        builder.setBoundingBox(new BoundingBoxGeo(new PointGeo(0.1, 0.8), new PointGeo(0.2, 0.9)));
+        OSMMap map = builder.build();
+        assertEquals(1, map.ways().size());
+        assertEquals(1, map.ways().get(0).id());
+        assertEquals(5, map.ways().get(0).nodesCount());
+    }
+
+    @Test
+    public void testNoBoundingBoxKeepsEverything() {
+        OSMMap.Builder builder = new OSMMap.Builder();
+        builder.addWay(boxWay(1, boxNode(1, 0.3, 0.3), boxNode(2, 0.4, 0.4)));
+        builder.setBoundingBox(new BoundingBoxGeo(new PointGeo(0.1, 0.8), new PointGeo(0.2, 0.9)));
+        builder.setBoundingBox(null);
+        assertEquals(1, builder.build().ways().size());
+    }
+
 }
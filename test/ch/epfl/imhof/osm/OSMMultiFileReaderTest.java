@@ -0,0 +1,128 @@
+package ch.epfl.imhof.osm;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class OSMMultiFileReaderTest {
+    //The west part, whose way 11 uses node 4 of the east part
+    private final static String WEST = "<osm>\n"
+            + "  <node id=\"1\" lat=\"46.5194710\" lon=\"6.5620370\"/>\n"
+            + "  <node id=\"2\" lat=\"46.519\" lon=\"6.563\"/>\n"
+            + "  <node id=\"3\" lat=\"46.52\" lon=\"6.563\"><tag k=\"name\" v=\"Ouest\"/></node>\n"
+            + "  <way id=\"10\"><nd ref=\"1\"/><nd ref=\"2\"/><nd ref=\"3\"/><nd ref=\"1\"/>"
+            + "<tag k=\"building\" v=\"yes\"/></way>\n"
+            + "  <way id=\"11\"><nd ref=\"3\"/><nd ref=\"4\"/></way>\n"
+            + "</osm>\n";
+    //The east part, which contains node 3 too, and a relation of the ways of both parts
+    private final static String EAST = "<osm>\n"
+            + "  <node id=\"3\" lat=\"46.52\" lon=\"6.563\"><tag k=\"name\" v=\"Est\"/></node>\n"
+            + "  <node id=\"4\" lat=\"46.53\" lon=\"6.564\"/>\n"
+            + "  <relation id=\"20\"><member type=\"way\" ref=\"10\" role=\"outer\"/>"
+            + "<member type=\"way\" ref=\"11\" role=\"\"/><tag k=\"type\" v=\"multipolygon\"/></relation>\n"
+            + "</osm>\n";
+
+    private final static List<String> PARTS = Arrays.asList(WEST, EAST);
+
+    private static List<String> write(Path directory, List<String> parts) throws IOException {
+        List<String> fileNames = new ArrayList<>();
+        for (String part : parts) {
+            Path file = directory.resolve("part" + fileNames.size() + ".osm");
+            Files.write(file, part.getBytes(StandardCharsets.UTF_8));
+            fileNames.add(file.toString());
+        }
+        return fileNames;
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (java.util.stream.Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void referencesBetweenFilesAreResolved() throws Exception {
+        Path directory = Files.createTempDirectory("parts");
+        try {
+            List<String> fileNames = write(directory, PARTS);
+            OSMMap map = OSMMultiFileReader.read(fileNames, OSMReadOptions.DEFAULT).map();
+            assertEquals(2, map.ways().size());
+            assertEquals(1, map.relations().size());
+            assertEquals(2, map.relations().get(0).members().size());
+            //Without the other file, the way 11 and the relation are incomplete
+            assertEquals(1, OSMMapReader.readOSMFile(fileNames.get(0), false).ways().size());
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void entitiesOfSeveralFilesAreKeptOnce() throws Exception {
+        Path directory = Files.createTempDirectory("parts");
+        try {
+            List<String> fileNames = write(directory, PARTS);
+            OSMMap map = OSMMultiFileReader.read(fileNames, OSMReadOptions.DEFAULT).map();
+            OSMWay way10 = map.ways().stream().filter(w -> w.id() == 10).findFirst().get();
+            OSMWay way11 = map.ways().stream().filter(w -> w.id() == 11).findFirst().get();
+            //Both ways use the node of the last file
+            assertEquals("Est", way10.nodes().get(2).attributes().get("name"));
+            assertEquals("Est", way11.nodes().get(0).attributes().get("name"));
+
+            map = OSMMultiFileReader.read(Arrays.asList(fileNames.get(1), fileNames.get(0)), OSMReadOptions.DEFAULT).map();
+            way10 = map.ways().stream().filter(w -> w.id() == 10).findFirst().get();
+            assertEquals("Ouest", way10.nodes().get(2).attributes().get("name"));
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void eachFileIsReported() throws Exception {
+        Path directory = Files.createTempDirectory("parts");
+        try {
+            List<String> fileNames = write(directory, Arrays.asList(WEST, EAST, WEST));
+            OSMMultiFileReader.Result result = OSMMultiFileReader.read(fileNames, OSMReadOptions.DEFAULT);
+            assertEquals(3, result.reports().size());
+            for (int i = 0; i < fileNames.size(); i++) {
+                assertEquals(fileNames.get(i), result.reports().get(i).fileName());
+            }
+            assertEquals(3, result.reports().get(0).nodesCount());
+            assertEquals(2, result.reports().get(0).waysCount());
+            assertEquals(0, result.reports().get(0).relationsCount());
+            assertEquals(2, result.reports().get(1).nodesCount());
+            assertEquals(1, result.reports().get(1).relationsCount());
+            assertEquals(2, result.map().ways().size());
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void noFileIsRejected() throws Exception {
+        OSMMultiFileReader.read(Collections.emptyList(), OSMReadOptions.DEFAULT);
+    }
+
+    @Test(expected = IOException.class)
+    public void missingFileIsRejected() throws Exception {
+        Path directory = Files.createTempDirectory("parts");
+        try {
+            List<String> fileNames = new ArrayList<>(write(directory, PARTS));
+            fileNames.add(directory.resolve("missing.osm").toString());
+            OSMMultiFileReader.read(fileNames, OSMReadOptions.DEFAULT);
+        } finally {
+            delete(directory);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package ch.epfl.imhof.osm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+
+import org.junit.Test;
+
+import ch.epfl.imhof.Attributes;
+import ch.epfl.imhof.PointGeo;
+
+public class OSMNodeStoreTest {
+
+    // Coordinates are stored at 1e-7 degree
+    private static final double DELTA = 1e-8;
+
+    @Test
+    public void addedNodesAreIndexedById() {
+        OSMNodeStore store = new OSMNodeStore();
+        int first = store.add(10L, 0.1, 0.2, null);
+        int second = store.add(20L, 0.3, 0.4, null);
+        assertEquals(0, first);
+        assertEquals(1, second);
+        assertEquals(2, store.size());
+        assertEquals(second, store.indexOf(20L));
+        assertEquals(-1, store.indexOf(30L));
+        assertEquals(20L, store.id(second));
+        assertEquals(0.3, store.longitude(second), DELTA);
+        assertEquals(0.4, store.latitude(second), DELTA);
+    }
+
+    @Test
+    public void addingSameIdReplacesNode() {
+        OSMNodeStore store = new OSMNodeStore();
+        store.add(10L, 0.1, 0.2, null);
+        int index = store.add(10L, 0.5, 0.6, null);
+        assertEquals(0, index);
+        assertEquals(1, store.size());
+        assertEquals(0.5, store.longitude(index), DELTA);
+    }
+
+    @Test
+    public void nodesWithoutTagsHaveEmptyAttributes() {
+        OSMNodeStore store = new OSMNodeStore();
+        int index = store.add(10L, 0.1, 0.2, null);
+        assertTrue(store.attributes(index).isEmpty());
+        assertTrue(store.node(index).attributes().isEmpty());
+    }
+
+    @Test
+    public void nodesKeepTheirTags() {
+        OSMNodeStore store = new OSMNodeStore();
+        Attributes attributes = new Attributes(Collections.singletonMap("amenity", "bench"));
+        int index = store.add(10L, 0.1, 0.2, attributes);
+        store.add(11L, 0.1, 0.2, null);
+        assertEquals("bench", store.attributes(index).get("amenity"));
+        assertTrue(store.attributes(index + 1).isEmpty());
+    }
+
+    @Test
+    public void createdNodeHasStoredValues() {
+        OSMNodeStore store = new OSMNodeStore();
+        int index = store.add(42L, 0.1, 0.2, null);
+        OSMNode node = store.node(index);
+        assertEquals(42L, node.id());
+        assertEquals(0.1, node.position().longitude(), DELTA);
+        assertEquals(0.2, node.position().latitude(), DELTA);
+    }
+
+    @Test
+    public void addedNodeObjectIsGivenBack() {
+        OSMNodeStore store = new OSMNodeStore();
+        OSMNode node = new OSMNode(42L, new PointGeo(0.1, 0.2), new Attributes(Collections.emptyMap()));
+        store.add(1L, 0.3, 0.4, null);
+        int index = store.add(node);
+        assertSame(node, store.node(index));
+        assertFalse(store.node(0) == store.node(0));
+    }
+
+    @Test
+    public void growsAndKeepsAllNodes() {
+        OSMNodeStore store = new OSMNodeStore(1);
+        for (int i = 0; i < 10_000; i++) {
+            store.add(1_000_000L + 7 * i, i * 1e-4, -i * 1e-4, null);
+        }
+        for (int i = 0; i < 10_000; i++) {
+            int index = store.indexOf(1_000_000L + 7 * i);
+            assertEquals(i, index);
+            assertEquals(-i * 1e-4, store.latitude(index), DELTA);
+        }
+    }
+
+    @Test
+    public void fixedPointCoordinatesAreKept() {
+        OSMNodeStore store = new OSMNodeStore();
+        int index = store.addFixedPoint(1L, 65000097, 465000072, null);
+        assertEquals(65000097, store.fixedPointLongitude(index));
+        assertEquals(465000072, store.fixedPointLatitude(index));
+        assertEquals(Math.toRadians(46.5000072), store.latitude(index), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidFixedPointLongitude() {
+        new OSMNodeStore().addFixedPoint(1L, 1_800_000_001, 0, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidLatitude() {
+        new OSMNodeStore().add(1L, 0, 2, null);
+    }
+
+    @Test
+    public void retainedNodesAreCompacted() {
+        OSMNodeStore store = new OSMNodeStore();
+        Attributes bench = new Attributes(Collections.singletonMap("amenity", "bench"));
+        OSMNode node = new OSMNode(40L, new PointGeo(0.4, 0.4), bench);
+        store.add(10L, 0.1, 0.1, bench);
+        store.add(20L, 0.2, 0.2, null);
+        store.add(30L, 0.3, 0.3, bench);
+        store.add(node);
+        assertEquals(2, store.retainAll(new boolean[] { false, true, false, true }));
+        assertEquals(2, store.size());
+        assertEquals(-1, store.indexOf(10L));
+        assertEquals(-1, store.indexOf(30L));
+        assertEquals(0, store.indexOf(20L));
+        assertEquals(0.2, store.longitude(0), DELTA);
+        assertTrue(store.attributes(0).isEmpty());
+        assertSame(node, store.node(1));
+        //The store can grow again
+        assertEquals(2, store.add(50L, 0.5, 0.5, bench));
+        assertSame(bench, store.attributes(2));
+    }
+
+    @Test
+    public void manyRetainedNodesAreFoundAgain() {
+        OSMNodeStore store = new OSMNodeStore();
+        boolean[] retained = new boolean[10_000];
+        for (int i = 0; i < retained.length; i++) {
+            store.addFixedPoint(1000L + 3 * i, i, -i, null);
+            retained[i] = i % 3 != 1;
+        }
+        store.retainAll(retained);
+        int index = 0;
+        for (int i = 0; i < retained.length; i++) {
+            if (retained[i]) {
+                assertEquals(index, store.indexOf(1000L + 3 * i));
+                assertEquals(1000L + 3 * i, store.id(index));
+                assertEquals(-i, store.fixedPointLatitude(index));
+                index++;
+            } else {
+                assertEquals(-1, store.indexOf(1000L + 3 * i));
+            }
+        }
+        assertEquals(index, store.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void retainedFlagsMustMatchTheNodes() {
+        OSMNodeStore store = new OSMNodeStore();
+        store.add(10L, 0.1, 0.1, null);
+        store.retainAll(new boolean[2]);
+    }
+}
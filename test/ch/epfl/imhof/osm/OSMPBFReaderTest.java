@@ -0,0 +1,268 @@
+package ch.epfl.imhof.osm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+
+import org.junit.Test;
+
+public class OSMPBFReaderTest {
+    private static final double DELTA = 1e-12;
+
+    /**
+     * Encodes a protocol buffers message
+     */
+    private static class Message {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        private void varint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                bytes.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            bytes.write((int) value);
+        }
+
+        Message uint(int field, long value) {
+            varint(field << 3);
+            varint(value);
+            return this;
+        }
+
+        Message sint(int field, long value) {
+            return uint(field, (value << 1) ^ (value >> 63));
+        }
+
+        Message bytes(int field, byte[] value) {
+            varint((field << 3) | 2);
+            varint(value.length);
+            bytes.write(value, 0, value.length);
+            return this;
+        }
+
+        Message string(int field, String value) {
+            return bytes(field, value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        Message message(int field, Message value) {
+            return bytes(field, value.toByteArray());
+        }
+
+        Message packed(int field, boolean signed, long... values) {
+            Message packed = new Message();
+            for (long value : values) {
+                packed.varint(signed ? (value << 1) ^ (value >> 63) : value);
+            }
+            return message(field, packed);
+        }
+
+        byte[] toByteArray() {
+            return bytes.toByteArray();
+        }
+    }
+
+    /**
+     * Encodes a PBF document
+     */
+    private static class Document {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+
+        Document blob(String type, Message data, boolean compressed) throws IOException {
+            byte[] raw = data.toByteArray();
+            Message blob = new Message();
+            if (compressed) {
+                ByteArrayOutputStream zlib = new ByteArrayOutputStream();
+                try (DeflaterOutputStream deflater = new DeflaterOutputStream(zlib)) {
+                    deflater.write(raw);
+                }
+                blob.uint(2, raw.length).bytes(3, zlib.toByteArray());
+            } else {
+                blob.bytes(1, raw);
+            }
+            byte[] header = new Message().string(1, type).uint(3, blob.toByteArray().length).toByteArray();
+            out.writeInt(header.length);
+            out.write(header);
+            out.write(blob.toByteArray());
+            return this;
+        }
+
+        Document header(String... features) throws IOException {
+            Message header = new Message();
+            for (String feature : features) {
+                header.string(4, feature);
+            }
+            return blob("OSMHeader", header, false);
+        }
+
+        OSMMap read() throws IOException {
+            return OSMPBFReader.readPBF(new ByteArrayInputStream(bytes.toByteArray()));
+        }
+    }
+
+    private static Message stringTable(String... strings) {
+        Message table = new Message();
+        for (String s : strings) {
+            table.string(1, s);
+        }
+        return table;
+    }
+
+    private static Message simpleBlock() {
+        //Strings : 1 building, 2 yes, 3 name, 4 Rolex, 5 type, 6 multipolygon, 7 outer
+        Message dense = new Message()
+                .packed(1, true, 1, 1, 1)
+                .packed(8, true, 465194710, -10, 20)
+                .packed(9, true, 65620370, 1000, -2000)
+                .packed(10, false, 0, 3, 4, 0, 0);
+        Message way = new Message().uint(1, 10).packed(2, false, 1).packed(3, false, 2).packed(8, true, 1, 1, 1, -2);
+        Message relation = new Message().uint(1, 20).packed(2, false, 5).packed(3, false, 6)
+                .packed(8, false, 7, 0).packed(9, true, 10, -7).packed(10, false, 1, 0);
+        return new Message()
+                .message(1, stringTable("", "building", "yes", "name", "Rolex", "type", "multipolygon", "outer"))
+                .message(2, new Message().message(2, dense))
+                .message(2, new Message().message(3, way))
+                .message(2, new Message().message(4, relation));
+    }
+
+    @Test
+    public void denseNodesWaysAndRelationsAreDecoded() throws IOException {
+        OSMMap map = new Document().header("OsmSchema-V0.6", "DenseNodes").blob("OSMData", simpleBlock(), true).read();
+        assertEquals(1, map.ways().size());
+        OSMWay way = map.ways().get(0);
+        assertEquals(10, way.id());
+        assertEquals("yes", way.attributes().get("building"));
+        assertEquals(4, way.nodesCount());
+        assertTrue(way.isClosed());
+        assertEquals(2, way.nodes().get(1).id());
+        assertEquals("Rolex", way.nodes().get(1).attributes().get("name"));
+        assertTrue(way.nodes().get(2).attributes().isEmpty());
+        assertEquals(FixedPointCoordinate.toRadians(465194700), way.nodes().get(1).position().latitude(), DELTA);
+        assertEquals(FixedPointCoordinate.toRadians(65621370), way.nodes().get(1).position().longitude(), DELTA);
+        assertEquals(FixedPointCoordinate.toRadians(65619370), way.nodes().get(2).position().longitude(), DELTA);
+
+        assertEquals(1, map.relations().size());
+        OSMRelation relation = map.relations().get(0);
+        assertEquals("multipolygon", relation.attributes().get("type"));
+        assertEquals(2, relation.members().size());
+        assertSame(way, relation.members().get(0).member());
+        assertEquals("outer", relation.members().get(0).role());
+        assertEquals(OSMRelation.Member.Type.NODE, relation.members().get(1).type());
+        assertEquals(3, relation.members().get(1).member().id());
+        assertEquals("", relation.members().get(1).role());
+    }
+
+    @Test
+    public void granularityAndOffsetsAreApplied() throws IOException {
+        Message node = new Message().sint(1, 1).sint(8, 465194).sint(9, 65620).packed(2, false, 1).packed(3, false, 2);
+        Message block = new Message()
+                .message(1, stringTable("", "name", "x"))
+                .message(2, new Message().message(1, node).message(1, new Message().sint(1, 2).sint(8, 0).sint(9, 0)))
+                .message(2, new Message().message(3, new Message().uint(1, 5).sint(8, 1).sint(8, 1)))
+                .uint(17, 1000).uint(19, 123).uint(20, 449);
+        OSMMap map = new Document().header("OsmSchema-V0.6").blob("OSMData", block, false).read();
+        OSMWay way = map.ways().get(0);
+        //The references are not packed
+        assertEquals(2, way.nodesCount());
+        assertEquals(1, way.nodes().get(0).id());
+        assertEquals("x", way.nodes().get(0).attributes().get("name"));
+        //123 + 1000 * 465194 = 465194123e-9 degree, rounded to 4651941e-7
+        assertEquals(FixedPointCoordinate.toRadians(4651941), way.nodes().get(0).position().latitude(), DELTA);
+        assertEquals(FixedPointCoordinate.toRadians(656204), way.nodes().get(0).position().longitude(), DELTA);
+        assertEquals(FixedPointCoordinate.toRadians(1), way.nodes().get(1).position().latitude(), DELTA);
+        assertEquals(FixedPointCoordinate.toRadians(4), way.nodes().get(1).position().longitude(), DELTA);
+    }
+
+    @Test
+    public void blocksAreAppliedInFileOrder() throws IOException {
+        Document document = new Document().header("OsmSchema-V0.6", "DenseNodes");
+        int blocks = 50;
+        for (int b = 0; b < blocks; b++) {
+            long[] ids = new long[100];
+            long[] coordinates = new long[100];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = 1;
+                coordinates[i] = 1;
+            }
+            ids[0] = b * 100 + 1;
+            coordinates[0] = b;
+            Message dense = new Message().packed(1, true, ids).packed(8, true, coordinates).packed(9, true, coordinates);
+            document.blob("OSMData", new Message().message(1, stringTable("")).message(2, new Message().message(2, dense)), true);
+        }
+        List<Long> wayIds = new ArrayList<>();
+        for (int b = 0; b < blocks; b++) {
+            Message group = new Message();
+            for (int w = 0; w < 20; w++) {
+                long id = 1000L * (blocks - b) + w;
+                wayIds.add(id);
+                group.message(3, new Message().uint(1, id).packed(8, true, b * 100 + w * 5 + 1, 1, 1));
+            }
+            document.blob("OSMData", new Message().message(1, stringTable("")).message(2, group), true);
+        }
+        document.blob("Unknown", new Message().uint(1, 1), false);
+        OSMMap map = document.read();
+        assertEquals(wayIds.size(), map.ways().size());
+        for (int i = 0; i < wayIds.size(); i++) {
+            assertEquals((long) wayIds.get(i), map.ways().get(i).id());
+            assertEquals(3, map.ways().get(i).nodesCount());
+        }
+    }
+
+    @Test
+    public void incompleteWaysAndRelationsAreIgnored() throws IOException {
+        Message dense = new Message().packed(1, true, 1, 1).packed(8, true, 0, 0).packed(9, true, 0, 0);
+        Message block = new Message()
+                .message(1, stringTable("", "outer"))
+                .message(2, new Message().message(2, dense))
+                .message(2, new Message().message(3, new Message().uint(1, 1).packed(8, true, 1, 1))
+                        .message(3, new Message().uint(1, 2).packed(8, true, 1, 2)))
+                .message(2, new Message().message(4, new Message().uint(1, 3).packed(8, false, 1).packed(9, true, 2).packed(10, false, 1)));
+        OSMMap map = new Document().header("OsmSchema-V0.6", "DenseNodes").blob("OSMData", block, true).read();
+        assertEquals(1, map.ways().size());
+        assertEquals(0, map.relations().size());
+    }
+
+    @Test(expected = IOException.class)
+    public void unsupportedFeatureIsRejected() throws IOException {
+        new Document().header("OsmSchema-V0.6", "HistoricalInformation").blob("OSMData", simpleBlock(), true).read();
+    }
+
+    @Test(expected = IOException.class)
+    public void dataBeforeHeaderIsRejected() throws IOException {
+        new Document().blob("OSMData", simpleBlock(), true).read();
+    }
+
+    @Test(expected = IOException.class)
+    public void unsupportedCompressionIsRejected() throws IOException {
+        Document document = new Document().header("OsmSchema-V0.6");
+        byte[] blob = new Message().uint(2, 10).bytes(4, new byte[10]).toByteArray();
+        byte[] header = new Message().string(1, "OSMData").uint(3, blob.length).toByteArray();
+        document.out.writeInt(header.length);
+        document.out.write(header);
+        document.out.write(blob);
+        document.read();
+    }
+
+    @Test(expected = IOException.class)
+    public void invalidStringIndexIsRejected() throws IOException {
+        Message way = new Message().uint(1, 10).packed(2, false, 5).packed(3, false, 1);
+        new Document().header("OsmSchema-V0.6").blob("OSMData",
+                new Message().message(1, stringTable("", "a")).message(2, new Message().message(3, way)), true).read();
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedDocumentIsRejected() throws IOException {
+        Document document = new Document().header("OsmSchema-V0.6").blob("OSMData", simpleBlock(), true);
+        byte[] bytes = document.bytes.toByteArray();
+        OSMPBFReader.readPBF(new ByteArrayInputStream(bytes, 0, bytes.length - 3));
+    }
+}
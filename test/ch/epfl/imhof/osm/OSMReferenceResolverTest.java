@@ -0,0 +1,229 @@
+package ch.epfl.imhof.osm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class OSMReferenceResolverTest {
+    private final static String NODES =
+            "  <node id=\"1\" lat=\"46.5194710\" lon=\"6.5620370\"/>\n"
+            + "  <node id=\"2\" lat=\"46.519\" lon=\"6.563\"/>\n"
+            + "  <node id=\"3\" lat=\"46.52\" lon=\"6.563\"><tag k=\"name\" v=\"Rolex\"/></node>\n";
+    private final static String WAYS =
+            "  <way id=\"10\"><nd ref=\"1\"/><nd ref=\"2\"/><nd ref=\"3\"/><nd ref=\"1\"/>"
+            + "<tag k=\"building\" v=\"yes\"/></way>\n"
+            + "  <way id=\"11\"><nd ref=\"1\"/><nd ref=\"4\"/></way>\n"
+            + "  <way id=\"12\"><nd ref=\"2\"/><nd ref=\"3\"/></way>\n";
+    private final static String RELATIONS =
+            "  <relation id=\"20\"><member type=\"way\" ref=\"10\" role=\"outer\"/>"
+            + "<member type=\"node\" ref=\"3\" role=\"\"/><tag k=\"type\" v=\"multipolygon\"/></relation>\n"
+            + "  <relation id=\"21\"><member type=\"relation\" ref=\"20\" role=\"part\"/>"
+            + "<member type=\"way\" ref=\"12\" role=\"\"/></relation>\n"
+            + "  <relation id=\"22\"><member type=\"way\" ref=\"11\" role=\"outer\"/></relation>\n";
+
+    private static InputStream stream(String document) {
+        return new ByteArrayInputStream(document.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static OSMReadOptions deferred() {
+        OSMReadOptions.Builder builder = new OSMReadOptions.Builder();
+        builder.setDefersReferences(true);
+        return builder.build();
+    }
+
+    private static String describe(OSMMap map) {
+        StringBuilder b = new StringBuilder();
+        for (OSMWay way : map.ways()) {
+            b.append("way ").append(way.id()).append(way.attributes().get("building"));
+            for (OSMNode node : way.nodes()) {
+                b.append(' ').append(node.id()).append(node.attributes().get("name"));
+            }
+            b.append('\n');
+        }
+        for (OSMRelation relation : map.relations()) {
+            b.append("relation ").append(relation.id()).append(relation.attributes().get("type"));
+            for (OSMRelation.Member member : relation.members()) {
+                b.append(' ').append(member.type()).append(':').append(member.member().id()).append(':').append(member.role());
+            }
+            b.append('\n');
+        }
+        return b.toString();
+    }
+
+    @Test
+    public void sortedFileGivesTheSameMap() throws Exception {
+        String document = "<osm>" + NODES + WAYS + RELATIONS + "</osm>";
+        OSMMap immediate = OSMMapReader.readOSM(stream(document));
+        assertEquals(describe(immediate), describe(OSMMapReader.readOSM(stream(document), deferred())));
+        assertEquals(describe(immediate), describe(OSMMapReader.readOSMWithSAX(stream(document), deferred())));
+    }
+
+    @Test
+    public void unsortedFileGivesTheSameMap() throws Exception {
+        String sorted = "<osm>" + NODES + WAYS + RELATIONS + "</osm>";
+        String unsorted = "<osm>" + RELATIONS.substring(RELATIONS.indexOf("  <relation id=\"21\""))
+                + WAYS + RELATIONS.substring(0, RELATIONS.indexOf("  <relation id=\"21\"")) + NODES + "</osm>";
+        OSMMap map = OSMMapReader.readOSM(stream(unsorted), deferred());
+        assertEquals(2, map.ways().size());
+        assertEquals(2, map.relations().size());
+        String expected = describe(OSMMapReader.readOSM(stream(sorted)));
+        for (String line : describe(map).split("\n")) {
+            assertTrue(line, expected.contains(line));
+        }
+        //Without deferring, nothing refers to entities read before
+        OSMMap immediate = OSMMapReader.readOSM(stream(unsorted));
+        assertEquals(0, immediate.ways().size());
+    }
+
+    @Test
+    public void membersAreTheEntitiesOfTheMap() throws Exception {
+        String document = "<osm>" + RELATIONS + WAYS + NODES + "</osm>";
+        OSMMap map = OSMMapReader.readOSM(stream(document), deferred());
+        OSMRelation relation21 = map.relations().stream().filter(r -> r.id() == 21).findFirst().get();
+        OSMRelation relation20 = map.relations().stream().filter(r -> r.id() == 20).findFirst().get();
+        assertSame(relation20, relation21.members().get(0).member());
+        assertSame(map.ways().stream().filter(w -> w.id() == 12).findFirst().get(), relation21.members().get(1).member());
+    }
+
+    @Test
+    public void concatenatedFilesKeepTheLastEntities() throws Exception {
+        String document = "<osm>" + WAYS + NODES
+                + "  <way id=\"10\"><nd ref=\"3\"/><nd ref=\"2\"/><tag k=\"building\" v=\"no\"/></way>\n"
+                + "  <node id=\"4\" lat=\"46.53\" lon=\"6.564\"/>\n"
+                + RELATIONS + "</osm>";
+        OSMMap map = OSMMapReader.readOSM(stream(document), deferred());
+        //Way 11 is complete once node 4 is read, and relation 22 once way 11 is complete
+        assertEquals(3, map.ways().size());
+        assertEquals(3, map.relations().size());
+        OSMWay way10 = map.ways().stream().filter(w -> w.id() == 10).findFirst().get();
+        assertEquals("no", way10.attributes().get("building"));
+        assertEquals(2, way10.nodesCount());
+    }
+
+    @Test
+    public void incompleteLastRecordRemovesTheEntity() throws Exception {
+        String document = "<osm>" + NODES + WAYS
+                + "  <way id=\"10\"><nd ref=\"3\"/><nd ref=\"9\"/></way>\n"
+                + "  <relation id=\"23\"><member type=\"node\" ref=\"1\" role=\"\"/></relation>\n"
+                + "  <relation id=\"23\"><member type=\"node\" ref=\"9\" role=\"\"/></relation>\n"
+                + "</osm>";
+        OSMMap.Builder mapBuilder = new OSMMap.Builder();
+        OSMMapAssembler assembler = new OSMMapAssembler(mapBuilder, null, true);
+        new OSMXMLParser(stream(document), assembler).parse();
+        OSMMap map = assembler.build();
+        //Node 9 does not exist : the complete records of way 10 and relation 23 are not kept either
+        assertEquals(1, map.ways().size());
+        assertEquals(12, map.ways().get(0).id());
+        assertEquals(0, map.relations().size());
+        assertEquals(null, mapBuilder.wayForId(10));
+    }
+
+    @Test
+    public void manyWaysAreResolvedInTheirOrder() throws Exception {
+        OSMMap.Builder mapBuilder = new OSMMap.Builder();
+        for (int n = 0; n < 100; n++) {
+            mapBuilder.nodeStore().addFixedPoint(n, 65_620_000 + n, 465_190_000 + n, null);
+        }
+        OSMReferenceResolver resolver = new OSMReferenceResolver();
+        //Enough ways to be resolved by several tasks, every seventh one refers to a missing node
+        int waysCount = 10_000;
+        for (int w = 0; w < waysCount; w++) {
+            resolver.addNodeReference(w % 100);
+            resolver.addNodeReference(w % 7 == 0 ? 1000 : (w + 1) % 100);
+            resolver.endWay(w, null);
+        }
+        resolver.resolve(mapBuilder);
+        OSMMap map = mapBuilder.build();
+        assertEquals(waysCount - (waysCount + 6) / 7, map.ways().size());
+        int i = 0;
+        for (int w = 0; w < waysCount; w++) {
+            if (w % 7 != 0) {
+                OSMWay way = map.ways().get(i++);
+                assertEquals(w, way.id());
+                assertEquals(w % 100, way.firstNode().id());
+                assertEquals((w + 1) % 100, way.lastNode().id());
+            }
+        }
+    }
+
+    @Test
+    public void cyclicRelationsAreIncomplete() throws Exception {
+        String document = "<osm>" + NODES
+                + "  <relation id=\"30\"><member type=\"relation\" ref=\"31\" role=\"\"/></relation>\n"
+                + "  <relation id=\"31\"><member type=\"relation\" ref=\"30\" role=\"\"/></relation>\n"
+                + "  <relation id=\"32\"><member type=\"relation\" ref=\"33\" role=\"\"/></relation>\n"
+                + "  <relation id=\"33\"><member type=\"node\" ref=\"1\" role=\"\"/></relation>\n"
+                + "</osm>";
+        OSMMap map = OSMMapReader.readOSM(stream(document), deferred());
+        assertEquals(2, map.relations().size());
+        assertEquals(33, map.relations().get(0).id());
+        assertEquals(32, map.relations().get(1).id());
+    }
+
+    @Test
+    public void unreferencedNodesAreDiscarded() throws Exception {
+        String document = "<osm>" + NODES
+                + "  <node id=\"5\" lat=\"46.53\" lon=\"6.564\"><tag k=\"amenity\" v=\"bench\"/></node>\n"
+                + "  <way id=\"12\"><nd ref=\"2\"/><nd ref=\"3\"/></way>\n"
+                + "  <relation id=\"23\"><member type=\"node\" ref=\"1\" role=\"\"/></relation>\n"
+                + "</osm>";
+        OSMMap.Builder mapBuilder = new OSMMap.Builder();
+        OSMMapAssembler assembler = new OSMMapAssembler(mapBuilder, null, true);
+        new OSMXMLParser(stream(document), assembler).parse();
+        OSMMap map = assembler.build();
+        //Node 5 is not referred to
+        assertEquals(3, mapBuilder.retainedNodesCount());
+        assertEquals(1, mapBuilder.discardedNodesCount());
+        assertEquals(-1, mapBuilder.nodeStore().indexOf(5));
+        assertEquals(describe(OSMMapReader.readOSM(stream(document))), describe(map));
+    }
+
+    @Test
+    public void unreferencedNodesAreDiscardedWhenReadingImmediately() throws Exception {
+        String document = "<osm>" + NODES
+                + "  <node id=\"5\" lat=\"46.53\" lon=\"6.564\"><tag k=\"amenity\" v=\"bench\"/></node>\n"
+                + "  <way id=\"12\"><nd ref=\"2\"/><nd ref=\"3\"/></way>\n"
+                + "  <relation id=\"23\"><member type=\"node\" ref=\"1\" role=\"\"/>"
+                + "<member type=\"way\" ref=\"12\" role=\"\"/></relation>\n"
+                + "</osm>";
+        OSMMap.Builder mapBuilder = new OSMMap.Builder();
+        OSMMapAssembler assembler = new OSMMapAssembler(mapBuilder, null, false);
+        new OSMXMLParser(stream(document), assembler).parse();
+        OSMMap map = assembler.build();
+        assertEquals(3, mapBuilder.retainedNodesCount());
+        assertEquals(1, mapBuilder.discardedNodesCount());
+        assertEquals(-1, mapBuilder.nodeStore().indexOf(5));
+        //The way keeps the compacted store, and is still shared with the relation
+        assertSame(mapBuilder.nodeStore(), map.ways().get(0).nodeStore());
+        assertSame(map.ways().get(0), map.relations().get(0).members().get(1).member());
+        assertEquals(describe(OSMMapReader.readOSM(stream(document), deferred())), describe(map));
+    }
+
+    @Test
+    public void replacedWaysOfRelationsKeepTheirNodesWhenReadingImmediately() throws Exception {
+        String document = "<osm>"
+                + "  <node id=\"5\" lat=\"46.53\" lon=\"6.564\"/>\n" + NODES
+                + "  <node id=\"4\" lat=\"46.53\" lon=\"6.565\"/>\n"
+                + "  <way id=\"12\"><nd ref=\"2\"/><nd ref=\"3\"/></way>\n"
+                + "  <relation id=\"23\"><member type=\"way\" ref=\"12\" role=\"\"/></relation>\n"
+                + "  <way id=\"12\"><nd ref=\"1\"/><nd ref=\"4\"/></way>\n"
+                + "</osm>";
+        OSMMap.Builder mapBuilder = new OSMMap.Builder();
+        OSMMapAssembler assembler = new OSMMapAssembler(mapBuilder, null, false);
+        new OSMXMLParser(stream(document), assembler).parse();
+        OSMMap map = assembler.build();
+        assertEquals(1, mapBuilder.discardedNodesCount());
+        assertEquals(1, map.ways().get(0).firstNode().id());
+        assertEquals(4, map.ways().get(0).lastNode().id());
+        //The relation still refers to the first record of the way, whose nodes moved in the store
+        OSMWay member = (OSMWay) map.relations().get(0).members().get(0).member();
+        assertEquals(2, member.firstNode().id());
+        assertEquals(3, member.lastNode().id());
+    }
+}
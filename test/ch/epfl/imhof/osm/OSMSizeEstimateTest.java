@@ -0,0 +1,42 @@
+package ch.epfl.imhof.osm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+
+public class OSMSizeEstimateTest {
+
+    @Test
+    public void estimateGrowsWithTheFile() throws Exception {
+        Path file = Files.createTempFile("map", ".osm");
+        try {
+            Files.write(file, new byte[1_200_000]);
+            OSMSizeEstimate xml = OSMSizeEstimate.ofXMLFile(file.toString(), false);
+            assertEquals(10_000, xml.nodesCount());
+            assertTrue(xml.waysCount() > 0 && xml.waysCount() < xml.nodesCount());
+            assertTrue(xml.relationsCount() > 0 && xml.relationsCount() < xml.waysCount());
+            //The same content takes less space compressed
+            assertTrue(OSMSizeEstimate.ofXMLFile(file.toString(), true).nodesCount() > xml.nodesCount());
+            assertTrue(OSMSizeEstimate.ofPBFFile(file.toString()).nodesCount() > xml.nodesCount());
+            assertEquals(20_000, xml.plus(xml).nodesCount());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void missingFileHasNoEstimate() {
+        OSMSizeEstimate estimate = OSMSizeEstimate.ofPBFFile("missing.osm.pbf");
+        assertEquals(0, estimate.nodesCount());
+        assertEquals(0, estimate.membersCount());
+        //The structures sized from this estimate still work
+        OSMReferenceResolver resolver = new OSMReferenceResolver(estimate);
+        resolver.addNodeReference(1);
+        resolver.endWay(10, null);
+        assertEquals(1, resolver.waysCount());
+    }
+}
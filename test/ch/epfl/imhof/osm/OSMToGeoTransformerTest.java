@@ -5,6 +5,8 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 
 import org.junit.Test;
@@ -413,4 +415,109 @@ public class OSMToGeoTransformerTest {
         assertEquals(0, testMap.polygons().size());
     }
 
+    /*
+     * test if the ways of a large map, converted in parallel, keep their order, also when
+     * the same transformer is used by two threads at once
+     */
+    @Test
+    public void largeMapKeepsTheOrderOfTheWays() throws Exception {
+        StringBuilder document = new StringBuilder("<osm>");
+        for (int i = 0; i < 6000; i++) {
+            for (int j = 0; j < 3; j++) {
+                document.append("<node id=\"").append(3 * i + j).append("\" lat=\"").append(46.5 + j * 0.00001)
+                        .append("\" lon=\"").append(6.5 + i * 0.00001 + j * 0.000001).append("\"/>");
+            }
+        }
+        for (int i = 0; i < 6000; i++) {
+            document.append("<way id=\"").append(i).append("\"><nd ref=\"").append(3 * i).append("\"/><nd ref=\"")
+                    .append(3 * i + 1).append("\"/>");
+            if (i % 5 == 0) {
+                document.append("<nd ref=\"").append(3 * i + 2).append("\"/><nd ref=\"").append(3 * i)
+                        .append("\"/><tag k=\"building\" v=\"yes\"/></way>");
+            } else {
+                document.append("<tag k=\"highway\" v=\"residential\"/></way>");
+            }
+        }
+        OSMMap osmMap = OSMMapReader.readOSM(new ByteArrayInputStream(
+                document.append("</osm>").toString().getBytes(StandardCharsets.UTF_8)));
+        Map[] maps = new Map[2];
+        Thread other = new Thread(() -> maps[1] = testTransformer.transform(osmMap));
+        other.start();
+        maps[0] = testTransformer.transform(osmMap);
+        other.join();
+        for (Map testMap : maps) {
+            assertEquals(4800, testMap.polyLines().size());
+            assertEquals(1200, testMap.polygons().size());
+            for (int i = 1; i < testMap.polyLines().size(); i++) {
+                assertTrue(testMap.polyLines().get(i - 1).value().firstPoint().x() < testMap.polyLines().get(i).value().firstPoint().x());
+            }
+            for (int i = 1; i < testMap.polygons().size(); i++) {
+                assertTrue(testMap.polygons().get(i - 1).value().shell().firstPoint().x() < testMap.polygons().get(i).value().shell().firstPoint().x());
+            }
+        }
+    }
+
+    /*
+     * test if a multipolygon with many members, whose rings may be built by two tasks,
+     * gets its holes, and if the relations keep their order
+     */
+    @Test
+    public void largeMultipolygonKeepsItsHoles() throws Exception {
+        StringBuilder document = new StringBuilder("<osm>");
+        StringBuilder relation = new StringBuilder("<relation id=\"1\">");
+        double[] offsets = { 0, 0.0004, 0.0001, 0.0003 };
+        for (int i = 0; i < 300; i++) {
+            //Square i covers the longitudes [6.5 + i * 0.001; 6.5 + i * 0.001 + 0.0004], its hole the middle of it
+            int squares = i < 150 ? 2 : 1;
+            for (int k = 0; k < squares; k++) {
+                long id = 8 * i + 4 * k;
+                double min = offsets[2 * k];
+                double max = offsets[2 * k + 1];
+                double[][] corners = { { min, min }, { max, min }, { max, max }, { min, max } };
+                for (int j = 0; j < 4; j++) {
+                    document.append("<node id=\"").append(id + j).append("\" lat=\"").append(46.5 + corners[j][1])
+                            .append("\" lon=\"").append(6.5 + i * 0.001 + corners[j][0]).append("\"/>");
+                }
+                document.append("<way id=\"").append(id).append("\">");
+                for (int j = 0; j <= 4; j++) {
+                    document.append("<nd ref=\"").append(id + j % 4).append("\"/>");
+                }
+                document.append("</way>");
+                relation.append("<member type=\"way\" ref=\"").append(id).append("\" role=\"")
+                        .append(k == 0 ? "outer" : "inner").append("\"/>");
+            }
+        }
+        document.append(relation).append("<tag k=\"type\" v=\"multipolygon\"/><tag k=\"natural\" v=\"water\"/></relation>");
+        document.append("<relation id=\"2\"><member type=\"way\" ref=\"0\" role=\"outer\"/>"
+                + "<tag k=\"type\" v=\"multipolygon\"/><tag k=\"landuse\" v=\"forest\"/></relation></osm>");
+        OSMMap osmMap = OSMMapReader.readOSM(new ByteArrayInputStream(document.toString().getBytes(StandardCharsets.UTF_8)));
+        Map testMap = testTransformer.transform(osmMap);
+        assertEquals(301, testMap.polygons().size());
+        assertEquals(Integer.valueOf(150), polygonHoleCounter(testMap).get(1));
+        assertEquals(Integer.valueOf(151), polygonHoleCounter(testMap).get(0));
+        assertEquals("forest", testMap.polygons().get(300).attributes().get("landuse"));
+    }
+
+    /*
+     * test if the nodes shared by ways and rings are projected once
+     */
+    @Test
+    public void sharedNodesAreProjectedOnce() throws Exception {
+        String document = "<osm><node id=\"1\" lat=\"46.5\" lon=\"6.5\"/><node id=\"2\" lat=\"46.5\" lon=\"6.6\"/>"
+                + "<node id=\"3\" lat=\"46.6\" lon=\"6.6\"/>"
+                + "<way id=\"10\"><nd ref=\"1\"/><nd ref=\"2\"/><nd ref=\"3\"/><nd ref=\"1\"/><tag k=\"building\" v=\"yes\"/></way>"
+                + "<way id=\"11\"><nd ref=\"2\"/><nd ref=\"3\"/><tag k=\"highway\" v=\"service\"/></way>"
+                + "<relation id=\"20\"><member type=\"way\" ref=\"10\" role=\"outer\"/>"
+                + "<tag k=\"type\" v=\"multipolygon\"/><tag k=\"landuse\" v=\"forest\"/></relation></osm>";
+        OSMMap osmMap = OSMMapReader.readOSM(new ByteArrayInputStream(document.getBytes(StandardCharsets.UTF_8)));
+        OSMToGeoTransformer.Result result = testTransformer.transformWithMetrics(osmMap);
+        assertEquals(3, result.metrics().projectionsCount());
+        //Way 11 and the ring of relation 20 use the projections of the nodes of way 10
+        assertEquals(5, result.metrics().cacheHitsCount());
+        assertEquals(5.0 / 8, result.metrics().cacheHitRate(), 1e-9);
+        assertEquals(1, result.map().polyLines().size());
+        assertEquals(2, result.map().polygons().size());
+        assertEquals(result.map().polyLines().get(0).value().x(0), result.map().polygons().get(0).value().shell().x(1), 0);
+        assertEquals(result.map().polyLines().get(0).value().y(0), result.map().polygons().get(0).value().shell().y(1), 0);
+    }
 }
@@ -78,6 +78,34 @@ public class OSMWayTest extends OSMEntityTest{
         assertEquals(testWay.nonRepeatingNodes(), testWayList.subList(0, testWayList.size() - 1));
     }
 
+    @Test
+    public void nodesFromStore() {
+        OSMNodeStore store = new OSMNodeStore();
+        int first = store.add(12L, 0.1, 0.2, null);
+        int second = store.add(34L, 0.3, 0.4, null);
+        OSMWay testWay = new OSMWay(4, store, new int[] { first, second, first }, EMPTY_ATTRIBUTES);
+        assertTrue(testWay.isClosed());
+        assertEquals(3, testWay.nodesCount());
+        assertEquals(34L, testWay.nodes().get(1).id());
+        assertEquals(2, testWay.nonRepeatingNodes().size());
+        assertSame(store, testWay.nodeStore());
+        assertEquals(second, testWay.nodeIndex(1));
+    }
+
+    @Test
+    public void builderWithStore() {
+        OSMNodeStore store = new OSMNodeStore();
+        store.add(12L, 0.1, 0.2, null);
+        store.add(34L, 0.3, 0.4, null);
+        OSMWay.Builder testBuild = new OSMWay.Builder(1, store);
+        testBuild.addNodeIndex(1);
+        testBuild.addNodeIndex(0);
+        OSMWay testWay = testBuild.build();
+        assertEquals(34L, testWay.firstNode().id());
+        assertEquals(12L, testWay.lastNode().id());
+        assertFalse(testWay.isClosed());
+    }
+
     @Test
     @Override
     public void builderBuiltSetAttribute() throws Throwable {
@@ -0,0 +1,211 @@
+package ch.epfl.imhof.osm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+import ch.epfl.imhof.Attributes;
+
+public class OSMXMLParserTest {
+    private final static String[] KEYS = { "", "building", "name", "type", "note" };
+    private final static String HEADER = "<?xml version='1.0' encoding='UTF-8'?>\n";
+    private final static String NODES =
+            "  <node id=\"1\" lat=\"46.5194710\" lon=\"6.5620370\"/>\n"
+            + "  <node id=\"2\" lat=\"46.519\" lon=\"6.563\" visible=\"true\"></node>\n"
+            + "  <node id='3' lon='-6.56' lat='-46.5194711'>\n"
+            + "    <tag k=\"name\" v=\"Rolex\"/>\n"
+            + "  </node>\n";
+
+    private static InputStream stream(String document) {
+        return new ByteArrayInputStream(document.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static OSMMap readStreaming(String document) throws Exception {
+        return OSMMapReader.readOSM(stream(document));
+    }
+
+    private static OSMMap readSAX(String document) throws Exception {
+        return OSMMapReader.readOSMWithSAX(stream(document));
+    }
+
+    private static String describe(Attributes attributes) {
+        StringBuilder b = new StringBuilder("{");
+        for (String key : KEYS) {
+            if (attributes.contains(key)) {
+                b.append(key).append('=').append(attributes.get(key)).append(';');
+            }
+        }
+        return b.append('}').toString();
+    }
+
+    private static String describe(OSMNode node) {
+        return node.id() + "(" + FixedPointCoordinate.fromRadians(node.position().longitude()) + ","
+                + FixedPointCoordinate.fromRadians(node.position().latitude()) + ")" + describe(node.attributes());
+    }
+
+    private static String describe(OSMMap map) {
+        StringBuilder b = new StringBuilder();
+        for (OSMWay way : map.ways()) {
+            b.append("way ").append(way.id()).append(describe(way.attributes()));
+            for (OSMNode node : way.nodes()) {
+                b.append(' ').append(describe(node));
+            }
+            b.append('\n');
+        }
+        for (OSMRelation relation : map.relations()) {
+            b.append("relation ").append(relation.id()).append(describe(relation.attributes()));
+            for (OSMRelation.Member member : relation.members()) {
+                b.append(' ').append(member.type()).append(':').append(member.member().id()).append(':').append(member.role());
+            }
+            b.append('\n');
+        }
+        return b.toString();
+    }
+
+    private static void assertSameAsSAX(String document) throws Exception {
+        assertEquals(describe(readSAX(document)), describe(readStreaming(document)));
+    }
+
+    @Test
+    public void simpleDocument() throws Exception {
+        String document = HEADER + "<osm version=\"0.6\">\n" + NODES
+                + "  <way id=\"10\">\n"
+                + "    <nd ref=\"1\"/><nd ref=\"2\"/><nd ref=\"3\"/><nd ref=\"1\"/>\n"
+                + "    <tag k=\"building\" v=\"yes\"/>\n"
+                + "  </way>\n"
+                + "  <way id=\"11\"><nd ref=\"1\"/><nd ref=\"4\"/></way>\n"
+                + "  <relation id=\"20\">\n"
+                + "    <member type=\"way\" ref=\"10\" role=\"outer\"/>\n"
+                + "    <member type=\"node\" ref=\"3\" role=\"\"/>\n"
+                + "    <tag k=\"type\" v=\"multipolygon\"/>\n"
+                + "  </relation>\n"
+                + "</osm>\n";
+        OSMMap map = readStreaming(document);
+        assertEquals(1, map.ways().size());
+        assertEquals(4, map.ways().get(0).nodesCount());
+        assertEquals("yes", map.ways().get(0).attributes().get("building"));
+        assertEquals(1, map.relations().size());
+        assertEquals("3(-65600000,-465194711){name=Rolex;}", describe((OSMNode) map.relations().get(0).members().get(1).member()));
+        assertSameAsSAX(document);
+    }
+
+    @Test
+    public void referencesAndWhiteSpacesAreDecoded() throws Exception {
+        String document = "<osm>" + NODES
+                + "<way id=\"10\"><nd ref=\"1\"/><nd ref=\"2\"/>"
+                + "<tag k=\"name\" v=\"Caf&#233; &amp; &lt;Bar&gt; &quot;&apos;&#x1F600;\"/>"
+                + "<tag k=\"note\" v=\"a\tb\r\nc\rd\ne\"/>"
+                + "<tag k=\"\" v=\"Zürich\"/>"
+                + "</way></osm>";
+        OSMMap map = readStreaming(document);
+        assertEquals("Café & <Bar> \"'😀", map.ways().get(0).attributes().get("name"));
+        assertEquals("a b c d e", map.ways().get(0).attributes().get("note"));
+        assertEquals("Zürich", map.ways().get(0).attributes().get(""));
+        assertSameAsSAX(document);
+    }
+
+    @Test
+    public void commentsAndProcessingInstructionsAreSkipped() throws Exception {
+        String document = "﻿" + HEADER + "<!-- a <node id=\"9\"> comment -->\n<?stylesheet x?>"
+                + "<osm>" + NODES + "<!---->"
+                + "<way id=\"10\" ><nd ref = '1' /><nd ref=\"2\"/><tag k=\"name\" v=\"a > b\"/></way >"
+                + "</osm><!-- end -->\n";
+        OSMMap map = readStreaming(document);
+        assertEquals("a > b", map.ways().get(0).attributes().get("name"));
+        assertSameAsSAX(document);
+    }
+
+    @Test
+    public void missingTagValueIsNull() throws Exception {
+        OSMMap map = readStreaming("<osm>" + NODES + "<way id=\"10\"><nd ref=\"1\"/><nd ref=\"2\"/><tag k=\"name\"/></way></osm>");
+        assertNull(map.ways().get(0).attributes().get("name"));
+    }
+
+    @Test
+    public void longDocumentIsReadAcrossBuffers() throws Exception {
+        StringBuilder document = new StringBuilder("<osm>\n");
+        for (int i = 1; i <= 20_000; i++) {
+            document.append("<node id=\"").append(i).append("\" lat=\"").append(i % 90).append(".1234567\" lon=\"-")
+                    .append(i % 180).append(".7654321\"/>\n");
+        }
+        for (int i = 1; i < 20_000; i += 100) {
+            document.append("<way id=\"").append(i).append("\">");
+            for (int j = 0; j < 100; j++) {
+                document.append("<nd ref=\"").append(i + j).append("\"/>");
+            }
+            document.append("<tag k=\"name\" v=\"").append(new String(new char[i % 300]).replace('\0', 'é')).append("\"/></way>\n");
+        }
+        document.append("</osm>");
+        assertEquals(200, readStreaming(document.toString()).ways().size());
+        assertSameAsSAX(document.toString());
+    }
+
+    @Test
+    public void onlyChosenAttributesAreKeptAndShared() throws Exception {
+        String document = "<osm>" + NODES
+                + "<way id=\"10\"><nd ref=\"1\"/><nd ref=\"2\"/><tag k=\"building\" v=\"yes\"/><tag k=\"name\" v=\"A\"/></way>"
+                + "<way id=\"11\"><nd ref=\"2\"/><nd ref=\"3\"/><tag k=\"building\" v=\"yes\"/><tag k=\"note\" v=\"&lt;\"/></way>"
+                + "</osm>";
+        OSMReadOptions.Builder builder = new OSMReadOptions.Builder();
+        builder.setAttributeKeys(new HashSet<>(Arrays.asList("building", "type")));
+        OSMReadOptions options = builder.build();
+        OSMMap map = OSMMapReader.readOSM(stream(document), options);
+        OSMMap saxMap = OSMMapReader.readOSMWithSAX(stream(document), options);
+        assertEquals(describe(saxMap), describe(map));
+        assertEquals("{building=yes;}", describe(map.ways().get(0).attributes()));
+        assertEquals("{building=yes;}", describe(map.ways().get(1).attributes()));
+        //Node 3 has a name
+        assertTrue(map.ways().get(1).nodes().get(1).attributes().isEmpty());
+        assertSame(map.ways().get(0).attributes().get("building"), map.ways().get(1).attributes().get("building"));
+        assertSame(saxMap.ways().get(0).attributes().get("building"), saxMap.ways().get(1).attributes().get("building"));
+    }
+
+    @Test(expected = OSMXMLParser.UnsupportedXMLException.class)
+    public void doctypeIsUnsupported() throws Exception {
+        readStreaming("<?xml version=\"1.0\"?><!DOCTYPE osm [<!ENTITY e \"x\">]><osm></osm>");
+    }
+
+    @Test(expected = OSMXMLParser.UnsupportedXMLException.class)
+    public void otherEncodingsAreUnsupported() throws Exception {
+        readStreaming("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?><osm></osm>");
+    }
+
+    @Test(expected = OSMXMLParser.UnsupportedXMLException.class)
+    public void unbalancedTagsAreRejected() throws Exception {
+        readStreaming("<osm>" + NODES + "<way id=\"10\"></osm></way>");
+    }
+
+    @Test(expected = OSMXMLParser.UnsupportedXMLException.class)
+    public void unclosedRootIsRejected() throws Exception {
+        readStreaming("<osm>" + NODES);
+    }
+
+    @Test(expected = OSMXMLParser.UnsupportedXMLException.class)
+    public void duplicateAttributesAreRejected() throws Exception {
+        readStreaming("<osm><node id=\"1\" id=\"2\" lat=\"0\" lon=\"0\"/></osm>");
+    }
+
+    @Test(expected = OSMXMLParser.UnsupportedXMLException.class)
+    public void invalidCoordinateIsRejected() throws Exception {
+        readStreaming("<osm><node id=\"1\" lat=\"4.6e1\" lon=\"0\"/></osm>");
+    }
+
+    @Test(expected = OSMXMLParser.UnsupportedXMLException.class)
+    public void invalidMemberTypeIsRejected() throws Exception {
+        readStreaming("<osm>" + NODES + "<relation id=\"1\"><member type=\"area\" ref=\"1\" role=\"\"/></relation></osm>");
+    }
+
+    @Test(expected = OSMXMLParser.UnsupportedXMLException.class)
+    public void unknownEntityIsRejected() throws Exception {
+        readStreaming("<osm>" + NODES + "<way id=\"1\"><nd ref=\"1\"/><tag k=\"a\" v=\"&nbsp;\"/></way></osm>");
+    }
+}
@@ -0,0 +1,55 @@
+package ch.epfl.imhof.osm;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.epfl.imhof.geometry.ClosedPolyLine;
+import ch.epfl.imhof.geometry.Point;
+
+public class OuterRingIndexTest {
+
+    private static ClosedPolyLine square(double x, double y, double side) {
+        return new ClosedPolyLine(Arrays.asList(new Point(x, y), new Point(x + side, y),
+                new Point(x + side, y + side), new Point(x, y + side)));
+    }
+
+    private static int bruteForce(List<ClosedPolyLine> rings, Point p) {
+        for (int i = 0; i < rings.size(); i++) {
+            if (rings.get(i).containsPoint(p)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Test
+    public void firstContainingRingIsFound() {
+        List<ClosedPolyLine> rings = new ArrayList<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 300; i++) {
+            rings.add(square(random.nextDouble() * 1000, random.nextDouble() * 1000, 5 + random.nextDouble() * 40));
+        }
+        //Large rings, registered apart from the grid, between the small ones
+        rings.add(150, square(-10, -10, 1100));
+        rings.add(square(400, 400, 300));
+        OuterRingIndex index = new OuterRingIndex(rings);
+        for (int i = 0; i < 5000; i++) {
+            Point p = new Point(random.nextDouble() * 1200 - 100, random.nextDouble() * 1200 - 100);
+            assertEquals(bruteForce(rings, p), index.ringContaining(p));
+        }
+    }
+
+    @Test
+    public void singleRingIndex() {
+        OuterRingIndex index = new OuterRingIndex(Arrays.asList(square(0, 0, 10)));
+        assertEquals(0, index.ringContaining(new Point(5, 5)));
+        assertEquals(-1, index.ringContaining(new Point(15, 5)));
+        assertEquals(-1, index.ringContaining(new Point(-5, 5)));
+    }
+}
@@ -0,0 +1,158 @@
+package ch.epfl.imhof.osm;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PipelinedInputStreamTest {
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(0).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] readAll(InputStream i, int chunkSize) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[chunkSize];
+        int read;
+        while ((read = i.read(chunk, 0, chunkSize)) >= 0) {
+            out.write(chunk, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * A source giving few bytes at a time, then failing or closing
+     */
+    private static class TrickleStream extends InputStream {
+        private final byte[] bytes;
+        private final boolean fails;
+        private int position = 0;
+        private volatile boolean closed = false;
+
+        TrickleStream(byte[] bytes, boolean fails) {
+            this.bytes = bytes;
+            this.fails = fails;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position == bytes.length) {
+                if (fails) {
+                    throw new IOException("broken source");
+                }
+                return -1;
+            }
+            int count = Math.min(Math.min(len, 7), bytes.length - position);
+            System.arraycopy(bytes, position, b, off, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    @Test
+    public void bytesAreUnchanged() throws IOException {
+        byte[] bytes = randomBytes(100_003);
+        try (InputStream i = new PipelinedInputStream(new ByteArrayInputStream(bytes), 1000, 3)) {
+            assertArrayEquals(bytes, readAll(i, 4096));
+        }
+        try (InputStream i = new PipelinedInputStream(new TrickleStream(bytes, false), 64, 2)) {
+            assertArrayEquals(bytes, readAll(i, 10));
+        }
+    }
+
+    @Test
+    public void singleBytesAreRead() throws IOException {
+        byte[] bytes = randomBytes(5000);
+        try (InputStream i = new PipelinedInputStream(new ByteArrayInputStream(bytes), 100, 2)) {
+            for (byte b : bytes) {
+                assertEquals(b & 0xFF, i.read());
+            }
+            assertEquals(-1, i.read());
+            assertEquals(-1, i.read());
+        }
+    }
+
+    @Test
+    public void emptySource() throws IOException {
+        try (InputStream i = new PipelinedInputStream(new ByteArrayInputStream(new byte[0]))) {
+            assertEquals(-1, i.read());
+        }
+    }
+
+    @Test
+    public void sourceFailureIsThrownAfterTheBytes() throws IOException {
+        byte[] bytes = randomBytes(1000);
+        try (InputStream i = new PipelinedInputStream(new TrickleStream(bytes, true), 128, 2)) {
+            byte[] read = new byte[bytes.length];
+            int count = 0;
+            while (count < bytes.length) {
+                count += i.read(read, count, bytes.length - count);
+            }
+            assertArrayEquals(bytes, read);
+            try {
+                i.read();
+                fail();
+            } catch (IOException e) {
+                assertEquals("broken source", e.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void sourceErrorIsThrownInsteadOfBlocking() throws IOException {
+        InputStream source = new InputStream() {
+            @Override
+            public int read() {
+                throw new InternalError("broken inflater");
+            }
+        };
+        try (InputStream i = new PipelinedInputStream(source, 16, 2)) {
+            i.read();
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getCause() instanceof InternalError);
+        }
+    }
+
+    @Test
+    public void closingEarlyClosesTheSource() throws IOException {
+        TrickleStream source = new TrickleStream(randomBytes(1_000_000), false);
+        InputStream i = new PipelinedInputStream(source, 16, 2);
+        i.read();
+        i.close();
+        assertTrue(source.closed);
+        try {
+            i.read();
+            fail();
+        } catch (IOException e) {
+            //Expected
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidBufferCount() {
+        new PipelinedInputStream(new ByteArrayInputStream(new byte[0]), 16, 0);
+    }
+}
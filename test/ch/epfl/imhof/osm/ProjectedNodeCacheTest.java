@@ -0,0 +1,36 @@
+package ch.epfl.imhof.osm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import ch.epfl.imhof.geometry.Point;
+import ch.epfl.imhof.projection.CH1903Projection;
+
+public class ProjectedNodeCacheTest {
+
+    private static OSMNodeStore store(double longitude) {
+        OSMNodeStore store = new OSMNodeStore();
+        store.add(1, Math.toRadians(longitude), Math.toRadians(46.5), null);
+        store.add(2, Math.toRadians(longitude + 0.01), Math.toRadians(46.5), null);
+        return store;
+    }
+
+    @Test
+    public void nodesOfEachStoreAreProjectedOnce() {
+        ProjectedNodeCache cache = new ProjectedNodeCache(new CH1903Projection());
+        OSMNodeStore first = store(6.5);
+        OSMNodeStore second = store(6.6);
+        Point point = cache.project(first, 1);
+        assertSame(point, cache.project(first, 1));
+        //The same index in another store is another node
+        Point other = cache.project(second, 1);
+        assertTrue(point.x() != other.x());
+        assertSame(other, cache.project(second, 1));
+        cache.project(second, 0);
+        assertEquals(3, cache.projectionsCount());
+        assertEquals(2, cache.hitsCount());
+    }
+}
@@ -0,0 +1,86 @@
+package ch.epfl.imhof.osm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class ProtobufReaderTest {
+
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+
+    @Test
+    public void varintsAreDecoded() throws IOException {
+        ProtobufReader r = new ProtobufReader(bytes(0x01, 0xAC, 0x02, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0x01));
+        assertEquals(1, r.varint());
+        assertEquals(300, r.varint());
+        assertEquals(-1L, r.varint());
+        assertFalse(r.hasRemaining());
+    }
+
+    @Test
+    public void signedVarintsAreZigzagDecoded() throws IOException {
+        ProtobufReader r = new ProtobufReader(bytes(0x00, 0x01, 0x02, 0x03, 0xFE, 0xFF, 0xFF, 0xFF, 0x0F, 0xFF, 0xFF, 0xFF, 0xFF, 0x0F));
+        assertEquals(0, r.signedVarint());
+        assertEquals(-1, r.signedVarint());
+        assertEquals(1, r.signedVarint());
+        assertEquals(-2, r.signedVarint());
+        assertEquals(Integer.MAX_VALUE, r.signedVarint());
+        assertEquals(Integer.MIN_VALUE, r.signedVarint());
+    }
+
+    @Test
+    public void fieldsAreReadAndSkipped() throws IOException {
+        //1: varint 150, 2: string "hi", 3: fixed32, 4: fixed64, 5: embedded message {1: 7}
+        ProtobufReader r = new ProtobufReader(bytes(0x08, 0x96, 0x01, 0x12, 0x02, 'h', 'i', 0x1D, 1, 2, 3, 4,
+                0x21, 1, 2, 3, 4, 5, 6, 7, 8, 0x2A, 0x02, 0x08, 0x07));
+        assertTrue(r.next());
+        assertEquals(1, r.field());
+        assertEquals(ProtobufReader.VARINT, r.wireType());
+        assertEquals(150, r.varint());
+        assertTrue(r.next());
+        assertEquals(2, r.field());
+        assertEquals("hi", r.string());
+        assertTrue(r.next());
+        assertEquals(ProtobufReader.FIXED_32, r.wireType());
+        r.skip();
+        assertTrue(r.next());
+        assertEquals(ProtobufReader.FIXED_64, r.wireType());
+        r.skip();
+        assertTrue(r.next());
+        assertEquals(5, r.field());
+        ProtobufReader message = r.message();
+        assertTrue(message.next());
+        assertEquals(7, message.varint());
+        assertFalse(message.next());
+        assertFalse(r.next());
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedVarintIsRejected() throws IOException {
+        new ProtobufReader(bytes(0x96)).varint();
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedFieldIsRejected() throws IOException {
+        ProtobufReader r = new ProtobufReader(bytes(0x12, 0x05, 'h', 'i'));
+        r.next();
+        r.string();
+    }
+
+    @Test(expected = IOException.class)
+    public void unsupportedWireTypeIsRejected() throws IOException {
+        ProtobufReader r = new ProtobufReader(bytes(0x0B));
+        r.next();
+        r.skip();
+    }
+}
@@ -0,0 +1,82 @@
+package ch.epfl.imhof.osm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import ch.epfl.imhof.Attributes;
+import ch.epfl.imhof.geometry.ClosedPolyLine;
+import ch.epfl.imhof.projection.CH1903Projection;
+
+public class RingAssemblerTest {
+    private final static Attributes NO_ATTRIBUTES = new Attributes(Collections.emptyMap());
+
+    //Nodes 1 to 9 on a 3 x 3 grid : node 1 at the bottom left, node 9 at the top right
+    private static OSMNodeStore grid() {
+        OSMNodeStore store = new OSMNodeStore();
+        for (int i = 0; i < 9; i++) {
+            store.add(i + 1, Math.toRadians(6.5 + (i % 3) * 0.01), Math.toRadians(46.5 + (i / 3) * 0.01), NO_ATTRIBUTES);
+        }
+        return store;
+    }
+
+    private static OSMWay way(OSMNodeStore store, long... ids) {
+        int[] indices = new int[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            indices[i] = store.indexOf(ids[i]);
+        }
+        return new OSMWay(ids[0] * 100 + ids[ids.length - 1], store, indices, NO_ATTRIBUTES);
+    }
+
+    private static List<ClosedPolyLine> rings(OSMWay... ways) {
+        return RingAssembler.rings(Arrays.asList(ways), new ProjectedNodeCache(new CH1903Projection()));
+    }
+
+    @Test
+    public void waysAreJoinedInBothDirections() {
+        OSMNodeStore store = grid();
+        List<ClosedPolyLine> rings = rings(way(store, 1, 2, 3), way(store, 9, 6, 3), way(store, 9, 8, 7), way(store, 1, 4, 7));
+        assertEquals(1, rings.size());
+        assertEquals(8, rings.get(0).points().size());
+        assertEquals(new CH1903Projection().project(store.position(0)).x(), rings.get(0).firstPoint().x(), 0);
+    }
+
+    @Test
+    public void closedWayIsARing() {
+        OSMNodeStore store = grid();
+        List<ClosedPolyLine> rings = rings(way(store, 1, 3, 9, 1), way(store, 2, 6, 5, 2));
+        assertEquals(2, rings.size());
+        assertEquals(3, rings.get(0).points().size());
+    }
+
+    @Test
+    public void touchingRingsAreSeparated() {
+        OSMNodeStore store = grid();
+        //Two triangles touching at node 5
+        List<ClosedPolyLine> rings = rings(way(store, 1, 2), way(store, 2, 5), way(store, 5, 9),
+                way(store, 9, 6), way(store, 6, 5), way(store, 5, 1));
+        assertEquals(2, rings.size());
+        for (ClosedPolyLine ring : rings) {
+            assertEquals(3, ring.points().size());
+            assertTrue(ring.area() > 0);
+        }
+    }
+
+    @Test
+    public void unclosedChainGivesNoRing() {
+        OSMNodeStore store = grid();
+        assertEquals(0, rings(way(store, 1, 2, 3), way(store, 3, 6), way(store, 7, 8, 9, 7)).size());
+    }
+
+    @Test
+    public void repeatedWayIsUsedOnce() {
+        OSMNodeStore store = grid();
+        OSMWay way = way(store, 1, 3, 9);
+        assertEquals(1, rings(way, way, way(store, 9, 7, 1)).size());
+    }
+}
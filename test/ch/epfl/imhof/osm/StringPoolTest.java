@@ -0,0 +1,72 @@
+package ch.epfl.imhof.osm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class StringPoolTest {
+
+    private static byte[] utf8(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void equalStringsAreShared() {
+        StringPool pool = new StringPool();
+        String highway = pool.intern(new String("highway"));
+        assertSame(highway, pool.intern(new String("highway")));
+        assertEquals(1, pool.size());
+        assertNull(pool.intern(null));
+    }
+
+    @Test
+    public void bytesAreLookedUp() {
+        StringPool pool = new StringPool();
+        byte[] bytes = utf8("<tag k=\"highway\" v=\"residential\"/>");
+        String highway = pool.intern(new String("highway"));
+        assertSame(highway, pool.intern(bytes, 8, 15));
+        String residential = pool.intern(bytes, 20, 31);
+        assertEquals("residential", residential);
+        assertSame(residential, pool.intern("residential"));
+        assertSame(pool.intern(""), pool.intern(bytes, 0, 0));
+    }
+
+    @Test
+    public void nonAsciiBytesAreDecoded() {
+        StringPool pool = new StringPool();
+        byte[] bytes = utf8("Zürich");
+        String zurich = pool.intern(bytes, 0, bytes.length);
+        assertEquals("Zürich", zurich);
+        assertSame(zurich, pool.intern(bytes, 0, bytes.length));
+        assertSame(zurich, pool.intern(new String("Zürich")));
+    }
+
+    @Test
+    public void longStringsAreNotKept() {
+        StringPool pool = new StringPool();
+        String note = new String(new char[100]).replace('\0', 'a');
+        assertNotSame(pool.intern(note), pool.intern(new String(note)));
+        byte[] bytes = utf8(note);
+        assertEquals(note, pool.intern(bytes, 0, bytes.length));
+        assertEquals(0, pool.size());
+    }
+
+    @Test
+    public void manyStringsAreKept() {
+        StringPool pool = new StringPool();
+        for (int i = 0; i < 10_000; i++) {
+            pool.intern("value" + i);
+        }
+        assertEquals(10_000, pool.size());
+        for (int i = 0; i < 10_000; i++) {
+            byte[] bytes = utf8("value" + i);
+            assertSame(pool.intern("value" + i), pool.intern(bytes, 0, bytes.length));
+        }
+        assertEquals(10_000, pool.size());
+    }
+}